@@ -12,12 +12,19 @@ import org.restlet.security.ChallengeAuthenticator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.collabinate.server.activitystreams.GsonCodec;
+import com.collabinate.server.activitystreams.JacksonCodec;
+import com.collabinate.server.engine.AsynchronousWriter;
+import com.collabinate.server.engine.CachingCollabinateAdmin;
+import com.collabinate.server.engine.CachingCollabinateReader;
 import com.collabinate.server.engine.CollabinateAdmin;
 import com.collabinate.server.engine.CollabinateGraph;
 import com.collabinate.server.engine.CollabinateReader;
 import com.collabinate.server.engine.CollabinateWriter;
 import com.collabinate.server.engine.GraphAdmin;
 import com.collabinate.server.engine.GraphEngine;
+import com.collabinate.server.engine.GroupCommitWriter;
 import com.collabinate.server.webserver.CollabinateComponent;
 import com.collabinate.server.webserver.CollabinateVerifier;
 import com.tinkerpop.blueprints.Graph;
@@ -70,6 +77,9 @@ public class Collabinate
 		logger.info("Collabinate Server version {}{}",
 				version, build.equals("") ? "" : ("+" + build));
 		
+		// select the JSON codec for activity streams content
+		configureJsonCodec();
+		
 		// connect to the data store
 		connectGraphDatabase();
 		registerShutdownHook();
@@ -101,6 +111,7 @@ public class Collabinate
 		// stop and destroy the web server, engine, and graph
 		webServer.stop();
 		webServer = null;
+		shutdownWriter();
 		reader = null;
 		writer = null;
 		admin = null;
@@ -115,6 +126,25 @@ public class Collabinate
 		logger.info("Service reset.");
 	}
 	
+	/**
+	 * Sets the configured JSON codec for activity streams content.
+	 */
+	private static void configureJsonCodec()
+	{
+		String codec = getConfiguration().getString(
+				"collabinate.server.activitystreams.codec", "gson");
+		
+		if (codec.equalsIgnoreCase("jackson"))
+			ActivityStreamsObject.setCodec(new JacksonCodec());
+		else if (codec.equalsIgnoreCase("gson"))
+			ActivityStreamsObject.setCodec(new GsonCodec());
+		else
+			throw new IllegalStateException(
+					"Unknown activity streams codec: " + codec);
+		
+		logger.info("Activity streams JSON codec: {}", codec);
+	}
+	
 	/**
 	 * Opens a connection to the configured graph database.
 	 */
@@ -131,6 +161,28 @@ public class Collabinate
 		
 		graph = new CollabinateGraph(
 				(KeyIndexableGraph)configuredGraph);
+		
+		// group commit is enabled by configuring its window
+		long groupCommitWindow = getConfiguration().getLong(
+				"collabinate.server.engine.groupcommit.window", 0);
+		if (groupCommitWindow > 0)
+		{
+			graph.enableGroupCommit(groupCommitWindow,
+					getConfiguration().getInt(
+					"collabinate.server.engine.groupcommit.size", 256));
+			logger.info("Group commit enabled with {} ms window",
+					groupCommitWindow);
+		}
+		
+		// deferred counters are enabled by configuring their flush interval
+		long counterFlushInterval = getConfiguration().getLong(
+				"collabinate.server.engine.counters.flushinterval", 0);
+		if (counterFlushInterval > 0)
+		{
+			graph.enableDeferredCounters(counterFlushInterval);
+			logger.info("Deferred counters enabled with {} ms flush interval",
+					counterFlushInterval);
+		}
 	}
 	
 	/**
@@ -139,9 +191,66 @@ public class Collabinate
 	private static void createEngine()
 	{
 		GraphEngine engine = new GraphEngine(graph);
+		engine.setFeedPullThreshold(getConfiguration().getInt(
+				"collabinate.server.engine.feed.pullthreshold", 0));
+		
+		// feed pages are cached when a cache size is configured
+		long feedCacheSize = getConfiguration().getLong(
+				"collabinate.server.engine.feed.cachesize", 0);
+		if (feedCacheSize > 0)
+		{
+			engine.enableFeedCache(feedCacheSize);
+			logger.info("Feed cache enabled with size {} bytes",
+					feedCacheSize);
+		}
+		
 		reader = engine;
 		writer = engine;
-		admin = new GraphAdmin(graph);		
+		
+		// activities, comments and entities are cached when a cache size is
+		// configured, invalidated by the writes made through the cache
+		long cacheSize = getConfiguration().getLong(
+				"collabinate.server.engine.cache.size", 0);
+		if (cacheSize > 0)
+		{
+			CachingCollabinateReader cache = new CachingCollabinateReader(
+					engine, engine, graph, cacheSize);
+			reader = cache;
+			writer = cache;
+			logger.info("Object cache enabled with size {} bytes", cacheSize);
+		}
+		
+		// the writers below apply their writes through the cache
+		CollabinateWriter baseWriter = writer;
+		if (graph.isGroupCommitEnabled())
+			writer = new GroupCommitWriter(baseWriter, graph);
+		
+		// tenants are cached for the key check made on every request, and
+		// expire after the time to live if one is configured
+		admin = new CachingCollabinateAdmin(new GraphAdmin(graph),
+				getConfiguration().getLong(
+				"collabinate.server.engine.tenantcache.ttl", 0));
+		
+		// writes are queued when an asynchronous buffer is configured
+		int bufferSize = getConfiguration().getInt(
+				"collabinate.server.engine.async.buffersize", 0);
+		if (bufferSize > 0)
+		{
+			writer = new AsynchronousWriter(baseWriter, graph, bufferSize,
+					getConfiguration().getInt(
+					"collabinate.server.engine.async.partitions", 4));
+			logger.info("Asynchronous writes enabled with buffer size {}",
+					bufferSize);
+		}
+	}
+	
+	/**
+	 * Applies any queued writes before the graph is shut down.
+	 */
+	private static void shutdownWriter()
+	{
+		if (writer instanceof AsynchronousWriter)
+			((AsynchronousWriter)writer).shutdown();
 	}
 	
 	/**
@@ -232,6 +341,7 @@ public class Collabinate
 			@Override
 			public void run()
 			{
+				shutdownWriter();
 				graph.shutdown();
 				System.out.println("Collabinate Server shutdown complete.");
 			}
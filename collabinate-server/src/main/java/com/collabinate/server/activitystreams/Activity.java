@@ -47,7 +47,8 @@ public class Activity extends ActivityStreamsObject
 		}
 		
 		// test for actor
-		if (null == getActor())
+		JsonElement actor = getJsonObject().get(ACTOR);
+		if (null == actor || !actor.isJsonObject())
 		{
 			setActor(new ActivityStreamsObject());
 		}
@@ -61,10 +62,11 @@ public class Activity extends ActivityStreamsObject
 	 */
 	public ActivityStreamsObject getActor()
 	{
-		JsonElement element = jsonObject.get(ACTOR);
+		JsonElement element = getJsonObject().get(ACTOR);
 		if (null != element && element.isJsonObject())
 		{
-			return new ActivityStreamsObject(element.toString());
+			return new ActivityStreamsObject(
+					copyObject(element.getAsJsonObject()));
 		}
 		
 		return null;
@@ -78,7 +80,7 @@ public class Activity extends ActivityStreamsObject
 	 */
 	public void setActor(ActivityStreamsObject actor)
 	{
-		jsonObject.add(ACTOR, actor.jsonObject);
+		getJsonObject().add(ACTOR, actor.toJsonTree());
 	}
 	
 	/**
@@ -92,10 +94,11 @@ public class Activity extends ActivityStreamsObject
 	 */
 	public ActivityStreamsObject getObject()
 	{
-		JsonElement element = jsonObject.get(OBJECT);
+		JsonElement element = getJsonObject().get(OBJECT);
 		if (null != element && element.isJsonObject())
 		{
-			return new ActivityStreamsObject(element.toString());
+			return new ActivityStreamsObject(
+					copyObject(element.getAsJsonObject()));
 		}
 		
 		return null;
@@ -112,7 +115,7 @@ public class Activity extends ActivityStreamsObject
 	 */
 	public void setObject(ActivityStreamsObject object)
 	{
-		jsonObject.add(OBJECT, object.jsonObject);
+		getJsonObject().add(OBJECT, object.toJsonTree());
 	}
 	
 	/**
@@ -142,7 +145,7 @@ public class Activity extends ActivityStreamsObject
 	 */
 	public void setVerb(String verb)
 	{
-		jsonObject.addProperty(VERB, verb);
+		getJsonObject().addProperty(VERB, verb);
 	}
 
 	protected static final String ACTOR = "actor";
@@ -1,12 +1,18 @@
 package com.collabinate.server.activitystreams;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * Represents an Activity Streams collection serialization.
@@ -17,6 +23,14 @@ import com.google.gson.JsonParser;
  */
 public class ActivityStreamsCollection extends ActivityStreamsObject
 {	
+	/**
+	 * The JSON of each item as it was given, for a collection created from
+	 * stored items, or null once the items are held in the items array. The
+	 * items are only parsed when they are modified, so a collection that is
+	 * read and written out unchanged is never turned into a JSON tree.
+	 */
+	private List<String> rawItems;
+	
 	/**
 	 * Default constructor. Creates the collection with an empty items array.
 	 */
@@ -38,6 +52,39 @@ public class ActivityStreamsCollection extends ActivityStreamsObject
 		super(content);
 	}
 	
+	/**
+	 * Creates a collection over the given JSON object, which is used as is
+	 * rather than copied.
+	 * 
+	 * @param jsonObject The JSON representation of the collection.
+	 */
+	ActivityStreamsCollection(JsonObject jsonObject)
+	{
+		super(jsonObject);
+	}
+	
+	/**
+	 * Creates a collection from the JSON of its items, which is kept as given
+	 * until the items are modified.
+	 * 
+	 * @param totalItems The total number of items in the logical collection.
+	 * @param items The JSON object of each item.
+	 */
+	public ActivityStreamsCollection(int totalItems, List<String> items)
+	{
+		super();
+		
+		if (null == items)
+			throw new IllegalArgumentException("items must not be null");
+		
+		// keep the total ahead of the items, as in a parsed collection
+		JsonObject jsonObject = getJsonObject();
+		jsonObject.remove(ITEMS);
+		setTotalItems(totalItems);
+		jsonObject.add(ITEMS, new JsonArray());
+		rawItems = new ArrayList<String>(items);
+	}
+	
 	/**
 	 * Creates a collection populated with the given items.
 	 * @param items
@@ -56,6 +103,7 @@ public class ActivityStreamsCollection extends ActivityStreamsObject
 	{
 		super.ensureDefaultFields();
 		
+		JsonObject jsonObject = getJsonObject();
 		if (!jsonObject.has(ITEMS) || !jsonObject.get(ITEMS).isJsonArray())
 		{
 			JsonArray items = new JsonArray();
@@ -73,7 +121,10 @@ public class ActivityStreamsCollection extends ActivityStreamsObject
 	 */
 	public int size()
 	{
-		return jsonObject.getAsJsonArray(ITEMS).size();
+		if (null != rawItems)
+			return rawItems.size();
+		
+		return getJsonObject().getAsJsonArray(ITEMS).size();
 	}
 	
 	/**
@@ -88,7 +139,7 @@ public class ActivityStreamsCollection extends ActivityStreamsObject
 	{
 		int totalItems = 0;
 		
-		JsonElement totalItemsElement = jsonObject.get(TOTAL_ITEMS);
+		JsonElement totalItemsElement = getJsonObject().get(TOTAL_ITEMS);
 		
 		if (null != totalItemsElement)
 		{
@@ -108,22 +159,33 @@ public class ActivityStreamsCollection extends ActivityStreamsObject
 	 */
 	public void setTotalItems(int totalItems)
 	{
-		jsonObject.addProperty(TOTAL_ITEMS, totalItems);
+		getJsonObject().addProperty(TOTAL_ITEMS, totalItems);
 	}
 	
 	/**
-	 * Returns an immutable copy of the current items collection.
+	 * Returns an immutable copy of the current items collection. Items that
+	 * have not been modified are not parsed until they are read.
 	 * 
 	 * @return An immutable list copy of the current items collection.
 	 */
 	public List<ActivityStreamsObject> getItems()
 	{
 		List<ActivityStreamsObject> items =
-				new ArrayList<ActivityStreamsObject>();
+				new ArrayList<ActivityStreamsObject>(size());
 		
-		for (JsonElement element : jsonObject.getAsJsonArray(ITEMS))
+		if (null != rawItems)
 		{
-			items.add(new ActivityStreamsObject(element.toString()));
+			for (String item : rawItems)
+			{
+				items.add(ActivityStreamsObject.fromSerialization(item));
+			}
+			
+			return ImmutableList.copyOf(items);
+		}
+		
+		for (JsonElement element : getJsonObject().getAsJsonArray(ITEMS))
+		{
+			items.add(copyItem(element));
 		}
 		
 		return ImmutableList.copyOf(items);
@@ -142,10 +204,11 @@ public class ActivityStreamsCollection extends ActivityStreamsObject
 		
 		for (ActivityStreamsObject activityStreamsObject : items)
 		{
-			array.add(activityStreamsObject.jsonObject);
+			array.add(activityStreamsObject.toJsonTree());
 		}
 		
-		jsonObject.add(ITEMS, array);
+		rawItems = null;
+		getJsonObject().add(ITEMS, array);
 	}
 
 	/**
@@ -156,22 +219,216 @@ public class ActivityStreamsCollection extends ActivityStreamsObject
 	 */
 	public ActivityStreamsObject get(int index)
 	{
-		return new ActivityStreamsObject(jsonObject.getAsJsonArray(ITEMS)
-				.get(index).toString());
+		if (null != rawItems)
+			return ActivityStreamsObject.fromSerialization(rawItems.get(index));
+		
+		return copyItem(getJsonObject().getAsJsonArray(ITEMS).get(index));
 	}
 	
 	/**
-	 * Adds the given activity to the collection.
+	 * Adds a copy of the given activity to the collection.
 	 * 
 	 * @param activity The activity to add.
 	 */
 	public void add(ActivityStreamsObject activityStreamsObject)
 	{
-		JsonParser parser = new JsonParser();
-		jsonObject.getAsJsonArray(ITEMS)
-			.add(parser.parse(activityStreamsObject.toString()));
+		// unmodified items are kept as JSON, so the added item is too
+		if (null != rawItems)
+		{
+			rawItems.add(activityStreamsObject.toString());
+			return;
+		}
+		
+		getJsonObject().getAsJsonArray(ITEMS)
+			.add(copyObject(activityStreamsObject.toJsonTree()));
+	}
+	
+	/**
+	 * Gets the cursor token for the page of items following (older than) the
+	 * items in this collection.
+	 * 
+	 * @return The cursor token, or null if none was set.
+	 */
+	public String getNextCursor()
+	{
+		return getCollabinateValue(NEXT_CURSOR);
+	}
+	
+	/**
+	 * Sets the cursor token for the page of items following (older than) the
+	 * items in this collection.
+	 * 
+	 * @param cursor The cursor token.
+	 */
+	public void setNextCursor(String cursor)
+	{
+		setCollabinateValue(NEXT_CURSOR, cursor);
+	}
+	
+	/**
+	 * Gets the cursor token for the page of items preceding (newer than) the
+	 * items in this collection.
+	 * 
+	 * @return The cursor token, or null if none was set.
+	 */
+	public String getPrevCursor()
+	{
+		return getCollabinateValue(PREV_CURSOR);
+	}
+	
+	/**
+	 * Sets the cursor token for the page of items preceding (newer than) the
+	 * items in this collection.
+	 * 
+	 * @param cursor The cursor token.
+	 */
+	public void setPrevCursor(String cursor)
+	{
+		setCollabinateValue(PREV_CURSOR, cursor);
+	}
+	
+	@Override
+	public String toString()
+	{
+		if (null == rawItems)
+			return super.toString();
+		
+		StringWriter writer = new StringWriter();
+		try
+		{
+			writeTo(writer);
+		}
+		catch (IOException e)
+		{
+			// a StringWriter does not fail
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+	
+	/**
+	 * Writes the JSON serialization of the collection to the given writer.
+	 * Items that have not been modified are written as they were given,
+	 * without being parsed.
+	 * 
+	 * @param writer The writer to which the collection is written.
+	 * @throws IOException if the writer fails.
+	 */
+	@Override
+	public void writeTo(Writer writer) throws IOException
+	{
+		if (null == rawItems)
+		{
+			super.writeTo(writer);
+			return;
+		}
+		
+		writer.write('{');
+		boolean first = true;
+		for (Map.Entry<String, JsonElement> entry :
+				getJsonObject().entrySet())
+		{
+			if (!first)
+				writer.write(',');
+			first = false;
+			
+			writer.write(new JsonPrimitive(entry.getKey()).toString());
+			writer.write(':');
+			
+			if (ITEMS.equals(entry.getKey()))
+			{
+				writer.write('[');
+				for (int i = 0; i < rawItems.size(); i++)
+				{
+					if (i > 0)
+						writer.write(',');
+					writer.write(rawItems.get(i));
+				}
+				writer.write(']');
+			}
+			else
+			{
+				getCodec().write(entry.getValue(), writer);
+			}
+		}
+		writer.write('}');
+	}
+	
+	@Override
+	void writeTo(JsonGenerator generator) throws IOException
+	{
+		if (null == rawItems)
+		{
+			super.writeTo(generator);
+			return;
+		}
+		
+		generator.writeStartObject();
+		for (Map.Entry<String, JsonElement> entry :
+				getJsonObject().entrySet())
+		{
+			generator.writeFieldName(entry.getKey());
+			
+			if (ITEMS.equals(entry.getKey()))
+			{
+				generator.writeStartArray();
+				for (String item : rawItems)
+				{
+					JacksonCodec.copy(item, generator);
+				}
+				generator.writeEndArray();
+			}
+			else
+			{
+				JacksonCodec.write(entry.getValue(), generator);
+			}
+		}
+		generator.writeEndObject();
+	}
+	
+	@Override
+	JsonObject toJsonTree()
+	{
+		parseItems();
+		return super.toJsonTree();
+	}
+	
+	/**
+	 * Creates a separate object for an element of the items array.
+	 */
+	private static ActivityStreamsObject copyItem(JsonElement element)
+	{
+		if (element.isJsonObject())
+		{
+			return new ActivityStreamsObject(
+					copyObject(element.getAsJsonObject()));
+		}
+		
+		return new ActivityStreamsObject(element.toString());
+	}
+	
+	/**
+	 * Parses the items given as JSON into the items array, so that they can
+	 * be modified.
+	 */
+	private void parseItems()
+	{
+		if (null == rawItems)
+			return;
+		
+		JsonCodec codec = getCodec();
+		JsonArray array = new JsonArray();
+		for (String item : rawItems)
+		{
+			array.add(codec.parse(item));
+		}
+		
+		rawItems = null;
+		getJsonObject().add(ITEMS, array);
 	}
 	
 	protected static final String ITEMS = "items";
 	protected static final String TOTAL_ITEMS = "totalItems";
+	protected static final String NEXT_CURSOR = "nextCursor";
+	protected static final String PREV_CURSOR = "prevCursor";
 }
@@ -1,14 +1,18 @@
 package com.collabinate.server.activitystreams;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.ISODateTimeFormat;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonParser;
 
 /**
  * Represents an Activity Streams object serialization.
@@ -20,9 +24,28 @@ import com.google.gson.JsonParser;
 public class ActivityStreamsObject
 {
 	/**
-	 * The internal representation of the object as JSON.
+	 * The codec used to parse and serialize JSON, Gson unless configured
+	 * otherwise.
 	 */
-	protected JsonObject jsonObject;
+	private static volatile JsonCodec codec = new GsonCodec();
+	
+	/**
+	 * The internal representation of the object as JSON, or null until the
+	 * string the object was created from is parsed.
+	 */
+	private JsonObject jsonObject;
+	
+	/**
+	 * The string the object was created from, held until a field of the
+	 * object is first read or modified.
+	 */
+	private String source;
+	
+	/**
+	 * Whether the source is known to be the serialization of the object, so
+	 * that it can be written out without being parsed.
+	 */
+	private boolean serialized;
 	
 	/**
 	 * Default constructor for an empty object.
@@ -38,39 +61,92 @@ public class ActivityStreamsObject
 	 * string contains a JSON object, it will be used as the base of the object.
 	 * If the string is not a valid JSON object, it will instead be added to the
 	 * content property of a new ActivityStreams JSON object representation.
+	 * The string is not parsed until a field of the object is first read or
+	 * modified.
 	 * 
 	 * @param content
 	 */
 	public ActivityStreamsObject(String content)
 	{
-		if (null != content)
-		{
-			JsonParser parser = new JsonParser();
-			try
-			{
-				JsonElement element = parser.parse(content);
-				if (element.isJsonObject())
-					jsonObject = element.getAsJsonObject();
-			}
-			catch (JsonParseException e) { }
-		}
-		
-		if (null == jsonObject)
+		source = content;
+	}
+	
+	/**
+	 * Constructs a new ActivityStreamsObject over the given JSON object, which
+	 * is used as is rather than copied.
+	 * 
+	 * @param jsonObject The JSON representation of the object.
+	 */
+	ActivityStreamsObject(JsonObject jsonObject)
+	{
+		this.jsonObject = jsonObject;
+		ensureDefaultFields();
+	}
+	
+	/**
+	 * Creates an object from a string produced by serializing another object,
+	 * such as stored content. Until a field of the object is read or modified
+	 * the string is written out as it is, without being parsed.
+	 * 
+	 * @param json The serialization of an ActivityStreamsObject.
+	 * @return An object for the given serialization.
+	 */
+	static ActivityStreamsObject fromSerialization(String json)
+	{
+		if (null == json)
 		{
-			jsonObject = new JsonObject();
-			setContent(content);
+			throw new IllegalArgumentException("json must not be null");
 		}
 		
-		ensureDefaultFields();
+		ActivityStreamsObject object = new ActivityStreamsObject(json);
+		object.serialized = true;
+		return object;
 	}
 	
 	/**
 	 * Provides a means of ensuring that all required fields for the object
-	 * are in place. Called in the constructor. By default nothing is required
-	 * in the base ActivityStreamsObject.
+	 * are in place. Called when the JSON of the object is first created or
+	 * parsed. By default nothing is required in the base
+	 * ActivityStreamsObject.
 	 */
 	protected void ensureDefaultFields() { }
 	
+	/**
+	 * Gets the JSON representation of the object, parsing the string the
+	 * object was created from if that has not yet been done.
+	 * 
+	 * @return The JSON object underlying this object.
+	 */
+	protected JsonObject getJsonObject()
+	{
+		if (null == jsonObject)
+		{
+			String content = source;
+			source = null;
+			
+			if (null != content)
+			{
+				try
+				{
+					JsonElement element = codec.parse(content);
+					if (element.isJsonObject())
+						jsonObject = element.getAsJsonObject();
+				}
+				catch (JsonParseException e) { }
+			}
+			
+			if (null == jsonObject)
+			{
+				jsonObject = new JsonObject();
+				setContent(content);
+			}
+			
+			ensureDefaultFields();
+		}
+		
+		return jsonObject;
+	}
+	
 	/**
 	 * Gets a natural-language description of the object encoded as a single
 	 * JSON String containing HTML markup. Visual elements such as thumbnail
@@ -92,7 +168,7 @@ public class ActivityStreamsObject
 	 */
 	public void setContent(String content)
 	{
-		jsonObject.addProperty(CONTENT, content);
+		getJsonObject().addProperty(CONTENT, content);
 	}
 	
 	/**
@@ -118,7 +194,7 @@ public class ActivityStreamsObject
 	 */
 	public void setDisplayName(String displayName)
 	{
-		jsonObject.addProperty(DISPLAY_NAME, displayName);
+		getJsonObject().addProperty(DISPLAY_NAME, displayName);
 	}
 	
 	/**
@@ -151,7 +227,7 @@ public class ActivityStreamsObject
 			throw new IllegalArgumentException("id must not be null");
 		}
 		
-		jsonObject.addProperty(ID, id);
+		getJsonObject().addProperty(ID, id);
 	}
 	
 	/**
@@ -184,7 +260,7 @@ public class ActivityStreamsObject
 			throw new IllegalArgumentException("objectType must not be null");
 		}
 		
-		jsonObject.addProperty(OBJECT_TYPE, objectType);
+		getJsonObject().addProperty(OBJECT_TYPE, objectType);
 	}
 	
 	/**
@@ -212,7 +288,7 @@ public class ActivityStreamsObject
 	 */
 	public DateTime getPublished()
 	{
-		JsonElement element = jsonObject.get(PUBLISHED);
+		JsonElement element = getJsonObject().get(PUBLISHED);
 		DateTime published = null;
 		try
 		{
@@ -242,7 +318,7 @@ public class ActivityStreamsObject
 			throw new IllegalArgumentException("dateTime must not be null");
 		}
 		
-		jsonObject.addProperty(PUBLISHED, dateTime.toString(
+		getJsonObject().addProperty(PUBLISHED, dateTime.toString(
 				ISODateTimeFormat.dateTime().withZoneUTC()));
 	}
 	
@@ -254,7 +330,7 @@ public class ActivityStreamsObject
 	 */
 	public DateTime getUpdated()
 	{
-		JsonElement element = jsonObject.get(UPDATED);
+		JsonElement element = getJsonObject().get(UPDATED);
 		DateTime updated = null;
 		try
 		{
@@ -279,7 +355,7 @@ public class ActivityStreamsObject
 	 */
 	public void setUpdated(DateTime dateTime)
 	{
-		jsonObject.addProperty(UPDATED, dateTime.toString(
+		getJsonObject().addProperty(UPDATED, dateTime.toString(
 				ISODateTimeFormat.dateTime().withZoneUTC()));
 	}
 	
@@ -292,9 +368,14 @@ public class ActivityStreamsObject
 	 */
 	public ActivityStreamsCollection getReplies()
 	{
-		JsonElement replies = jsonObject.get(REPLIES);
+		JsonElement replies = getJsonObject().get(REPLIES);
 		
-		if (null != replies)
+		if (null != replies && replies.isJsonObject())
+		{
+			return new ActivityStreamsCollection(
+					copyObject(replies.getAsJsonObject()));
+		}
+		else if (null != replies)
 		{
 			return new ActivityStreamsCollection(replies.toString());
 		}
@@ -310,7 +391,7 @@ public class ActivityStreamsObject
 	 */
 	public void setReplies(ActivityStreamsCollection replies)
 	{
-		jsonObject.add(REPLIES, replies.jsonObject);
+		getJsonObject().add(REPLIES, replies.toJsonTree());
 	}
 	
 	/**
@@ -322,9 +403,14 @@ public class ActivityStreamsObject
 	 */
 	public ActivityStreamsCollection getLikes()
 	{
-		JsonElement likes = jsonObject.get(LIKES);
+		JsonElement likes = getJsonObject().get(LIKES);
 		
-		if (null != likes)
+		if (null != likes && likes.isJsonObject())
+		{
+			return new ActivityStreamsCollection(
+					copyObject(likes.getAsJsonObject()));
+		}
+		else if (null != likes)
 		{
 			return new ActivityStreamsCollection(likes.toString());
 		}
@@ -340,13 +426,102 @@ public class ActivityStreamsObject
 	 */
 	public void setLikes(ActivityStreamsCollection likes)
 	{
-		jsonObject.add(LIKES, likes.jsonObject);
+		getJsonObject().add(LIKES, likes.toJsonTree());
 	}
 	
 	@Override
 	public String toString()
 	{
-		return jsonObject.toString();
+		if (serialized && null != source)
+			return source;
+		
+		return codec.serialize(getJsonObject());
+	}
+	
+	/**
+	 * Writes the JSON serialization of the object, as given by toString(), to
+	 * the given writer.
+	 * 
+	 * @param writer The writer to which the object is written.
+	 * @throws IOException if the writer fails.
+	 */
+	public void writeTo(Writer writer) throws IOException
+	{
+		if (serialized && null != source)
+		{
+			writer.write(source);
+			return;
+		}
+		
+		codec.write(getJsonObject(), writer);
+	}
+	
+	/**
+	 * Writes the object to the given generator, such as one for a binary
+	 * format. An object that has not been parsed is copied from its
+	 * serialization without building a tree.
+	 * 
+	 * @param generator The generator to which the object is written.
+	 * @throws IOException if the generator fails.
+	 */
+	void writeTo(JsonGenerator generator) throws IOException
+	{
+		if (serialized && null != source)
+		{
+			JacksonCodec.copy(source, generator);
+			return;
+		}
+		
+		JacksonCodec.write(getJsonObject(), generator);
+	}
+	
+	/**
+	 * Gets the JSON tree of the object, such as for adding the object as a
+	 * property of another.
+	 * 
+	 * @return The JSON object underlying this object.
+	 */
+	JsonObject toJsonTree()
+	{
+		return getJsonObject();
+	}
+	
+	/**
+	 * Copies a JSON object without serializing it. Primitives are immutable,
+	 * so they are shared by the copy.
+	 * 
+	 * @param object The JSON object to copy.
+	 * @return A copy of the given object that can be modified separately.
+	 */
+	static JsonObject copyObject(JsonObject object)
+	{
+		JsonObject copy = new JsonObject();
+		for (Map.Entry<String, JsonElement> entry : object.entrySet())
+		{
+			copy.add(entry.getKey(), copyElement(entry.getValue()));
+		}
+		return copy;
+	}
+	
+	/**
+	 * Copies a JSON element as in copyObject().
+	 */
+	private static JsonElement copyElement(JsonElement element)
+	{
+		if (element.isJsonObject())
+			return copyObject(element.getAsJsonObject());
+		
+		if (element.isJsonArray())
+		{
+			JsonArray copy = new JsonArray();
+			for (JsonElement item : element.getAsJsonArray())
+			{
+				copy.add(copyElement(item));
+			}
+			return copy;
+		}
+		
+		return element;
 	}
 	
 	/**
@@ -357,7 +532,7 @@ public class ActivityStreamsObject
 	 */
 	protected String getStringValue(String key)
 	{
-		return getStringValue(key, jsonObject);
+		return getStringValue(key, getJsonObject());
 	}
 	
 	/**
@@ -396,7 +571,8 @@ public class ActivityStreamsObject
 	 */
 	public String getCollabinateValue(String key)
 	{
-		return getStringValue(key, jsonObject.getAsJsonObject(COLLABINATE));
+		return getStringValue(key,
+				getJsonObject().getAsJsonObject(COLLABINATE));
 	}
 	
 	/**
@@ -407,6 +583,8 @@ public class ActivityStreamsObject
 	 */
 	public void setCollabinateValue(String key, String value)
 	{
+		JsonObject jsonObject = getJsonObject();
+		
 		if (!jsonObject.has(COLLABINATE))
 		{
 			jsonObject.add(COLLABINATE, new JsonObject());
@@ -415,6 +593,33 @@ public class ActivityStreamsObject
 		jsonObject.getAsJsonObject(COLLABINATE).addProperty(key, value);
 	}
 	
+	/**
+	 * Sets the codec used by all activity streams objects to parse and
+	 * serialize JSON. Objects that have already been parsed are unaffected.
+	 * 
+	 * @param jsonCodec The codec to use.
+	 */
+	public static void setCodec(JsonCodec jsonCodec)
+	{
+		if (null == jsonCodec)
+		{
+			throw new IllegalArgumentException("jsonCodec must not be null");
+		}
+		
+		codec = jsonCodec;
+	}
+	
+	/**
+	 * Gets the codec used by all activity streams objects to parse and
+	 * serialize JSON.
+	 * 
+	 * @return The codec in use.
+	 */
+	static JsonCodec getCodec()
+	{
+		return codec;
+	}
+	
 	/**
 	 * Returns a new, randomly generated UUID URN.
 	 * 
@@ -0,0 +1,51 @@
+package com.collabinate.server.activitystreams;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParser;
+
+/**
+ * A JSON codec that uses the Gson parser and writer. Parsing is lenient, as
+ * with JsonParser.
+ * 
+ * @author mafuba
+ * 
+ */
+public class GsonCodec implements JsonCodec
+{
+	@Override
+	public JsonElement parse(String json)
+	{
+		return new JsonParser().parse(json);
+	}
+	
+	@Override
+	public String serialize(JsonElement element)
+	{
+		return element.toString();
+	}
+	
+	@Override
+	public void write(JsonElement element, Writer writer) throws IOException
+	{
+		try
+		{
+			WRITER_GSON.toJson(element, writer);
+		}
+		catch (JsonIOException e)
+		{
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Writes JSON trees as JsonElement.toString() does.
+	 */
+	private static final Gson WRITER_GSON = new GsonBuilder()
+			.disableHtmlEscaping().serializeNulls().create();
+}
@@ -0,0 +1,314 @@
+package com.collabinate.server.activitystreams;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+
+/**
+ * A JSON codec that reads and writes JSON trees with the Jackson streaming
+ * parser and generator. Numbers keep the text they were parsed from, and
+ * text is escaped as the Gson writer escapes it, so both codecs serialize a
+ * tree identically. Parsing accepts the comments, single quotes and
+ * unquoted names that the lenient Gson parser accepts.
+ * 
+ * @author mafuba
+ * 
+ */
+public class JacksonCodec implements JsonCodec
+{
+	/**
+	 * The factory for parsers and generators, which is thread safe.
+	 */
+	private final JsonFactory factory;
+	
+	/**
+	 * Creates the codec.
+	 */
+	public JacksonCodec()
+	{
+		factory = new JsonFactory();
+		factory.enable(JsonParser.Feature.ALLOW_COMMENTS);
+		factory.enable(JsonParser.Feature.ALLOW_SINGLE_QUOTES);
+		factory.enable(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES);
+		factory.enable(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS);
+		factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		factory.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+		factory.setCharacterEscapes(new LineSeparatorEscapes());
+	}
+	
+	@Override
+	public JsonElement parse(String json)
+	{
+		if (null == json)
+		{
+			throw new IllegalArgumentException("json must not be null");
+		}
+		
+		try
+		{
+			JsonParser parser = factory.createParser(json);
+			try
+			{
+				JsonToken token = parser.nextToken();
+				if (null == token)
+					return JsonNull.INSTANCE;
+				
+				JsonElement element = read(parser, token);
+				if (null != parser.nextToken())
+				{
+					throw new JsonSyntaxException(
+							"Did not consume the entire document.");
+				}
+				
+				return element;
+			}
+			finally
+			{
+				parser.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new JsonSyntaxException(e);
+		}
+	}
+	
+	@Override
+	public String serialize(JsonElement element)
+	{
+		StringWriter writer = new StringWriter();
+		try
+		{
+			write(element, writer);
+		}
+		catch (IOException e)
+		{
+			// a StringWriter does not fail
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+	
+	@Override
+	public void write(JsonElement element, Writer writer) throws IOException
+	{
+		JsonGenerator generator = factory.createGenerator(writer);
+		try
+		{
+			write(element, generator);
+		}
+		finally
+		{
+			// the target is not closed, but the buffered output is written
+			generator.close();
+		}
+	}
+	
+	/**
+	 * Reads the value starting at the given token.
+	 */
+	private static JsonElement read(JsonParser parser, JsonToken token)
+			throws IOException
+	{
+		if (JsonToken.START_OBJECT == token)
+		{
+			JsonObject object = new JsonObject();
+			while (JsonToken.FIELD_NAME == parser.nextToken())
+			{
+				String name = parser.getCurrentName();
+				object.add(name, read(parser, parser.nextToken()));
+			}
+			return object;
+		}
+		
+		if (JsonToken.START_ARRAY == token)
+		{
+			JsonArray array = new JsonArray();
+			JsonToken itemToken;
+			while (JsonToken.END_ARRAY != (itemToken = parser.nextToken()))
+			{
+				array.add(read(parser, itemToken));
+			}
+			return array;
+		}
+		
+		if (JsonToken.VALUE_STRING == token)
+			return new JsonPrimitive(parser.getText());
+		
+		// numbers keep their text, as numbers parsed by Gson do
+		if (JsonToken.VALUE_NUMBER_INT == token ||
+			JsonToken.VALUE_NUMBER_FLOAT == token)
+			return new JsonPrimitive(new LazilyParsedNumber(parser.getText()));
+		
+		if (JsonToken.VALUE_TRUE == token || JsonToken.VALUE_FALSE == token)
+			return new JsonPrimitive(JsonToken.VALUE_TRUE == token);
+		
+		if (JsonToken.VALUE_NULL == token)
+			return JsonNull.INSTANCE;
+		
+		throw new JsonSyntaxException("Unexpected token " + token);
+	}
+	
+	/**
+	 * Writes the given element and its children to a generator, which may
+	 * be one for a binary format.
+	 * 
+	 * @param element The JSON element to write.
+	 * @param generator The generator to which the element is written.
+	 * @throws IOException if the generator fails.
+	 */
+	static void write(JsonElement element, JsonGenerator generator)
+			throws IOException
+	{
+		if (element.isJsonObject())
+		{
+			generator.writeStartObject();
+			for (Map.Entry<String, JsonElement> entry :
+					element.getAsJsonObject().entrySet())
+			{
+				generator.writeFieldName(entry.getKey());
+				write(entry.getValue(), generator);
+			}
+			generator.writeEndObject();
+		}
+		else if (element.isJsonArray())
+		{
+			generator.writeStartArray();
+			for (JsonElement item : element.getAsJsonArray())
+			{
+				write(item, generator);
+			}
+			generator.writeEndArray();
+		}
+		else if (element.isJsonNull())
+		{
+			generator.writeNull();
+		}
+		else
+		{
+			JsonPrimitive primitive = element.getAsJsonPrimitive();
+			if (primitive.isString())
+				generator.writeString(primitive.getAsString());
+			else if (primitive.isBoolean())
+				generator.writeBoolean(primitive.getAsBoolean());
+			else
+				writeNumber(primitive.getAsString(), generator);
+		}
+	}
+	
+	/**
+	 * Writes a number from its text. A generator writing text keeps the
+	 * number as it was parsed, while one for a binary format needs its value.
+	 */
+	private static void writeNumber(String text, JsonGenerator generator)
+			throws IOException
+	{
+		if (generator.getOutputTarget() instanceof Writer)
+		{
+			generator.writeNumber(text);
+			return;
+		}
+		
+		if (text.indexOf('.') < 0 && text.indexOf('e') < 0 &&
+				text.indexOf('E') < 0)
+		{
+			try
+			{
+				generator.writeNumber(Long.parseLong(text));
+				return;
+			}
+			catch (NumberFormatException e)
+			{
+				// too large for a long
+			}
+			
+			try
+			{
+				generator.writeNumber(new BigInteger(text));
+				return;
+			}
+			catch (NumberFormatException e)
+			{
+				// not a number in integer form, such as NaN or Infinity
+			}
+		}
+		
+		generator.writeNumber(Double.parseDouble(text));
+	}
+	
+	/**
+	 * Copies JSON text to a generator, which may be one for a binary format,
+	 * without building a tree.
+	 * 
+	 * @param json The JSON text to copy.
+	 * @param generator The generator to which the JSON is copied.
+	 * @throws IOException if the text is not valid JSON or the generator
+	 * fails.
+	 */
+	static void copy(String json, JsonGenerator generator) throws IOException
+	{
+		JsonParser parser = COPY_FACTORY.createParser(json);
+		try
+		{
+			parser.nextToken();
+			generator.copyCurrentStructure(parser);
+		}
+		finally
+		{
+			parser.close();
+		}
+	}
+	
+	/**
+	 * Escapes the line and paragraph separators, which the Gson writer
+	 * escapes because JavaScript does not allow them in strings.
+	 */
+	private static class LineSeparatorEscapes extends CharacterEscapes
+	{
+		private final int[] asciiEscapes = standardAsciiEscapesForJSON();
+		
+		@Override
+		public int[] getEscapeCodesForAscii()
+		{
+			return asciiEscapes;
+		}
+		
+		@Override
+		public SerializableString getEscapeSequence(int ch)
+		{
+			if (0x2028 == ch)
+				return LINE_SEPARATOR;
+			if (0x2029 == ch)
+				return PARAGRAPH_SEPARATOR;
+			return null;
+		}
+		
+		private static final long serialVersionUID = 1L;
+		private static final SerializableString LINE_SEPARATOR =
+				new SerializedString("\\u2028");
+		private static final SerializableString PARAGRAPH_SEPARATOR =
+				new SerializedString("\\u2029");
+	}
+	
+	/**
+	 * The factory for parsers that copy serialized JSON, which is strict.
+	 */
+	private static final JsonFactory COPY_FACTORY = new JsonFactory();
+}
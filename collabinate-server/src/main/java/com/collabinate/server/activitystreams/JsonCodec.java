@@ -0,0 +1,45 @@
+package com.collabinate.server.activitystreams;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+/**
+ * Converts between JSON text and the JSON trees that hold activity streams
+ * objects. The codec used by the activitystreams package is set with
+ * ActivityStreamsObject.setCodec().
+ * 
+ * @author mafuba
+ * 
+ */
+public interface JsonCodec
+{
+	/**
+	 * Parses JSON text into a tree.
+	 * 
+	 * @param json The text to parse.
+	 * @return The parsed JSON element.
+	 * @throws JsonParseException if the text is not valid JSON.
+	 */
+	public JsonElement parse(String json);
+	
+	/**
+	 * Serializes a JSON tree to text.
+	 * 
+	 * @param element The JSON element to serialize.
+	 * @return The compact JSON text of the element.
+	 */
+	public String serialize(JsonElement element);
+	
+	/**
+	 * Writes a JSON tree to the given writer as serialize() would return it,
+	 * without building the text first.
+	 * 
+	 * @param element The JSON element to write.
+	 * @param writer The writer to which the element is written.
+	 * @throws IOException if the writer fails.
+	 */
+	public void write(JsonElement element, Writer writer) throws IOException;
+}
@@ -0,0 +1,110 @@
+package com.collabinate.server.activitystreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Converts activity streams objects to and from Smile, the binary form of
+ * JSON, for clients that negotiate it in place of JSON text. Objects are
+ * written from their JSON without serializing them to text, and items that
+ * have not been parsed are copied from their stored JSON.
+ * 
+ * @author mafuba
+ *
+ */
+public class SmileCodec
+{
+	/**
+	 * The factory for Smile parsers and generators, which is thread safe.
+	 */
+	private final SmileFactory smileFactory;
+	
+	/**
+	 * The factory for the JSON generators used to transcode Smile to text.
+	 */
+	private final JsonFactory jsonFactory;
+	
+	/**
+	 * Creates the codec.
+	 */
+	public SmileCodec()
+	{
+		smileFactory = new SmileFactory();
+		smileFactory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		smileFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		jsonFactory = new JsonFactory();
+	}
+	
+	/**
+	 * Writes an object to the given stream in Smile.
+	 * 
+	 * @param object The object to write.
+	 * @param stream The stream to which the object is written.
+	 * @throws IOException if the stream fails.
+	 */
+	public void write(ActivityStreamsObject object, OutputStream stream)
+			throws IOException
+	{
+		if (null == object)
+		{
+			throw new IllegalArgumentException("object must not be null");
+		}
+		
+		JsonGenerator generator = smileFactory.createGenerator(stream);
+		try
+		{
+			object.writeTo(generator);
+		}
+		finally
+		{
+			// the stream is not closed, but the buffered output is written
+			generator.close();
+		}
+	}
+	
+	/**
+	 * Reads a Smile document as JSON text, from which an object can be
+	 * created as from any posted JSON.
+	 * 
+	 * @param stream The stream containing the Smile document.
+	 * @return The JSON text of the document.
+	 * @throws IOException if the stream fails.
+	 * @throws JsonSyntaxException if the stream does not contain a valid Smile
+	 * document.
+	 */
+	public String toJson(InputStream stream) throws IOException
+	{
+		StringWriter writer = new StringWriter();
+		
+		try
+		{
+			JsonParser parser = smileFactory.createParser(stream);
+			JsonGenerator generator = jsonFactory.createGenerator(writer);
+			try
+			{
+				if (null != parser.nextToken())
+					generator.copyCurrentStructure(parser);
+			}
+			finally
+			{
+				generator.close();
+				parser.close();
+			}
+		}
+		catch (JsonProcessingException e)
+		{
+			throw new JsonSyntaxException(e);
+		}
+		
+		return writer.toString();
+	}
+}
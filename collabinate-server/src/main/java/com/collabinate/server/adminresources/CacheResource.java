@@ -0,0 +1,57 @@
+package com.collabinate.server.adminresources;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+import com.collabinate.server.engine.CachingCollabinateReader;
+import com.collabinate.server.engine.CollabinateReader;
+import com.collabinate.server.engine.GraphEngine;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Restful resource representing the caches of feeds and of objects, when
+ * either is enabled. A GET reports the hit, miss and eviction counts of each.
+ * 
+ * @author mafuba
+ *
+ */
+public class CacheResource extends ServerResource
+{
+	@Get("json")
+	public Representation getCacheStatus()
+	{
+		// extract necessary information from the context
+		CollabinateReader reader = (CollabinateReader)getContext()
+				.getAttributes().get("collabinateReader");
+		
+		JsonParser parser = new JsonParser();
+		JsonObject status = new JsonObject();
+		
+		if (reader instanceof CachingCollabinateReader)
+		{
+			CachingCollabinateReader cache = (CachingCollabinateReader)reader;
+			status.add("objects", parser.parse(cache.getStatus()));
+			reader = cache.getReader();
+		}
+		
+		String feedStatus = reader instanceof GraphEngine ?
+				((GraphEngine)reader).getFeedCacheStatus() : null;
+		if (null != feedStatus)
+			status.add("feeds", parser.parse(feedStatus));
+		
+		if (0 == status.entrySet().size())
+		{
+			// nothing is cached
+			setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+			return null;
+		}
+		
+		return new StringRepresentation(status.toString(),
+				MediaType.APPLICATION_JSON);
+	}
+}
@@ -4,6 +4,7 @@ import org.restlet.resource.Get;
 import org.restlet.resource.Put;
 import org.restlet.resource.ServerResource;
 
+import com.collabinate.server.engine.CachingCollabinateReader;
 import com.collabinate.server.engine.CollabinateAdmin;
 
 /**
@@ -34,6 +35,11 @@ public class DatabaseResource extends ServerResource
 		
 		admin.importDatabase(data);
 		
+		// the cached objects no longer reflect the database
+		Object reader = getContext().getAttributes().get("collabinateReader");
+		if (reader instanceof CachingCollabinateReader)
+			((CachingCollabinateReader)reader).invalidateAll();
+		
 		//TODO: Error handling (non-valid GraphML, etc.)
 	}
 }
@@ -0,0 +1,40 @@
+package com.collabinate.server.adminresources;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+import com.collabinate.server.engine.AsynchronousWriter;
+import com.collabinate.server.engine.CollabinateWriter;
+
+/**
+ * Restful resource representing the queue of writes waiting to be applied
+ * when writes are asynchronous. A GET reports the queue depth and lag.
+ * 
+ * @author mafuba
+ *
+ */
+public class IngestionResource extends ServerResource
+{
+	@Get("json")
+	public Representation getIngestionStatus()
+	{
+		// extract necessary information from the context
+		CollabinateWriter writer = (CollabinateWriter)getContext()
+				.getAttributes().get("collabinateWriter");
+		
+		if (!(writer instanceof AsynchronousWriter))
+		{
+			// writes are not queued
+			setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+			return null;
+		}
+		
+		return new StringRepresentation(
+				((AsynchronousWriter)writer).getStatus(),
+				MediaType.APPLICATION_JSON);
+	}
+}
@@ -0,0 +1,46 @@
+package com.collabinate.server.adminresources;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+
+import com.collabinate.server.engine.CollabinateAdmin;
+
+/**
+ * Restful resource representing the migration of the database to the current
+ * storage format. A POST starts the migration in the background, and a GET
+ * reports its progress.
+ * 
+ * @author mafuba
+ *
+ */
+public class MigrationResource extends ServerResource
+{
+	@Get("json")
+	public Representation getMigrationStatus()
+	{
+		// extract necessary information from the context
+		CollabinateAdmin admin = (CollabinateAdmin)getContext()
+				.getAttributes().get("collabinateAdmin");
+		
+		return new StringRepresentation(admin.getMigrationStatus(),
+				MediaType.APPLICATION_JSON);
+	}
+	
+	@Post
+	public void startMigration()
+	{
+		// extract necessary information from the context
+		CollabinateAdmin admin = (CollabinateAdmin)getContext()
+				.getAttributes().get("collabinateAdmin");
+		
+		if (admin.startMigration())
+			setStatus(Status.SUCCESS_ACCEPTED);
+		else
+			setStatus(Status.CLIENT_ERROR_CONFLICT);
+	}
+}
@@ -6,6 +6,7 @@ import org.restlet.resource.Get;
 import org.restlet.resource.Put;
 import org.restlet.resource.ServerResource;
 
+import com.collabinate.server.engine.CachingCollabinateReader;
 import com.collabinate.server.engine.CollabinateAdmin;
 
 /**
@@ -51,6 +52,7 @@ public class TenantDataResource extends ServerResource
 		}
 		
 		admin.importTenantData(tenantId, data);
+		invalidateCache(tenantId);
 	}
 	
 	@Delete
@@ -69,5 +71,19 @@ public class TenantDataResource extends ServerResource
 		}
 		
 		admin.deleteTenant(tenantId);
+		invalidateCache(tenantId);
+	}
+	
+	/**
+	 * Discards any cached objects of the tenant, which the admin has changed
+	 * without going through the cache.
+	 * 
+	 * @param tenantId The tenant that was changed.
+	 */
+	private void invalidateCache(String tenantId)
+	{
+		Object reader = getContext().getAttributes().get("collabinateReader");
+		if (reader instanceof CachingCollabinateReader)
+			((CachingCollabinateReader)reader).invalidateTenant(tenantId);
 	}
 }
@@ -0,0 +1,566 @@
+package com.collabinate.server.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.google.gson.Gson;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+/**
+ * A CollabinateWriter that queues writes on a ring buffer and returns before
+ * they are applied. Writes are partitioned by tenant and entity, and each
+ * partition has a single consumer thread that applies its writes in order
+ * to another writer, in batches passed to the graph's execute method. This
+ * absorbs bursts of writes without request threads contending on the graph.
+ * 
+ * Following and unfollowing return the dates of the relationships, so they
+ * are applied immediately rather than queued.
+ * 
+ * @author mafuba
+ *
+ */
+public class AsynchronousWriter implements CollabinateWriter
+{
+	/**
+	 * The writer that applies the queued writes.
+	 */
+	private final CollabinateWriter writer;
+	
+	/**
+	 * The graph that commits the queued writes.
+	 */
+	private final CollabinateGraph graph;
+	
+	/**
+	 * The disruptor that runs the partition consumers.
+	 */
+	private final Disruptor<WriteEvent> disruptor;
+	
+	/**
+	 * The ring buffer on which writes are queued.
+	 */
+	private final RingBuffer<WriteEvent> ringBuffer;
+	
+	/**
+	 * The consumer of each partition.
+	 */
+	private final List<PartitionHandler> handlers;
+	
+	private final AtomicLong queuedCount = new AtomicLong();
+	private final AtomicLong appliedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	
+	/**
+	 * Static logger for the writer.
+	 */
+	private static final Logger logger =
+			LoggerFactory.getLogger(AsynchronousWriter.class);
+	
+	/**
+	 * Initializes the writer and starts its consumers.
+	 * 
+	 * @param writer The writer that applies the queued writes.
+	 * @param graph The graph that commits the queued writes.
+	 * @param bufferSize The number of writes that can be queued before
+	 * callers wait. Must be a power of two.
+	 * @param partitions The number of partitions, each of which is applied by
+	 * its own consumer.
+	 */
+	public AsynchronousWriter(CollabinateWriter writer, CollabinateGraph graph,
+			int bufferSize, int partitions)
+	{
+		if (null == writer)
+		{
+			throw new IllegalArgumentException("writer must not be null");
+		}
+		
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1)
+		{
+			throw new IllegalArgumentException(
+					"bufferSize must be a power of two");
+		}
+		
+		if (partitions < 1)
+		{
+			throw new IllegalArgumentException("partitions must be positive");
+		}
+		
+		this.writer = writer;
+		this.graph = graph;
+		
+		disruptor = new Disruptor<WriteEvent>(new EventFactory<WriteEvent>()
+		{
+			@Override
+			public WriteEvent newInstance()
+			{
+				return new WriteEvent();
+			}
+		}, bufferSize, new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+			
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable,
+						"collabinate-writer-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, ProducerType.MULTI, new BlockingWaitStrategy());
+		
+		handlers = new ArrayList<PartitionHandler>(partitions);
+		for (int i = 0; i < partitions; i++)
+			handlers.add(new PartitionHandler(i, partitions));
+		
+		disruptor.handleEventsWith(handlers.toArray(
+				new PartitionHandler[partitions]));
+		ringBuffer = disruptor.start();
+	}
+	
+	@Override
+	public void addActivity(final String tenantId, final String entityId,
+			final Activity activity)
+	{
+		checkIds(tenantId, entityId);
+		
+		if (null == activity)
+		{
+			throw new IllegalArgumentException("activity must not be null");
+		}
+		
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.addActivity(tenantId, entityId, activity);
+			}
+		});
+	}
+	
+	@Override
+	public void addActivities(final String tenantId, final String entityId,
+			final List<Activity> activities)
+	{
+		checkIds(tenantId, entityId);
+		
+		if (null == activities)
+		{
+			throw new IllegalArgumentException("activities must not be null");
+		}
+		
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.addActivities(tenantId, entityId, activities);
+			}
+		});
+	}
+	
+	@Override
+	public void deleteActivity(final String tenantId, final String entityId,
+			final String activityId)
+	{
+		checkIds(tenantId, entityId);
+		
+		if (null == activityId)
+		{
+			throw new IllegalArgumentException("activityId must not be null");
+		}
+		
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.deleteActivity(tenantId, entityId, activityId);
+			}
+		});
+	}
+	
+	@Override
+	public DateTime followEntity(String tenantId, String userId,
+			String entityId, DateTime dateFollowed)
+	{
+		return writer.followEntity(tenantId, userId, entityId, dateFollowed);
+	}
+	
+	@Override
+	public DateTime unfollowEntity(String tenantId, String userId,
+			String entityId)
+	{
+		return writer.unfollowEntity(tenantId, userId, entityId);
+	}
+	
+	@Override
+	public Map<String, DateTime> followEntities(String tenantId,
+			String userId, List<String> entityIds, DateTime dateFollowed)
+	{
+		return writer.followEntities(tenantId, userId, entityIds,
+				dateFollowed);
+	}
+	
+	@Override
+	public Map<String, DateTime> unfollowEntities(String tenantId,
+			String userId, List<String> entityIds)
+	{
+		return writer.unfollowEntities(tenantId, userId, entityIds);
+	}
+	
+	@Override
+	public void addComment(final String tenantId, final String entityId,
+			final String activityId, final String userId,
+			final ActivityStreamsObject comment)
+	{
+		checkIds(tenantId, entityId);
+		
+		if (null == activityId)
+		{
+			throw new IllegalArgumentException("activityId must not be null");
+		}
+		
+		if (null == comment)
+		{
+			throw new IllegalArgumentException("comment must not be null");
+		}
+		
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.addComment(tenantId, entityId, activityId, userId,
+						comment);
+			}
+		});
+	}
+	
+	@Override
+	public void deleteComment(final String tenantId, final String entityId,
+			final String activityId, final String commentId)
+	{
+		checkIds(tenantId, entityId);
+		
+		if (null == activityId)
+		{
+			throw new IllegalArgumentException("activityId must not be null");
+		}
+		
+		if (null == commentId)
+		{
+			throw new IllegalArgumentException("commentId must not be null");
+		}
+		
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.deleteComment(tenantId, entityId, activityId,
+						commentId);
+			}
+		});
+	}
+	
+	@Override
+	public void likeActivity(final String tenantId, final String userId,
+			final String entityId, final String activityId)
+	{
+		checkIds(tenantId, entityId);
+		
+		if (null == userId)
+		{
+			throw new IllegalArgumentException("userId must not be null");
+		}
+		
+		if (null == activityId)
+		{
+			throw new IllegalArgumentException("activityId must not be null");
+		}
+		
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.likeActivity(tenantId, userId, entityId, activityId);
+			}
+		});
+	}
+	
+	@Override
+	public void unlikeActivity(final String tenantId, final String userId,
+			final String entityId, final String activityId)
+	{
+		checkIds(tenantId, entityId);
+		
+		if (null == userId)
+		{
+			throw new IllegalArgumentException("userId must not be null");
+		}
+		
+		if (null == activityId)
+		{
+			throw new IllegalArgumentException("activityId must not be null");
+		}
+		
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.unlikeActivity(tenantId, userId, entityId, activityId);
+			}
+		});
+	}
+	
+	@Override
+	public void deleteEntity(final String tenantId, final String entityId)
+	{
+		checkIds(tenantId, entityId);
+		queue(tenantId, entityId, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writer.deleteEntity(tenantId, entityId);
+			}
+		});
+	}
+	
+	/**
+	 * Gets the number of writes that have been queued but not yet applied.
+	 * 
+	 * @return The depth of the queue.
+	 */
+	public long getQueueDepth()
+	{
+		return ringBuffer.getBufferSize() - ringBuffer.remainingCapacity();
+	}
+	
+	/**
+	 * Gets the time between the queuing and the application of the oldest of
+	 * the most recently applied writes, taking the slowest partition.
+	 * 
+	 * @return The lag in milliseconds.
+	 */
+	public long getLag()
+	{
+		long lag = 0;
+		for (PartitionHandler handler : handlers)
+			lag = Math.max(lag, handler.lag);
+		return lag;
+	}
+	
+	/**
+	 * Provides the state of the queue as JSON.
+	 * 
+	 * @return A JSON object containing the queue depth, lag, and write counts.
+	 */
+	public String getStatus()
+	{
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("bufferSize", ringBuffer.getBufferSize());
+		status.put("partitions", handlers.size());
+		status.put("queueDepth", getQueueDepth());
+		status.put("lag", getLag());
+		status.put("queued", queuedCount.get());
+		status.put("applied", appliedCount.get());
+		status.put("failed", failedCount.get());
+		
+		return new Gson().toJson(status);
+	}
+	
+	/**
+	 * Stops the consumers once every queued write has been applied.
+	 */
+	public void shutdown()
+	{
+		disruptor.shutdown();
+	}
+	
+	/**
+	 * Places a write on the ring buffer, waiting for space if the buffer is
+	 * full.
+	 * 
+	 * @param tenantId The tenant of the write.
+	 * @param entityId The entity of the write, which with the tenant
+	 * determines the partition.
+	 * @param write The write to apply.
+	 */
+	private void queue(String tenantId, String entityId, Runnable write)
+	{
+		int hash = (31 * tenantId.hashCode() + entityId.hashCode()) &
+				Integer.MAX_VALUE;
+		
+		long sequence = ringBuffer.next();
+		try
+		{
+			WriteEvent event = ringBuffer.get(sequence);
+			event.partition = hash % handlers.size();
+			event.write = write;
+			event.queued = System.currentTimeMillis();
+		}
+		finally
+		{
+			ringBuffer.publish(sequence);
+		}
+		queuedCount.incrementAndGet();
+	}
+	
+	private void checkIds(String tenantId, String entityId)
+	{
+		if (null == tenantId)
+		{
+			throw new IllegalArgumentException("tenantId must not be null");
+		}
+		
+		if (null == entityId)
+		{
+			throw new IllegalArgumentException("entityId must not be null");
+		}
+	}
+	
+	/**
+	 * A slot on the ring buffer.
+	 */
+	private static class WriteEvent
+	{
+		private int partition;
+		private Runnable write;
+		private long queued;
+	}
+	
+	/**
+	 * The single consumer of a partition, which gathers the partition's writes
+	 * and applies them in batches.
+	 */
+	private class PartitionHandler implements EventHandler<WriteEvent>
+	{
+		private final int partition;
+		private final int partitions;
+		private final List<Runnable> batch = new ArrayList<Runnable>();
+		private long batchQueued;
+		private volatile long lag;
+		
+		PartitionHandler(int partition, int partitions)
+		{
+			this.partition = partition;
+			this.partitions = partitions;
+		}
+		
+		@Override
+		public void onEvent(WriteEvent event, long sequence,
+				boolean endOfBatch)
+		{
+			if (event.partition % partitions == partition)
+			{
+				// the lag is measured from the oldest write in the batch
+				if (batch.isEmpty())
+					batchQueued = event.queued;
+				batch.add(event.write);
+			}
+			
+			if (!batch.isEmpty() &&
+					(endOfBatch || batch.size() >= MAXIMUM_BATCH_SIZE))
+				applyBatch();
+		}
+		
+		private void applyBatch()
+		{
+			List<Runnable> writes = new ArrayList<Runnable>(batch);
+			batch.clear();
+			
+			while (!writes.isEmpty())
+				writes = applyWrites(writes);
+			
+			lag = System.currentTimeMillis() - batchQueued;
+		}
+		
+		/**
+		 * Applies writes as one unit of work, which stops at the first write
+		 * that fails. Only a group commit makes the writes one transaction;
+		 * otherwise each write commits itself. Where the writes are one
+		 * transaction that the graph rolls back, the writes before the failed
+		 * one are undone with it, so those are returned to be applied again.
+		 * 
+		 * @param writes The writes to apply.
+		 * @return The writes still to be applied.
+		 */
+		private List<Runnable> applyWrites(final List<Runnable> writes)
+		{
+			final AtomicInteger performed = new AtomicInteger();
+			try
+			{
+				graph.execute(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						// the work is performed again if another in its
+						// group commit fails
+						performed.set(0);
+						for (Runnable write : writes)
+						{
+							write.run();
+							performed.incrementAndGet();
+						}
+						return null;
+					}
+				});
+				appliedCount.addAndGet(writes.size());
+				return Collections.emptyList();
+			}
+			catch (RuntimeException e)
+			{
+				int failed = performed.get();
+				if (failed == writes.size())
+				{
+					failedCount.addAndGet(writes.size());
+					logger.error("Queued write batch failed", e);
+					return Collections.emptyList();
+				}
+				
+				failedCount.incrementAndGet();
+				logger.error("Queued write failed", e);
+				
+				List<Runnable> remaining = new ArrayList<Runnable>();
+				if (graph.isGroupCommitEnabled() &&
+						graph.isRollbackSupported())
+					remaining.addAll(writes.subList(0, failed));
+				else
+					appliedCount.addAndGet(failed);
+				remaining.addAll(writes.subList(failed + 1, writes.size()));
+				return remaining;
+			}
+		}
+	}
+	
+	private static final int MAXIMUM_BATCH_SIZE = 256;
+}
@@ -0,0 +1,232 @@
+package com.collabinate.server.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.collabinate.server.Tenant;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A CollabinateAdmin that caches tenants in memory in front of another
+ * admin, so that the key check made for every authenticated request does not
+ * read the data store. Keys are held in a set, so each check takes constant
+ * time regardless of how many keys the tenant has.
+ * 
+ * Tenants that do not exist are cached as well. Changes made through this
+ * admin invalidate the tenants they affect. Changes made by other processes
+ * are only seen once the cached tenant expires, so a time to live should be
+ * given when several servers share a data store.
+ * 
+ * @author mafuba
+ * 
+ */
+public class CachingCollabinateAdmin implements CollabinateAdmin
+{
+	/**
+	 * The admin that is cached.
+	 */
+	private final CollabinateAdmin admin;
+	
+	/**
+	 * The cached tenants, by tenant ID.
+	 */
+	private final Cache<String, CachedTenant> tenants;
+	
+	/**
+	 * Advanced by every invalidation, so that a tenant read before a change
+	 * is never cached after the change invalidates it.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+	
+	/**
+	 * Creates a cache in front of the given admin.
+	 * 
+	 * @param admin The admin to cache.
+	 * @param timeToLive The time in milliseconds after which a cached tenant
+	 * is read again, or zero if cached tenants do not expire.
+	 */
+	public CachingCollabinateAdmin(CollabinateAdmin admin, long timeToLive)
+	{
+		if (null == admin)
+		{
+			throw new IllegalArgumentException("admin must not be null");
+		}
+		
+		if (timeToLive < 0)
+		{
+			throw new IllegalArgumentException(
+					"timeToLive must not be negative");
+		}
+		
+		this.admin = admin;
+		
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+				.maximumSize(MAXIMUM_TENANTS);
+		if (timeToLive > 0)
+			builder.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS);
+		this.tenants = builder.build();
+	}
+	
+	@Override
+	public void putTenant(Tenant tenant)
+	{
+		admin.putTenant(tenant);
+		invalidate(tenant.getId());
+	}
+	
+	@Override
+	public Tenant getTenant(String tenantId)
+	{
+		CachedTenant cached = getCachedTenant(tenantId);
+		if (null == cached.tenantId)
+			return null;
+		
+		// callers may modify the tenant, so each gets a copy
+		Tenant tenant = new Tenant(cached.tenantId, cached.tenantName);
+		for (String key : cached.keys)
+			tenant.addKey(key);
+		return tenant;
+	}
+	
+	@Override
+	public boolean verifyKey(String tenantId, String key)
+	{
+		if (null == tenantId || null == key)
+			return false;
+		
+		return getCachedTenant(tenantId).keySet.contains(key);
+	}
+	
+	@Override
+	public void deleteTenant(String tenantId)
+	{
+		admin.deleteTenant(tenantId);
+		invalidate(tenantId);
+	}
+	
+	@Override
+	public List<Tenant> getAllTenants()
+	{
+		return admin.getAllTenants();
+	}
+	
+	@Override
+	public String exportDatabase()
+	{
+		return admin.exportDatabase();
+	}
+	
+	@Override
+	public void importDatabase(String data)
+	{
+		admin.importDatabase(data);
+		sequence.incrementAndGet();
+		tenants.invalidateAll();
+	}
+	
+	@Override
+	public String exportTenantData(String tenantId)
+	{
+		return admin.exportTenantData(tenantId);
+	}
+	
+	@Override
+	public void importTenantData(String tenantId, String data)
+	{
+		admin.importTenantData(tenantId, data);
+		invalidate(tenantId);
+	}
+	
+	@Override
+	public boolean startMigration()
+	{
+		return admin.startMigration();
+	}
+	
+	@Override
+	public String getMigrationStatus()
+	{
+		return admin.getMigrationStatus();
+	}
+	
+	/**
+	 * Retrieves a tenant from the cache, reading it from the cached admin if
+	 * it is not present.
+	 * 
+	 * @param tenantId The ID of the tenant.
+	 * @return The cached tenant, which has a null ID if the tenant does not
+	 * exist.
+	 */
+	private CachedTenant getCachedTenant(String tenantId)
+	{
+		if (null == tenantId)
+			return NO_TENANT;
+		
+		CachedTenant cached = tenants.getIfPresent(tenantId);
+		if (null != cached)
+			return cached;
+		
+		long start = sequence.get();
+		Tenant tenant = admin.getTenant(tenantId);
+		cached = null == tenant ? NO_TENANT : new CachedTenant(tenant);
+		
+		if (start == sequence.get())
+		{
+			tenants.put(tenantId, cached);
+			
+			// an invalidation may have been missed between the check and put
+			if (start != sequence.get())
+				tenants.invalidate(tenantId);
+		}
+		
+		return cached;
+	}
+	
+	private void invalidate(String tenantId)
+	{
+		sequence.incrementAndGet();
+		if (null != tenantId)
+			tenants.invalidate(tenantId);
+	}
+	
+	/**
+	 * An immutable copy of a tenant, with its keys in a set.
+	 */
+	private static class CachedTenant
+	{
+		private final String tenantId;
+		private final String tenantName;
+		private final List<String> keys;
+		private final Set<String> keySet;
+		
+		CachedTenant(Tenant tenant)
+		{
+			this.tenantId = tenant.getId();
+			this.tenantName = tenant.getName();
+			this.keys = Collections.unmodifiableList(
+					new ArrayList<String>(tenant.getKeys()));
+			this.keySet = Collections.unmodifiableSet(
+					new HashSet<String>(tenant.getKeys()));
+		}
+		
+		/**
+		 * Creates the entry for a tenant that does not exist.
+		 */
+		CachedTenant()
+		{
+			this.tenantId = null;
+			this.tenantName = null;
+			this.keys = Collections.emptyList();
+			this.keySet = Collections.emptySet();
+		}
+	}
+	
+	private static final CachedTenant NO_TENANT = new CachedTenant();
+	private static final long MAXIMUM_TENANTS = 10000;
+}
@@ -0,0 +1,711 @@
+package com.collabinate.server.engine;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.joda.time.DateTime;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsCollection;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.gson.Gson;
+
+/**
+ * A reader and writer that caches the activities, comments and entities read
+ * through another reader, and invalidates them as writes are made through
+ * another writer. Cached objects are held as JSON and weighed by its size,
+ * and each read returns a fresh object that callers may modify. Collections
+ * are passed through uncached.
+ * 
+ * Each write is made as a unit of work of the graph, and its invalidation
+ * runs once that work has been committed, so that a read between the write
+ * and its commit cannot cache the state before the write. Invalidating an
+ * object advances a stamp striped by its key, and an object is only cached
+ * if its stamp has not moved while it was read.
+ * 
+ * The counts of an entity include its feed count, which changes with the
+ * streams of every entity it follows, so rather than being invalidated by
+ * each of those writes a cached entity is checked against the version of
+ * the entity, which reading covers those streams in one vertex read. The
+ * comments of an activity are keyed under a generation of the activity,
+ * which deleting the activity advances.
+ * 
+ * @author mafuba
+ * 
+ */
+public class CachingCollabinateReader
+	implements CollabinateReader, CollabinateWriter
+{
+	/**
+	 * The reader through which objects are read on a miss.
+	 */
+	private final CollabinateReader reader;
+	
+	/**
+	 * The writer through which writes are made.
+	 */
+	private final CollabinateWriter writer;
+	
+	/**
+	 * The graph that commits the writes.
+	 */
+	private final CollabinateGraph graph;
+	
+	/**
+	 * The cached objects.
+	 */
+	private final Cache<List<Object>, CachedObject> cache;
+	
+	/**
+	 * The generations of each tenant, by tenant ID. Advancing a generation
+	 * changes the keys of every object of the tenant, so that the objects
+	 * cached under the old keys are no longer found and are eventually
+	 * evicted.
+	 */
+	private final Map<String, AtomicLong> generations =
+			new ConcurrentHashMap<String, AtomicLong>();
+	
+	/**
+	 * The generations of the comments of each activity, striped by activity.
+	 */
+	private final AtomicLongArray commentGenerations =
+			new AtomicLongArray(STRIPES);
+	
+	/**
+	 * Advanced whenever an object is invalidated, striped by key, so that an
+	 * object read before an invalidation is not cached after it.
+	 */
+	private final AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+	
+	/**
+	 * The approximate maximum size of the cache in bytes.
+	 */
+	private final long capacity;
+	
+	/**
+	 * Initializes the reader and writer.
+	 * 
+	 * @param reader The reader through which objects are read on a miss.
+	 * @param writer The writer through which writes are made.
+	 * @param graph The graph that commits the writes.
+	 * @param capacity The approximate maximum size of the cache in bytes.
+	 */
+	public CachingCollabinateReader(CollabinateReader reader,
+			CollabinateWriter writer, CollabinateGraph graph, long capacity)
+	{
+		if (null == reader)
+		{
+			throw new IllegalArgumentException("reader must not be null");
+		}
+		
+		if (null == writer)
+		{
+			throw new IllegalArgumentException("writer must not be null");
+		}
+		
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		
+		this.reader = reader;
+		this.writer = writer;
+		this.graph = graph;
+		this.capacity = capacity;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(capacity)
+				.weigher(new Weigher<List<Object>, CachedObject>()
+				{
+					@Override
+					public int weigh(List<Object> key, CachedObject object)
+					{
+						// strings take two bytes per character, plus some
+						// overhead for the entry and its key
+						return ENTRY_OVERHEAD + 2 * object.json.length();
+					}
+				})
+				.recordStats()
+				.build();
+	}
+	
+	/**
+	 * Retrieves the reader through which objects are read on a miss.
+	 * 
+	 * @return The underlying reader.
+	 */
+	public CollabinateReader getReader()
+	{
+		return reader;
+	}
+	
+	@Override
+	public Activity getActivity(String tenantId, String entityId,
+			String activityId)
+	{
+		List<Object> key = getActivityKey(tenantId, entityId, activityId);
+		CachedObject cached = cache.getIfPresent(key);
+		if (null != cached)
+			return new Activity(cached.json);
+		
+		long start = getStamp(key);
+		Activity activity = reader.getActivity(tenantId, entityId, activityId);
+		if (null != activity)
+			store(key, activity.toString(), 0, start);
+		
+		return activity;
+	}
+	
+	@Override
+	public ActivityStreamsObject getComment(String tenantId, String entityId,
+			String activityId, String commentId)
+	{
+		List<Object> key =
+				getCommentKey(tenantId, entityId, activityId, commentId);
+		CachedObject cached = cache.getIfPresent(key);
+		if (null != cached)
+			return new ActivityStreamsObject(cached.json);
+		
+		long start = getStamp(key);
+		ActivityStreamsObject comment =
+				reader.getComment(tenantId, entityId, activityId, commentId);
+		if (null != comment)
+			store(key, comment.toString(), 0, start);
+		
+		return comment;
+	}
+	
+	@Override
+	public ActivityStreamsObject getEntity(String tenantId, String entityId)
+	{
+		List<Object> key = getEntityKey(tenantId, entityId);
+		
+		// read before the entity, so that a change made while it is read
+		// leaves the cached entity behind the version
+		long version = reader.getEntityVersion(tenantId, entityId);
+		CachedObject cached = cache.getIfPresent(key);
+		if (null != cached && version == cached.version)
+			return new ActivityStreamsObject(cached.json);
+		
+		long start = getStamp(key);
+		ActivityStreamsObject entity = reader.getEntity(tenantId, entityId);
+		if (null != entity)
+			store(key, entity.toString(), version, start);
+		
+		return entity;
+	}
+	
+	@Override
+	public ActivityStreamsCollection getStream(String tenantId,
+			String entityId, int startIndex, int activitiesToReturn)
+	{
+		return reader.getStream(tenantId, entityId, startIndex,
+				activitiesToReturn);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getStream(String tenantId,
+			String entityId, PageCursor cursor, int activitiesToReturn)
+	{
+		return reader.getStream(tenantId, entityId, cursor,
+				activitiesToReturn);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getFeed(String tenantId, String userId,
+			int startIndex, int activitiesToReturn)
+	{
+		return reader.getFeed(tenantId, userId, startIndex,
+				activitiesToReturn);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getFeed(String tenantId, String userId,
+			PageCursor cursor, int activitiesToReturn)
+	{
+		return reader.getFeed(tenantId, userId, cursor, activitiesToReturn);
+	}
+	
+	@Override
+	public DateTime getDateTimeUserFollowedEntity(String tenantId,
+			String userId, String entityId)
+	{
+		return reader.getDateTimeUserFollowedEntity(tenantId, userId,
+				entityId);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getFollowing(String tenantId,
+			String userId, int startIndex, int entitiesToReturn)
+	{
+		return reader.getFollowing(tenantId, userId, startIndex,
+				entitiesToReturn);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getFollowers(String tenantId,
+			String entityId, int startIndex, int followersToReturn)
+	{
+		return reader.getFollowers(tenantId, entityId, startIndex,
+				followersToReturn);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getComments(String tenantId,
+			String entityId, String activityId, int startIndex,
+			int commentsToReturn)
+	{
+		return reader.getComments(tenantId, entityId, activityId, startIndex,
+				commentsToReturn);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getComments(String tenantId,
+			String entityId, String activityId, PageCursor cursor,
+			int commentsToReturn)
+	{
+		return reader.getComments(tenantId, entityId, activityId, cursor,
+				commentsToReturn);
+	}
+	
+	@Override
+	public DateTime userLikesActivity(String tenantId, String userId,
+			String entityId, String activityId)
+	{
+		return reader.userLikesActivity(tenantId, userId, entityId,
+				activityId);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getLikes(String tenantId,
+			String entityId, String activityId, int startIndex,
+			int likesToReturn)
+	{
+		return reader.getLikes(tenantId, entityId, activityId, startIndex,
+				likesToReturn);
+	}
+	
+	@Override
+	public ActivityStreamsCollection getLikes(String tenantId,
+			String entityId, String activityId, PageCursor cursor,
+			int likesToReturn)
+	{
+		return reader.getLikes(tenantId, entityId, activityId, cursor,
+				likesToReturn);
+	}
+	
+	@Override
+	public void enrichActivities(String tenantId, String entityId,
+			List<ActivityStreamsObject> activities, int commentsToReturn,
+			int likesToReturn, String userId)
+	{
+		reader.enrichActivities(tenantId, entityId, activities,
+				commentsToReturn, likesToReturn, userId);
+	}
+	
+	@Override
+	public long getStreamVersion(String tenantId, String entityId)
+	{
+		return reader.getStreamVersion(tenantId, entityId);
+	}
+	
+	@Override
+	public long getFeedVersion(String tenantId, String userId)
+	{
+		return reader.getFeedVersion(tenantId, userId);
+	}
+	
+	@Override
+	public long getActivityVersion(String tenantId, String entityId,
+			String activityId)
+	{
+		return reader.getActivityVersion(tenantId, entityId, activityId);
+	}
+	
+	@Override
+	public long getEntityVersion(String tenantId, String entityId)
+	{
+		return reader.getEntityVersion(tenantId, entityId);
+	}
+	
+	@Override
+	public void addActivity(final String tenantId, final String entityId,
+			final Activity activity)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				// cached entities are checked against their versions, which
+				// cover stream and feed counts
+				writer.addActivity(tenantId, entityId, activity);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void addActivities(final String tenantId, final String entityId,
+			final List<Activity> activities)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.addActivities(tenantId, entityId, activities);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void deleteActivity(final String tenantId, final String entityId,
+			final String activityId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.deleteActivity(tenantId, entityId, activityId);
+				graph.afterCommit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						invalidate(getActivityKey(tenantId, entityId,
+								activityId));
+						
+						// the comments of the activity were deleted with it
+						commentGenerations.incrementAndGet(getActivityStripe(
+								tenantId, entityId, activityId));
+					}
+				});
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public DateTime followEntity(final String tenantId, final String userId,
+			final String entityId, final DateTime dateFollowed)
+	{
+		return graph.execute(new Callable<DateTime>()
+		{
+			@Override
+			public DateTime call()
+			{
+				DateTime followed = writer.followEntity(tenantId, userId,
+						entityId, dateFollowed);
+				invalidateEntitiesAfterCommit(tenantId, userId, entityId);
+				return followed;
+			}
+		});
+	}
+	
+	@Override
+	public DateTime unfollowEntity(final String tenantId, final String userId,
+			final String entityId)
+	{
+		return graph.execute(new Callable<DateTime>()
+		{
+			@Override
+			public DateTime call()
+			{
+				DateTime followed =
+						writer.unfollowEntity(tenantId, userId, entityId);
+				invalidateEntitiesAfterCommit(tenantId, userId, entityId);
+				return followed;
+			}
+		});
+	}
+	
+	@Override
+	public Map<String, DateTime> followEntities(final String tenantId,
+			final String userId, final List<String> entityIds,
+			final DateTime dateFollowed)
+	{
+		return graph.execute(new Callable<Map<String, DateTime>>()
+		{
+			@Override
+			public Map<String, DateTime> call()
+			{
+				Map<String, DateTime> followed = writer.followEntities(
+						tenantId, userId, entityIds, dateFollowed);
+				invalidateEntitiesAfterCommit(tenantId, userId);
+				invalidateEntitiesAfterCommit(tenantId,
+						entityIds.toArray(new String[entityIds.size()]));
+				return followed;
+			}
+		});
+	}
+	
+	@Override
+	public Map<String, DateTime> unfollowEntities(final String tenantId,
+			final String userId, final List<String> entityIds)
+	{
+		return graph.execute(new Callable<Map<String, DateTime>>()
+		{
+			@Override
+			public Map<String, DateTime> call()
+			{
+				Map<String, DateTime> followed =
+						writer.unfollowEntities(tenantId, userId, entityIds);
+				invalidateEntitiesAfterCommit(tenantId, userId);
+				invalidateEntitiesAfterCommit(tenantId,
+						entityIds.toArray(new String[entityIds.size()]));
+				return followed;
+			}
+		});
+	}
+	
+	@Override
+	public void addComment(String tenantId, String entityId, String activityId,
+			String userId, ActivityStreamsObject comment)
+	{
+		// a new comment has not been cached, and the activity is unchanged
+		writer.addComment(tenantId, entityId, activityId, userId, comment);
+	}
+	
+	@Override
+	public void deleteComment(final String tenantId, final String entityId,
+			final String activityId, final String commentId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.deleteComment(tenantId, entityId, activityId,
+						commentId);
+				graph.afterCommit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						invalidate(getCommentKey(tenantId, entityId,
+								activityId, commentId));
+					}
+				});
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void likeActivity(String tenantId, String userId, String entityId,
+			String activityId)
+	{
+		// likes are not part of the cached activity
+		writer.likeActivity(tenantId, userId, entityId, activityId);
+	}
+	
+	@Override
+	public void unlikeActivity(String tenantId, String userId, String entityId,
+			String activityId)
+	{
+		// likes are not part of the cached activity
+		writer.unlikeActivity(tenantId, userId, entityId, activityId);
+	}
+	
+	@Override
+	public void deleteEntity(final String tenantId, final String entityId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.deleteEntity(tenantId, entityId);
+				graph.afterCommit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						invalidateTenant(tenantId);
+					}
+				});
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Discards every cached object of a tenant, for changes made other than
+	 * through this writer, such as deleting or importing the tenant.
+	 * 
+	 * @param tenantId The tenant whose objects are discarded.
+	 */
+	public void invalidateTenant(String tenantId)
+	{
+		getGeneration(tenantId).incrementAndGet();
+	}
+	
+	/**
+	 * Discards every cached object, for changes made other than through this
+	 * writer, such as importing a database.
+	 */
+	public void invalidateAll()
+	{
+		for (int i = 0; i < STRIPES; i++)
+			stamps.incrementAndGet(i);
+		cache.invalidateAll();
+	}
+	
+	/**
+	 * Reports the metrics of the cache as JSON.
+	 * 
+	 * @return A JSON object with the hit, miss and eviction counts.
+	 */
+	public String getStatus()
+	{
+		CacheStats stats = cache.stats();
+		
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("capacity", capacity);
+		status.put("objects", cache.size());
+		status.put("hits", stats.hitCount());
+		status.put("misses", stats.missCount());
+		status.put("hitRate", stats.hitRate());
+		status.put("evictions", stats.evictionCount());
+		
+		return new Gson().toJson(status);
+	}
+	
+	/**
+	 * Caches an object, unless an invalidation may have been missed since
+	 * it was read.
+	 */
+	private void store(List<Object> key, String json, long version,
+			long start)
+	{
+		if (start != getStamp(key))
+			return;
+		
+		cache.put(key, new CachedObject(json, version));
+		
+		// an invalidation may have been missed between the check and the put
+		if (start != getStamp(key))
+			cache.invalidate(key);
+	}
+	
+	/**
+	 * Discards a cached object, and keeps any read of it in progress from
+	 * being cached.
+	 */
+	private void invalidate(List<Object> key)
+	{
+		stamps.incrementAndGet(getStripe(key.hashCode()));
+		cache.invalidate(key);
+	}
+	
+	/**
+	 * Invalidates the given entities of a tenant once the current write is
+	 * committed. Their versions already cover the change, but their counts
+	 * may be adjusted after the versions are committed.
+	 */
+	private void invalidateEntitiesAfterCommit(final String tenantId,
+			final String... entityIds)
+	{
+		graph.afterCommit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (String entityId : entityIds)
+					invalidate(getEntityKey(tenantId, entityId));
+			}
+		});
+	}
+	
+	private long getStamp(List<Object> key)
+	{
+		return stamps.get(getStripe(key.hashCode()));
+	}
+	
+	private AtomicLong getGeneration(String tenantId)
+	{
+		String key = null == tenantId ? "" : tenantId;
+		AtomicLong generation = generations.get(key);
+		if (null == generation)
+		{
+			generations.putIfAbsent(key, new AtomicLong());
+			generation = generations.get(key);
+		}
+		return generation;
+	}
+	
+	private int getActivityStripe(String tenantId, String entityId,
+			String activityId)
+	{
+		return getStripe(Arrays.asList(tenantId, entityId, activityId)
+				.hashCode());
+	}
+	
+	private List<Object> getActivityKey(String tenantId, String entityId,
+			String activityId)
+	{
+		return Arrays.<Object>asList(STRING_ACTIVITY,
+				getGeneration(tenantId).get(), tenantId, entityId,
+				activityId);
+	}
+	
+	private List<Object> getCommentKey(String tenantId, String entityId,
+			String activityId, String commentId)
+	{
+		return Arrays.<Object>asList(STRING_COMMENT,
+				getGeneration(tenantId).get(),
+				commentGenerations.get(getActivityStripe(
+						tenantId, entityId, activityId)),
+				tenantId, entityId, activityId, commentId);
+	}
+	
+	private List<Object> getEntityKey(String tenantId, String entityId)
+	{
+		return Arrays.<Object>asList(STRING_ENTITY,
+				getGeneration(tenantId).get(), tenantId, entityId);
+	}
+	
+	private static int getStripe(int hash)
+	{
+		return (hash & Integer.MAX_VALUE) % STRIPES;
+	}
+	
+	/**
+	 * A cached object as JSON, with the version it was read at if it is an
+	 * entity.
+	 */
+	private static class CachedObject
+	{
+		private final String json;
+		private final long version;
+		
+		CachedObject(String json, long version)
+		{
+			this.json = json;
+			this.version = version;
+		}
+	}
+	
+	private static final String STRING_ACTIVITY = "Activity";
+	private static final String STRING_COMMENT = "Comment";
+	private static final String STRING_ENTITY = "Entity";
+	private static final int ENTRY_OVERHEAD = 256;
+	private static final int STRIPES = 1024;
+}
@@ -28,6 +28,15 @@ public interface CollabinateAdmin
 	 */
 	public Tenant getTenant(String tenantId);
 	
+	/**
+	 * Verifies that the tenant with the given ID has the given API key.
+	 * 
+	 * @param tenantId the ID of the tenant.
+	 * @param key the key to verify.
+	 * @return true if the tenant exists and has the key, otherwise false.
+	 */
+	public boolean verifyKey(String tenantId, String key);
+	
 	/**
 	 * Removes all data for the given tenant. Use with caution!
 	 * 
@@ -81,4 +90,21 @@ public interface CollabinateAdmin
 	 * @param data the data for the tenant
 	 */
 	public void importTenantData(String tenantId, String data);
+	
+	/**
+	 * Starts converting the data store to the current storage format in the
+	 * background. Data is converted in batches, so the service remains
+	 * available while the migration runs.
+	 * 
+	 * @return true if the migration was started, false if a migration is
+	 * already running.
+	 */
+	public boolean startMigration();
+	
+	/**
+	 * Gets the state and progress of the most recent data store migration.
+	 * 
+	 * @return A JSON string describing the migration.
+	 */
+	public String getMigrationStatus();
 }
@@ -6,7 +6,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
@@ -51,6 +62,49 @@ public class CollabinateGraph implements KeyIndexableGraph
 	 */
 	private boolean supportsTransactions = false;
 	
+	/**
+	 * The longest time in milliseconds that a group commit waits for further
+	 * work to join it.
+	 */
+	private long groupCommitWindow;
+	
+	/**
+	 * The largest number of units of work in a group commit.
+	 */
+	private int groupCommitSize;
+	
+	/**
+	 * The work waiting to join a group commit.
+	 */
+	private final BlockingQueue<GroupCommitWork<?>> groupCommitQueue =
+			new LinkedBlockingQueue<GroupCommitWork<?>>();
+	
+	/**
+	 * The thread that performs group commits, or null if group commit is not
+	 * enabled.
+	 */
+	private volatile Thread groupCommitThread;
+	
+	/**
+	 * The actions waiting for the changes made so far by each thread to be
+	 * committed. On the group commit thread these are the actions of the
+	 * work being performed.
+	 */
+	private final ThreadLocal<List<Runnable>> uncommittedActions =
+			new ThreadLocal<List<Runnable>>()
+	{
+		@Override
+		protected List<Runnable> initialValue()
+		{
+			return new ArrayList<Runnable>();
+		}
+	};
+	
+	/**
+	 * The numeric counters stored in the graph.
+	 */
+	private final GraphCounters counters = new GraphCounters(this);
+	
 	/**
 	 * Creates the internally used graph while maintaining a reference to the
 	 * base graph.
@@ -89,15 +143,429 @@ public class CollabinateGraph implements KeyIndexableGraph
 		this.allowCommits = allowCommits;
 	}
 	
+	/**
+	 * Enables group commit, where work passed to execute by concurrent
+	 * threads is performed in a single transaction and made durable by a
+	 * single commit. Transactions are bound to the thread that opened them, so
+	 * the work is performed by a dedicated group commit thread.
+	 * 
+	 * @param window The longest time in milliseconds that a group commit waits
+	 * for further work to join it.
+	 * @param size The largest number of units of work in a group commit.
+	 */
+	public synchronized void enableGroupCommit(long window, int size)
+	{
+		if (window < 0)
+		{
+			throw new IllegalArgumentException("window must not be negative");
+		}
+		if (size < 1)
+		{
+			throw new IllegalArgumentException("size must be positive");
+		}
+		if (null != groupCommitThread)
+		{
+			throw new IllegalStateException("Group commit already enabled");
+		}
+		
+		groupCommitWindow = window;
+		groupCommitSize = size;
+		
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runGroupCommits();
+			}
+		}, "collabinate-group-commit");
+		thread.setDaemon(true);
+		groupCommitThread = thread;
+		thread.start();
+	}
+	
+	/**
+	 * Defers adjustments to the numeric counters stored in the graph, such as
+	 * follower and like counts, holding them in memory and adding them to the
+	 * graph periodically. Pending adjustments are flushed on shutdown.
+	 * 
+	 * @param flushInterval The time in milliseconds between flushes.
+	 */
+	public void enableDeferredCounters(long flushInterval)
+	{
+		counters.start(flushInterval);
+	}
+	
+	/**
+	 * Provides the numeric counters stored in the graph.
+	 * 
+	 * @return The counters.
+	 */
+	GraphCounters getCounters()
+	{
+		return counters;
+	}
+	
+	/**
+	 * Determines whether work that fails in execute is rolled back, rather
+	 * than keeping the changes it made before failing.
+	 * 
+	 * @return true if failed work is rolled back.
+	 */
+	boolean isRollbackSupported()
+	{
+		return allowCommits && supportsTransactions;
+	}
+	
+	/**
+	 * Determines whether group commit is enabled.
+	 * 
+	 * @return true if work passed to execute is group committed.
+	 */
+	public boolean isGroupCommitEnabled()
+	{
+		return null != groupCommitThread;
+	}
+	
+	/**
+	 * Performs a unit of work that writes to the graph and commits it. When
+	 * group commit is enabled the work joins the next group commit, otherwise
+	 * it is performed and committed on the calling thread. Either way, this
+	 * does not return until the work has been committed, and work that fails
+	 * is rolled back.
+	 * 
+	 * @param work The work to perform. Any commit it makes is deferred to the
+	 * group commit.
+	 * @return The result of the work.
+	 */
+	public <T> T execute(Callable<T> work)
+	{
+		if (null == work)
+		{
+			throw new IllegalArgumentException("work must not be null");
+		}
+		
+		Thread thread = groupCommitThread;
+		if (Thread.currentThread() == thread)
+			return call(work);
+		
+		if (null == thread)
+		{
+			// failed work is rolled back, so that its changes are not
+			// committed by the next work on this thread
+			try
+			{
+				T result = call(work);
+				commit();
+				return result;
+			}
+			catch (RuntimeException e)
+			{
+				uncommittedActions.get().clear();
+				rollbackTransaction();
+				throw e;
+			}
+		}
+		
+		GroupCommitWork<T> groupWork = new GroupCommitWork<T>(work);
+		groupCommitQueue.add(groupWork);
+		return groupWork.getResult();
+	}
+	
 	/**
 	 * Causes the graph database to commit the current transaction, if allow
-	 * commits is true.
+	 * commits is true, and then runs the actions waiting for it. Work
+	 * performed by a group commit is committed when the group commit
+	 * completes instead.
 	 */
 	public void commit()
 	{
-		if (allowCommits && supportsTransactions)
+		if (allowCommits && supportsTransactions && !isGroupCommitThread())
+		{
+			List<Runnable> actions = takeUncommittedActions();
+			((TransactionalGraph)graph).commit();
+			runActions(actions);
+		}
+	}
+	
+	/**
+	 * Ends the current read transaction by rolling it back, if allow commits
+	 * is true. A transaction that only read has nothing to commit, so this
+	 * avoids the cost of a commit for reads. Reads made within a group commit
+	 * leave the group's transaction open. Actions waiting for changes that
+	 * are rolled back are dropped.
+	 */
+	public void endRead()
+	{
+		if (allowCommits && supportsTransactions && !isGroupCommitThread())
+		{
+			uncommittedActions.get().clear();
+			((TransactionalGraph)graph).rollback();
+		}
+	}
+	
+	/**
+	 * Runs an action once the changes made so far by the current thread have
+	 * been committed, such as invalidating cached reads of those changes or
+	 * publishing changes held outside the graph. The action is dropped if
+	 * the changes are rolled back instead. Changes made within a group commit
+	 * are committed with the rest of the group, so the action waits for the
+	 * group, and runs only if the work that made it is committed. Without
+	 * transactions, changes are visible as they are made, so the action runs
+	 * at once.
+	 * 
+	 * @param action The action to run.
+	 */
+	public void afterCommit(Runnable action)
+	{
+		if (null == action)
+		{
+			throw new IllegalArgumentException("action must not be null");
+		}
+		
+		if (isGroupCommitThread() || (allowCommits && supportsTransactions))
+			uncommittedActions.get().add(action);
+		else
+			action.run();
+	}
+	
+	/**
+	 * Removes and returns the actions waiting for the changes made so far by
+	 * the current thread.
+	 */
+	private List<Runnable> takeUncommittedActions()
+	{
+		List<Runnable> actions = uncommittedActions.get();
+		if (actions.isEmpty())
+			return Collections.emptyList();
+		
+		List<Runnable> taken = new ArrayList<Runnable>(actions);
+		actions.clear();
+		return taken;
+	}
+	
+	/**
+	 * Runs actions after the changes they wait for have been committed. A
+	 * failed action is logged so that it does not prevent the others.
+	 */
+	private static void runActions(List<Runnable> actions)
+	{
+		for (Runnable action : actions)
+		{
+			try
+			{
+				action.run();
+			}
+			catch (RuntimeException e)
+			{
+				logger.error("Action after commit failed", e);
+			}
+		}
+	}
+	
+	private boolean isGroupCommitThread()
+	{
+		return null != groupCommitThread &&
+				Thread.currentThread() == groupCommitThread;
+	}
+	
+	/**
+	 * Gathers waiting work into groups and commits each group, until the
+	 * graph is shut down.
+	 */
+	private void runGroupCommits()
+	{
+		List<GroupCommitWork<?>> group = new ArrayList<GroupCommitWork<?>>();
+		boolean stopping = false;
+		
+		while (!stopping)
+		{
+			try
+			{
+				group.add(groupCommitQueue.take());
+				long deadline = System.nanoTime() +
+						TimeUnit.MILLISECONDS.toNanos(groupCommitWindow);
+				while (group.size() < groupCommitSize)
+				{
+					long remaining = deadline - System.nanoTime();
+					GroupCommitWork<?> next = remaining > 0 ?
+							groupCommitQueue.poll(remaining,
+									TimeUnit.NANOSECONDS) :
+							groupCommitQueue.poll();
+					if (null == next)
+						break;
+					group.add(next);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				stopping = true;
+			}
+			
+			// the end of the queue is marked by work without a callable
+			List<GroupCommitWork<?>> work =
+					new ArrayList<GroupCommitWork<?>>(group.size());
+			for (GroupCommitWork<?> item : group)
+			{
+				if (item.isEnd())
+					stopping = true;
+				else
+					work.add(item);
+			}
+			
+			commitGroup(work);
+			group.clear();
+		}
+	}
+	
+	/**
+	 * Performs all of the given work in one transaction and commits it. If
+	 * any of the work fails and the transaction can be rolled back, the work
+	 * that succeeded is performed again in a transaction of its own so that
+	 * the failure does not affect it. Work that failed is not performed
+	 * again. Each unit of work keeps the actions it registered through
+	 * afterCommit, and they run only once that work has been committed, so
+	 * changes held outside the graph are not repeated by the second attempt.
+	 * 
+	 * @param group The work to commit together.
+	 */
+	private void commitGroup(List<GroupCommitWork<?>> group)
+	{
+		if (group.isEmpty())
+			return;
+		
+		boolean canRollback = isRollbackSupported();
+		boolean failed = false;
+		
+		for (GroupCommitWork<?> work : group)
+		{
+			failed |= !perform(work);
+		}
+		
+		if (!failed)
+		{
+			try
+			{
+				commitTransaction();
+			}
+			catch (RuntimeException e)
+			{
+				failed = true;
+			}
+		}
+		
+		if (failed && canRollback)
 		{
+			// the rollback undid the work, so its actions are dropped
+			rollbackTransaction();
+			for (GroupCommitWork<?> work : group)
+			{
+				if (work.isFailed())
+					continue;
+				
+				if (perform(work))
+				{
+					try
+					{
+						commitTransaction();
+						runActions(work.takeActions());
+					}
+					catch (RuntimeException e)
+					{
+						work.fail(e);
+						rollbackTransaction();
+					}
+				}
+				else
+				{
+					rollbackTransaction();
+				}
+			}
+		}
+		else
+		{
+			// without rollback, the changes of failed work are kept too
+			for (GroupCommitWork<?> work : group)
+				runActions(work.takeActions());
+		}
+		
+		for (GroupCommitWork<?> work : group)
+		{
+			work.complete();
+		}
+	}
+	
+	/**
+	 * Performs a unit of work in the current transaction, collecting the
+	 * actions it registers to run after it has been committed.
+	 * 
+	 * @param work The work to perform.
+	 * @return true if the work succeeded.
+	 */
+	private boolean perform(GroupCommitWork<?> work)
+	{
+		uncommittedActions.get().clear();
+		boolean performed = work.perform();
+		work.setActions(takeUncommittedActions());
+		return performed;
+	}
+	
+	private void commitTransaction()
+	{
+		if (allowCommits && supportsTransactions)
 			((TransactionalGraph)graph).commit();
+	}
+	
+	private void rollbackTransaction()
+	{
+		if (allowCommits && supportsTransactions)
+		{
+			try
+			{
+				((TransactionalGraph)graph).rollback();
+			}
+			catch (RuntimeException e)
+			{
+				// the transaction is already ended
+			}
+		}
+	}
+	
+	/**
+	 * Stops the group commit thread after the work already waiting has been
+	 * committed.
+	 */
+	private synchronized void disableGroupCommit()
+	{
+		Thread thread = groupCommitThread;
+		if (null == thread)
+			return;
+		
+		groupCommitQueue.add(new GroupCommitWork<Object>(null));
+		try
+		{
+			thread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		groupCommitThread = null;
+	}
+	
+	private static <T> T call(Callable<T> work)
+	{
+		try
+		{
+			return work.call();
+		}
+		catch (RuntimeException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException(e);
 		}
 	}
 	
@@ -258,6 +726,8 @@ public class CollabinateGraph implements KeyIndexableGraph
 	@Override
 	public void shutdown()
 	{
+		counters.stop();
+		disableGroupCommit();
 		graph.shutdown();
 	}
 
@@ -281,4 +751,109 @@ public class CollabinateGraph implements KeyIndexableGraph
 	{
 		return graph.getIndexedKeys(elementClass);
 	}
+	
+	/**
+	 * A unit of work waiting for a group commit, and its outcome.
+	 */
+	private static class GroupCommitWork<T>
+	{
+		private final Callable<T> work;
+		private final CountDownLatch committed = new CountDownLatch(1);
+		private List<Runnable> actions = Collections.emptyList();
+		private T result;
+		private Throwable failure;
+		
+		GroupCommitWork(Callable<T> work)
+		{
+			this.work = work;
+		}
+		
+		boolean isEnd()
+		{
+			return null == work;
+		}
+		
+		/**
+		 * Performs the work in the current transaction.
+		 * 
+		 * @return true if the work succeeded.
+		 */
+		boolean perform()
+		{
+			try
+			{
+				result = work.call();
+				failure = null;
+				return true;
+			}
+			catch (Throwable t)
+			{
+				result = null;
+				failure = t;
+				return false;
+			}
+		}
+		
+		void fail(Throwable t)
+		{
+			result = null;
+			failure = t;
+		}
+		
+		boolean isFailed()
+		{
+			return null != failure;
+		}
+		
+		void setActions(List<Runnable> actions)
+		{
+			this.actions = actions;
+		}
+		
+		List<Runnable> takeActions()
+		{
+			List<Runnable> taken = actions;
+			actions = Collections.emptyList();
+			return taken;
+		}
+		
+		void complete()
+		{
+			committed.countDown();
+		}
+		
+		T getResult()
+		{
+			boolean interrupted = false;
+			while (true)
+			{
+				try
+				{
+					committed.await();
+					break;
+				}
+				catch (InterruptedException e)
+				{
+					// the work is already queued, so wait for its outcome
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException)failure;
+			if (failure instanceof Error)
+				throw (Error)failure;
+			if (null != failure)
+				throw new IllegalStateException(failure);
+			return result;
+		}
+	}
+	
+	/**
+	 * Static logger for the graph.
+	 */
+	private static final Logger logger =
+			LoggerFactory.getLogger(CollabinateGraph.class);
 }
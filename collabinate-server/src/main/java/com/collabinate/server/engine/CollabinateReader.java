@@ -1,5 +1,7 @@
 package com.collabinate.server.engine;
 
+import java.util.List;
+
 import org.joda.time.DateTime;
 
 import com.collabinate.server.activitystreams.Activity;
@@ -38,6 +40,20 @@ public interface CollabinateReader
 	public ActivityStreamsCollection getStream(String tenantId, String entityId,
 			int startIndex, int activitiesToReturn);
 	
+	/**
+	 * Retrieves a collection of activities for an entity, adjacent to a
+	 * cursor position.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param entityId The ID of the entity for which to retrieve a stream.
+	 * @param cursor The position and direction of the page, or null for the
+	 * newest activities.
+	 * @param activitiesToReturn The maximum number of activities to retrieve.
+	 * @return A collection of activities for the given entity.
+	 */
+	public ActivityStreamsCollection getStream(String tenantId, String entityId,
+			PageCursor cursor, int activitiesToReturn);
+	
 	/**
 	 * Retrieves a collection of activities for the entities that a user
 	 * follows, in chronological order.
@@ -51,6 +67,20 @@ public interface CollabinateReader
 	public ActivityStreamsCollection getFeed(String tenantId, String userId,
 			int startIndex, int activitiesToReturn);
 	
+	/**
+	 * Retrieves a collection of activities for the entities that a user
+	 * follows, adjacent to a cursor position.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param userId The ID of the user for which to retrieve a feed.
+	 * @param cursor The position and direction of the page, or null for the
+	 * newest activities.
+	 * @param activitiesToReturn The maximum number of activities to retrieve.
+	 * @return A collection of activities for the given user.
+	 */
+	public ActivityStreamsCollection getFeed(String tenantId, String userId,
+			PageCursor cursor, int activitiesToReturn);
+	
 	/**
 	 * Retrieves a DateTime value for when a user followed an entity, or null if
 	 * the user does not follow the entity.
@@ -120,6 +150,24 @@ public interface CollabinateReader
 			String entityId, String activityId, int startIndex,
 			int commentsToReturn);
 	
+	/**
+	 * Retrieves the collection of comments on an activity, adjacent to a
+	 * cursor position.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param entityId The ID of the entity to which the activity belongs.
+	 * @param activityId The ID of the activity from which to retrieve the
+	 * comments.
+	 * @param cursor The position and direction of the page, or null for the
+	 * newest comments.
+	 * @param commentsToReturn The maximum number of comments to retrieve.
+	 * @return A collection of comments on the given activity, or null if the
+	 * activity does not exist.
+	 */
+	public ActivityStreamsCollection getComments(String tenantId,
+			String entityId, String activityId, PageCursor cursor,
+			int commentsToReturn);
+	
 	/**
 	 * Retrieves the status of a like relationship between a user and an
 	 * activity.
@@ -150,6 +198,44 @@ public interface CollabinateReader
 			String entityId, String activityId, int startIndex,
 			int likesToReturn);
 	
+	/**
+	 * Retrieves the collection of likes for a given activity, adjacent to a
+	 * cursor position. Likes are ordered newest first.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param entityId The ID of the entity to which the activity belongs.
+	 * @param activityId The ID of the activity for which to retrieve the likes.
+	 * @param cursor The position and direction of the page, or null for the
+	 * newest likes.
+	 * @param likesToReturn The maximum number of likes to retrieve.
+	 * @return An ActivityStreamsCollection populated with Activities
+	 * representing the likes, or null if the activity does not exist.
+	 */
+	public ActivityStreamsCollection getLikes(String tenantId,
+			String entityId, String activityId, PageCursor cursor,
+			int likesToReturn);
+	
+	/**
+	 * Adds comments, likes and the like status of a user to each activity in
+	 * a page of activities, in a single read rather than a read per activity.
+	 * Activities that no longer exist are left unchanged. Note that zero
+	 * counts still add empty collections, with the correct total counts.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param entityId The ID of the entity to which the activities belong, or
+	 * null to use the entityId value recorded in each activity.
+	 * @param activities The activities to add to.
+	 * @param commentsToReturn The maximum number of comments to add to each
+	 * activity, or a negative number to add no comments collection.
+	 * @param likesToReturn The maximum number of likes to add to each
+	 * activity, or a negative number to add no likes collection.
+	 * @param userId The ID of the user whose likes are recorded on each
+	 * activity as the likedByUser value, or null to record none.
+	 */
+	public void enrichActivities(String tenantId, String entityId,
+			List<ActivityStreamsObject> activities, int commentsToReturn,
+			int likesToReturn, String userId);
+	
 	/**
 	 * Retrieves an ActivityStreamsObject representation of a given entity.
 	 * 
@@ -158,4 +244,50 @@ public interface CollabinateReader
 	 * @return An ActivityStreamsObject representation of the given entity.
 	 */
 	public ActivityStreamsObject getEntity(String tenantId, String entityId);
+	
+	/**
+	 * Retrieves a stamp that increases whenever an activity is added to or
+	 * removed from the stream of an entity. Comments and likes of the
+	 * activities do not change it. Stamps are in microseconds since the
+	 * epoch, and so also give the approximate time of the latest change.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param entityId The ID of the entity.
+	 * @return The version stamp of the stream, or 0 if it is unknown.
+	 */
+	public long getStreamVersion(String tenantId, String entityId);
+	
+	/**
+	 * Retrieves a stamp that increases whenever the feed of a user changes,
+	 * either through a change to the stream of a followed entity or a change
+	 * to the entities the user follows. Comments and likes of the activities
+	 * do not change it.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param userId The ID of the user.
+	 * @return The version stamp of the feed, or 0 if it is unknown.
+	 */
+	public long getFeedVersion(String tenantId, String userId);
+	
+	/**
+	 * Retrieves a stamp that increases whenever a comment or like is added to
+	 * or removed from an activity.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param entityId The ID of the entity to which the activity belongs.
+	 * @param activityId The ID of the activity.
+	 * @return The version stamp of the activity, or 0 if it is unknown.
+	 */
+	public long getActivityVersion(String tenantId, String entityId,
+			String activityId);
+	
+	/**
+	 * Retrieves a stamp that increases whenever any of the counts reported
+	 * for an entity changes.
+	 * 
+	 * @param tenantId the tenant for which the request is processed.
+	 * @param entityId The ID of the entity.
+	 * @return The version stamp of the entity, or 0 if it is unknown.
+	 */
+	public long getEntityVersion(String tenantId, String entityId);
 }
@@ -1,5 +1,8 @@
 package com.collabinate.server.engine;
 
+import java.util.List;
+import java.util.Map;
+
 import org.joda.time.DateTime;
 
 import com.collabinate.server.activitystreams.Activity;
@@ -28,6 +31,22 @@ public interface CollabinateWriter
 	public void addActivity(String tenantId, String entityId,
 			Activity activity);
 	
+	/**
+	 * Adds a batch of activities to an entity's stream, each at the correct
+	 * chronological location. The batch is added as a whole, so that the
+	 * followers of the entity are updated once for the batch rather than
+	 * once for each activity. If any activity in the batch already exists,
+	 * none of the batch is added.
+	 * 
+	 * @param tenantId The tenant for the operation.
+	 * @param entityId The ID of the entity to which the activities will be
+	 * added. This value must not be null.
+	 * @param activities The activities to add, in any order. This value must
+	 * not be null.
+	 */
+	public void addActivities(String tenantId, String entityId,
+			List<Activity> activities);
+	
 	/**
 	 * Deletes an activity from an entity's stream.
 	 * 
@@ -65,6 +84,35 @@ public interface CollabinateWriter
 	public DateTime unfollowEntity(String tenantId, String userId,
 			String entityId);
 	
+	/**
+	 * Adds a batch of entities to the collection of entities a user follows,
+	 * such as when a new user is onboarded.
+	 * 
+	 * @param tenantId The tenant for the operation.
+	 * @param userId The ID of the user that follows the entities.
+	 * @param entityIds The IDs of the entities that the user follows.
+	 * @param dateFollowed The date that the follow relationships occurred. If
+	 * null is passed, the current date will be used.
+	 * @return The date of each follow relationship, by entity ID. If a
+	 * relationship already existed before this call, the existing date is
+	 * given.
+	 */
+	public Map<String, DateTime> followEntities(String tenantId,
+			String userId, List<String> entityIds, DateTime dateFollowed);
+	
+	/**
+	 * Removes a batch of entities from the collection of entities a user
+	 * follows.
+	 * 
+	 * @param tenantId The tenant for the operation.
+	 * @param userId The ID of the user that follows the entities.
+	 * @param entityIds The IDs of the entities that the user follows.
+	 * @return The date that each deleted follow relationship occurred, by
+	 * entity ID. Entities the user did not follow are not included.
+	 */
+	public Map<String, DateTime> unfollowEntities(String tenantId,
+			String userId, List<String> entityIds);
+	
 	/**
 	 * Adds a comment to an activity's comments, at the correct chronological
 	 * location, and optionally associates it with a user. If the comment does
@@ -0,0 +1,347 @@
+package com.collabinate.server.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.collabinate.server.activitystreams.ActivityStreamsCollection;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.gson.Gson;
+
+/**
+ * A cache of feed pages, by user and page. Pages are held as the JSON of
+ * their items, so each hit returns a fresh collection that callers may
+ * modify, and that is only parsed if they do. The cache is bounded by the
+ * approximate size of that JSON.
+ * 
+ * A change to the feed of a user invalidates the pages of that user. A
+ * change to the stream of a pulled entity, which may have too many followers
+ * to visit, instead stamps the entity, and each cached page is checked
+ * against the stamps of the pulled entities its user followed when it was
+ * cached.
+ * 
+ * Invalidating the pages of a user advances a stamp for that user, and a
+ * page is only kept if the stamp has not moved while it was computed, so a
+ * page read before a change is never cached after the change invalidates
+ * it. Stamps are striped by user, so that changes to other feeds do not
+ * keep a page from being cached.
+ * 
+ * @author mafuba
+ * 
+ */
+class FeedCache
+{
+	/**
+	 * The cached pages, by user vertex ID.
+	 */
+	private final Cache<Object, UserPages> pages;
+	
+	/**
+	 * The sequence at the latest change to each pulled entity, by entity
+	 * vertex ID.
+	 */
+	private final Map<Object, Long> pulledStamps =
+			new ConcurrentHashMap<Object, Long>();
+	
+	/**
+	 * Advanced by every change to a pulled entity, ordering the changes
+	 * against the pages cached around them.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+	
+	/**
+	 * Advanced whenever the pages of a user are invalidated, striped by user
+	 * vertex ID.
+	 */
+	private final AtomicLongArray userStamps =
+			new AtomicLongArray(USER_STRIPES);
+	
+	/**
+	 * The approximate maximum size of the cache in bytes.
+	 */
+	private final long capacity;
+	
+	// Metrics
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+	
+	/**
+	 * Creates a cache bounded by the given size.
+	 * 
+	 * @param capacity The approximate maximum size of the cache in bytes.
+	 */
+	FeedCache(long capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		
+		this.capacity = capacity;
+		this.pages = CacheBuilder.newBuilder()
+				.maximumWeight(capacity)
+				.weigher(new Weigher<Object, UserPages>()
+				{
+					@Override
+					public int weigh(Object userId, UserPages userPages)
+					{
+						return userPages.weight;
+					}
+				})
+				.recordStats()
+				.build();
+	}
+	
+	/**
+	 * Retrieves the current sequence, which is passed to put() for a page
+	 * computed after this call.
+	 * 
+	 * @return The current sequence.
+	 */
+	long getSequence()
+	{
+		return sequence.get();
+	}
+	
+	/**
+	 * Retrieves the current stamp of a user, which is passed to put() for a
+	 * page of the user computed after this call.
+	 * 
+	 * @param userId The vertex ID of the user.
+	 * @return The current stamp of the user.
+	 */
+	long getUserStamp(Object userId)
+	{
+		return userStamps.get(getUserStripe(userId));
+	}
+	
+	/**
+	 * Retrieves a cached page of a feed.
+	 * 
+	 * @param userId The vertex ID of the user that owns the feed.
+	 * @param created The creation time of the user, which distinguishes a
+	 * user that was deleted and created again.
+	 * @param startIndex The zero-based index of the first activity.
+	 * @param activitiesToReturn The maximum number of activities.
+	 * @return A new collection for the cached page, or null if the page is
+	 * not cached or is stale.
+	 */
+	ActivityStreamsCollection get(Object userId, long created,
+			int startIndex, int activitiesToReturn)
+	{
+		UserPages userPages = pages.getIfPresent(userId);
+		Page page = null;
+		if (null != userPages && created == userPages.created)
+			page = userPages.pages.get(
+					getPageKey(startIndex, activitiesToReturn));
+		
+		if (null == page || !isCurrent(page))
+		{
+			missCount.incrementAndGet();
+			return null;
+		}
+		
+		hitCount.incrementAndGet();
+		
+		ActivityStreamsCollection collection =
+				new ActivityStreamsCollection(page.totalItems, page.items);
+		collection.setPrevCursor(page.prevCursor);
+		collection.setNextCursor(page.nextCursor);
+		return collection;
+	}
+	
+	/**
+	 * Caches a page of a feed, unless the feed may have changed since the
+	 * given stamp was retrieved. Changes to pulled entities since the given
+	 * sequence are found when the page is read.
+	 * 
+	 * @param userId The vertex ID of the user that owns the feed.
+	 * @param created The creation time of the user.
+	 * @param startIndex The zero-based index of the first activity.
+	 * @param activitiesToReturn The maximum number of activities.
+	 * @param startSequence The sequence retrieved before the page was
+	 * computed.
+	 * @param startStamp The stamp of the user retrieved before the page was
+	 * computed.
+	 * @param pulledEntityIds The vertex IDs of the pulled entities followed
+	 * by the user.
+	 * @param collection The page, which must not have been modified since it
+	 * was computed.
+	 */
+	void put(Object userId, long created, int startIndex,
+			int activitiesToReturn, long startSequence, long startStamp,
+			List<Object> pulledEntityIds, ActivityStreamsCollection collection)
+	{
+		if (startStamp != getUserStamp(userId))
+			return;
+		
+		// unmodified items give their JSON without being parsed
+		List<String> items = new ArrayList<String>(collection.size());
+		for (ActivityStreamsObject item : collection.getItems())
+		{
+			items.add(item.toString());
+		}
+		
+		Page page = new Page(collection.getTotalItems(), items,
+				collection.getPrevCursor(), collection.getNextCursor(),
+				startSequence, pulledEntityIds);
+		
+		// keep the other pages of the user, up to a limit
+		Map<Long, Page> userPageMap = new LinkedHashMap<Long, Page>();
+		UserPages existing = pages.getIfPresent(userId);
+		if (null != existing && created == existing.created)
+		{
+			for (Map.Entry<Long, Page> entry : existing.pages.entrySet())
+			{
+				if (userPageMap.size() < MAXIMUM_PAGES_PER_USER - 1)
+					userPageMap.put(entry.getKey(), entry.getValue());
+			}
+		}
+		userPageMap.put(getPageKey(startIndex, activitiesToReturn), page);
+		pages.put(userId, new UserPages(created, userPageMap));
+		
+		// an invalidation may have been missed between the check and the put
+		if (startStamp != getUserStamp(userId))
+			pages.invalidate(userId);
+	}
+	
+	/**
+	 * Discards the cached pages of a user.
+	 * 
+	 * @param userId The vertex ID of the user.
+	 */
+	void invalidateUser(Object userId)
+	{
+		userStamps.incrementAndGet(getUserStripe(userId));
+		invalidationCount.incrementAndGet();
+		pages.invalidate(userId);
+	}
+	
+	/**
+	 * Marks the cached pages of every user following a pulled entity as
+	 * stale.
+	 * 
+	 * @param entityId The vertex ID of the pulled entity.
+	 */
+	void invalidatePulledEntity(Object entityId)
+	{
+		invalidationCount.incrementAndGet();
+		pulledStamps.put(entityId, sequence.incrementAndGet());
+	}
+	
+	/**
+	 * Reports the metrics of the cache as JSON.
+	 * 
+	 * @return A JSON object with the hit, miss, invalidation and eviction
+	 * counts.
+	 */
+	String getStatus()
+	{
+		long hits = hitCount.get();
+		long misses = missCount.get();
+		
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("capacity", capacity);
+		status.put("users", pages.size());
+		status.put("hits", hits);
+		status.put("misses", misses);
+		status.put("hitRate", 0 == hits + misses ? 0.0 :
+				(double)hits / (hits + misses));
+		status.put("invalidations", invalidationCount.get());
+		status.put("evictions", pages.stats().evictionCount());
+		
+		return new Gson().toJson(status);
+	}
+	
+	/**
+	 * Determines whether a cached page is newer than the latest change to
+	 * each of the pulled entities followed by its user.
+	 */
+	private boolean isCurrent(Page page)
+	{
+		for (Object entityId : page.pulledEntityIds)
+		{
+			Long stamp = pulledStamps.get(entityId);
+			if (null != stamp && stamp > page.sequence)
+				return false;
+		}
+		return true;
+	}
+	
+	private static int getUserStripe(Object userId)
+	{
+		return (userId.hashCode() & Integer.MAX_VALUE) % USER_STRIPES;
+	}
+	
+	private static Long getPageKey(int startIndex, int activitiesToReturn)
+	{
+		return ((long)startIndex << 32) | (activitiesToReturn & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * A cached page of a feed.
+	 */
+	private static class Page
+	{
+		private final int totalItems;
+		private final List<String> items;
+		private final String prevCursor;
+		private final String nextCursor;
+		private final long sequence;
+		private final List<Object> pulledEntityIds;
+		
+		Page(int totalItems, List<String> items, String prevCursor,
+				String nextCursor, long sequence, List<Object> pulledEntityIds)
+		{
+			this.totalItems = totalItems;
+			this.items = items;
+			this.prevCursor = prevCursor;
+			this.nextCursor = nextCursor;
+			this.sequence = sequence;
+			this.pulledEntityIds = pulledEntityIds;
+		}
+	}
+	
+	/**
+	 * The cached pages of a user, weighed by the approximate size of their
+	 * content.
+	 */
+	private static class UserPages
+	{
+		private final long created;
+		private final Map<Long, Page> pages;
+		private final int weight;
+		
+		UserPages(long created, Map<Long, Page> pages)
+		{
+			this.created = created;
+			this.pages = Collections.unmodifiableMap(
+					new HashMap<Long, Page>(pages));
+			
+			// strings take two bytes per character, plus some overhead
+			long size = PAGE_OVERHEAD;
+			for (Page page : pages.values())
+			{
+				size += PAGE_OVERHEAD;
+				for (String item : page.items)
+					size += ITEM_OVERHEAD + 2L * item.length();
+			}
+			this.weight = (int)Math.min(Integer.MAX_VALUE, size);
+		}
+	}
+	
+	private static final int USER_STRIPES = 1024;
+	private static final int MAXIMUM_PAGES_PER_USER = 8;
+	private static final int PAGE_OVERHEAD = 256;
+	private static final int ITEM_OVERHEAD = 48;
+}
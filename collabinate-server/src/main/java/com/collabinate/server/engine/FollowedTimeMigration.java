@@ -0,0 +1,69 @@
+package com.collabinate.server.engine;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Copies the time of each follow relationship onto the keyed overlay for the
+ * followed entity in the feed of the user, so that follow checks are a
+ * direct overlay lookup. Must run after the overlays are keyed; until an
+ * overlay carries the time the follow relationship is searched instead.
+ * 
+ * @author mafuba
+ * 
+ */
+public class FollowedTimeMigration extends GraphMigration
+{
+	/**
+	 * The graph containing the follow relationships.
+	 */
+	private CollabinateGraph graph;
+	
+	/**
+	 * Initializes the migration.
+	 * 
+	 * @param graph The graph containing the follow relationships.
+	 */
+	public FollowedTimeMigration(CollabinateGraph graph)
+	{
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		this.graph = graph;
+	}
+	
+	@Override
+	public String getName()
+	{
+		return "FollowedTime";
+	}
+	
+	@Override
+	public boolean migrateEdge(Edge edge)
+	{
+		if (!STRING_FOLLOWS.equals(edge.getLabel()))
+			return false;
+		
+		Vertex user = edge.getVertex(Direction.OUT);
+		Vertex entity = edge.getVertex(Direction.IN);
+		Vertex overlay = graph.getVertex(GraphEngine.getOverlayVertexId(
+				(String)user.getProperty(STRING_TENANT_ID),
+				(String)user.getProperty(STRING_ENTITY_ID),
+				(String)entity.getProperty(STRING_ENTITY_ID)));
+		
+		if (null == overlay || null != overlay.getProperty(STRING_FOLLOWED))
+			return false;
+		
+		overlay.setProperty(STRING_FOLLOWED, edge.getProperty(STRING_CREATED));
+		return true;
+	}
+	
+	private static final String STRING_TENANT_ID = "TenantID";
+	private static final String STRING_ENTITY_ID = "EntityID";
+	private static final String STRING_FOLLOWS = "Follows";
+	private static final String STRING_FOLLOWED = "Followed";
+	private static final String STRING_CREATED = "Created";
+}
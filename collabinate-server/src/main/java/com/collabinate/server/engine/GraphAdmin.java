@@ -1,6 +1,7 @@
 package com.collabinate.server.engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.joda.time.DateTime;
@@ -22,6 +23,11 @@ public class GraphAdmin implements CollabinateAdmin
 {
 	private CollabinateGraph graph;
 	
+	/**
+	 * Converts existing data to the current storage format.
+	 */
+	private GraphMigrator migrator;
+	
 	public GraphAdmin(CollabinateGraph graph)
 	{
 		if (null == graph)
@@ -30,6 +36,12 @@ public class GraphAdmin implements CollabinateAdmin
 		}
 		
 		this.graph = graph;
+		this.migrator = new GraphMigrator(graph, Arrays.<GraphMigration>asList(
+				new SortKeyMigration(), new StreamIndexMigration(graph),
+				new OverlayKeyMigration(graph),
+				new FollowedTimeMigration(graph), new LikeKeyMigration(graph),
+				new LikePathMigration()),
+				MIGRATION_BATCH_SIZE);
 	}
 	
 	@Override
@@ -47,7 +59,7 @@ public class GraphAdmin implements CollabinateAdmin
 		tenantVertex.setProperty(STRING_TENANT_ID, tenant.getId());
 		tenantVertex.setProperty(STRING_NAME, tenant.getName());
 		tenantVertex.setProperty(STRING_CREATED,
-				DateTime.now(DateTimeZone.UTC).toString());
+				DateTime.now(DateTimeZone.UTC).getMillis());
 		
 		Gson gson = new Gson();
 		String tenantJson = gson.toJson(tenant);
@@ -75,11 +87,19 @@ public class GraphAdmin implements CollabinateAdmin
 		return tenant;
 	}
 	
+	@Override
+	public boolean verifyKey(String tenantId, String key)
+	{
+		Tenant tenant = getTenant(tenantId);
+		return null != tenant && tenant.verifyKey(key);
+	}
+	
 	@Override
 	public void deleteTenant(String tenantId)
 	{
 		for (Vertex vertex : graph.getVertices(STRING_TENANT_ID, tenantId))
 		{
+			graph.getCounters().discard(vertex);
 			vertex.remove();
 		}
 	}
@@ -133,11 +153,24 @@ public class GraphAdmin implements CollabinateAdmin
 		graph.importGraph(data);
 	}
 
+	@Override
+	public boolean startMigration()
+	{
+		return migrator.start();
+	}
+	
+	@Override
+	public String getMigrationStatus()
+	{
+		return migrator.getStatus();
+	}
+
 	private String getTenantVertexId(String tenantId)
 	{
 		return STRING_TENANT_PREFIX + tenantId;
 	}
 	
+	private static final int MIGRATION_BATCH_SIZE = 1000;
 	private static final String STRING_TENANT_PREFIX = "collabinate.tenant.";
 	private static final String STRING_CONTENT = "Content";
 	private static final String STRING_TENANT_ID = "TenantID";
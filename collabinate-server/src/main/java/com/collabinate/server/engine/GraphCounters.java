@@ -0,0 +1,372 @@
+package com.collabinate.server.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * The numeric counters stored on vertices, such as follower and like counts.
+ * By default a counter is adjusted directly on its vertex. When deferred,
+ * adjustments are instead held in memory as pending deltas, which are added
+ * to the vertices periodically in a single transaction, so that frequently
+ * adjusted counters on popular vertices do not make every write contend on
+ * those vertices. Reading a counter sums the stored value and the pending
+ * delta.
+ * 
+ * A delta becomes pending only once the write that made it is committed, so
+ * a write that is rolled back leaves no count behind. While a flush is being
+ * committed its deltas are still read, until the vertex shows the flush has
+ * been stored, so that counts never appear to go backwards.
+ * 
+ * Pending deltas are lost if the server stops without the counters being
+ * stopped, so deferred counters trade that durability for throughput.
+ * 
+ * @author mafuba
+ * 
+ */
+class GraphCounters
+{
+	/**
+	 * The graph containing the counters.
+	 */
+	private final CollabinateGraph graph;
+	
+	/**
+	 * The pending deltas, by vertex and counter.
+	 */
+	private final ConcurrentHashMap<CounterKey, Long> pending =
+			new ConcurrentHashMap<CounterKey, Long>();
+	
+	/**
+	 * The deltas being stored by the current flush, by vertex and counter.
+	 */
+	private final ConcurrentHashMap<CounterKey, Long> flushing =
+			new ConcurrentHashMap<CounterKey, Long>();
+	
+	/**
+	 * Identifies the current flush, and is stored on the vertices it updates.
+	 */
+	private volatile long flushId;
+	
+	/**
+	 * The properties of the counters that have been adjusted.
+	 */
+	private final Set<String> properties =
+			Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	/**
+	 * The scheduler that periodically flushes the pending deltas, or null if
+	 * counters are adjusted directly.
+	 */
+	private volatile ScheduledExecutorService scheduler;
+	
+	/**
+	 * Static logger for the counters.
+	 */
+	private static final Logger logger =
+			LoggerFactory.getLogger(GraphCounters.class);
+	
+	/**
+	 * Creates counters that are adjusted directly.
+	 * 
+	 * @param graph The graph containing the counters.
+	 */
+	GraphCounters(CollabinateGraph graph)
+	{
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		this.graph = graph;
+	}
+	
+	/**
+	 * Defers counter adjustments, flushing them at the given interval.
+	 * 
+	 * @param flushInterval The time in milliseconds between flushes.
+	 */
+	synchronized void start(long flushInterval)
+	{
+		if (flushInterval < 1)
+		{
+			throw new IllegalArgumentException(
+					"flushInterval must be positive");
+		}
+		if (null != scheduler)
+		{
+			throw new IllegalStateException("Counters already deferred");
+		}
+		
+		ThreadFactory threadFactory = new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "collabinate-counters");
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		
+		ScheduledExecutorService newScheduler =
+				Executors.newSingleThreadScheduledExecutor(threadFactory);
+		newScheduler.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					flush();
+				}
+				catch (RuntimeException e)
+				{
+					logger.error("Counter flush failed", e);
+				}
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		scheduler = newScheduler;
+	}
+	
+	/**
+	 * Stops deferring counter adjustments, flushing any pending deltas.
+	 */
+	synchronized void stop()
+	{
+		ScheduledExecutorService oldScheduler = scheduler;
+		if (null == oldScheduler)
+			return;
+		
+		scheduler = null;
+		oldScheduler.shutdown();
+		try
+		{
+			oldScheduler.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		flush();
+	}
+	
+	/**
+	 * Determines whether counter adjustments are deferred.
+	 * 
+	 * @return true if adjustments are held in memory until flushed.
+	 */
+	boolean isDeferred()
+	{
+		return null != scheduler;
+	}
+	
+	/**
+	 * Adjusts a counter by the given amount. A deferred adjustment becomes
+	 * pending once the current write is committed.
+	 * 
+	 * @param vertex The vertex holding the counter.
+	 * @param property The property key of the counter.
+	 * @param amount The amount by which to adjust the counter.
+	 */
+	void adjust(Vertex vertex, String property, final int amount)
+	{
+		if (isDeferred())
+		{
+			properties.add(property);
+			final CounterKey key = new CounterKey(vertex.getId(), property);
+			graph.afterCommit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					pending.merge(key, (long)amount, SUM);
+				}
+			});
+		}
+		else
+		{
+			vertex.setProperty(property, getStored(vertex, property) + amount);
+		}
+	}
+	
+	/**
+	 * Reads a counter, including any pending delta.
+	 * 
+	 * @param vertex The vertex holding the counter.
+	 * @param property The property key of the counter.
+	 * @return The value of the counter.
+	 */
+	int get(Vertex vertex, String property)
+	{
+		CounterKey key = new CounterKey(vertex.getId(), property);
+		Long delta = pending.get(key);
+		int value = getStored(vertex, property) +
+				(null == delta ? 0 : delta.intValue());
+		
+		// a delta being flushed is read until the vertex has stored it
+		if (!flushing.isEmpty())
+		{
+			Long flushed = flushing.get(key);
+			if (null != flushed && !Long.valueOf(flushId).equals(
+					vertex.getProperty(STRING_COUNTERS_FLUSHED)))
+				value += flushed.intValue();
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Drops the pending deltas of a vertex that is being removed, so that
+	 * they are not applied to a later vertex with the same ID.
+	 * 
+	 * @param vertex The vertex being removed.
+	 */
+	void discard(Vertex vertex)
+	{
+		if (pending.isEmpty())
+			return;
+		
+		for (String property : properties)
+		{
+			CounterKey key = new CounterKey(vertex.getId(), property);
+			pending.remove(key);
+			flushing.remove(key);
+		}
+	}
+	
+	/**
+	 * Adds the pending deltas to the stored counters in one transaction. The
+	 * deltas are read as being flushed until the transaction is committed,
+	 * and if it fails they are returned to pending.
+	 */
+	synchronized void flush()
+	{
+		if (pending.isEmpty())
+			return;
+		
+		// the ID only needs to differ from those of earlier flushes, which
+		// may have been made before the server was restarted, and is set
+		// before the deltas are taken so that reads compare against it
+		final long id = Math.max(flushId + 1, System.currentTimeMillis());
+		flushId = id;
+		
+		// take the deltas first, so that adjustments made while flushing are
+		// kept for the next flush
+		for (CounterKey key : pending.keySet())
+		{
+			Long delta = pending.remove(key);
+			if (null != delta && 0 != delta)
+				flushing.put(key, delta);
+		}
+		
+		try
+		{
+			graph.execute(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					for (Map.Entry<CounterKey, Long> entry :
+						flushing.entrySet())
+					{
+						CounterKey key = entry.getKey();
+						
+						// the vertex may have been removed since
+						Vertex vertex = graph.getVertex(key.vertexId);
+						if (null != vertex)
+						{
+							vertex.setProperty(key.property,
+									getStored(vertex, key.property) +
+									entry.getValue().intValue());
+							vertex.setProperty(STRING_COUNTERS_FLUSHED, id);
+						}
+					}
+					graph.afterCommit(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							flushing.clear();
+						}
+					});
+					graph.commit();
+					return null;
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			for (Map.Entry<CounterKey, Long> entry : flushing.entrySet())
+			{
+				pending.merge(entry.getKey(), entry.getValue(), SUM);
+				flushing.remove(entry.getKey());
+			}
+			throw e;
+		}
+	}
+	
+	private int getStored(Vertex vertex, String property)
+	{
+		Object value = vertex.getProperty(property);
+		return value instanceof Number ? ((Number)value).intValue() : 0;
+	}
+	
+	/**
+	 * Identifies a counter by its vertex and property.
+	 */
+	private static class CounterKey
+	{
+		private final Object vertexId;
+		private final String property;
+		
+		CounterKey(Object vertexId, String property)
+		{
+			this.vertexId = vertexId;
+			this.property = property;
+		}
+		
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof CounterKey))
+				return false;
+			CounterKey key = (CounterKey)other;
+			return vertexId.equals(key.vertexId) &&
+					property.equals(key.property);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return 31 * vertexId.hashCode() + property.hashCode();
+		}
+	}
+	
+	private static final String STRING_COUNTERS_FLUSHED = "CountersFlushed";
+	
+	private static final BiFunction<Long, Long, Long> SUM =
+			new BiFunction<Long, Long, Long>()
+	{
+		@Override
+		public Long apply(Long a, Long b)
+		{
+			long sum = a + b;
+			// returning null removes a counter whose adjustments cancel out
+			return 0 == sum ? null : sum;
+		}
+	};
+}
@@ -2,10 +2,21 @@ package com.collabinate.server.engine;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiFunction;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -15,9 +26,16 @@ import org.slf4j.LoggerFactory;
 import com.collabinate.server.activitystreams.Activity;
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
-import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.wrappers.partition.PartitionGraph;
@@ -40,6 +58,95 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	 */
 	private CollabinateGraph graph;
 	
+	/**
+	 * The skip index over entity streams.
+	 */
+	private StreamIndex streamIndex;
+	
+	/**
+	 * Locks guarding the linked lists and counts of each entity, striped by
+	 * tenant and entity. A lock is held until the changes it guards are
+	 * committed. At most one is held at a time, except where the locks of a
+	 * user and the entities it follows are acquired together in stripe order.
+	 */
+	private final Striped<Lock> entityLocks = Striped.lock(LOCK_STRIPES);
+	
+	/**
+	 * Locks guarding the creation of entity vertices. Nothing else is locked
+	 * while one of these is held, so they may be taken while holding an
+	 * entity lock.
+	 */
+	private final Striped<Lock> creationLocks = Striped.lock(LOCK_STRIPES);
+	
+	/**
+	 * Advanced whenever the feed summary of a user or the cached stream of a
+	 * pulled entity is invalidated, striped by vertex ID. A summary or stream
+	 * is only kept if its stamp has not moved while it was computed.
+	 */
+	private final AtomicLongArray feedStamps =
+			new AtomicLongArray(LOCK_STRIPES);
+	
+	/**
+	 * The users whose cached feed summaries include each followed entity, by
+	 * entity vertex ID and then by the token of the summary, so that a change
+	 * to the stream of an entity invalidates only the summaries of those
+	 * users. Each summary has its own token, so that dropping a summary does
+	 * not unregister another computed for the same user.
+	 */
+	private final ConcurrentHashMap<Object, Map<Object, Object>>
+			feedDependents =
+			new ConcurrentHashMap<Object, Map<Object, Object>>();
+	
+	/**
+	 * The latest version stamp issued, so that stamps increase across all
+	 * vertices even when several are issued within the same microsecond.
+	 */
+	private final AtomicLong lastVersion = new AtomicLong();
+	
+	/**
+	 * Feed counts and pulled entities of users, computed from the entities
+	 * they follow, by user vertex ID. A summary that is dropped no longer
+	 * depends on the entities it included, and takes with it the cached feed
+	 * pages of its user, which were computed from it.
+	 */
+	private final Cache<Object, FeedSummary> feedSummaries = CacheBuilder
+			.newBuilder().maximumSize(FEED_SUMMARY_CACHE_SIZE)
+			.removalListener(new RemovalListener<Object, FeedSummary>()
+			{
+				@Override
+				public void onRemoval(
+						RemovalNotification<Object, FeedSummary> removal)
+				{
+					FeedSummary summary = removal.getValue();
+					for (Object entityId : summary.entityIds)
+						removeFeedDependent(entityId, summary.token);
+					
+					FeedCache cache = feedCache;
+					if (null != cache)
+						cache.invalidateUser(removal.getKey());
+				}
+			})
+			.build();
+	
+	/**
+	 * The stream counts and versions of pulled entities, by entity vertex ID,
+	 * which are added to the summaries of their followers when read, so that
+	 * a change to a pulled stream leaves those summaries cached.
+	 */
+	private final Cache<Object, PulledStream> pulledStreams = CacheBuilder
+			.newBuilder().maximumSize(FEED_SUMMARY_CACHE_SIZE).build();
+	
+	/**
+	 * The number of followers above which an entity is marked as pulled, or
+	 * zero if no entities are marked. See {@link #setFeedPullThreshold(int)}.
+	 */
+	private volatile int feedPullThreshold;
+	
+	/**
+	 * The cache of feed pages, or null if feeds are not cached.
+	 */
+	private volatile FeedCache feedCache;
+	
 	// Comparators
 	private ActivityDateComparator activityDateComparator =
 			new ActivityDateComparator();
@@ -60,6 +167,71 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		}
 		
 		this.graph = graph;
+		this.streamIndex = new StreamIndex(graph);
+	}
+	
+	/**
+	 * Creates an engine with a stream index of the given interval, so that
+	 * tests can exercise the index with short streams.
+	 * 
+	 * @param graph A Tinkerpop BluePrints graph to act as the store for the
+	 * server.
+	 * @param streamIndexInterval The number of activities between stream
+	 * index markers.
+	 */
+	GraphEngine(final CollabinateGraph graph, int streamIndexInterval)
+	{
+		this(graph);
+		this.streamIndex = new StreamIndex(graph, streamIndexInterval);
+	}
+	
+	/**
+	 * Sets the number of followers above which new activities of an entity
+	 * are merged into feeds when read, rather than pushed to the feeds of its
+	 * followers when written. Below the threshold, a change to the newest
+	 * activity of an entity moves the entity to its new position in the feed
+	 * of every follower, so that reading a feed only visits the entities
+	 * with recent activity. Above it, the cost of moving the entity in every
+	 * feed outweighs that of merging its stream on every read, so the entity
+	 * is marked as pulled and left where it is. An entity stays pulled if its
+	 * followers drop below the threshold again.
+	 * 
+	 * @param threshold The number of followers above which an entity is
+	 * pulled, or zero to pull no further entities.
+	 */
+	public void setFeedPullThreshold(int threshold)
+	{
+		if (threshold < 0)
+		{
+			throw new IllegalArgumentException(
+					"threshold must not be negative");
+		}
+		
+		feedPullThreshold = threshold;
+	}
+	
+	/**
+	 * Caches feed pages retrieved by index, up to the given approximate size.
+	 * Cached pages are invalidated as the streams and followings that make
+	 * them up change.
+	 * 
+	 * @param capacity The approximate maximum size of the cache in bytes.
+	 */
+	public void enableFeedCache(long capacity)
+	{
+		feedCache = new FeedCache(capacity);
+	}
+	
+	/**
+	 * Reports the hit, miss, invalidation and eviction counts of the feed
+	 * cache as JSON.
+	 * 
+	 * @return The status of the feed cache, or null if feeds are not cached.
+	 */
+	public String getFeedCacheStatus()
+	{
+		FeedCache cache = feedCache;
+		return null == cache ? null : cache.getStatus();
 	}
 	
 	@Override
@@ -81,15 +253,100 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		}
 		
 		Vertex entityVertex = getOrCreateEntityVertex(tenantId, entityId);
-		Vertex activityVertex = serializeActivity(activity, tenantId, entityId);
+		boolean updateOrder;
+		
+		List<Lock> locks = lockEntities(tenantId, entityId);
+		try
+		{
+			Vertex activityVertex =
+					serializeActivity(activity, tenantId, entityId);
+			
+			// if the inserted activity is first in its stream, it may have
+			// changed the entity order for feed paths
+			updateOrder = insertActivity(entityVertex, activityVertex);
+			adjustNumericProperty(entityVertex, STRING_STREAM_COUNT, 1);
+			stampVersion(entityVertex, STRING_STREAM_VERSION);
+			streamChanged(entityVertex, markPulled(entityVertex));
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
+		}
+		
+		if (updateOrder)
+			updateFeed(tenantId, entityVertex);
+	}
+	
+	@Override
+	public void addActivities(String tenantId, String entityId,
+			List<Activity> activities)
+	{
+		if (null == tenantId)
+		{
+			throw new IllegalArgumentException("tenantId must not be null");
+		}
+		
+		if (null == entityId)
+		{
+			throw new IllegalArgumentException("entityId must not be null");
+		}
+		
+		if (null == activities)
+		{
+			throw new IllegalArgumentException("activities must not be null");
+		}
+		
+		if (activities.contains(null))
+		{
+			throw new IllegalArgumentException(
+					"activities must not contain null");
+		}
+		
+		if (activities.isEmpty())
+			return;
+		
+		Vertex entityVertex = getOrCreateEntityVertex(tenantId, entityId);
+		boolean updateOrder;
 		
-		// if the inserted activity is first in its stream, it may have
-		// changed the entity order for feed paths
-		boolean updateOrder = insertActivity(entityVertex, activityVertex);
-		adjustNumericProperty(entityVertex, STRING_STREAM_COUNT, 1);
-		updateFeed(tenantId, entityId, entityVertex, 1, updateOrder);		
+		List<Lock> locks = lockEntities(tenantId, entityId);
+		try
+		{
+			// check every activity before writing, so the batch is either
+			// added in full or not at all
+			Set<String> activityIds = new HashSet<String>();
+			for (Activity activity : activities)
+			{
+				if (!activityIds.add(activity.getId()) || null !=
+						getActivityVertex(tenantId, entityId, activity.getId()))
+				{
+					throw new IllegalArgumentException(
+							"Activity with id already exists: " +
+							activity.getId());
+				}
+			}
+			
+			List<Vertex> activityVertices = new ArrayList<Vertex>();
+			for (Activity activity : activities)
+			{
+				activityVertices.add(
+						serializeActivity(activity, tenantId, entityId));
+			}
+			
+			updateOrder = insertActivities(entityVertex, activityVertices);
+			stampVersion(entityVertex, STRING_STREAM_VERSION);
+			streamChanged(entityVertex, markPulled(entityVertex));
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
+		}
 		
-		graph.commit();		
+		if (updateOrder)
+			updateFeed(tenantId, entityVertex);
 	}
 	
 	@Override
@@ -107,7 +364,7 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 					(String)activityVertex.getProperty(STRING_CONTENT));
 		}
 		
-		graph.commit();
+		graph.endRead();
 		
 		return activity;
 	}
@@ -127,20 +384,63 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 					(String)commentVertex.getProperty(STRING_CONTENT));
 		}
 		
-		graph.commit();
+		graph.endRead();
 		
 		return comment;
 	}
 	
+	/**
+	 * Retrieves the vertex for the entity with the given ID without creating
+	 * it, for reads that should not change the graph.
+	 * 
+	 * @param tenantId The ID of the tenant of the entity.
+	 * @param entityId The ID of the entity.
+	 * @return The vertex for the given entity, or null if it does not exist.
+	 */
+	private Vertex getEntityVertex(final String tenantId,
+			final String entityId)
+	{
+		return graph.getVertex(tenantId + STRING_ID_SEPARATOR + entityId);
+	}
+	
 	/**
 	 * Attempts to retrieve the vertex for the entity with the given ID. If a
-	 * matching entity cannot be found, the vertex is created.
+	 * matching entity cannot be found, the vertex is created under the
+	 * creation lock for the entity, so concurrent requests create it once.
+	 * 
+	 * @param tenantId The ID of the tenant to add to the vertex upon creation.
+	 * @param entityId The ID of the entity to add to the vertex upon creation.
+	 * @return The vertex for the given entity.
+	 */
+	private Vertex getOrCreateEntityVertex(final String tenantId,
+			final String entityId)
+	{
+		String vertexId = tenantId + STRING_ID_SEPARATOR + entityId;
+		Vertex entityVertex = graph.getVertex(vertexId);
+		if (null != entityVertex)
+			return entityVertex;
+		
+		Lock lock = creationLocks.get(vertexId);
+		lock.lock();
+		try
+		{
+			return createEntityVertex(tenantId, entityId);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Creates the vertex for the entity with the given ID unless another
+	 * request has created it, and commits it.
 	 * 
 	 * @param tenantId The ID of the tenant to add to the vertex upon creation.
 	 * @param entityId The ID of the entity to add to the vertex upon creation.
 	 * @return The vertex for the given entity.
 	 */
-	private synchronized Vertex getOrCreateEntityVertex(final String tenantId,
+	private Vertex createEntityVertex(final String tenantId,
 			final String entityId)
 	{
 		Vertex entityVertex = graph.getVertex(
@@ -153,16 +453,49 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			entityVertex.setProperty(STRING_ENTITY_ID, entityId);
 			entityVertex.setProperty(STRING_TYPE, STRING_ENTITY);
 			entityVertex.setProperty(STRING_CREATED,
-					DateTime.now(DateTimeZone.UTC).toString());
+					DateTime.now(DateTimeZone.UTC).getMillis());
 			entityVertex.setProperty(STRING_STREAM_COUNT, 0);
-			entityVertex.setProperty(STRING_FEED_COUNT, 0);
 			entityVertex.setProperty(STRING_FOLLOWING_COUNT, 0);
 			entityVertex.setProperty(STRING_FOLLOWER_COUNT, 0);
+			entityVertex.setProperty(STRING_OVERLAYS_KEYED, true);
+			streamIndex.initialize(entityVertex);
 			graph.commit();
 		}
 		return entityVertex;
 	}
 	
+	/**
+	 * Acquires the locks for the given entities of a tenant, in stripe order
+	 * so that requests locking the same entities cannot deadlock.
+	 * 
+	 * @param tenantId The tenant of the entities.
+	 * @param entityIds The IDs of the entities to lock.
+	 * @return The acquired locks, to be passed to unlockEntities.
+	 */
+	private List<Lock> lockEntities(String tenantId, String... entityIds)
+	{
+		List<String> keys = new ArrayList<String>();
+		for (String entityId : entityIds)
+			keys.add(tenantId + STRING_ID_SEPARATOR + entityId);
+		
+		List<Lock> locks = Lists.newArrayList(entityLocks.bulkGet(keys));
+		for (Lock lock : locks)
+			lock.lock();
+		
+		return locks;
+	}
+	
+	/**
+	 * Releases locks acquired by lockEntities, in reverse order.
+	 * 
+	 * @param locks The locks to release.
+	 */
+	private void unlockEntities(List<Lock> locks)
+	{
+		for (Lock lock : Lists.reverse(locks))
+			lock.unlock();
+	}
+	
 	/**
 	 * Retrieves a single activity vertex that matches the given parameters, or
 	 * null if none match.
@@ -215,12 +548,15 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		activityVertex.setProperty(STRING_ACTIVITY_ID, activity.getId());
 		activityVertex.setProperty(STRING_TYPE, STRING_ACTIVITY);
 		activityVertex.setProperty(STRING_SORTTIME, 
-				activity.getSortTime().toString());
+				activity.getSortTime().getMillis());
 		activityVertex.setProperty(STRING_CREATED,
-				DateTime.now(DateTimeZone.UTC).toString());
+				DateTime.now(DateTimeZone.UTC).getMillis());
 		activityVertex.setProperty(STRING_CONTENT, activity.toString());
 		activityVertex.setProperty(STRING_COMMENT_COUNT, 0);
 		activityVertex.setProperty(STRING_LIKE_COUNT, 0);
+		activityVertex.setProperty(STRING_LIKES_KEYED, true);
+		activityVertex.setProperty(STRING_LIKES_LINKED, true);
+		stampVersion(activityVertex, STRING_VERSION);
 		return activityVertex;
 	}
 	
@@ -259,8 +595,8 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		commentVertex.setProperty(STRING_COMMENT_ID, comment.getId());
 		commentVertex.setProperty(STRING_TYPE, STRING_COMMENT);
 		commentVertex.setProperty(STRING_SORTTIME, 
-				comment.getSortTime().toString());
-		commentVertex.setProperty(STRING_CREATED, currentDate.toString());
+				comment.getSortTime().getMillis());
+		commentVertex.setProperty(STRING_CREATED, currentDate.getMillis());
 		commentVertex.setProperty(STRING_CONTENT, comment.toString());
 		
 		return commentVertex;
@@ -304,6 +640,81 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			position++;
 		}
 		
+		linkActivity(entity, previousActivity, addedActivity,
+				currentStreamEdge, currentActivity);
+		
+		streamIndex.activityInserted(entity, addedActivity, position);
+		
+		return position == 0;
+	}
+	
+	/**
+	 * Adds activity vertices at their chronological locations among the
+	 * stream vertices of an entity, in a single pass along the stream, and
+	 * adjusts the stream count of the entity.
+	 * 
+	 * @param entity The vertex representing the entity.
+	 * @param addedActivities The activities to add to the stream.
+	 * @return true if an added activity is the newest (first) in the stream,
+	 * otherwise false.
+	 */
+	private boolean insertActivities(final Vertex entity,
+			final List<Vertex> addedActivities)
+	{
+		List<Vertex> sortedActivities = new ArrayList<Vertex>(addedActivities);
+		Collections.sort(sortedActivities, activityDateComparator);
+		
+		Edge currentStreamEdge = getStreamEdge(entity);
+		Vertex currentActivity = getNextActivity(entity);
+		Vertex previousActivity = entity;
+		int position = 0;
+		
+		for (Vertex addedActivity : sortedActivities)
+		{
+			// continue along the stream path from the previous insertion,
+			// as the added activities are in stream order
+			while (currentActivity != null && activityDateComparator
+					.compare(addedActivity, currentActivity) > 0)
+			{
+				previousActivity = currentActivity;
+				currentStreamEdge = getStreamEdge(currentActivity);
+				currentActivity = getNextActivity(currentActivity);
+				position++;
+			}
+			
+			currentStreamEdge = linkActivity(entity, previousActivity,
+					addedActivity, currentStreamEdge, currentActivity);
+			
+			// the index is maintained one activity at a time so that its
+			// markers are correct for the stream count at each step
+			streamIndex.activityInserted(entity, addedActivity, position);
+			adjustNumericProperty(entity, STRING_STREAM_COUNT, 1);
+			
+			previousActivity = addedActivity;
+			position++;
+		}
+		
+		return getNextActivity(entity).equals(sortedActivities.get(0));
+	}
+	
+	/**
+	 * Links an activity into a stream between two adjacent nodes.
+	 * 
+	 * @param entity The vertex representing the entity.
+	 * @param previousActivity The activity that is newer than the added one,
+	 * or the entity if there are none.
+	 * @param addedActivity The activity to add to the stream.
+	 * @param currentStreamEdge The edge between the previous activity and the
+	 * current one, or null if there are no older activities.
+	 * @param currentActivity The activity that is older than the added one,
+	 * or null if there are none.
+	 * @return The edge between the added activity and the current one, or null
+	 * if there are no older activities.
+	 */
+	private Edge linkActivity(final Vertex entity,
+			final Vertex previousActivity, final Vertex addedActivity,
+			final Edge currentStreamEdge, final Vertex currentActivity)
+	{
 		String tenantId = (String)entity.getProperty(STRING_TENANT_ID);
 		String entityId = (String)entity.getProperty(STRING_ENTITY_ID);
 		
@@ -314,7 +725,7 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		newEdge.setProperty(STRING_TENANT_ID, tenantId);
 		newEdge.setProperty(STRING_ENTITY_ID, entityId);
 		newEdge.setProperty(STRING_CREATED,
-				DateTime.now(DateTimeZone.UTC).toString());
+				DateTime.now(DateTimeZone.UTC).getMillis());
 		
 		// if there are one or more activities that are older than the added
 		// one, add an edge between the added one and the next older one, and
@@ -325,12 +736,13 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			newEdge.setProperty(STRING_TENANT_ID, tenantId);
 			newEdge.setProperty(STRING_ENTITY_ID, entityId);
 			newEdge.setProperty(STRING_CREATED,
-					DateTime.now(DateTimeZone.UTC).toString());
+					DateTime.now(DateTimeZone.UTC).getMillis());
 			
 			currentStreamEdge.remove();
+			return newEdge;
 		}
 		
-		return position == 0;
+		return null;
 	}
 	
 	/**
@@ -369,7 +781,7 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		newEdge.setProperty(STRING_ENTITY_ID, entityId);
 		newEdge.setProperty(STRING_ACTIVITY_ID, activityId);
 		newEdge.setProperty(STRING_CREATED,
-				DateTime.now(DateTimeZone.UTC).toString());
+				DateTime.now(DateTimeZone.UTC).getMillis());
 		
 		// if there are one or more comments that are older than the added one,
 		// add an edge between the added one and the next older one, and delete
@@ -381,7 +793,7 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			newEdge.setProperty(STRING_ENTITY_ID, entityId);
 			newEdge.setProperty(STRING_ACTIVITY_ID, activityId);
 			newEdge.setProperty(STRING_CREATED,
-					DateTime.now(DateTimeZone.UTC).toString());
+					DateTime.now(DateTimeZone.UTC).getMillis());
 			
 			currentCommentEdge.remove();
 		}
@@ -394,7 +806,7 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			newEdge.setProperty(STRING_TENANT_ID, tenantId);
 			newEdge.setProperty(STRING_ENTITY_ID, userId);
 			newEdge.setProperty(STRING_CREATED,
-					DateTime.now(DateTimeZone.UTC).toString());
+					DateTime.now(DateTimeZone.UTC).getMillis());
 		}
 	}
 	
@@ -468,14 +880,28 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	}
 	
 	/**
-	 * Retrieves the overlay pointing to the given entity vertex.
+	 * Retrieves the overlay in the feed of a user pointing to the given entity
+	 * vertex. Overlays are keyed by tenant, user and entity, so the overlay is
+	 * retrieved directly; for users whose overlays predate the keys, the
+	 * overlays of the entity are searched instead.
 	 * 
+	 * @param user The user vertex for which to find the overlay.
 	 * @param entity The entity vertex for which to find the overlay.
-	 * @param userId The entityId of the user for which to find the overlay.
-	 * @return The overlay vertex for the given entity vertex.
+	 * @return The overlay vertex for the given entity vertex, or null if the
+	 * user does not follow the entity.
 	 */
-	private Vertex getOverlayForEntity(Vertex entity, String userId)
+	private Vertex getOverlayForEntity(Vertex user, Vertex entity)
 	{
+		String userId = user.getProperty(STRING_ENTITY_ID);
+		
+		Vertex keyedOverlay = graph.getVertex(getOverlayVertexId(
+				(String)user.getProperty(STRING_TENANT_ID), userId,
+				(String)entity.getProperty(STRING_ENTITY_ID)));
+		
+		if (null != keyedOverlay ||
+				Boolean.TRUE.equals(user.getProperty(STRING_OVERLAYS_KEYED)))
+			return keyedOverlay;
+		
 		Iterator<Vertex> vertices =
 				entity.getVertices(Direction.IN, STRING_FEED_ENTITY)
 				.iterator();
@@ -492,6 +918,21 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		return null;
 	}
 	
+	/**
+	 * Creates the ID of the overlay for an entity in the feed of a user.
+	 * 
+	 * @param tenantId The tenant of the user and entity.
+	 * @param userId The ID of the user whose feed contains the overlay.
+	 * @param entityId The ID of the entity the overlay points to.
+	 * @return The vertex ID of the overlay.
+	 */
+	static String getOverlayVertexId(String tenantId, String userId,
+			String entityId)
+	{
+		return STRING_OVERLAY_ID_PREFIX + tenantId + STRING_ID_SEPARATOR
+				+ userId + STRING_ID_SEPARATOR + entityId;
+	}
+	
 	/**
 	 * Retrieves the single edge emanating from the given vertex where the edge
 	 * has the given label.
@@ -524,50 +965,123 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	}
 	
 	/**
-	 * Adjusts the feed count for each following user. Also, if updateOrder is
-	 * true, puts an entity into the correct chronological order in the feed
-	 * paths of all the users that follow it. The is used when the first
-	 * activity of an entity changes, which potentially changes its feed order. 
+	 * Puts an entity into the correct chronological order in the feed paths
+	 * of all the users that follow it. This is used when the first activity
+	 * of an entity changes, which potentially changes its feed order. Feed
+	 * counts are computed when read, so other changes to a stream leave the
+	 * followers untouched, as do all changes to the streams of pulled
+	 * entities.
 	 * 
 	 * @param tenantId The ID of the tenant.
-	 * @param entityId The raw ID of the entity.
 	 * @param entity The entity for which followers are updated.
-	 * @param activityChange The number of activities that were added or removed
-	 * from the stream of the entity.
-	 * @param 
 	 */
-	private void updateFeed(String tenantId, String entityId, Vertex entity,
-			int activityChange, boolean updateOrder)
+	private void updateFeed(String tenantId, Vertex entity)
 	{
-		// get all the users that follow the entity
-		Iterable<Vertex> usersInGraph =
-				entity.getVertices(Direction.IN, STRING_FOLLOWS);
+		if (isPulled(entity))
+		{
+			graph.endRead();
+			return;
+		}
 		
-		// copy the users to a separate list to prevent the collection
-		// underlying the iterable getting modified during processing,
-		// and adjust the feed counts while copying
+		// get all the users that follow the entity, copying them to a
+		// separate list to prevent the collection underlying the iterable
+		// getting modified during processing
 		ArrayList<Vertex> users = new ArrayList<Vertex>();
-		for (Vertex user : usersInGraph)
+		for (Vertex user : entity.getVertices(Direction.IN, STRING_FOLLOWS))
 		{
 			users.add(user);
-			adjustNumericProperty(user, STRING_FEED_COUNT, activityChange);
 		}
 		
-		if (updateOrder)
+		graph.endRead();
+		
+		// update each feed under the lock of its user, so that feeds are
+		// updated in parallel with other changes to the entity
+		for (Vertex user : users)
 		{
-			// loop over each user and move the entity to the correct
-			// feed position by un-following and re-following
-			// TODO: is this the best way to do this?
-			String userId;
-			for (Vertex user : users)
+			List<Lock> locks = lockEntities(tenantId,
+					(String)user.getProperty(STRING_ENTITY_ID));
+			try
+			{
+				// the user may have unfollowed since the users were read, and
+				// otherwise the user's overlay for the entity is moved to its
+				// new position, leaving the follow relationship alone
+				Vertex overlay = getOverlayForEntity(user, entity);
+				if (null != overlay)
+				{
+					relinkOverlay(user, overlay, entity, tenantId);
+					feedOrderChanged(user);
+				}
+				
+				graph.commit();
+			}
+			finally
 			{
-				userId = user.getProperty(STRING_ENTITY_ID);
-				DateTime followed = unfollowEntity(tenantId, userId, entityId);
-				followEntity(tenantId, userId, entityId, followed);
+				unlockEntities(locks);
 			}
 		}
 	}
 	
+	/**
+	 * Moves an existing overlay to the correct chronological position in the
+	 * feed of a user after the first activity of its entity has changed. If
+	 * the overlay is still in order with its neighbors nothing is changed.
+	 * An overlay that became newer is placed by searching from the start of
+	 * the feed, which is where new activity usually moves it; one that became
+	 * older is placed by searching onward from its old position.
+	 * 
+	 * @param user The user whose feed contains the overlay.
+	 * @param overlay The overlay to move.
+	 * @param entity The entity the overlay points to.
+	 * @param tenantId The tenant for the feed.
+	 */
+	private void relinkOverlay(final Vertex user, final Vertex overlay,
+			final Vertex entity, final String tenantId)
+	{
+		Vertex previousOverlay = getPreviousOverlay(overlay);
+		Vertex nextOverlay = getNextOverlay(overlay);
+		Vertex searchStart;
+		
+		// overlays of pulled entities are out of order, so the overlay is
+		// only compared with its pushed neighbors
+		Vertex previousPushed = getPreviousPushedOverlay(overlay);
+		Vertex nextPushed = getNextPushedOverlay(overlay);
+		
+		if (null != previousPushed && !user.equals(previousPushed) &&
+				firstActivityDateComparator.compare(
+						entity, getFeedEntity(previousPushed)) < 0)
+		{
+			searchStart = user;
+		}
+		else if (null != nextPushed && firstActivityDateComparator.compare(
+				entity, getFeedEntity(nextPushed)) > 0)
+		{
+			searchStart = nextPushed;
+		}
+		else
+		{
+			return;
+		}
+		
+		String userId = user.getProperty(STRING_ENTITY_ID);
+		long now = DateTime.now(DateTimeZone.UTC).getMillis();
+		
+		// unlink the overlay, closing the gap it leaves
+		ArrayList<Edge> feedEdges = new ArrayList<Edge>();
+		for (Edge edge : overlay.getEdges(Direction.BOTH, STRING_FEED))
+		{
+			feedEdges.add(edge);
+		}
+		for (Edge edge : feedEdges)
+		{
+			edge.remove();
+		}
+		
+		if (null != nextOverlay)
+			addFeedEdge(previousOverlay, nextOverlay, tenantId, userId, now);
+		
+		linkOverlay(searchStart, overlay, entity, tenantId, userId, now);
+	}
+	
 	/**
 	 * Increments or decrements the given numeric property of the given vertex
 	 * by the given amount.
@@ -584,45 +1098,518 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		vertex.setProperty(property, value);
 	}
 	
-	@Override
-	public void deleteActivity(String tenantId, String entityId,
-			String activityId)
+	/**
+	 * Adjusts one of the counters of a vertex that may be deferred, such as
+	 * the follower, like and comment counts. The stream count is not
+	 * deferred, as the stream index relies on it being exact.
+	 * 
+	 * @param vertex The vertex holding the counter.
+	 * @param property The property key of the counter.
+	 * @param amount The amount by which to adjust the counter.
+	 */
+	private void adjustCount(Vertex vertex, String property, int amount)
 	{
-		if (null == tenantId)
-			throw new IllegalArgumentException("tenantId must not be null");
-		
-		if (null == entityId)
-			throw new IllegalArgumentException("entityId must not be null");
-		
-		if (null == activityId)
-			throw new IllegalArgumentException("activityId must not be null");
-		
-		Vertex activityVertex = getActivityVertex(tenantId, entityId,
-				activityId);
-		
-		if (null != activityVertex)
-		{
-			Vertex entityVertex = getOrCreateEntityVertex(tenantId, entityId);
-			
-			boolean firstInStream = false;
-			if (activityId.equals((String)getNextActivity(entityVertex)
-				.getProperty(STRING_ACTIVITY_ID)))
-			{
-				// if the deleted activity was first in its stream, it may have
-				// changed the entity order for feed paths
-				firstInStream = true;
-			}
-			
-			removeComments(activityVertex);
-			
-			removeActivity(activityVertex);
-			
-			adjustNumericProperty(entityVertex, STRING_STREAM_COUNT, -1);
-
-			updateFeed(tenantId, entityId, entityVertex, -1, firstInStream);
-		}
+		graph.getCounters().adjust(vertex, property, amount);
+	}
+	
+	/**
+	 * Reads one of the counters of a vertex that may be deferred, including
+	 * any adjustment not yet stored.
+	 * 
+	 * @param vertex The vertex holding the counter.
+	 * @param property The property key of the counter.
+	 * @return The value of the counter.
+	 */
+	private int getCount(Vertex vertex, String property)
+	{
+		return graph.getCounters().get(vertex, property);
+	}
+	
+	/**
+	 * Computes the number of activities in the feed of a user, which is the
+	 * total of the stream counts of the entities it follows.
+	 * 
+	 * @param user The user for which to count the feed.
+	 * @return The number of activities in the feed of the user.
+	 */
+	private int getFeedCount(Vertex user)
+	{
+		return getFeedCount(getFeedSummary(user));
+	}
+	
+	/**
+	 * Computes the number of activities in a feed from its summary, adding
+	 * the stream counts of the pulled entities it follows.
+	 * 
+	 * @param summary The feed summary of the user.
+	 * @return The number of activities in the feed of the user.
+	 */
+	private int getFeedCount(FeedSummary summary)
+	{
+		int count = summary.count;
+		for (Object entityId : summary.pulledEntityIds)
+			count += getPulledStream(entityId).count;
+		return count;
+	}
+	
+	/**
+	 * Retrieves the pulled entities followed by a user, whose streams are
+	 * merged into the feed of the user when it is read.
+	 * 
+	 * @param summary The feed summary of the user.
+	 * @return The pulled entity vertices followed by the user.
+	 */
+	private List<Vertex> getPulledEntities(FeedSummary summary)
+	{
+		List<Vertex> entities = new ArrayList<Vertex>();
+		for (Object entityId : summary.pulledEntityIds)
+		{
+			Vertex entity = graph.getVertex(entityId);
+			if (null != entity)
+				entities.add(entity);
+		}
+		return entities;
+	}
+	
+	/**
+	 * Summarizes the entities followed by a user. Summaries are cached until
+	 * the user's following or the stream of a pushed entity it follows
+	 * changes, so that posting to an entity need not update the count of
+	 * every follower, and reading a feed need not visit every followed entity
+	 * to find those that are pulled. The streams of pulled entities are
+	 * summarized separately.
+	 * 
+	 * @param user The user for which to summarize the feed.
+	 * @return The summary of the feed of the user.
+	 */
+	private FeedSummary getFeedSummary(Vertex user)
+	{
+		Object userId = user.getId();
+		long created = getTimeProperty(user, STRING_CREATED);
+		
+		FeedSummary cached = feedSummaries.getIfPresent(userId);
+		if (null != cached && created == cached.created)
+			return cached;
+		
+		// read the stamp first, so that a change committed while summarizing
+		// leaves the summary uncached
+		long stamp = feedStamps.get(getFeedStripe(userId));
+		
+		Object token = new Object();
+		int count = 0;
+		long streamVersion = 0;
+		List<Object> entityIds = new ArrayList<Object>();
+		List<Object> pulledEntityIds = new ArrayList<Object>();
+		for (Vertex entity : user.getVertices(Direction.OUT, STRING_FOLLOWS))
+		{
+			// registered before the stream is read, so that a change to the
+			// stream committed after the read invalidates the summary
+			addFeedDependent(entity.getId(), token, userId);
+			entityIds.add(entity.getId());
+			
+			if (isPulled(entity))
+			{
+				pulledEntityIds.add(entity.getId());
+				continue;
+			}
+			
+			count += getStreamCount(entity);
+			streamVersion = Math.max(streamVersion,
+					getVersion(entity, STRING_STREAM_VERSION));
+		}
 		
-		graph.commit();
+		FeedSummary summary = new FeedSummary(token, created, count,
+				streamVersion, entityIds, pulledEntityIds);
+		feedSummaries.put(userId, summary);
+		
+		// an invalidation may have been missed between the check and the put
+		if (stamp != feedStamps.get(getFeedStripe(userId)))
+			feedSummaries.invalidate(userId);
+		
+		return summary;
+	}
+	
+	/**
+	 * Summarizes the stream of a pulled entity for the feeds that follow it.
+	 * 
+	 * @param entityId The vertex ID of the pulled entity.
+	 * @return The summary of the stream, which is empty if the entity has
+	 * been removed.
+	 */
+	private PulledStream getPulledStream(Object entityId)
+	{
+		PulledStream cached = pulledStreams.getIfPresent(entityId);
+		if (null != cached)
+			return cached;
+		
+		// read the stamp first, so that a change committed while reading
+		// leaves the stream uncached
+		long stamp = feedStamps.get(getFeedStripe(entityId));
+		
+		Vertex entity = graph.getVertex(entityId);
+		PulledStream stream = null == entity ? new PulledStream(0, 0) :
+			new PulledStream(getStreamCount(entity),
+					getVersion(entity, STRING_STREAM_VERSION));
+		pulledStreams.put(entityId, stream);
+		
+		// an invalidation may have been missed between the check and the put
+		if (stamp != feedStamps.get(getFeedStripe(entityId)))
+			pulledStreams.invalidate(entityId);
+		
+		return stream;
+	}
+	
+	/**
+	 * Reads the number of activities in the stream of an entity.
+	 */
+	private int getStreamCount(Vertex entity)
+	{
+		Object streamCount = entity.getProperty(STRING_STREAM_COUNT);
+		return streamCount instanceof Number ?
+				((Number)streamCount).intValue() : 0;
+	}
+	
+	/**
+	 * Discards the cached feed summary and feed pages of a user.
+	 * 
+	 * @param userId The vertex ID of the user.
+	 */
+	private void invalidateFeed(Object userId)
+	{
+		feedStamps.incrementAndGet(getFeedStripe(userId));
+		feedSummaries.invalidate(userId);
+		
+		FeedCache cache = feedCache;
+		if (null != cache)
+			cache.invalidateUser(userId);
+	}
+	
+	/**
+	 * Discards the cached feed summaries that include an entity.
+	 * 
+	 * @param entityId The vertex ID of the entity.
+	 */
+	private void invalidateFeedDependents(Object entityId)
+	{
+		Map<Object, Object> dependents = feedDependents.remove(entityId);
+		if (null == dependents)
+			return;
+		
+		for (Object userId : new HashSet<Object>(dependents.values()))
+			invalidateFeed(userId);
+	}
+	
+	/**
+	 * Records that a feed summary of a user includes an entity.
+	 * 
+	 * @param entityId The vertex ID of the entity.
+	 * @param token The token of the summary.
+	 * @param userId The vertex ID of the user.
+	 */
+	private void addFeedDependent(Object entityId, final Object token,
+			final Object userId)
+	{
+		feedDependents.compute(entityId, new BiFunction<Object,
+				Map<Object, Object>, Map<Object, Object>>()
+		{
+			@Override
+			public Map<Object, Object> apply(Object key,
+					Map<Object, Object> dependents)
+			{
+				// maps are only modified within compute, which locks the key
+				Map<Object, Object> updated = null == dependents ?
+						new HashMap<Object, Object>() : dependents;
+				updated.put(token, userId);
+				return updated;
+			}
+		});
+	}
+	
+	/**
+	 * Records that a dropped feed summary no longer includes an entity.
+	 * 
+	 * @param entityId The vertex ID of the entity.
+	 * @param token The token of the summary.
+	 */
+	private void removeFeedDependent(Object entityId, final Object token)
+	{
+		feedDependents.computeIfPresent(entityId, new BiFunction<Object,
+				Map<Object, Object>, Map<Object, Object>>()
+		{
+			@Override
+			public Map<Object, Object> apply(Object key,
+					Map<Object, Object> dependents)
+			{
+				dependents.remove(token);
+				return dependents.isEmpty() ? null : dependents;
+			}
+		});
+	}
+	
+	private int getFeedStripe(Object vertexId)
+	{
+		return (vertexId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES;
+	}
+	
+	/**
+	 * Determines whether new activities of an entity are merged into feeds
+	 * when read, rather than pushed to the feeds of its followers.
+	 * 
+	 * @param entity The entity vertex.
+	 * @return true if the entity is pulled.
+	 */
+	private boolean isPulled(Vertex entity)
+	{
+		return Boolean.TRUE.equals(entity.getProperty(STRING_PULLED));
+	}
+	
+	/**
+	 * Marks an entity as pulled if it has more followers than the pull
+	 * threshold. Must be called while holding the lock of the entity.
+	 * 
+	 * @param entity The entity vertex.
+	 * @return true if the entity was marked, or false if it was already
+	 * pulled or is still pushed.
+	 */
+	private boolean markPulled(Vertex entity)
+	{
+		if (feedPullThreshold > 0 && !isPulled(entity) &&
+				getCount(entity, STRING_FOLLOWER_COUNT) > feedPullThreshold)
+		{
+			entity.setProperty(STRING_PULLED, true);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Records a change to the stream of an entity, or to whether it is
+	 * pulled, so that the feed counts and cached feed pages of its followers
+	 * are recomputed once the change is committed. The followers of a pushed
+	 * entity are found through the summaries that include it rather than
+	 * through its follow edges, so only those with cached feeds are visited.
+	 * A pulled entity is summarized on its own, and the pages that include
+	 * it check its stamp, so its followers are not visited at all.
+	 * 
+	 * @param entity The entity whose stream changed.
+	 * @param newlyPulled true if the entity was marked as pulled by the
+	 * change.
+	 */
+	private void streamChanged(Vertex entity, final boolean newlyPulled)
+	{
+		final Object entityId = entity.getId();
+		final boolean pulled = isPulled(entity);
+		graph.afterCommit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				feedStamps.incrementAndGet(getFeedStripe(entityId));
+				pulledStreams.invalidate(entityId);
+				
+				// summaries of an entity that was pushed count its stream,
+				// and the cached pages of each follower go with its summary
+				if (!pulled || newlyPulled)
+				{
+					invalidateFeedDependents(entityId);
+					return;
+				}
+				
+				FeedCache cache = feedCache;
+				if (null != cache)
+					cache.invalidatePulledEntity(entityId);
+			}
+		});
+	}
+	
+	/**
+	 * Records a change to the entities followed by a user, so that the feed
+	 * count and cached feed pages of the user are recomputed once the change
+	 * is committed. An entity marked as pulled by the change is recorded
+	 * separately, as a change that affects all of its followers.
+	 * 
+	 * @param user The user whose following changed.
+	 */
+	private void followingChanged(Vertex user)
+	{
+		final Object userId = user.getId();
+		graph.afterCommit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				invalidateFeed(userId);
+			}
+		});
+	}
+	
+	/**
+	 * Records a change to the order of the feed of a user, so that its cached
+	 * feed pages are recomputed once the change is committed. The feed count
+	 * is unaffected.
+	 * 
+	 * @param user The user whose feed was reordered.
+	 */
+	private void feedOrderChanged(Vertex user)
+	{
+		final FeedCache cache = feedCache;
+		if (null == cache)
+			return;
+		
+		final Object userId = user.getId();
+		graph.afterCommit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				cache.invalidateUser(userId);
+			}
+		});
+	}
+	
+	/**
+	 * Records a change to a vertex by giving it a new version stamp. Stamps
+	 * are based on the current time in microseconds, but always exceed both
+	 * the previous stamp of the vertex and every stamp already issued, so
+	 * that the latest of several stamps changes whenever any of them does.
+	 * 
+	 * @param vertex The vertex that changed.
+	 * @param key The key of the version property.
+	 */
+	private void stampVersion(Vertex vertex, String key)
+	{
+		long previous = getVersion(vertex, key);
+		long now = DateTime.now(DateTimeZone.UTC).getMillis() * 1000;
+		long last;
+		long version;
+		do
+		{
+			last = lastVersion.get();
+			version = Math.max(now, Math.max(last, previous) + 1);
+		}
+		while (!lastVersion.compareAndSet(last, version));
+		
+		vertex.setProperty(key, version);
+	}
+	
+	/**
+	 * Reads a version stamp of a vertex.
+	 * 
+	 * @param vertex The vertex, which may be null.
+	 * @param key The key of the version property.
+	 * @return The version stamp, or 0 if the vertex has not been stamped.
+	 */
+	private long getVersion(Vertex vertex, String key)
+	{
+		Object value = null == vertex ? null : vertex.getProperty(key);
+		return value instanceof Number ? ((Number)value).longValue() : 0;
+	}
+	
+	/**
+	 * Computes the version of the feed of a user, which is the latest of its
+	 * own following changes and the stream changes of the entities it
+	 * follows. Any change to one of them is stamped later than all of
+	 * those, so the latest of them changes with every change to the feed.
+	 * The stream changes come from the cached summaries, so once they are
+	 * cached only the user vertex is read.
+	 * 
+	 * @param user The user vertex.
+	 * @return The version stamp of the feed.
+	 */
+	private long getFeedVersion(Vertex user)
+	{
+		FeedSummary summary = getFeedSummary(user);
+		long version = Math.max(getVersion(user, STRING_FOLLOW_VERSION),
+				summary.streamVersion);
+		for (Object entityId : summary.pulledEntityIds)
+			version = Math.max(version, getPulledStream(entityId).version);
+		return version;
+	}
+	
+	/**
+	 * Reads a time property of the given element as epoch milliseconds. Times
+	 * are stored as longs, but elements written by earlier versions hold an
+	 * ISO-8601 string, which is parsed until the element has been migrated.
+	 * 
+	 * @param element The vertex or edge from which to read the time.
+	 * @param key The key of the time property, e.g. SortTime or Created.
+	 * @return The time in milliseconds since the epoch.
+	 */
+	private long getTimeProperty(Element element, String key)
+	{
+		Object value = element.getProperty(key);
+		
+		if (value instanceof Number)
+			return ((Number)value).longValue();
+		
+		return DateTime.parse((String)value).getMillis();
+	}
+	
+	/**
+	 * Reads a time property of the given element as a UTC DateTime.
+	 * 
+	 * @param element The vertex or edge from which to read the time.
+	 * @param key The key of the time property, e.g. SortTime or Created.
+	 * @return The DateTime value of the property.
+	 */
+	private DateTime getDateTimeProperty(Element element, String key)
+	{
+		return new DateTime(getTimeProperty(element, key), DateTimeZone.UTC);
+	}
+	
+	@Override
+	public void deleteActivity(String tenantId, String entityId,
+			String activityId)
+	{
+		if (null == tenantId)
+			throw new IllegalArgumentException("tenantId must not be null");
+		
+		if (null == entityId)
+			throw new IllegalArgumentException("entityId must not be null");
+		
+		if (null == activityId)
+			throw new IllegalArgumentException("activityId must not be null");
+		
+		Vertex entityVertex = null;
+		boolean firstInStream = false;
+		
+		List<Lock> locks = lockEntities(tenantId, entityId);
+		try
+		{
+			Vertex activityVertex = getActivityVertex(tenantId, entityId,
+					activityId);
+			
+			if (null != activityVertex)
+			{
+				entityVertex = getOrCreateEntityVertex(tenantId, entityId);
+				
+				if (activityId.equals((String)getNextActivity(entityVertex)
+					.getProperty(STRING_ACTIVITY_ID)))
+				{
+					// if the deleted activity was first in its stream, it may
+					// have changed the entity order for feed paths
+					firstInStream = true;
+				}
+				
+				removeComments(activityVertex);
+				
+				removeActivity(entityVertex, activityVertex);
+				
+				adjustNumericProperty(entityVertex, STRING_STREAM_COUNT, -1);
+				stampVersion(entityVertex, STRING_STREAM_VERSION);
+				streamChanged(entityVertex, false);
+			}
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
+		}
+		
+		if (firstInStream)
+			updateFeed(tenantId, entityVertex);
 	}
 	
 	/**
@@ -643,12 +1630,17 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	 * Deletes the given activity vertex from its stream.  The continuity of the
 	 * stream is maintained.
 	 * 
+	 * @param entityVertex The vertex representing the entity.
 	 * @param activityVertex The vertex representing the activity.
 	 */
-	private void removeActivity(Vertex activityVertex)
+	private void removeActivity(Vertex entityVertex, Vertex activityVertex)
 	{
+		streamIndex.activityRemoving(entityVertex, activityVertex);
+		removeLikes(activityVertex);
+		
 		Vertex followingActivity = getNextActivity(activityVertex);
 		Vertex previousActivity = getPreviousActivity(activityVertex);
+		graph.getCounters().discard(activityVertex);
 		activityVertex.remove();
 		
 		if (null != followingActivity)
@@ -660,12 +1652,32 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			newEdge.setProperty(STRING_ENTITY_ID, previousActivity
 					.getProperty(STRING_ENTITY_ID));
 			newEdge.setProperty(STRING_CREATED,
-					DateTime.now(DateTimeZone.UTC).toString());
+					DateTime.now(DateTimeZone.UTC).getMillis());
 		}
 		
 		activityVertex = null;
 	}
 
+	/**
+	 * Deletes the keyed like vertices of the given activity, so that they do
+	 * not survive an activity later added with the same ID.
+	 * 
+	 * @param activityVertex The vertex representing the activity.
+	 */
+	private void removeLikes(Vertex activityVertex)
+	{
+		List<Vertex> likeVertices = new ArrayList<Vertex>();
+		for (Vertex likeVertex :
+			activityVertex.getVertices(Direction.IN, STRING_LIKES))
+		{
+			if (STRING_LIKE_TYPE.equals(likeVertex.getProperty(STRING_TYPE)))
+				likeVertices.add(likeVertex);
+		}
+		
+		for (Vertex likeVertex : likeVertices)
+			likeVertex.remove();
+	}
+	
 	/**
 	 * Deletes the given comment vertex. The continuity of the comments is
 	 * maintained.
@@ -689,7 +1701,7 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			newEdge.setProperty(STRING_ACTIVITY_ID, previousComment
 					.getProperty(STRING_ACTIVITY_ID));
 			newEdge.setProperty(STRING_CREATED,
-					DateTime.now(DateTimeZone.UTC).toString());
+					DateTime.now(DateTimeZone.UTC).getMillis());
 		}
 		
 		commentVertex = null;
@@ -699,40 +1711,175 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	public ActivityStreamsCollection getStream(String tenantId, String entityId,
 			int startIndex, int activitiesToReturn)
 	{
-		// since we need to advance from the beginning of the stream,
-		// this lets us keep track of where we are
-		int streamPosition = 0;
 		// once we reach the number of activities to return, we can stop
 		int foundActivityCount = 0;
 		
 		List<Vertex> activityVertices = new ArrayList<Vertex>();
 		
-		Vertex entityVertex = getOrCreateEntityVertex(tenantId, entityId);
+		Vertex entityVertex = getEntityVertex(tenantId, entityId);
+		if (null == entityVertex)
+			return createEmptyCollection();
 		
-		Vertex currentActivity = getNextActivity(entityVertex);
+		// the stream index jumps close to the start index, so that only the
+		// remaining distance to it is walked
+		Vertex currentActivity = streamIndex.seek(entityVertex, startIndex);
 		
-		// advance along the stream, collecting vertices after we get to the
-		// start index, and stopping when we have enough to return or run out
-		// of stream
+		// advance along the stream, collecting vertices and stopping when we
+		// have enough to return or run out of stream
 		while (null != currentActivity &&
 				foundActivityCount < activitiesToReturn)
 		{
-			if (streamPosition >= startIndex)
-			{
-				activityVertices.add(currentActivity);
-				foundActivityCount++;
-			}
+			activityVertices.add(currentActivity);
+			foundActivityCount++;
 			currentActivity = getNextActivity(currentActivity);
-			streamPosition++;
 		}
 		
-		graph.commit();
+		graph.endRead();
 		
 		// we only have the vertices, the actual activities need to be created
 		return createCollection(activityVertices,
 				(int)entityVertex.getProperty(STRING_STREAM_COUNT));
 	}
 	
+	@Override
+	public ActivityStreamsCollection getStream(String tenantId, String entityId,
+			PageCursor cursor, int activitiesToReturn)
+	{
+		if (null == cursor)
+			return getStream(tenantId, entityId, 0, activitiesToReturn);
+		
+		Vertex entityVertex = getEntityVertex(tenantId, entityId);
+		if (null == entityVertex)
+			return createEmptyCollection();
+		
+		List<Vertex> activityVertices = getStreamPage(
+				tenantId, entityVertex, cursor, activitiesToReturn);
+		
+		graph.endRead();
+		
+		return createCollection(activityVertices,
+				(int)entityVertex.getProperty(STRING_STREAM_COUNT));
+	}
+	
+	/**
+	 * Retrieves the activities of a stream that are adjacent to a cursor. If
+	 * the activity at the cursor is in the stream it is found directly,
+	 * otherwise the stream is positioned by the sort time of the cursor.
+	 * 
+	 * @param tenantId The tenant of the entity.
+	 * @param entityVertex The entity whose stream is paged.
+	 * @param cursor The position and direction of the page.
+	 * @param activitiesToReturn The maximum number of activities to retrieve.
+	 * @return The activity vertices of the page, newest first.
+	 */
+	private List<Vertex> getStreamPage(String tenantId, Vertex entityVertex,
+			PageCursor cursor, int activitiesToReturn)
+	{
+		String entityId = entityVertex.getProperty(STRING_ENTITY_ID);
+		
+		Vertex anchor = null;
+		if (entityId.equals(cursor.getEntityId()) &&
+				null != cursor.getItemId())
+		{
+			anchor = getActivityVertex(tenantId, entityId,
+					cursor.getItemId());
+		}
+		
+		Vertex boundary = null;
+		if (null == anchor)
+		{
+			// feeds order activities with the same sort time by entity, so
+			// those of a later entity than the cursor's come after it
+			long sortTime = cursor.getSortTime();
+			if (entityId.compareTo(cursor.getEntityId()) > 0 &&
+					sortTime < Long.MAX_VALUE)
+				sortTime++;
+			boundary = streamIndex.seekOlderThan(entityVertex, sortTime);
+		}
+		
+		return getPageVertices(entityVertex, STRING_STREAM, anchor, boundary,
+				cursor.isBefore(), activitiesToReturn);
+	}
+	
+	/**
+	 * Collects the items of a stream or comment path that are adjacent to a
+	 * cursor position, following the path towards older items for an after
+	 * cursor, or towards newer items for a before cursor.
+	 * 
+	 * @param head The entity or activity at the start of the path.
+	 * @param label The edge label of the path.
+	 * @param anchor The item at the cursor, or null if it no longer exists.
+	 * @param boundary The newest item older than the cursor sort time, used
+	 * when there is no anchor. Null if no item is older.
+	 * @param before true to collect newer items, false for older items.
+	 * @param count The maximum number of items to collect.
+	 * @return The collected vertices, newest first.
+	 */
+	private List<Vertex> getPageVertices(Vertex head, String label,
+			Vertex anchor, Vertex boundary, boolean before, int count)
+	{
+		Vertex current;
+		
+		if (null != anchor)
+		{
+			current = before ? getPreviousVertex(anchor, label) :
+				getNextVertex(anchor, label);
+		}
+		else if (!before)
+		{
+			current = boundary;
+		}
+		else if (null != boundary)
+		{
+			current = getPreviousVertex(boundary, label);
+		}
+		else
+		{
+			// every item is at or newer than the cursor, so start at the end
+			current = head;
+			Vertex next = getNextVertex(current, label);
+			while (null != next)
+			{
+				current = next;
+				next = getNextVertex(current, label);
+			}
+		}
+		
+		List<Vertex> vertices = new ArrayList<Vertex>();
+		
+		while (null != current && !head.equals(current) &&
+				vertices.size() < count)
+		{
+			vertices.add(current);
+			current = before ? getPreviousVertex(current, label) :
+				getNextVertex(current, label);
+		}
+		
+		if (before)
+			Collections.reverse(vertices);
+		
+		return vertices;
+	}
+	
+	/**
+	 * Retrieves the next vertex along a path with the given edge label.
+	 */
+	private Vertex getNextVertex(Vertex node, String label)
+	{
+		Edge edge = getSingleOutgoingEdge(node, label);
+		return null == edge ? null : edge.getVertex(Direction.IN);
+	}
+	
+	/**
+	 * Retrieves the previous vertex along a path with the given edge label.
+	 */
+	private Vertex getPreviousVertex(Vertex node, String label)
+	{
+		Iterator<Vertex> vertices =
+				node.getVertices(Direction.IN, label).iterator();
+		return vertices.hasNext() ? vertices.next() : null;
+	}
+	
 	/**
 	 * Retrieves the activity after the given node by following the outgoing
 	 * stream edge. The node can be an entity (including users) or an activity.
@@ -770,6 +1917,17 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		return activity;
 	}
 	
+	/**
+	 * Creates an empty collection, for reads of entities that do not exist.
+	 * 
+	 * @return A collection with no items and a total of zero.
+	 */
+	private ActivityStreamsCollection createEmptyCollection()
+	{
+		graph.endRead();
+		return createCollection(Collections.<Vertex>emptyList(), 0);
+	}
+	
 	/**
 	 * Turns a collection of activity streams object containing vertices into an
 	 * ActivityStreamsCollection.
@@ -783,13 +1941,38 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	private ActivityStreamsCollection createCollection(
 			Collection<Vertex> vertices, int totalItems)
 	{
-		StringBuilder sb = new StringBuilder("{\"totalItems\":");
-		sb.append(totalItems);
-		sb.append(",\"items\":[");
-		sb.append(Joiner.on(",").join(getActivityStreamsContent(vertices)));
-		sb.append("]}");
+		// the stored content is kept as is, so the collection is only parsed
+		// if it is modified
+		ActivityStreamsCollection collection = new ActivityStreamsCollection(
+				totalItems, getActivityStreamsContent(vertices));
 		
-		return new ActivityStreamsCollection(sb.toString());
+		// the neighbouring pages are positioned at the first and last items
+		if (!vertices.isEmpty())
+		{
+			collection.setPrevCursor(
+					getCursorToken(Iterables.getFirst(vertices, null)));
+			collection.setNextCursor(
+					getCursorToken(Iterables.getLast(vertices)));
+		}
+		
+		return collection;
+	}
+	
+	/**
+	 * Creates the cursor token for the position of an activity or comment.
+	 * 
+	 * @param vertex The activity or comment vertex.
+	 * @return A cursor token positioned at the given vertex.
+	 */
+	private String getCursorToken(Vertex vertex)
+	{
+		String itemId = vertex.getProperty(STRING_COMMENT_ID);
+		if (null == itemId)
+			itemId = vertex.getProperty(STRING_ACTIVITY_ID);
+		
+		return new PageCursor(getTimeProperty(vertex, STRING_SORTTIME),
+				(String)vertex.getProperty(STRING_ENTITY_ID), itemId, false)
+				.getToken();
 	}
 	
 	/**
@@ -837,35 +2020,143 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		Vertex user = getOrCreateEntityVertex(tenantId, userId);
 		Vertex entity = getOrCreateEntityVertex(tenantId, entityId);
 		
-		for (Edge edge : user.getEdges(Direction.OUT, STRING_FOLLOWS))
+		List<Lock> locks = lockEntities(tenantId, userId, entityId);
+		try
 		{
-			if (edge.getVertex(Direction.IN).getId().equals(entity.getId()))
+			DateTime existingDateTime = getDateTimeFollowed(user, entity);
+			if (null != existingDateTime)
 			{
-				DateTime existingDateTime =
-						DateTime.parse((String)edge
-								.getProperty(STRING_CREATED));
-				
 				graph.commit();
 				return existingDateTime;
 			}
+			
+			logger.debug("No follow relationship found for userID: {} " +
+					"to entityID: {}. Creating.", userId, entityId);
+			Edge followEdge = user.addEdge(STRING_FOLLOWS, entity);
+			followEdge.setProperty(STRING_TENANT_ID, tenantId);
+			followEdge.setProperty(STRING_CREATED, followed.getMillis());
+			
+			insertFeedEntity(user, entity, tenantId, followed);
+			
+			adjustCount(user, STRING_FOLLOWING_COUNT, 1);
+			adjustCount(entity, STRING_FOLLOWER_COUNT, 1);
+			stampVersion(user, STRING_FOLLOW_VERSION);
+			stampVersion(entity, STRING_FOLLOW_VERSION);
+			followingChanged(user);
+			if (markPulled(entity))
+				streamChanged(entity, true);
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
 		}
 		
-		logger.debug("No follow relationship found for userID: {} " +
-				"to entityID: {}. Creating.", userId, entityId);
-		Edge followEdge = user.addEdge(STRING_FOLLOWS, entity);
-		followEdge.setProperty(STRING_TENANT_ID, tenantId);
-		followEdge.setProperty(STRING_CREATED, followed.toString());
+		return followed;
+	}
+	
+	@Override
+	public Map<String, DateTime> followEntities(String tenantId,
+			String userId, List<String> entityIds, DateTime followed)
+	{
+		if (null == tenantId)
+		{
+			throw new IllegalArgumentException("tenantId must not be null");
+		}
+		
+		if (null == userId)
+		{
+			throw new IllegalArgumentException("userId must not be null");
+		}
 		
-		insertFeedEntity(user, entity, tenantId);
+		if (null == entityIds)
+		{
+			throw new IllegalArgumentException("entityIds must not be null");
+		}
 		
-		adjustNumericProperty(user, STRING_FEED_COUNT,
-				(int)entity.getProperty(STRING_STREAM_COUNT));
-		adjustNumericProperty(user, STRING_FOLLOWING_COUNT, 1);
-		adjustNumericProperty(entity, STRING_FOLLOWER_COUNT, 1);
+		if (entityIds.contains(null))
+		{
+			throw new IllegalArgumentException(
+					"entityIds must not contain null");
+		}
 		
-		graph.commit();
+		if (null == followed)
+		{
+			followed = DateTime.now(DateTimeZone.UTC);
+		}
 		
-		return followed;
+		Map<String, DateTime> followDates =
+				new LinkedHashMap<String, DateTime>();
+		if (entityIds.isEmpty())
+			return followDates;
+		
+		Vertex user = getOrCreateEntityVertex(tenantId, userId);
+		Map<String, Vertex> entities = new LinkedHashMap<String, Vertex>();
+		for (String entityId : entityIds)
+		{
+			if (!entities.containsKey(entityId))
+				entities.put(entityId,
+						getOrCreateEntityVertex(tenantId, entityId));
+		}
+		
+		List<String> lockIds = new ArrayList<String>(entities.keySet());
+		lockIds.add(userId);
+		List<Lock> locks = lockEntities(tenantId,
+				lockIds.toArray(new String[lockIds.size()]));
+		try
+		{
+			long now = DateTime.now(DateTimeZone.UTC).getMillis();
+			List<Vertex> newEntities = new ArrayList<Vertex>();
+			
+			for (Map.Entry<String, Vertex> entry : entities.entrySet())
+			{
+				Vertex entity = entry.getValue();
+				DateTime existingDateTime = getDateTimeFollowed(user, entity);
+				if (null != existingDateTime)
+				{
+					followDates.put(entry.getKey(), existingDateTime);
+					continue;
+				}
+				
+				Edge followEdge = user.addEdge(STRING_FOLLOWS, entity);
+				followEdge.setProperty(STRING_TENANT_ID, tenantId);
+				followEdge.setProperty(STRING_CREATED, followed.getMillis());
+				
+				adjustCount(user, STRING_FOLLOWING_COUNT, 1);
+				adjustCount(entity, STRING_FOLLOWER_COUNT, 1);
+				stampVersion(user, STRING_FOLLOW_VERSION);
+				stampVersion(entity, STRING_FOLLOW_VERSION);
+				if (markPulled(entity))
+					streamChanged(entity, true);
+				
+				newEntities.add(entity);
+				followDates.put(entry.getKey(), followed);
+			}
+			
+			// link the new overlays in feed order, each searching onward from
+			// the one before, so the feed is walked once
+			Collections.sort(newEntities, firstActivityDateComparator);
+			Vertex previousOverlay = user;
+			for (Vertex entity : newEntities)
+			{
+				Vertex overlay =
+						createOverlay(user, entity, tenantId, followed, now);
+				linkOverlay(previousOverlay, overlay, entity, tenantId, userId,
+						now);
+				previousOverlay = overlay;
+			}
+			
+			followingChanged(user);
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
+		}
+		
+		return followDates;
 	}
 	
 	@Override
@@ -887,25 +2178,120 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			throw new IllegalArgumentException("entityId must not be null");
 		}
 		
-		Vertex user = getOrCreateEntityVertex(tenantId, userId);
-		Vertex entity = getOrCreateEntityVertex(tenantId, entityId);
-		DateTime followed = null;
+		Vertex user = getEntityVertex(tenantId, userId);
+		Vertex entity = getEntityVertex(tenantId, entityId);
+		if (null == user || null == entity)
+		{
+			graph.endRead();
+			return null;
+		}
+		
+		DateTime followed;
+		
+		List<Lock> locks = lockEntities(tenantId, userId, entityId);
+		try
+		{
+			followed = removeFollow(user, entity, tenantId, entityId);
+			followingChanged(user);
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
+		}
+		
+		return followed;
+	}
+	
+	@Override
+	public Map<String, DateTime> unfollowEntities(String tenantId,
+			String userId, List<String> entityIds)
+	{
+		if (null == tenantId)
+		{
+			throw new IllegalArgumentException("tenantId must not be null");
+		}
 		
-		// remove the follow relationship
-		for (Edge edge: entity.getEdges(Direction.IN, STRING_FOLLOWS))
+		if (null == userId)
 		{
-			if (edge.getVertex(Direction.OUT).getId().equals(user.getId()))
+			throw new IllegalArgumentException("userId must not be null");
+		}
+		
+		if (null == entityIds)
+		{
+			throw new IllegalArgumentException("entityIds must not be null");
+		}
+		
+		if (entityIds.contains(null))
+		{
+			throw new IllegalArgumentException(
+					"entityIds must not contain null");
+		}
+		
+		Map<String, DateTime> followDates =
+				new LinkedHashMap<String, DateTime>();
+		
+		Vertex user = getEntityVertex(tenantId, userId);
+		if (null == user || entityIds.isEmpty())
+			return followDates;
+		
+		List<String> lockIds = new ArrayList<String>(entityIds);
+		lockIds.add(userId);
+		List<Lock> locks = lockEntities(tenantId,
+				lockIds.toArray(new String[lockIds.size()]));
+		try
+		{
+			for (String entityId : entityIds)
 			{
-				followed = 
-					DateTime.parse((String)edge.getProperty(STRING_CREATED));
-				edge.remove();
+				Vertex entity = getEntityVertex(tenantId, entityId);
+				if (null == entity || followDates.containsKey(entityId))
+					continue;
+				
+				DateTime followed =
+						removeFollow(user, entity, tenantId, entityId);
+				if (null != followed)
+					followDates.put(entityId, followed);
 			}
+			
+			followingChanged(user);
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
 		}
 		
+		return followDates;
+	}
+	
+	/**
+	 * Removes the follow relationship between a user and an entity, along
+	 * with the overlay for the entity in the feed of the user. The caller must
+	 * hold the locks of both and commit.
+	 * 
+	 * @param user The vertex of the user.
+	 * @param entity The vertex of the entity.
+	 * @param tenantId The tenant of the user and entity.
+	 * @param entityId The ID of the entity.
+	 * @return The date the user followed the entity, or null if the user did
+	 * not follow it.
+	 */
+	private DateTime removeFollow(Vertex user, Vertex entity, String tenantId,
+			String entityId)
+	{
+		DateTime followed = getDateTimeFollowed(user, entity);
+		
 		if (null != followed)
 		{
+			// remove the follow relationship
+			Edge followEdge = getFollowEdge(user, entity);
+			if (null != followEdge)
+				followEdge.remove();
+			
 			// remove the entity from the user feed by removing the overlay
-			Vertex currentOverlay = getOverlayForEntity(entity, userId);
+			Vertex currentOverlay = getOverlayForEntity(user, entity);
 			Vertex previousOverlay = getPreviousOverlay(currentOverlay);
 			Vertex nextOverlay = getNextOverlay(currentOverlay);
 			currentOverlay.remove();
@@ -913,20 +2299,20 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			// replace the missing edge for the feed if necessary
 			if (null != nextOverlay)
 			{
-				Edge newEdge = previousOverlay.addEdge(STRING_FEED, nextOverlay);
+				Edge newEdge =
+						previousOverlay.addEdge(STRING_FEED, nextOverlay);
 				newEdge.setProperty(STRING_TENANT_ID, tenantId);
 				newEdge.setProperty(STRING_ENTITY_ID, entityId);
 				newEdge.setProperty(STRING_CREATED,
-						DateTime.now(DateTimeZone.UTC).toString());
+						DateTime.now(DateTimeZone.UTC).getMillis());
 			}
 			
-			adjustNumericProperty(user, STRING_FEED_COUNT,
-					-(int)entity.getProperty(STRING_STREAM_COUNT));
-			adjustNumericProperty(user, STRING_FOLLOWING_COUNT, -1);
-			adjustNumericProperty(entity, STRING_FOLLOWER_COUNT, -1);			
+			adjustCount(user, STRING_FOLLOWING_COUNT, -1);
+			adjustCount(entity, STRING_FOLLOWER_COUNT, -1);
+			stampVersion(user, STRING_FOLLOW_VERSION);
+			stampVersion(entity, STRING_FOLLOW_VERSION);
 		}
 		
-		graph.commit();
 		return followed;
 	}
 	
@@ -934,23 +2320,74 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	public DateTime getDateTimeUserFollowedEntity(String tenantId,
 			String userId, String entityId)
 	{
-		Vertex user = getOrCreateEntityVertex(tenantId, userId);
-		Vertex entity = getOrCreateEntityVertex(tenantId, entityId);
-		
-		for (Edge edge : user.getEdges(Direction.OUT, STRING_FOLLOWS))
+		try
 		{
-			if (edge.getVertex(Direction.IN).getId().equals(entity.getId()))
-			{
-				DateTime followDate =
-					DateTime.parse((String)edge.getProperty(STRING_CREATED));
-				
-				graph.commit();
-				
-				return followDate;
-			}
+			Vertex user = getEntityVertex(tenantId, userId);
+			Vertex entity = getEntityVertex(tenantId, entityId);
+			if (null == user || null == entity)
+				return null;
+			
+			return getDateTimeFollowed(user, entity);
+		}
+		finally
+		{
+			graph.endRead();
 		}
+	}
+	
+	/**
+	 * Gets the time a user followed an entity. The time is kept on the
+	 * overlay for the entity in the feed of the user, which is retrieved by
+	 * its key; overlays created before the time was kept there fall back to
+	 * the follow relationship.
+	 * 
+	 * @param user The user vertex.
+	 * @param entity The entity vertex.
+	 * @return The time the user followed the entity, or null if the user
+	 * does not follow the entity.
+	 */
+	private DateTime getDateTimeFollowed(Vertex user, Vertex entity)
+	{
+		Vertex overlay = getOverlayForEntity(user, entity);
+		if (null == overlay)
+			return null;
 		
-		graph.commit();
+		if (null != overlay.getProperty(STRING_FOLLOWED))
+			return getDateTimeProperty(overlay, STRING_FOLLOWED);
+		
+		Edge followEdge = getFollowEdge(user, entity);
+		return null == followEdge ? null :
+			getDateTimeProperty(followEdge, STRING_CREATED);
+	}
+	
+	/**
+	 * Retrieves the follow relationship between a user and an entity. Follow
+	 * edges cannot be retrieved by key, so the edges of whichever of the user
+	 * and entity has fewer of them are searched.
+	 * 
+	 * @param user The user vertex.
+	 * @param entity The entity vertex.
+	 * @return The follow edge from the user to the entity, or null if the user
+	 * does not follow the entity.
+	 */
+	private Edge getFollowEdge(Vertex user, Vertex entity)
+	{
+		boolean searchUser =
+				!(user.getProperty(STRING_FOLLOWING_COUNT) instanceof Number) ||
+				!(entity.getProperty(STRING_FOLLOWER_COUNT) instanceof Number) ||
+				getCount(user, STRING_FOLLOWING_COUNT) <=
+				getCount(entity, STRING_FOLLOWER_COUNT);
+		
+		Vertex searched = searchUser ? user : entity;
+		Vertex other = searchUser ? entity : user;
+		Direction direction = searchUser ? Direction.OUT : Direction.IN;
+		
+		for (Edge edge : searched.getEdges(direction, STRING_FOLLOWS))
+		{
+			if (edge.getVertex(direction.opposite()).getId()
+					.equals(other.getId()))
+				return edge;
+		}
 		
 		return null;
 	}
@@ -959,7 +2396,10 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	public ActivityStreamsCollection getFollowing(String tenantId,
 			String userId, int startIndex, int entitiesToReturn)
 	{
-		Vertex user = getOrCreateEntityVertex(tenantId, userId);
+		Vertex user = getEntityVertex(tenantId, userId);
+		if (null == user)
+			return createEmptyCollection();
+		
 		ActivityStreamsCollection following = new ActivityStreamsCollection();
 		
 		int currentPosition = 0;
@@ -980,9 +2420,9 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			currentPosition++;
 		}
 		
-		following.setTotalItems((int)user.getProperty(STRING_FOLLOWING_COUNT));
+		following.setTotalItems(getCount(user, STRING_FOLLOWING_COUNT));
 
-		graph.commit();
+		graph.endRead();
 		
 		return following;
 	}
@@ -991,7 +2431,10 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	public ActivityStreamsCollection getFollowers(String tenantId,
 			String entityId, int startIndex, int followersToReturn)
 	{
-		Vertex entity = getOrCreateEntityVertex(tenantId, entityId);
+		Vertex entity = getEntityVertex(tenantId, entityId);
+		if (null == entity)
+			return createEmptyCollection();
+		
 		ActivityStreamsCollection followers = new ActivityStreamsCollection();
 		
 		int currentPosition = 0;
@@ -1012,9 +2455,9 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			currentPosition++;
 		}
 		
-		followers.setTotalItems((int)entity.getProperty(STRING_FOLLOWER_COUNT));
+		followers.setTotalItems(getCount(entity, STRING_FOLLOWER_COUNT));
 
-		graph.commit();
+		graph.endRead();
 		
 		return followers;
 	}
@@ -1043,29 +2486,47 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			throw new IllegalArgumentException("activityId must not be null");
 		}
 		
-		Vertex activityVertex =
-				getActivityVertex(tenantId, entityId, activityId);
-		
-		if (null == activityVertex)
-			return;
-		
-		// already done if there is an incoming like edge matching the user ID
-		if (activityVertex.query().direction(Direction.IN).labels(STRING_LIKES)
-				.has(STRING_ENTITY_ID, userId).count() > 0)
-			return;
-		
-		Vertex userVertex =
-				getOrCreateEntityVertex(tenantId, userId);
-						
-		Edge likeEdge = userVertex.addEdge(STRING_LIKES, activityVertex);
-		likeEdge.setProperty(STRING_TENANT_ID, tenantId);
-		likeEdge.setProperty(STRING_ENTITY_ID, userId);
-		likeEdge.setProperty(STRING_CREATED,
-				DateTime.now(DateTimeZone.UTC).toString());
-		
-		adjustNumericProperty(activityVertex, STRING_LIKE_COUNT, 1);
-		
-		graph.commit();
+		List<Lock> locks = lockEntities(tenantId, entityId);
+		try
+		{
+			Vertex activityVertex =
+					getActivityVertex(tenantId, entityId, activityId);
+			
+			// already done if the user has a like for the activity
+			if (null == activityVertex ||
+					null != getLikeEdge(activityVertex, userId))
+			{
+				graph.endRead();
+				return;
+			}
+			
+			// the like is a vertex keyed by the user and activity, with an
+			// edge to the activity
+			long now = DateTime.now(DateTimeZone.UTC).getMillis();
+			Vertex likeVertex = graph.addVertex(getLikeVertexId(
+					tenantId, userId, entityId, activityId));
+			likeVertex.setProperty(STRING_TYPE, STRING_LIKE_TYPE);
+			likeVertex.setProperty(STRING_TENANT_ID, tenantId);
+			likeVertex.setProperty(STRING_ENTITY_ID, userId);
+			likeVertex.setProperty(STRING_CREATED, now);
+			
+			Edge likeEdge = likeVertex.addEdge(STRING_LIKES, activityVertex);
+			likeEdge.setProperty(STRING_TENANT_ID, tenantId);
+			likeEdge.setProperty(STRING_ENTITY_ID, userId);
+			likeEdge.setProperty(STRING_CREATED, now);
+			
+			if (isLikesLinked(activityVertex))
+				linkLike(activityVertex, likeVertex);
+			
+			adjustCount(activityVertex, STRING_LIKE_COUNT, 1);
+			stampVersion(activityVertex, STRING_VERSION);
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
+		}
 	}
 
 	@Override
@@ -1092,112 +2553,495 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			throw new IllegalArgumentException("activityId must not be null");
 		}
 		
-		Vertex activityVertex =
-				getActivityVertex(tenantId, entityId, activityId);
-		
-		if (null == activityVertex)
-			return;
-		
-		Edge toRemove = null;
-		
-		for (Edge likeEdge : activityVertex.getEdges(
-				Direction.IN, STRING_LIKES))
+		List<Lock> locks = lockEntities(tenantId, entityId);
+		try
 		{
-			if (userId.equals(likeEdge.getProperty(STRING_ENTITY_ID)))
+			Vertex activityVertex =
+					getActivityVertex(tenantId, entityId, activityId);
+			
+			if (null == activityVertex)
 			{
-				toRemove = likeEdge;
-				break;
+				graph.endRead();
+				return;
+			}
+			
+			Edge toRemove = getLikeEdge(activityVertex, userId);
+			
+			if (null != toRemove)
+			{
+				Vertex liker = toRemove.getVertex(Direction.OUT);
+				if (STRING_LIKE_TYPE.equals(liker.getProperty(STRING_TYPE)))
+				{
+					unlinkLike(liker);
+					liker.remove();
+				}
+				else
+					toRemove.remove();
+				toRemove = null;
+				adjustCount(activityVertex, STRING_LIKE_COUNT, -1);
+				stampVersion(activityVertex, STRING_VERSION);
 			}
+			
+			graph.commit();
 		}
-		
-		if (null != toRemove)
+		finally
 		{
-			toRemove.remove();
-			toRemove = null;
-			adjustNumericProperty(activityVertex, STRING_LIKE_COUNT, -1);
+			unlockEntities(locks);
 		}
-		
-		graph.commit();
 	}
 	
 	@Override
 	public DateTime userLikesActivity(String tenantId, String userId,
 			String entityId, String activityId)
 	{
-		Vertex activityVertex =
-				getActivityVertex(tenantId, entityId, activityId);
+		try
+		{
+			Vertex activityVertex =
+					getActivityVertex(tenantId, entityId, activityId);
+			
+			if (null == activityVertex)
+				return null;
+			
+			Edge likeEdge = getLikeEdge(activityVertex, userId);
+			
+			return null == likeEdge ? null :
+				getDateTimeProperty(likeEdge, STRING_CREATED);
+		}
+		finally
+		{
+			graph.endRead();
+		}
+	}
+	
+	/**
+	 * Retrieves the like of an activity by a user. Likes are keyed by tenant,
+	 * user, entity and activity, so the like is retrieved directly; for
+	 * activities whose likes predate the keys, the likes of the activity are
+	 * searched instead.
+	 * 
+	 * @param activityVertex The activity vertex.
+	 * @param userId The ID of the user.
+	 * @return The like edge to the activity, or null if the user does not
+	 * like the activity.
+	 */
+	private Edge getLikeEdge(Vertex activityVertex, String userId)
+	{
+		Vertex likeVertex = graph.getVertex(getLikeVertexId(
+				(String)activityVertex.getProperty(STRING_TENANT_ID), userId,
+				(String)activityVertex.getProperty(STRING_ENTITY_ID),
+				(String)activityVertex.getProperty(STRING_ACTIVITY_ID)));
+		
+		if (null != likeVertex)
+		{
+			for (Edge likeEdge :
+				likeVertex.getEdges(Direction.OUT, STRING_LIKES))
+				return likeEdge;
+		}
 		
-		if (null == activityVertex)
+		if (Boolean.TRUE.equals(
+				activityVertex.getProperty(STRING_LIKES_KEYED)))
 			return null;
 		
 		for (Edge likeEdge : activityVertex.getEdges(
 				Direction.IN, STRING_LIKES))
 		{
 			if (userId.equals(likeEdge.getProperty(STRING_ENTITY_ID)))
-			{
-				graph.commit();
-				return DateTime.parse(
-						(String)likeEdge.getProperty(STRING_CREATED));
-			}
+				return likeEdge;
 		}
 		
 		return null;
 	}
 	
+	/**
+	 * Creates the ID of the vertex for the like of an activity by a user.
+	 * 
+	 * @param tenantId The tenant of the user and activity.
+	 * @param userId The ID of the user that likes the activity.
+	 * @param entityId The ID of the entity with the activity.
+	 * @param activityId The ID of the activity.
+	 * @return The vertex ID of the like.
+	 */
+	static String getLikeVertexId(String tenantId, String userId,
+			String entityId, String activityId)
+	{
+		return STRING_LIKE_ID_PREFIX + tenantId + STRING_ID_SEPARATOR
+				+ userId + STRING_ID_SEPARATOR + entityId
+				+ STRING_ID_SEPARATOR + activityId;
+	}
+	
 	@Override
 	public ActivityStreamsCollection getLikes(String tenantId,
 			String entityId, String activityId, int startIndex,
 			int likesToReturn)
 	{
-		Vertex activityVertex =
-				getActivityVertex(tenantId, entityId, activityId);
+		try
+		{
+			Vertex activityVertex =
+					getActivityVertex(tenantId, entityId, activityId);
+			
+			if (null == activityVertex)
+				return null;
+			
+			return getLikesPage(activityVertex, startIndex, likesToReturn);
+		}
+		finally
+		{
+			graph.endRead();
+		}
+	}
+	
+	/**
+	 * Creates a collection of the likes of an activity, by index.
+	 * 
+	 * @param activityVertex The activity for which to retrieve likes.
+	 * @param startIndex The zero-based index of the first like to retrieve.
+	 * @param likesToReturn The maximum number of likes to retrieve.
+	 * @return A collection of likes.
+	 */
+	private ActivityStreamsCollection getLikesPage(Vertex activityVertex,
+			int startIndex, int likesToReturn)
+	{
+		if (!isLikesLinked(activityVertex))
+		{
+			List<Edge> likeEdges = getLikeEdges(activityVertex);
+			
+			return createLikesCollection(activityVertex, likeEdges.subList(
+					Math.min(Math.max(0, startIndex), likeEdges.size()),
+					Math.min(Math.max(0, startIndex) +
+							Math.max(0, likesToReturn), likeEdges.size())));
+		}
 		
-		if (null == activityVertex)
-			return null;
+		// walk the like path, stopping once the page is complete
+		List<Vertex> likeVertices = new ArrayList<Vertex>();
+		Vertex current = getNextVertex(activityVertex, STRING_LIKE_PATH);
+		int position = 0;
+		while (null != current && likeVertices.size() < likesToReturn)
+		{
+			if (position >= startIndex)
+				likeVertices.add(current);
+			position++;
+			current = getNextVertex(current, STRING_LIKE_PATH);
+		}
+		
+		return createLikesCollection(activityVertex, likeVertices);
+	}
+	
+	@Override
+	public void enrichActivities(String tenantId, String entityId,
+			List<ActivityStreamsObject> activities, int commentsToReturn,
+			int likesToReturn, String userId)
+	{
+		if (null == tenantId)
+		{
+			throw new IllegalArgumentException("tenantId must not be null");
+		}
+		
+		if (null == activities)
+		{
+			throw new IllegalArgumentException("activities must not be null");
+		}
+		
+		for (ActivityStreamsObject activity : activities)
+		{
+			String activityEntityId = null != entityId ? entityId :
+				activity.getCollabinateValue(STRING_ENTITY_ID_VALUE);
+			if (null == activityEntityId || null == activity.getId())
+				continue;
+			
+			Vertex activityVertex = getActivityVertex(tenantId,
+					activityEntityId, activity.getId());
+			if (null == activityVertex)
+				continue;
+			
+			if (commentsToReturn >= 0)
+			{
+				activity.setReplies(createCollection(getCommentVertices(
+						activityVertex, 0, commentsToReturn),
+						getCount(activityVertex, STRING_COMMENT_COUNT)));
+			}
+			
+			if (likesToReturn >= 0)
+			{
+				activity.setLikes(getLikesPage(activityVertex, 0,
+						likesToReturn));
+			}
+			
+			if (null != userId)
+			{
+				Edge likeEdge = getLikeEdge(activityVertex, userId);
+				if (null != likeEdge)
+				{
+					activity.setCollabinateValue(STRING_LIKED_BY_USER,
+							getDateTimeProperty(likeEdge, STRING_CREATED)
+							.toString());
+				}
+			}
+		}
+		
+		graph.endRead();
+	}
+	
+	@Override
+	public ActivityStreamsCollection getLikes(String tenantId,
+			String entityId, String activityId, PageCursor cursor,
+			int likesToReturn)
+	{
+		if (null == cursor)
+			return getLikes(tenantId, entityId, activityId, 0, likesToReturn);
+		
+		try
+		{
+			Vertex activityVertex =
+					getActivityVertex(tenantId, entityId, activityId);
+			
+			if (null == activityVertex)
+				return null;
+			
+			return getLikesPage(activityVertex, cursor, likesToReturn);
+		}
+		finally
+		{
+			graph.endRead();
+		}
+	}
+	
+	/**
+	 * Creates a collection of the likes of an activity that are adjacent to
+	 * a cursor.
+	 * 
+	 * @param activityVertex The activity for which to retrieve likes.
+	 * @param cursor The position and direction of the page.
+	 * @param likesToReturn The maximum number of likes to retrieve.
+	 * @return A collection of likes.
+	 */
+	private ActivityStreamsCollection getLikesPage(Vertex activityVertex,
+			PageCursor cursor, int likesToReturn)
+	{
+		if (isLikesLinked(activityVertex))
+		{
+			// the like at the cursor is found directly by its key, otherwise
+			// the path is walked to the first like after the cursor
+			Vertex anchor = graph.getVertex(getLikeVertexId(
+					(String)activityVertex.getProperty(STRING_TENANT_ID),
+					cursor.getEntityId(),
+					(String)activityVertex.getProperty(STRING_ENTITY_ID),
+					(String)activityVertex.getProperty(STRING_ACTIVITY_ID)));
+			if (null != anchor && 0 != compareLikeToCursor(anchor, cursor))
+				anchor = null;
+			
+			Vertex boundary = null;
+			if (null == anchor)
+			{
+				boundary = getNextVertex(activityVertex, STRING_LIKE_PATH);
+				while (null != boundary &&
+						compareLikeToCursor(boundary, cursor) <= 0)
+					boundary = getNextVertex(boundary, STRING_LIKE_PATH);
+			}
+			
+			return createLikesCollection(activityVertex, getPageVertices(
+					activityVertex, STRING_LIKE_PATH, anchor, boundary,
+					cursor.isBefore(), likesToReturn));
+		}
+		
+		List<Edge> likeEdges = getLikeEdges(activityVertex);
+		
+		// find the first like after the cursor position in like order
+		int position = 0;
+		while (position < likeEdges.size() &&
+				compareLikeToCursor(likeEdges.get(position), cursor) <= 0)
+		{
+			position++;
+		}
+		
+		// the like at the cursor itself belongs to neither page
+		int beforeEnd = position;
+		if (beforeEnd > 0 && compareLikeToCursor(
+				likeEdges.get(beforeEnd - 1), cursor) == 0)
+		{
+			beforeEnd--;
+		}
+		
+		int fromIndex = cursor.isBefore() ?
+				Math.max(0, beforeEnd - likesToReturn) : position;
+		int toIndex = cursor.isBefore() ? beforeEnd :
+			Math.min(likeEdges.size(), position + likesToReturn);
+		
+		return createLikesCollection(activityVertex,
+				likeEdges.subList(fromIndex, toIndex));
+	}
+	
+	/**
+	 * Determines whether the likes of an activity are linked in like order
+	 * along its like path. The likes of activities created before the path
+	 * was maintained are unordered until they are migrated.
+	 * 
+	 * @param activityVertex The activity vertex.
+	 * @return true if the likes of the activity are on its like path.
+	 */
+	private boolean isLikesLinked(Vertex activityVertex)
+	{
+		return Boolean.TRUE.equals(
+				activityVertex.getProperty(STRING_LIKES_LINKED));
+	}
+	
+	/**
+	 * Links a like vertex into the like path of an activity at its position
+	 * in like order. A new like is normally the newest, so the path is only
+	 * walked past likes made within the same millisecond.
+	 * 
+	 * @param activityVertex The activity that was liked.
+	 * @param likeVertex The like vertex to link.
+	 */
+	private void linkLike(Vertex activityVertex, Vertex likeVertex)
+	{
+		Vertex previous = activityVertex;
+		Vertex current = getNextVertex(activityVertex, STRING_LIKE_PATH);
+		while (null != current && compareLikes(current, likeVertex) < 0)
+		{
+			previous = current;
+			current = getNextVertex(current, STRING_LIKE_PATH);
+		}
+		
+		Edge previousEdge = getSingleOutgoingEdge(previous, STRING_LIKE_PATH);
+		if (null != previousEdge)
+			previousEdge.remove();
+		
+		previous.addEdge(STRING_LIKE_PATH, likeVertex);
+		if (null != current)
+			likeVertex.addEdge(STRING_LIKE_PATH, current);
+	}
+	
+	/**
+	 * Joins the neighbors of a like vertex on the like path, before the like
+	 * is removed. Likes that are not on a path are left as they are.
+	 * 
+	 * @param likeVertex The like vertex being removed.
+	 */
+	private void unlinkLike(Vertex likeVertex)
+	{
+		Vertex previous = getPreviousVertex(likeVertex, STRING_LIKE_PATH);
+		Vertex next = getNextVertex(likeVertex, STRING_LIKE_PATH);
+		if (null != previous && null != next)
+			previous.addEdge(STRING_LIKE_PATH, next);
+	}
+	
+	/**
+	 * Retrieves the like edges of an activity whose likes are not yet linked,
+	 * in like order, so that pages do not depend on the order in which the
+	 * graph returns edges.
+	 * 
+	 * @param activityVertex The activity for which to retrieve likes.
+	 * @return The ordered like edges.
+	 */
+	private List<Edge> getLikeEdges(Vertex activityVertex)
+	{
+		List<Edge> likeEdges = new ArrayList<Edge>();
+		for(Edge likeEdge : activityVertex.getEdges(
+				Direction.IN, STRING_LIKES))
+		{
+			likeEdges.add(likeEdge);
+		}
+			
+		Collections.sort(likeEdges, new Comparator<Edge>() {
+			@Override
+			public int compare(Edge e1, Edge e2)
+			{
+				return compareLikes(e1, e2);
+			}
+		});
+		
+		return likeEdges;
+	}
+	
+	/**
+	 * Compares two likes in like order, which is newest first with ties
+	 * ordered by user. Like vertices and like edges both carry the time and
+	 * user of the like.
+	 */
+	private int compareLikes(Element like1, Element like2)
+	{
+		int result = Long.compare(getTimeProperty(like2, STRING_CREATED),
+				getTimeProperty(like1, STRING_CREATED));
+		return 0 != result ? result :
+			((String)like1.getProperty(STRING_ENTITY_ID)).compareTo(
+					(String)like2.getProperty(STRING_ENTITY_ID));
+	}
+	
+	/**
+	 * Compares the position of a like to a cursor in like order.
+	 * 
+	 * @return A negative number if the like comes before the cursor, zero if
+	 * it is at the cursor, and a positive number if it comes after.
+	 */
+	private int compareLikeToCursor(Element like, PageCursor cursor)
+	{
+		int result = Long.compare(cursor.getSortTime(),
+				getTimeProperty(like, STRING_CREATED));
+		return 0 != result ? result :
+			((String)like.getProperty(STRING_ENTITY_ID)).compareTo(
+					cursor.getEntityId());
+	}
+	
+	/**
+	 * Creates a collection of like activities from the given like vertices or
+	 * like edges.
+	 * 
+	 * @param activityVertex The activity that was liked.
+	 * @param likeElements The like vertices or edges to include.
+	 * @return A collection of likes with cursors for the adjacent pages.
+	 */
+	private ActivityStreamsCollection createLikesCollection(
+			Vertex activityVertex, List<? extends Element> likeElements)
+	{
+		ActivityStreamsCollection likes = new ActivityStreamsCollection();
+		String activityId = activityVertex.getProperty(STRING_ACTIVITY_ID);
+		
+		for (Element likeElement : likeElements)
+		{
+			ActivityStreamsObject actor = new ActivityStreamsObject();
+			actor.setId((String)likeElement.getProperty(STRING_ENTITY_ID));
+			ActivityStreamsObject activity = new ActivityStreamsObject();
+			activity.setId(activityId);
+			Activity like = new Activity();
+			like.setActor(actor);
+			like.setObject(activity);
+			like.setVerb(STRING_LIKE);
+			like.setPublished(
+					getDateTimeProperty(likeElement, STRING_CREATED));
+			
+			likes.add(like);
+		}
 		
-		ActivityStreamsCollection likes = new ActivityStreamsCollection();
-		int currentPosition = 0;
+		likes.setTotalItems(getCount(activityVertex, STRING_LIKE_COUNT));
 		
-		for(Edge likeEdge : activityVertex.getEdges(
-				Direction.IN, STRING_LIKES))
+		if (!likeElements.isEmpty())
 		{
-			if (likes.size() >= likesToReturn)
-				break;
-			
-			if (currentPosition >= startIndex)
-			{
-				ActivityStreamsObject actor = new ActivityStreamsObject();
-				actor.setId((String)likeEdge.getProperty(STRING_ENTITY_ID));
-				ActivityStreamsObject activity = new ActivityStreamsObject();
-				activity.setId(activityId);
-				Activity like = new Activity();
-				like.setActor(actor);
-				like.setObject(activity);
-				like.setVerb(STRING_LIKE);
-				like.setPublished(DateTime.parse(
-						(String)likeEdge.getProperty(STRING_CREATED)));
-				
-				likes.add(like);
-			}
-			
-			currentPosition++;
+			likes.setPrevCursor(getLikeCursorToken(likeElements.get(0)));
+			likes.setNextCursor(getLikeCursorToken(
+					likeElements.get(likeElements.size() - 1)));
 		}
 		
-		likes.setTotalItems((int)activityVertex.getProperty(STRING_LIKE_COUNT));
-		
 		return likes;
 	}
 
+	private String getLikeCursorToken(Element likeElement)
+	{
+		return new PageCursor(getTimeProperty(likeElement, STRING_CREATED),
+				(String)likeElement.getProperty(STRING_ENTITY_ID), null, false)
+				.getToken();
+	}
+	
 	/**
 	 * Inserts an entity into the feed for a user.
 	 * 
 	 * @param user The user whose feed will be updated.
 	 * @param newEntity the entity to add to the user's feed.
 	 * @param tenantId the tenant for the feed.
+	 * @param followed the time the user followed the entity.
 	 * @return true if the entity is first in the feed, otherwise false.
 	 */
 	private boolean insertFeedEntity(final Vertex user, final Vertex newEntity,
-			final String tenantId)
+			final String tenantId, final DateTime followed)
 	{
 		if (null == user)
 		{
@@ -1210,96 +3054,305 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		}
 
 		String entityId = user.getProperty(STRING_ENTITY_ID);
-		String now = DateTime.now(DateTimeZone.UTC).toString();
+		long now = DateTime.now(DateTimeZone.UTC).getMillis();
+		
+		Vertex newOverlay =
+				createOverlay(user, newEntity, tenantId, followed, now);
+		
+		// start with the user, and if the overlay follows the user directly,
+		// the entity is the first in the feed
+		return user.equals(linkOverlay(user, newOverlay, newEntity, tenantId,
+				entityId, now));
+	}
+	
+	/**
+	 * Creates the overlay for an entity in the feed of a user, attached to the
+	 * entity but not yet linked into the feed.
+	 * 
+	 * @param user The user whose feed will contain the overlay.
+	 * @param newEntity The entity the overlay points to.
+	 * @param tenantId The tenant for the feed.
+	 * @param followed The time the user followed the entity.
+	 * @param now The creation time for the overlay and its edge.
+	 * @return The new overlay.
+	 */
+	private Vertex createOverlay(final Vertex user, final Vertex newEntity,
+			final String tenantId, final DateTime followed, final long now)
+	{
+		String entityId = user.getProperty(STRING_ENTITY_ID);
 		
 		// create the overlay and attach it to the new entity
-		Vertex newOverlay = graph.addVertex(null);
+		Vertex newOverlay = graph.addVertex(getOverlayVertexId(tenantId,
+				entityId, (String)newEntity.getProperty(STRING_ENTITY_ID)));
 		newOverlay.setProperty(STRING_TYPE, STRING_OVERLAY);
 		newOverlay.setProperty(STRING_TENANT_ID, tenantId);
 		newOverlay.setProperty(STRING_ENTITY_ID, entityId);
 		newOverlay.setProperty(STRING_CREATED, now);
+		newOverlay.setProperty(STRING_FOLLOWED, followed.getMillis());
 		
 		Edge newEdge = newOverlay.addEdge(STRING_FEED_ENTITY, newEntity);
 		newEdge.setProperty(STRING_TENANT_ID, tenantId);
 		newEdge.setProperty(STRING_ENTITY_ID, entityId);
 		newEdge.setProperty(STRING_CREATED, now);
 		
-		// start with the user and the first feed overlay
-		Edge currentFeedEdge = getFeedEdge(user);
-		Vertex currentOverlay = getNextOverlay(user);
-		Vertex previousOverlay = user;
-		int position = 0;		
+		return newOverlay;
+	}
+	
+	/**
+	 * Links an unlinked overlay into a feed at the chronological position of
+	 * its entity, searching forward from the given user or overlay. Overlays
+	 * of pulled entities are not ordered, so they are passed over, and the
+	 * overlay of a pulled entity is linked directly after the start.
+	 * 
+	 * @param start The user or overlay after which to start searching.
+	 * @param newOverlay The overlay to link.
+	 * @param newEntity The entity the overlay points to.
+	 * @param tenantId The tenant for the feed.
+	 * @param userId The ID of the user that owns the feed.
+	 * @param now The creation time for new edges.
+	 * @return The user or overlay that now precedes the linked overlay.
+	 */
+	private Vertex linkOverlay(final Vertex start, final Vertex newOverlay,
+			final Vertex newEntity, final String tenantId, final String userId,
+			final long now)
+	{
+		Edge currentFeedEdge = getFeedEdge(start);
+		Vertex currentOverlay = getNextOverlay(start);
+		Vertex previousOverlay = start;
 		
 		// we order overlays based on the date of their entity's first activity
 		// advance along the feed until we find where the new entity belongs
-		while (currentOverlay != null && firstActivityDateComparator
-				.compare(newEntity, getFeedEntity(currentOverlay)) > 0)
+		boolean pulled = isPulled(newEntity);
+		while (currentOverlay != null && !pulled &&
+				(isPulled(getFeedEntity(currentOverlay)) ||
+				firstActivityDateComparator.compare(
+						newEntity, getFeedEntity(currentOverlay)) > 0))
 		{
 			previousOverlay = currentOverlay;
 			currentFeedEdge = getFeedEdge(currentOverlay);
 			currentOverlay = getNextOverlay(currentOverlay);
-			position++;
 		}
 		
 		// add an edge from the previous overlay to the new one
-		newEdge = previousOverlay.addEdge(STRING_FEED, newOverlay);
-		newEdge.setProperty(STRING_TENANT_ID, tenantId);
-		newEdge.setProperty(STRING_ENTITY_ID, entityId);
-		newEdge.setProperty(STRING_CREATED, now);
+		addFeedEdge(previousOverlay, newOverlay, tenantId, userId, now);
 		
 		// if there are following overlays, add an edge from the new one to the
 		// following one
 		if (null != currentFeedEdge)
 		{
-			newEdge = newOverlay.addEdge(STRING_FEED, currentOverlay);
-			newEdge.setProperty(STRING_TENANT_ID, tenantId);
-			newEdge.setProperty(STRING_ENTITY_ID, entityId);
-			newEdge.setProperty(STRING_CREATED, now);
+			addFeedEdge(newOverlay, currentOverlay, tenantId, userId, now);
 			currentFeedEdge.remove();
 		}
 		
-		// if we didn't advance, the entity is the first in the feed
-		return position == 0;
+		return previousOverlay;
+	}
+	
+	/**
+	 * Adds a feed edge between two nodes of the feed of a user.
+	 */
+	private void addFeedEdge(final Vertex from, final Vertex to,
+			final String tenantId, final String userId, final long now)
+	{
+		Edge newEdge = from.addEdge(STRING_FEED, to);
+		newEdge.setProperty(STRING_TENANT_ID, tenantId);
+		newEdge.setProperty(STRING_ENTITY_ID, userId);
+		newEdge.setProperty(STRING_CREATED, now);
 	}
 
 	@Override
 	public ActivityStreamsCollection getFeed(String tenantId, String userId,
 			int startIndex, int activitiesToReturn)
 	{
-		// this method represents the core of the Graphity algorithm
-		// http://www.rene-pickhardt.de/graphity-an-efficient-graph-model-for-retrieving-the-top-k-news-feeds-for-users-in-social-networks/
+		Vertex user = getEntityVertex(tenantId, userId);
+		if (null == user)
+			return createEmptyCollection();
+		
+		FeedCache cache = feedCache;
+		long created = getTimeProperty(user, STRING_CREATED);
+		if (null != cache)
+		{
+			ActivityStreamsCollection cached = cache.get(user.getId(),
+					created, startIndex, activitiesToReturn);
+			if (null != cached)
+			{
+				graph.endRead();
+				return cached;
+			}
+		}
+		
+		// taken before the feed is read, so that the page is not cached if
+		// the feed changes while it is read
+		long sequence = null == cache ? 0 : cache.getSequence();
+		long stamp = null == cache ? 0 : cache.getUserStamp(user.getId());
+		FeedSummary summary = getFeedSummary(user);
+		
+		// the streams of pulled entities are merged from the start, along
+		// with the pushed entities as they are reached
+		PriorityQueue<Vertex> queue =
+				new PriorityQueue<Vertex>(11, activityDateComparator);
+		for (Vertex entity : getPulledEntities(summary))
+		{
+			Vertex topOfEntity = getNextActivity(entity);
+			if (null != topOfEntity)
+				queue.add(topOfEntity);
+		}
+		
+		List<Vertex> activities = mergeFeed(queue,
+				getNextPushedOverlay(user), startIndex, activitiesToReturn);
+		
+		graph.endRead();
+		
+		ActivityStreamsCollection feed =
+				createCollection(activities, getFeedCount(summary));
+		if (null != cache)
+		{
+			cache.put(user.getId(), created, startIndex, activitiesToReturn,
+					sequence, stamp, summary.pulledEntityIds, feed);
+		}
+		
+		return feed;
+	}
+		
+	@Override
+	public ActivityStreamsCollection getFeed(String tenantId, String userId,
+			PageCursor cursor, int activitiesToReturn)
+	{
+		if (null == cursor)
+			return getFeed(tenantId, userId, 0, activitiesToReturn);
 		
-		// a priority queue is used to order the activities that are "next" for
-		// each entity we've already reached in the feed
+		Vertex user = getEntityVertex(tenantId, userId);
+		if (null == user)
+			return createEmptyCollection();
+		
+		List<Vertex> activities = cursor.isBefore() ?
+				getFeedBefore(tenantId, user, cursor, activitiesToReturn) :
+				getFeedAfter(tenantId, user, cursor, activitiesToReturn);
+		
+		graph.endRead();
+		
+		return createCollection(activities, getFeedCount(user));
+	}
+	
+	/**
+	 * Retrieves the feed activities older than a cursor. Entities whose
+	 * newest activity is not older than the cursor are positioned within their
+	 * streams at the cursor; the remaining entities are all older, so the
+	 * feed is merged from there as usual.
+	 * 
+	 * @param tenantId The tenant of the user.
+	 * @param user The user whose feed is paged.
+	 * @param cursor The position of the page.
+	 * @param activitiesToReturn The maximum number of activities to retrieve.
+	 * @return The activity vertices of the page, newest first.
+	 */
+	private List<Vertex> getFeedAfter(String tenantId, Vertex user,
+			PageCursor cursor, int activitiesToReturn)
+	{
 		PriorityQueue<Vertex> queue =
 				new PriorityQueue<Vertex>(11, activityDateComparator);
+		for (Vertex entity : getPulledEntities(getFeedSummary(user)))
+		{
+			List<Vertex> first = getStreamPage(tenantId, entity, cursor, 1);
+			if (!first.isEmpty())
+				queue.add(first.get(0));
+		}
+		
+		Vertex overlay = getNextPushedOverlay(user);
+		
+		while (null != overlay)
+		{
+			Vertex entity = getFeedEntity(overlay);
+			Vertex topOfEntity = getNextActivity(entity);
+			if (null == topOfEntity || getTimeProperty(topOfEntity,
+					STRING_SORTTIME) < cursor.getSortTime())
+				break;
+			
+			List<Vertex> first = getStreamPage(tenantId, entity, cursor, 1);
+			if (!first.isEmpty())
+				queue.add(first.get(0));
+			
+			overlay = getNextPushedOverlay(overlay);
+		}
+		
+		return mergeFeed(queue, overlay, 0, activitiesToReturn);
+	}
+	
+	/**
+	 * Retrieves the feed activities newer than a cursor. Only entities whose
+	 * newest activity is not older than the cursor can contribute, and each
+	 * contributes at most the requested number of activities, which are then
+	 * merged to find those closest to the cursor.
+	 * 
+	 * @param tenantId The tenant of the user.
+	 * @param user The user whose feed is paged.
+	 * @param cursor The position of the page.
+	 * @param activitiesToReturn The maximum number of activities to retrieve.
+	 * @return The activity vertices of the page, newest first.
+	 */
+	private List<Vertex> getFeedBefore(String tenantId, Vertex user,
+			PageCursor cursor, int activitiesToReturn)
+	{
+		List<Vertex> candidates = new ArrayList<Vertex>();
+		for (Vertex entity : getPulledEntities(getFeedSummary(user)))
+		{
+			candidates.addAll(getStreamPage(
+					tenantId, entity, cursor, activitiesToReturn));
+		}
+		
+		Vertex overlay = getNextPushedOverlay(user);
+		
+		while (null != overlay)
+		{
+			Vertex entity = getFeedEntity(overlay);
+			Vertex topOfEntity = getNextActivity(entity);
+			if (null == topOfEntity || getTimeProperty(topOfEntity,
+					STRING_SORTTIME) < cursor.getSortTime())
+				break;
+			
+			candidates.addAll(getStreamPage(
+					tenantId, entity, cursor, activitiesToReturn));
+			
+			overlay = getNextPushedOverlay(overlay);
+		}
+		
+		Collections.sort(candidates, activityDateComparator);
+		
+		return candidates.subList(
+				Math.max(0, candidates.size() - activitiesToReturn),
+				candidates.size());
+	}
+	
+	/**
+	 * Merges the streams of followed entities into a feed. The queue holds the
+	 * next activity of each entity already reached or pulled, and the overlay
+	 * is the first pushed one not yet reached.
+	 * 
+	 * @param queue The next activities of the entities already reached.
+	 * @param overlay The first overlay not yet reached, or null.
+	 * @param startIndex The zero-based index of the first activity to return.
+	 * @param activitiesToReturn The maximum number of activities to retrieve.
+	 * @return The activity vertices of the feed, newest first.
+	 */
+	private List<Vertex> mergeFeed(PriorityQueue<Vertex> queue,
+			Vertex overlay, int startIndex, int activitiesToReturn)
+	{
+		// this method represents the core of the Graphity algorithm
+		// http://www.rene-pickhardt.de/graphity-an-efficient-graph-model-for-retrieving-the-top-k-news-feeds-for-users-in-social-networks/
+		
+		// the priority queue is used to order the activities that are "next"
+		// for each entity we've already reached in the feed
 		ArrayList<Vertex> activities = new ArrayList<Vertex>();
 		
 		// since we need to advance from the beginning of the feed, this lets
 		// us keep track of where we are
 		int feedPosition = 0;
 		
-		// this is used to track the newest activity in the last entity reached
-		Vertex topOfEntity = null;
+		// this is used to track the newest activity in the next entity
+		Vertex topOfEntity = getNextActivity(getFeedEntity(overlay));
 		
 		// this is used to track the newest activity within all of the streams
 		// for entities that have already been reached
-		Vertex topOfQueue = null;
-		
-		Vertex user = getOrCreateEntityVertex(tenantId, userId);
-		Vertex overlay = getNextOverlay(user);
-		
-		if (null != overlay)
-		{
-			topOfEntity = getNextActivity(getFeedEntity(overlay));
-			if (null != topOfEntity)
-			{
-				queue.add(topOfEntity);
-				topOfQueue = topOfEntity;
-			}
-			overlay = getNextOverlay(overlay);
-			topOfEntity = getNextActivity(getFeedEntity(overlay));
-		}
+		Vertex topOfQueue = queue.peek();
 		
 		// while we have not yet hit our activities to return,
 		// and there are still activities in the queue OR
@@ -1318,10 +3371,11 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			{
 				if (feedPosition >= startIndex)
 					activities.add(topOfEntity);
+				feedPosition++;
 				Vertex nextActivity = getNextActivity(topOfEntity);
 				if (null != nextActivity)
 					queue.add(nextActivity);
-				overlay = getNextOverlay(overlay);
+				overlay = getNextPushedOverlay(overlay);
 				topOfEntity = getNextActivity(getFeedEntity(overlay));
 				topOfQueue = queue.peek();
 			}
@@ -1332,7 +3386,7 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 				// we need to move to the next entity
 				if (queue.isEmpty())
 				{
-					overlay = getNextOverlay(overlay);
+					overlay = getNextPushedOverlay(overlay);
 					topOfEntity = getNextActivity(getFeedEntity(overlay));
 				}
 				// if top of queue is newer, take the top element, and
@@ -1345,17 +3399,13 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 						queue.add(nextActivity);
 					if (feedPosition >= startIndex)
 						activities.add(removedFromQueue);
+					feedPosition++;
 					topOfQueue = queue.peek();
 				}
 			}
-			
-			feedPosition++;
 		}
 		
-		graph.commit();
-		
-		return createCollection(activities,
-				(int)user.getProperty(STRING_FEED_COUNT));
+		return activities;
 	}
 
 	/**
@@ -1372,6 +3422,39 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		return null == feedEdge ? null : feedEdge.getVertex(Direction.IN);
 	}
 	
+	/**
+	 * Retrieves the next overlay after the given node that points to an
+	 * entity that is not pulled.
+	 * 
+	 * @param node The entity (user) or overlay after which to search.
+	 * @return The next overlay of a pushed entity, or null if one does not
+	 * exist.
+	 */
+	private Vertex getNextPushedOverlay(Vertex node)
+	{
+		Vertex overlay = getNextOverlay(node);
+		while (null != overlay && isPulled(getFeedEntity(overlay)))
+			overlay = getNextOverlay(overlay);
+		return overlay;
+	}
+	
+	/**
+	 * Retrieves the nearest node before the given overlay that is either the
+	 * user or an overlay that points to an entity that is not pulled.
+	 * 
+	 * @param node The overlay before which to search.
+	 * @return The user or previous overlay of a pushed entity.
+	 */
+	private Vertex getPreviousPushedOverlay(Vertex node)
+	{
+		Vertex previous = getPreviousOverlay(node);
+		while (null != previous &&
+				STRING_OVERLAY.equals(previous.getProperty(STRING_TYPE)) &&
+				isPulled(getFeedEntity(previous)))
+			previous = getPreviousOverlay(previous);
+		return previous;
+	}
+	
 	private Vertex getPreviousOverlay(Vertex node)
 	{
 		if (null == node)
@@ -1418,23 +3501,32 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			throw new IllegalArgumentException("comment must not be null");
 		}
 		
-		Vertex activityVertex =
-				getActivityVertex(tenantId, entityId, activityId);
-		
-		if (null == activityVertex)
+		List<Lock> locks = lockEntities(tenantId, entityId);
+		try
 		{
+			Vertex activityVertex =
+					getActivityVertex(tenantId, entityId, activityId);
+			
+			if (null == activityVertex)
+			{
+				graph.commit();
+				return;
+			}
+			
+			Vertex commentVertex = 
+					serializeComment(comment, tenantId, entityId, activityId);
+			
+			insertComment(activityVertex, commentVertex, userId);
+			
+			adjustCount(activityVertex, STRING_COMMENT_COUNT, 1);
+			stampVersion(activityVertex, STRING_VERSION);
+			
 			graph.commit();
-			return;
 		}
-		
-		Vertex commentVertex = 
-				serializeComment(comment, tenantId, entityId, activityId);
-		
-		insertComment(activityVertex, commentVertex, userId);
-		
-		adjustNumericProperty(activityVertex, STRING_COMMENT_COUNT, 1);
-		
-		graph.commit();
+		finally
+		{
+			unlockEntities(locks);
+		}
 	}
 	
 	/**
@@ -1488,10 +3580,58 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		{
 			comments = createCollection(getCommentVertices(
 					activityVertex, startIndex, commentsToReturn),
-					(int)activityVertex.getProperty(STRING_COMMENT_COUNT));
+					getCount(activityVertex, STRING_COMMENT_COUNT));
 		}
 		
-		graph.commit();
+		graph.endRead();
+		
+		return comments;
+	}
+	
+	@Override
+	public ActivityStreamsCollection getComments(String tenantId,
+			String entityId, String activityId, PageCursor cursor,
+			int commentsToReturn)
+	{
+		if (null == cursor)
+			return getComments(tenantId, entityId, activityId, 0,
+					commentsToReturn);
+		
+		ActivityStreamsCollection comments = null;
+		
+		Vertex activityVertex = 
+				getActivityVertex(tenantId, entityId, activityId);
+		
+		if (null != activityVertex)
+		{
+			Vertex anchor = null;
+			if (entityId.equals(cursor.getEntityId()) &&
+					null != cursor.getItemId())
+			{
+				anchor = getCommentVertex(tenantId, entityId, activityId,
+						cursor.getItemId());
+			}
+			
+			// without the comment at the cursor, find the first comment older
+			// than the cursor time
+			Vertex boundary = null;
+			if (null == anchor)
+			{
+				boundary = getNextComment(activityVertex);
+				while (null != boundary && getTimeProperty(boundary,
+						STRING_SORTTIME) >= cursor.getSortTime())
+				{
+					boundary = getNextComment(boundary);
+				}
+			}
+			
+			comments = createCollection(getPageVertices(activityVertex,
+					STRING_COMMENTS, anchor, boundary, cursor.isBefore(),
+					commentsToReturn),
+					getCount(activityVertex, STRING_COMMENT_COUNT));
+		}
+		
+		graph.endRead();
 		
 		return comments;
 	}
@@ -1537,23 +3677,84 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	@Override
 	public ActivityStreamsObject getEntity(String tenantId, String entityId)
 	{
-		Vertex entityVertex = getOrCreateEntityVertex(tenantId, entityId);
-		
 		ActivityStreamsObject entity = new ActivityStreamsObject();
 		
 		entity.setId(entityId);
-		entity.setPublished(DateTime.parse(
-				(String)entityVertex.getProperty(STRING_CREATED)));
-		entity.setCollabinateValue(STRING_FOLLOWER_COUNT, Integer.toString(
-				entityVertex.getProperty(STRING_FOLLOWER_COUNT)));
-		entity.setCollabinateValue(STRING_FOLLOWING_COUNT, Integer.toString(
-				entityVertex.getProperty(STRING_FOLLOWING_COUNT)));
-		entity.setCollabinateValue(STRING_STREAM_COUNT, Integer.toString(
-				entityVertex.getProperty(STRING_STREAM_COUNT)));
-		entity.setCollabinateValue(STRING_FEED_COUNT, Integer.toString(
-				entityVertex.getProperty(STRING_FEED_COUNT)));
 		
-		return entity;
+		try
+		{
+			Vertex entityVertex = getEntityVertex(tenantId, entityId);
+			
+			// an entity without a vertex has nothing yet, so all counts are
+			// zero
+			if (null == entityVertex)
+			{
+				for (String count : new String[] { STRING_FOLLOWER_COUNT,
+						STRING_FOLLOWING_COUNT, STRING_STREAM_COUNT,
+						STRING_FEED_COUNT })
+					entity.setCollabinateValue(count, "0");
+				return entity;
+			}
+			
+			entity.setPublished(
+					getDateTimeProperty(entityVertex, STRING_CREATED));
+			entity.setCollabinateValue(STRING_FOLLOWER_COUNT, Integer.toString(
+					getCount(entityVertex, STRING_FOLLOWER_COUNT)));
+			entity.setCollabinateValue(STRING_FOLLOWING_COUNT, Integer.toString(
+					getCount(entityVertex, STRING_FOLLOWING_COUNT)));
+			entity.setCollabinateValue(STRING_STREAM_COUNT, Integer.toString(
+					entityVertex.getProperty(STRING_STREAM_COUNT)));
+			entity.setCollabinateValue(STRING_FEED_COUNT, Integer.toString(
+					getFeedCount(entityVertex)));
+			
+			return entity;
+		}
+		finally
+		{
+			graph.endRead();
+		}
+	}
+	
+	@Override
+	public long getStreamVersion(String tenantId, String entityId)
+	{
+		long version = getVersion(getEntityVertex(tenantId, entityId),
+				STRING_STREAM_VERSION);
+		graph.endRead();
+		return version;
+	}
+	
+	@Override
+	public long getFeedVersion(String tenantId, String userId)
+	{
+		Vertex user = getEntityVertex(tenantId, userId);
+		long version = null == user ? 0 : getFeedVersion(user);
+		graph.endRead();
+		return version;
+	}
+	
+	@Override
+	public long getActivityVersion(String tenantId, String entityId,
+			String activityId)
+	{
+		long version = getVersion(
+				getActivityVertex(tenantId, entityId, activityId),
+				STRING_VERSION);
+		graph.endRead();
+		return version;
+	}
+	
+	@Override
+	public long getEntityVersion(String tenantId, String entityId)
+	{
+		// the counts of an entity cover its followers, the entities it
+		// follows, its stream and its feed
+		Vertex entity = getEntityVertex(tenantId, entityId);
+		long version = null == entity ? 0 : Math.max(
+				getVersion(entity, STRING_STREAM_VERSION),
+				getFeedVersion(entity));
+		graph.endRead();
+		return version;
 	}
 	
 	@Override
@@ -1571,12 +3772,70 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		for (Vertex entityVertex : 
 			tenantGraph.getVertices(STRING_ENTITY_ID, entityId))
 		{
+			// the feeds of followers lose the activities of the entity
+			for (Vertex user :
+				entityVertex.getVertices(Direction.IN, STRING_FOLLOWS))
+				stampVersion(user, STRING_FOLLOW_VERSION);
+			
+			// the entity may have been a user, an entity with followers, or
+			// both
+			followingChanged(entityVertex);
+			streamChanged(entityVertex, false);
+			
+			graph.getCounters().discard(entityVertex);
 			entityVertex.remove();
 		}
+		
+		graph.commit();
+	}
+	
+	/**
+	 * The count and latest stream version of the pushed entities followed by
+	 * a user, and its pulled entities, cached with the entities they were
+	 * computed from and the creation time of the user, which distinguishes a
+	 * user that was deleted and created again. The token identifies the
+	 * summary among those that depend on each entity.
+	 */
+	private static class FeedSummary
+	{
+		private final Object token;
+		private final long created;
+		private final int count;
+		private final long streamVersion;
+		private final List<Object> entityIds;
+		private final List<Object> pulledEntityIds;
+		
+		FeedSummary(Object token, long created, int count, long streamVersion,
+				List<Object> entityIds, List<Object> pulledEntityIds)
+		{
+			this.token = token;
+			this.created = created;
+			this.count = count;
+			this.streamVersion = streamVersion;
+			this.entityIds = entityIds;
+			this.pulledEntityIds = pulledEntityIds;
+		}
+	}
+	
+	/**
+	 * The stream count and latest stream version of a pulled entity.
+	 */
+	private static class PulledStream
+	{
+		private final int count;
+		private final long version;
+		
+		PulledStream(int count, long version)
+		{
+			this.count = count;
+			this.version = version;
+		}
 	}
 	
 	/**
-	 * A comparator for activity vertices that orders by the sort time.
+	 * A comparator for activity vertices that orders by the sort time, and
+	 * activities of different entities with the same sort time by entity, so
+	 * that feeds have a total order for cursors to page through.
 	 * 
 	 * @author mafuba
 	 *
@@ -1588,14 +3847,14 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		{
 			long t1 = Long.MIN_VALUE;
 			if (null != v1)
-				t1 = DateTime.parse((String)v1.getProperty(STRING_SORTTIME))
-					.getMillis();
+				t1 = getTimeProperty(v1, STRING_SORTTIME);
 			long t2 = Long.MIN_VALUE;
 			if (null != v2)
-				t2 = DateTime.parse((String)v2.getProperty(STRING_SORTTIME))
-					.getMillis();
+				t2 = getTimeProperty(v2, STRING_SORTTIME);
 
-			return new Long(t2).compareTo(t1);
+			int result = Long.compare(t2, t1);
+			return 0 != result || null == v1 || null == v2 ? result :
+				compareEntityIds(v1, v2);
 		}
 	}
 	
@@ -1615,22 +3874,33 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 		if (null == commentId)
 			throw new IllegalArgumentException("commentId must not be null");
 		
-		Vertex commentVertex = getCommentVertex(tenantId, entityId,
-				activityId, commentId);
-		
-		if (null != commentVertex)
+		List<Lock> locks = lockEntities(tenantId, entityId);
+		try
 		{
-			removeComment(commentVertex);
-			adjustNumericProperty(getActivityVertex(
-					tenantId, entityId, activityId), STRING_COMMENT_COUNT, -1);
+			Vertex commentVertex = getCommentVertex(tenantId, entityId,
+					activityId, commentId);
+			
+			if (null != commentVertex)
+			{
+				removeComment(commentVertex);
+				Vertex activityVertex =
+						getActivityVertex(tenantId, entityId, activityId);
+				adjustCount(activityVertex, STRING_COMMENT_COUNT, -1);
+				stampVersion(activityVertex, STRING_VERSION);
+			}
+			
+			graph.commit();
+		}
+		finally
+		{
+			unlockEntities(locks);
 		}
-		
-		graph.commit();
 	}
 	
 	/**
 	 * A comparator for entity vertices that orders by the time of the first
-	 * activity for the entity.
+	 * activity for the entity, and entities with the same time by ID, in the
+	 * same order as their activities.
 	 * 
 	 * @author mafuba
 	 *
@@ -1647,21 +3917,30 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 			if (null != v1)
 				activity = getNextActivity(v1);
 			if (null != activity)
-				t1 = DateTime.parse((String)activity
-						.getProperty(STRING_SORTTIME)).getMillis();
+				t1 = getTimeProperty(activity, STRING_SORTTIME);
 			
 			activity = null;
 			long t2 = Long.MIN_VALUE;
 			if (null != v2)
 				activity = getNextActivity(v2);
 			if (null != activity)
-				t2 = DateTime.parse((String)activity
-						.getProperty(STRING_SORTTIME)).getMillis();
+				t2 = getTimeProperty(activity, STRING_SORTTIME);
 			
-			return new Long(t2).compareTo(t1);
+			int result = Long.compare(t2, t1);
+			return 0 != result || null == v1 || null == v2 ? result :
+				compareEntityIds(v1, v2);
 		}
 	}
 	
+	/**
+	 * Compares the entity IDs of two activity or entity vertices.
+	 */
+	private static int compareEntityIds(Vertex v1, Vertex v2)
+	{
+		return ((String)v1.getProperty(STRING_ENTITY_ID)).compareTo(
+				(String)v2.getProperty(STRING_ENTITY_ID));
+	}
+	
 	private static final String STRING_ID_SEPARATOR = ".";
 	private static final String STRING_TENANT_ID = "TenantID";
 	private static final String STRING_ENTITY_ID = "EntityID";
@@ -1683,10 +3962,27 @@ public class GraphEngine implements CollabinateReader, CollabinateWriter
 	private static final String STRING_FEED = "Feed";
 	private static final String STRING_FEED_ENTITY = "FeedEntity";
 	private static final String STRING_FEED_COUNT = "FeedCount";
+	private static final String STRING_PULLED = "Pulled";
+	private static final String STRING_VERSION = "Version";
+	private static final String STRING_STREAM_VERSION = "StreamVersion";
+	private static final String STRING_FOLLOW_VERSION = "FollowVersion";
 	private static final String STRING_OVERLAY = "Overlay";
 	private static final String STRING_TYPE = "Type";
 	private static final String STRING_CREATED = "Created";
 	private static final String STRING_LIKES = "Likes";
 	private static final String STRING_LIKE = "like";
 	private static final String STRING_LIKE_COUNT = "LikeCount";
+	private static final String STRING_OVERLAYS_KEYED = "OverlaysKeyed";
+	private static final String STRING_FOLLOWED = "Followed";
+	private static final String STRING_LIKE_TYPE = "Like";
+	private static final String STRING_ENTITY_ID_VALUE = "entityId";
+	private static final String STRING_LIKED_BY_USER = "likedByUser";
+	private static final String STRING_LIKES_KEYED = "LikesKeyed";
+	private static final String STRING_LIKES_LINKED = "LikesLinked";
+	private static final String STRING_LIKE_PATH = "LikePath";
+	private static final String STRING_LIKE_ID_PREFIX = "collabinate.like.";
+	private static final int LOCK_STRIPES = 1024;
+	private static final int FEED_SUMMARY_CACHE_SIZE = 10000;
+	private static final String STRING_OVERLAY_ID_PREFIX =
+			"collabinate.overlay.";
 }
@@ -0,0 +1,47 @@
+package com.collabinate.server.engine;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A single conversion step applied to existing graph data when the storage
+ * format changes. Implementations must be idempotent, as a migration may be
+ * interrupted and run again, and must tolerate running alongside live
+ * requests.
+ * 
+ * @author mafuba
+ * 
+ */
+public abstract class GraphMigration
+{
+	/**
+	 * Gets a short name for the migration, used in logging and status.
+	 * 
+	 * @return The name of the migration.
+	 */
+	public abstract String getName();
+	
+	/**
+	 * Converts the given vertex to the current storage format if necessary.
+	 * By default vertices are left unchanged.
+	 * 
+	 * @param vertex The vertex to migrate.
+	 * @return true if the vertex was changed, otherwise false.
+	 */
+	public boolean migrateVertex(Vertex vertex)
+	{
+		return false;
+	}
+	
+	/**
+	 * Converts the given edge to the current storage format if necessary.
+	 * By default edges are left unchanged.
+	 * 
+	 * @param edge The edge to migrate.
+	 * @return true if the edge was changed, otherwise false.
+	 */
+	public boolean migrateEdge(Edge edge)
+	{
+		return false;
+	}
+}
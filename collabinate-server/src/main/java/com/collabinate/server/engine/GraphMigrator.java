@@ -0,0 +1,241 @@
+package com.collabinate.server.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Runs a series of migrations over every vertex and edge of a graph,
+ * committing after each batch of changed elements so that the graph stays
+ * available to other requests while the migration runs.
+ * 
+ * @author mafuba
+ * 
+ */
+public class GraphMigrator implements Runnable
+{
+	/**
+	 * Logger instance.
+	 */
+	private final Logger logger = LoggerFactory.getLogger(GraphMigrator.class);
+	
+	/**
+	 * The graph to migrate.
+	 */
+	private CollabinateGraph graph;
+	
+	/**
+	 * The migrations to run, in order.
+	 */
+	private List<GraphMigration> migrations;
+	
+	/**
+	 * The number of changed elements after which a commit is made.
+	 */
+	private int batchSize;
+	
+	/**
+	 * The thread running a background migration, if any.
+	 */
+	private Thread migrationThread;
+	
+	// progress tracking
+	private volatile String state = STATE_IDLE;
+	private volatile String currentMigration;
+	private volatile long examinedCount;
+	private volatile long migratedCount;
+	private volatile String started;
+	private volatile String finished;
+	
+	/**
+	 * Initializes the migrator.
+	 * 
+	 * @param graph The graph to migrate.
+	 * @param migrations The migrations to run, in the order they are run.
+	 * @param batchSize The number of changed elements in each transaction.
+	 */
+	public GraphMigrator(CollabinateGraph graph,
+			List<GraphMigration> migrations, int batchSize)
+	{
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		if (null == migrations)
+		{
+			throw new IllegalArgumentException("migrations must not be null");
+		}
+		
+		if (batchSize < 1)
+		{
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		
+		this.graph = graph;
+		this.migrations = new ArrayList<GraphMigration>(migrations);
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Starts the migrations on a background thread.
+	 * 
+	 * @return true if the migrations were started, false if they are already
+	 * running.
+	 */
+	public synchronized boolean start()
+	{
+		if (isRunning())
+			return false;
+		
+		migrationThread = new Thread(this, "collabinate-migration");
+		migrationThread.setDaemon(true);
+		migrationThread.start();
+		
+		return true;
+	}
+	
+	/**
+	 * Determines whether a background migration is in progress.
+	 * 
+	 * @return true if the migration thread is running, otherwise false.
+	 */
+	public synchronized boolean isRunning()
+	{
+		return null != migrationThread && migrationThread.isAlive();
+	}
+	
+	/**
+	 * Runs all of the migrations on the calling thread.
+	 */
+	@Override
+	public void run()
+	{
+		state = STATE_RUNNING;
+		started = DateTime.now(DateTimeZone.UTC).toString();
+		finished = null;
+		examinedCount = 0;
+		migratedCount = 0;
+		
+		try
+		{
+			for (GraphMigration migration : migrations)
+			{
+				currentMigration = migration.getName();
+				logger.info("Starting migration: {}", currentMigration);
+				
+				long batchCount = 0;
+				
+				// snapshot the IDs first, since migrations may add elements
+				// and a commit may end the transaction being iterated
+				for (Object id : getVertexIds())
+				{
+					Vertex vertex = graph.getVertex(id);
+					if (null == vertex)
+						continue;
+					
+					examinedCount++;
+					if (migration.migrateVertex(vertex))
+					{
+						migratedCount++;
+						batchCount = commitBatch(batchCount + 1);
+					}
+				}
+				
+				for (Object id : getEdgeIds())
+				{
+					Edge edge = graph.getEdge(id);
+					if (null == edge)
+						continue;
+					
+					examinedCount++;
+					if (migration.migrateEdge(edge))
+					{
+						migratedCount++;
+						batchCount = commitBatch(batchCount + 1);
+					}
+				}
+				
+				graph.commit();
+				logger.info("Completed migration: {}", currentMigration);
+			}
+			
+			currentMigration = null;
+			state = STATE_COMPLETE;
+		}
+		catch (RuntimeException e)
+		{
+			logger.error("Migration failed: " + currentMigration, e);
+			state = STATE_FAILED;
+		}
+		finally
+		{
+			finished = DateTime.now(DateTimeZone.UTC).toString();
+		}
+	}
+	
+	private List<Object> getVertexIds()
+	{
+		List<Object> ids = new ArrayList<Object>();
+		for (Vertex vertex : graph.getVertices())
+			ids.add(vertex.getId());
+		return ids;
+	}
+	
+	private List<Object> getEdgeIds()
+	{
+		List<Object> ids = new ArrayList<Object>();
+		for (Edge edge : graph.getEdges())
+			ids.add(edge.getId());
+		return ids;
+	}
+	
+	/**
+	 * Commits the current transaction if the given count fills a batch.
+	 * 
+	 * @param batchCount The number of elements changed in the current batch.
+	 * @return The number of elements in the current batch after any commit.
+	 */
+	private long commitBatch(long batchCount)
+	{
+		if (batchCount < batchSize)
+			return batchCount;
+		
+		graph.commit();
+		logger.debug("Migrated {} elements", migratedCount);
+		return 0;
+	}
+	
+	/**
+	 * Gets the state and progress of the most recent migration as JSON.
+	 * 
+	 * @return A JSON string describing the migration progress.
+	 */
+	public String getStatus()
+	{
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("state", state);
+		status.put("migration", currentMigration);
+		status.put("examined", examinedCount);
+		status.put("migrated", migratedCount);
+		status.put("started", started);
+		status.put("finished", finished);
+		
+		return new Gson().toJson(status);
+	}
+	
+	private static final String STATE_IDLE = "idle";
+	private static final String STATE_RUNNING = "running";
+	private static final String STATE_COMPLETE = "complete";
+	private static final String STATE_FAILED = "failed";
+}
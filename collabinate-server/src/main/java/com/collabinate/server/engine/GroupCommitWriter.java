@@ -0,0 +1,235 @@
+package com.collabinate.server.engine;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.joda.time.DateTime;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+
+/**
+ * A CollabinateWriter that passes each write to another writer through the
+ * graph's execute method, so that when group commit is enabled writes from
+ * concurrent requests are committed together. Each write still returns only
+ * once it has been committed.
+ * 
+ * @author mafuba
+ *
+ */
+public class GroupCommitWriter implements CollabinateWriter
+{
+	/**
+	 * The writer that performs the writes.
+	 */
+	private final CollabinateWriter writer;
+	
+	/**
+	 * The graph that commits the writes.
+	 */
+	private final CollabinateGraph graph;
+	
+	/**
+	 * Initializes the writer.
+	 * 
+	 * @param writer The writer that performs the writes against the graph.
+	 * @param graph The graph that commits the writes.
+	 */
+	public GroupCommitWriter(CollabinateWriter writer, CollabinateGraph graph)
+	{
+		if (null == writer)
+		{
+			throw new IllegalArgumentException("writer must not be null");
+		}
+		
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		this.writer = writer;
+		this.graph = graph;
+	}
+	
+	@Override
+	public void addActivity(final String tenantId, final String entityId,
+			final Activity activity)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.addActivity(tenantId, entityId, activity);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void addActivities(final String tenantId, final String entityId,
+			final List<Activity> activities)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.addActivities(tenantId, entityId, activities);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void deleteActivity(final String tenantId, final String entityId,
+			final String activityId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.deleteActivity(tenantId, entityId, activityId);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public DateTime followEntity(final String tenantId, final String userId,
+			final String entityId, final DateTime dateFollowed)
+	{
+		return graph.execute(new Callable<DateTime>()
+		{
+			@Override
+			public DateTime call()
+			{
+				return writer.followEntity(tenantId, userId, entityId,
+						dateFollowed);
+			}
+		});
+	}
+	
+	@Override
+	public DateTime unfollowEntity(final String tenantId, final String userId,
+			final String entityId)
+	{
+		return graph.execute(new Callable<DateTime>()
+		{
+			@Override
+			public DateTime call()
+			{
+				return writer.unfollowEntity(tenantId, userId, entityId);
+			}
+		});
+	}
+	
+	@Override
+	public Map<String, DateTime> followEntities(final String tenantId,
+			final String userId, final List<String> entityIds,
+			final DateTime dateFollowed)
+	{
+		return graph.execute(new Callable<Map<String, DateTime>>()
+		{
+			@Override
+			public Map<String, DateTime> call()
+			{
+				return writer.followEntities(tenantId, userId, entityIds,
+						dateFollowed);
+			}
+		});
+	}
+	
+	@Override
+	public Map<String, DateTime> unfollowEntities(final String tenantId,
+			final String userId, final List<String> entityIds)
+	{
+		return graph.execute(new Callable<Map<String, DateTime>>()
+		{
+			@Override
+			public Map<String, DateTime> call()
+			{
+				return writer.unfollowEntities(tenantId, userId, entityIds);
+			}
+		});
+	}
+	
+	@Override
+	public void addComment(final String tenantId, final String entityId,
+			final String activityId, final String userId,
+			final ActivityStreamsObject comment)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.addComment(tenantId, entityId, activityId, userId,
+						comment);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void deleteComment(final String tenantId, final String entityId,
+			final String activityId, final String commentId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.deleteComment(tenantId, entityId, activityId,
+						commentId);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void likeActivity(final String tenantId, final String userId,
+			final String entityId, final String activityId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.likeActivity(tenantId, userId, entityId, activityId);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void unlikeActivity(final String tenantId, final String userId,
+			final String entityId, final String activityId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.unlikeActivity(tenantId, userId, entityId, activityId);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public void deleteEntity(final String tenantId, final String entityId)
+	{
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				writer.deleteEntity(tenantId, entityId);
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,105 @@
+package com.collabinate.server.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Replaces the like edges from users to activities, created before likes
+ * were keyed, with like vertices at IDs derived from the tenant, user, entity
+ * and activity, so that a like can be retrieved directly rather than by
+ * searching every like of the activity. Until an activity is migrated its
+ * likes are found by searching, so the migration can run alongside live
+ * requests.
+ * 
+ * @author mafuba
+ * 
+ */
+public class LikeKeyMigration extends GraphMigration
+{
+	/**
+	 * The graph containing the likes.
+	 */
+	private CollabinateGraph graph;
+	
+	/**
+	 * Initializes the migration.
+	 * 
+	 * @param graph The graph containing the likes to key.
+	 */
+	public LikeKeyMigration(CollabinateGraph graph)
+	{
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		this.graph = graph;
+	}
+	
+	@Override
+	public String getName()
+	{
+		return "LikeKey";
+	}
+	
+	@Override
+	public boolean migrateVertex(Vertex vertex)
+	{
+		if (!STRING_ACTIVITY.equals(vertex.getProperty(STRING_TYPE)) ||
+				Boolean.TRUE.equals(vertex.getProperty(STRING_LIKES_KEYED)))
+			return false;
+		
+		String tenantId = vertex.getProperty(STRING_TENANT_ID);
+		String entityId = vertex.getProperty(STRING_ENTITY_ID);
+		String activityId = vertex.getProperty(STRING_ACTIVITY_ID);
+		
+		// copy the edges first, as they are removed while migrating
+		List<Edge> likeEdges = new ArrayList<Edge>();
+		for (Edge likeEdge : vertex.getEdges(Direction.IN, STRING_LIKES))
+			likeEdges.add(likeEdge);
+		
+		for (Edge likeEdge : likeEdges)
+		{
+			if (STRING_LIKE.equals(likeEdge.getVertex(Direction.OUT)
+					.getProperty(STRING_TYPE)))
+				continue;
+			
+			String userId = likeEdge.getProperty(STRING_ENTITY_ID);
+			String likeId = GraphEngine.getLikeVertexId(
+					tenantId, userId, entityId, activityId);
+			
+			if (null == graph.getVertex(likeId))
+			{
+				Vertex likeVertex = graph.addVertex(likeId);
+				likeVertex.setProperty(STRING_TYPE, STRING_LIKE);
+				likeVertex.setProperty(STRING_TENANT_ID, tenantId);
+				likeVertex.setProperty(STRING_ENTITY_ID, userId);
+				likeVertex.setProperty(STRING_CREATED,
+						likeEdge.getProperty(STRING_CREATED));
+				
+				Edge newEdge = likeVertex.addEdge(STRING_LIKES, vertex);
+				for (String key : likeEdge.getPropertyKeys())
+					newEdge.setProperty(key, likeEdge.getProperty(key));
+			}
+			
+			likeEdge.remove();
+		}
+		
+		vertex.setProperty(STRING_LIKES_KEYED, true);
+		return true;
+	}
+	
+	private static final String STRING_TYPE = "Type";
+	private static final String STRING_ACTIVITY = "Activity";
+	private static final String STRING_LIKE = "Like";
+	private static final String STRING_LIKES = "Likes";
+	private static final String STRING_LIKES_KEYED = "LikesKeyed";
+	private static final String STRING_TENANT_ID = "TenantID";
+	private static final String STRING_ENTITY_ID = "EntityID";
+	private static final String STRING_ACTIVITY_ID = "ActivityID";
+	private static final String STRING_CREATED = "Created";
+}
@@ -0,0 +1,87 @@
+package com.collabinate.server.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Links the likes of activities created before likes were kept on a like
+ * path, newest first with ties ordered by user, so that a page of likes is
+ * read from the path rather than by sorting every like of the activity.
+ * Likes must already be keyed, so this runs after the like key migration.
+ * Until an activity is migrated its likes are sorted when read, so the
+ * migration can run alongside live requests.
+ * 
+ * @author mafuba
+ * 
+ */
+public class LikePathMigration extends GraphMigration
+{
+	@Override
+	public String getName()
+	{
+		return "LikePath";
+	}
+	
+	@Override
+	public boolean migrateVertex(Vertex vertex)
+	{
+		if (!STRING_ACTIVITY.equals(vertex.getProperty(STRING_TYPE)) ||
+				!Boolean.TRUE.equals(vertex.getProperty(STRING_LIKES_KEYED)) ||
+				Boolean.TRUE.equals(vertex.getProperty(STRING_LIKES_LINKED)))
+			return false;
+		
+		List<Vertex> likeVertices = new ArrayList<Vertex>();
+		for (Vertex likeVertex : vertex.getVertices(Direction.IN, STRING_LIKES))
+		{
+			if (STRING_LIKE.equals(likeVertex.getProperty(STRING_TYPE)))
+				likeVertices.add(likeVertex);
+		}
+		
+		Collections.sort(likeVertices, new Comparator<Vertex>()
+		{
+			@Override
+			public int compare(Vertex v1, Vertex v2)
+			{
+				int result = Long.compare(getCreated(v2), getCreated(v1));
+				return 0 != result ? result :
+					((String)v1.getProperty(STRING_ENTITY_ID)).compareTo(
+							(String)v2.getProperty(STRING_ENTITY_ID));
+			}
+		});
+		
+		Vertex previous = vertex;
+		for (Vertex likeVertex : likeVertices)
+		{
+			previous.addEdge(STRING_LIKE_PATH, likeVertex);
+			previous = likeVertex;
+		}
+		
+		vertex.setProperty(STRING_LIKES_LINKED, true);
+		return true;
+	}
+	
+	/**
+	 * Reads the creation time of a like, which the sort key migration has
+	 * already converted to epoch milliseconds.
+	 */
+	private long getCreated(Vertex likeVertex)
+	{
+		Object value = likeVertex.getProperty(STRING_CREATED);
+		return value instanceof Number ? ((Number)value).longValue() : 0;
+	}
+	
+	private static final String STRING_TYPE = "Type";
+	private static final String STRING_ACTIVITY = "Activity";
+	private static final String STRING_LIKE = "Like";
+	private static final String STRING_LIKES = "Likes";
+	private static final String STRING_LIKES_KEYED = "LikesKeyed";
+	private static final String STRING_LIKES_LINKED = "LikesLinked";
+	private static final String STRING_LIKE_PATH = "LikePath";
+	private static final String STRING_ENTITY_ID = "EntityID";
+	private static final String STRING_CREATED = "Created";
+}
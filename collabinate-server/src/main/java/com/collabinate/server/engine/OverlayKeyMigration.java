@@ -0,0 +1,137 @@
+package com.collabinate.server.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Moves the feed overlays of users created before overlays were keyed to the
+ * IDs derived from their tenant, user and entity, so that an overlay can be
+ * retrieved directly rather than by searching the followers of an entity.
+ * Until a user is migrated its overlays are found by searching, so the
+ * migration can run alongside live requests.
+ * 
+ * @author mafuba
+ * 
+ */
+public class OverlayKeyMigration extends GraphMigration
+{
+	/**
+	 * The graph containing the overlays.
+	 */
+	private CollabinateGraph graph;
+	
+	/**
+	 * Initializes the migration.
+	 * 
+	 * @param graph The graph containing the overlays to key.
+	 */
+	public OverlayKeyMigration(CollabinateGraph graph)
+	{
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		this.graph = graph;
+	}
+	
+	@Override
+	public String getName()
+	{
+		return "OverlayKey";
+	}
+	
+	@Override
+	public boolean migrateVertex(Vertex vertex)
+	{
+		if (!STRING_ENTITY.equals(vertex.getProperty(STRING_TYPE)) ||
+				Boolean.TRUE.equals(vertex.getProperty(STRING_OVERLAYS_KEYED)))
+			return false;
+		
+		String tenantId = vertex.getProperty(STRING_TENANT_ID);
+		String userId = vertex.getProperty(STRING_ENTITY_ID);
+		
+		Vertex overlay = getNextOverlay(vertex);
+		while (null != overlay)
+		{
+			Vertex nextOverlay = getNextOverlay(overlay);
+			Vertex entity = getSingleVertex(overlay, STRING_FEED_ENTITY);
+			
+			if (null != entity)
+			{
+				String overlayId = GraphEngine.getOverlayVertexId(tenantId,
+						userId, (String)entity.getProperty(STRING_ENTITY_ID));
+				
+				if (!overlayId.equals(overlay.getId()) &&
+						null == graph.getVertex(overlayId))
+					replaceVertex(overlay, overlayId);
+			}
+			
+			overlay = nextOverlay;
+		}
+		
+		vertex.setProperty(STRING_OVERLAYS_KEYED, true);
+		return true;
+	}
+	
+	/**
+	 * Replaces a vertex with a copy at the given ID, including its properties
+	 * and the edges in both directions.
+	 * 
+	 * @param vertex The vertex to replace.
+	 * @param id The ID of the replacement vertex.
+	 */
+	private void replaceVertex(Vertex vertex, String id)
+	{
+		Vertex replacement = graph.addVertex(id);
+		copyProperties(vertex, replacement);
+		
+		// copy the edges first, as removing the vertex removes its edges
+		List<Edge> incoming = new ArrayList<Edge>();
+		for (Edge edge : vertex.getEdges(Direction.IN))
+			incoming.add(edge);
+		List<Edge> outgoing = new ArrayList<Edge>();
+		for (Edge edge : vertex.getEdges(Direction.OUT))
+			outgoing.add(edge);
+		
+		for (Edge edge : incoming)
+			copyProperties(edge, edge.getVertex(Direction.OUT)
+					.addEdge(edge.getLabel(), replacement));
+		for (Edge edge : outgoing)
+			copyProperties(edge, replacement.addEdge(edge.getLabel(),
+					edge.getVertex(Direction.IN)));
+		
+		vertex.remove();
+	}
+	
+	private void copyProperties(Element from, Element to)
+	{
+		for (String key : from.getPropertyKeys())
+			to.setProperty(key, from.getProperty(key));
+	}
+	
+	private Vertex getNextOverlay(Vertex node)
+	{
+		return getSingleVertex(node, STRING_FEED);
+	}
+	
+	private Vertex getSingleVertex(Vertex node, String edgeLabel)
+	{
+		for (Vertex vertex : node.getVertices(Direction.OUT, edgeLabel))
+			return vertex;
+		return null;
+	}
+	
+	private static final String STRING_TYPE = "Type";
+	private static final String STRING_ENTITY = "Entity";
+	private static final String STRING_TENANT_ID = "TenantID";
+	private static final String STRING_ENTITY_ID = "EntityID";
+	private static final String STRING_FEED = "Feed";
+	private static final String STRING_FEED_ENTITY = "FeedEntity";
+	private static final String STRING_OVERLAYS_KEYED = "OverlaysKeyed";
+}
@@ -0,0 +1,182 @@
+package com.collabinate.server.engine;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * A position within an ordered collection, used to page relative to an item
+ * rather than by index so that pages stay stable while items are added at
+ * the head. A cursor records the sort time of the item, the entity that owns
+ * it, and the ID of the item, and is exchanged with clients as an opaque
+ * token. The direction determines whether the page holds the items that come
+ * after the position (older) or before it (newer).
+ * 
+ * @author mafuba
+ * 
+ */
+public class PageCursor
+{
+	private final long sortTime;
+	private final String entityId;
+	private final String itemId;
+	private final boolean before;
+	
+	/**
+	 * Creates a cursor positioned at the given item.
+	 * 
+	 * @param sortTime The sort time of the item, in epoch milliseconds.
+	 * @param entityId The ID of the entity that owns the item.
+	 * @param itemId The ID of the item, or null if the entity identifies it.
+	 * @param before true to page towards newer items, false to page towards
+	 * older items.
+	 */
+	public PageCursor(long sortTime, String entityId, String itemId,
+			boolean before)
+	{
+		if (null == entityId)
+		{
+			throw new IllegalArgumentException("entityId must not be null");
+		}
+		
+		this.sortTime = sortTime;
+		this.entityId = entityId;
+		this.itemId = itemId;
+		this.before = before;
+	}
+	
+	/**
+	 * Creates a cursor for the page after (older than) the position encoded
+	 * in the given token.
+	 * 
+	 * @param token A token previously produced by {@link #getToken()}.
+	 * @return A cursor for the older items.
+	 * @throws IllegalArgumentException if the token is not valid.
+	 */
+	public static PageCursor after(String token)
+	{
+		return parse(token, false);
+	}
+	
+	/**
+	 * Creates a cursor for the page before (newer than) the position encoded
+	 * in the given token.
+	 * 
+	 * @param token A token previously produced by {@link #getToken()}.
+	 * @return A cursor for the newer items.
+	 * @throws IllegalArgumentException if the token is not valid.
+	 */
+	public static PageCursor before(String token)
+	{
+		return parse(token, true);
+	}
+	
+	/**
+	 * Creates a cursor from the before and after tokens of a request, at
+	 * most one of which may be given.
+	 * 
+	 * @param beforeToken A token for the page before a position, or null.
+	 * @param afterToken A token for the page after a position, or null.
+	 * @return The cursor for the given token, or null if neither is given.
+	 * @throws IllegalArgumentException if both tokens are given or the token
+	 * is not valid.
+	 */
+	public static PageCursor fromTokens(String beforeToken, String afterToken)
+	{
+		if (null != beforeToken && null != afterToken)
+		{
+			throw new IllegalArgumentException(
+					"before and after must not both be given");
+		}
+		
+		if (null != beforeToken)
+			return before(beforeToken);
+		
+		return null == afterToken ? null : after(afterToken);
+	}
+	
+	private static PageCursor parse(String token, boolean before)
+	{
+		if (null == token)
+		{
+			throw new IllegalArgumentException("token must not be null");
+		}
+		
+		try
+		{
+			String json = new String(ENCODING.decode(token),
+					StandardCharsets.UTF_8);
+			JsonArray values = new JsonParser().parse(json).getAsJsonArray();
+			JsonElement itemId = values.get(2);
+			
+			return new PageCursor(values.get(0).getAsLong(),
+					values.get(1).getAsString(),
+					itemId.isJsonNull() ? null : itemId.getAsString(),
+					before);
+		}
+		catch (JsonParseException | IllegalStateException |
+				IndexOutOfBoundsException | UnsupportedOperationException |
+				NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid cursor: " + token, e);
+		}
+	}
+	
+	/**
+	 * Gets the opaque token for the position of this cursor. The direction is
+	 * not part of the token.
+	 * 
+	 * @return A URL safe token string.
+	 */
+	public String getToken()
+	{
+		JsonArray values = new JsonArray();
+		values.add(new Gson().toJsonTree(sortTime));
+		values.add(new Gson().toJsonTree(entityId));
+		values.add(new Gson().toJsonTree(itemId));
+		
+		return ENCODING.encode(values.toString()
+				.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @return The sort time of the item at the cursor, in epoch milliseconds.
+	 */
+	public long getSortTime()
+	{
+		return sortTime;
+	}
+	
+	/**
+	 * @return The ID of the entity that owns the item at the cursor.
+	 */
+	public String getEntityId()
+	{
+		return entityId;
+	}
+	
+	/**
+	 * @return The ID of the item at the cursor, or null.
+	 */
+	public String getItemId()
+	{
+		return itemId;
+	}
+	
+	/**
+	 * @return true if the cursor pages towards newer items, false if it pages
+	 * towards older items.
+	 */
+	public boolean isBefore()
+	{
+		return before;
+	}
+	
+	private static final BaseEncoding ENCODING =
+			BaseEncoding.base64Url().omitPadding();
+}
@@ -0,0 +1,61 @@
+package com.collabinate.server.engine;
+
+import org.joda.time.DateTime;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Converts SortTime and Created properties stored as ISO-8601 strings into
+ * epoch millisecond longs, which can be compared without parsing.
+ * 
+ * @author mafuba
+ * 
+ */
+public class SortKeyMigration extends GraphMigration
+{
+	@Override
+	public String getName()
+	{
+		return "SortKey";
+	}
+	
+	@Override
+	public boolean migrateVertex(Vertex vertex)
+	{
+		return migrateElement(vertex);
+	}
+	
+	@Override
+	public boolean migrateEdge(Edge edge)
+	{
+		return migrateElement(edge);
+	}
+	
+	/**
+	 * Converts each string time property of the given element to a long.
+	 * 
+	 * @param element The vertex or edge to convert.
+	 * @return true if any property was converted, otherwise false.
+	 */
+	private boolean migrateElement(Element element)
+	{
+		boolean migrated = false;
+		
+		for (String key : TIME_KEYS)
+		{
+			Object value = element.getProperty(key);
+			if (value instanceof String)
+			{
+				element.setProperty(key,
+						DateTime.parse((String)value).getMillis());
+				migrated = true;
+			}
+		}
+		
+		return migrated;
+	}
+	
+	private static final String[] TIME_KEYS = { "SortTime", "Created" };
+}
@@ -0,0 +1,465 @@
+package com.collabinate.server.engine;
+
+import java.util.Iterator;
+
+import org.joda.time.DateTime;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A skip index over the stream of an entity. Every Nth activity, counted from
+ * the oldest end of the stream, is recorded in a marker vertex with a
+ * deterministic ID, so that reading from deep within a stream can jump to the
+ * nearest marker instead of walking from the newest activity. Positions are
+ * counted from the oldest end so that the common case of adding a new
+ * activity at the head of the stream does not move any markers.
+ * 
+ * The interval must stay the same for the lifetime of a data store, as the
+ * marker positions are persisted.
+ * 
+ * @author mafuba
+ * 
+ */
+class StreamIndex
+{
+	/**
+	 * The graph containing the streams.
+	 */
+	private CollabinateGraph graph;
+	
+	/**
+	 * The number of activities between markers.
+	 */
+	private int interval;
+	
+	/**
+	 * Creates an index with the default interval.
+	 * 
+	 * @param graph The graph containing the streams.
+	 */
+	StreamIndex(CollabinateGraph graph)
+	{
+		this(graph, DEFAULT_INTERVAL);
+	}
+	
+	/**
+	 * Creates an index with the given interval.
+	 * 
+	 * @param graph The graph containing the streams.
+	 * @param interval The number of activities between markers.
+	 */
+	StreamIndex(CollabinateGraph graph, int interval)
+	{
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		if (interval < 1)
+		{
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		
+		this.graph = graph;
+		this.interval = interval;
+	}
+	
+	/**
+	 * Marks a newly created entity as indexed. Entities created before the
+	 * index existed are not marked, and are read by walking the stream until
+	 * the index is built for them.
+	 * 
+	 * @param entity The vertex of the new entity.
+	 */
+	void initialize(Vertex entity)
+	{
+		entity.setProperty(STRING_STREAM_INDEXED, true);
+	}
+	
+	/**
+	 * Determines whether the stream of the given entity is indexed.
+	 * 
+	 * @param entity The vertex of the entity.
+	 * @return true if the entity has a maintained index, otherwise false.
+	 */
+	boolean isIndexed(Vertex entity)
+	{
+		return Boolean.TRUE.equals(entity.getProperty(STRING_STREAM_INDEXED));
+	}
+	
+	/**
+	 * Finds the activity at the given zero-based position in the stream of an
+	 * entity, where the newest activity is at position zero.
+	 * 
+	 * @param entity The vertex of the entity.
+	 * @param startIndex The position of the activity to find.
+	 * @return The activity at the given position, or null if the stream is
+	 * shorter than the position.
+	 */
+	Vertex seek(Vertex entity, int startIndex)
+	{
+		Vertex current = null;
+		int steps = startIndex;
+		
+		if (isIndexed(entity))
+		{
+			int streamCount = (int)entity.getProperty(STRING_STREAM_COUNT);
+			if (startIndex >= streamCount)
+				return null;
+			
+			// jump to the closest marker at or before the position, which is
+			// the closest one counting from the end of the stream at or after
+			int tailPosition = streamCount - 1 - startIndex;
+			int markerPosition = roundUp(tailPosition);
+			
+			if (markerPosition < streamCount)
+			{
+				current = getMarkedActivity(entity, markerPosition);
+				steps = markerPosition - tailPosition;
+			}
+		}
+		
+		if (null == current)
+		{
+			current = getNextActivity(entity);
+			steps = startIndex;
+		}
+		
+		while (null != current && steps > 0)
+		{
+			current = getNextActivity(current);
+			steps--;
+		}
+		
+		return current;
+	}
+	
+	/**
+	 * Finds the newest activity in the stream of an entity that is older than
+	 * the given sort time. The markers are in sort time order, so they are
+	 * searched by halving before walking the remaining distance.
+	 * 
+	 * @param entity The vertex of the entity.
+	 * @param sortTime The sort time in epoch milliseconds.
+	 * @return The newest activity older than the sort time, or null if there
+	 * is none.
+	 */
+	Vertex seekOlderThan(Vertex entity, long sortTime)
+	{
+		Vertex current = null;
+		
+		if (isIndexed(entity))
+		{
+			int streamCount = (int)entity.getProperty(STRING_STREAM_COUNT);
+			if (0 == streamCount)
+				return null;
+			
+			// find the oldest marker that is not older than the sort time;
+			// markers are newer the further they are from the end
+			int low = 0;
+			int high = (streamCount - 1) / interval;
+			Vertex found = null;
+			
+			while (low <= high)
+			{
+				int middle = (low + high) >>> 1;
+				Vertex marked = getMarkedActivity(entity, middle * interval);
+				if (null == marked)
+				{
+					// the index is incomplete, so fall back to walking
+					found = null;
+					break;
+				}
+				
+				if (getSortTime(marked) >= sortTime)
+				{
+					found = marked;
+					high = middle - 1;
+				}
+				else
+				{
+					low = middle + 1;
+				}
+			}
+			
+			current = found;
+		}
+		
+		if (null == current)
+			current = getNextActivity(entity);
+		
+		while (null != current && getSortTime(current) >= sortTime)
+		{
+			current = getNextActivity(current);
+		}
+		
+		return current;
+	}
+	
+	/**
+	 * Updates the index after an activity is linked into a stream. This must
+	 * be called before the stream count of the entity is adjusted.
+	 * 
+	 * @param entity The vertex of the entity.
+	 * @param activity The vertex of the added activity.
+	 * @param position The zero-based position of the added activity, counting
+	 * from the newest.
+	 */
+	void activityInserted(Vertex entity, Vertex activity, int position)
+	{
+		if (!isIndexed(entity))
+			return;
+		
+		int streamCount = (int)entity.getProperty(STRING_STREAM_COUNT);
+		int tailPosition = streamCount - position;
+		
+		// markers at or newer than the added activity now point to the
+		// activity one step older than before
+		for (int markerPosition = roundUp(tailPosition);
+				markerPosition < streamCount; markerPosition += interval)
+		{
+			Vertex marker = getMarker(entity, markerPosition);
+			if (null != marker)
+			{
+				Vertex marked = getActivity(entity, marker);
+				moveMarker(marker, marked, getNextActivity(marked));
+			}
+		}
+		
+		// the stream has grown, so the newest activity may need a marker
+		if (streamCount % interval == 0)
+		{
+			addMarker(entity, streamCount, getNextActivity(entity));
+		}
+	}
+	
+	/**
+	 * Updates the index before an activity is unlinked from a stream. This
+	 * must be called while the activity is still in the stream, and before
+	 * the stream count of the entity is adjusted.
+	 * 
+	 * @param entity The vertex of the entity.
+	 * @param activity The vertex of the activity to be removed.
+	 */
+	void activityRemoving(Vertex entity, Vertex activity)
+	{
+		if (!isIndexed(entity))
+			return;
+		
+		int streamCount = (int)entity.getProperty(STRING_STREAM_COUNT);
+		int tailPosition = getTailPosition(activity);
+		int lastPosition = roundUp(tailPosition);
+		
+		// markers at or newer than the removed activity now point to the
+		// activity one step newer than before; the newest are moved first so
+		// each target is released before the next older marker takes it
+		for (int markerPosition = roundDown(streamCount - 1);
+				markerPosition >= lastPosition; markerPosition -= interval)
+		{
+			Vertex marker = getMarker(entity, markerPosition);
+			if (null == marker)
+				continue;
+			
+			Vertex marked = getActivity(entity, marker);
+			if (markerPosition == streamCount - 1)
+			{
+				// the stream is shrinking past this marker
+				if (null != marked)
+					marked.removeProperty(STRING_SKIP_POSITION);
+				marker.remove();
+			}
+			else
+			{
+				moveMarker(marker, marked, getPreviousActivity(marked));
+			}
+		}
+	}
+	
+	/**
+	 * Creates the index for the stream of an entity, replacing any existing
+	 * markers.
+	 * 
+	 * @param entity The vertex of the entity to index.
+	 */
+	void build(Vertex entity)
+	{
+		// count the stream, clearing any previous marks along the way
+		int streamCount = 0;
+		Vertex current = getNextActivity(entity);
+		while (null != current)
+		{
+			current.removeProperty(STRING_SKIP_POSITION);
+			streamCount++;
+			current = getNextActivity(current);
+		}
+		
+		// remove markers left over from a previous build
+		for (int markerPosition = 0; ; markerPosition += interval)
+		{
+			Vertex marker = getMarker(entity, markerPosition);
+			if (null == marker)
+				break;
+			marker.remove();
+		}
+		
+		// walk again, adding a marker at each interval from the end
+		int position = 0;
+		current = getNextActivity(entity);
+		while (null != current)
+		{
+			int tailPosition = streamCount - 1 - position;
+			if (tailPosition % interval == 0)
+				addMarker(entity, tailPosition, current);
+			position++;
+			current = getNextActivity(current);
+		}
+		
+		entity.setProperty(STRING_STREAM_COUNT, streamCount);
+		entity.setProperty(STRING_STREAM_INDEXED, true);
+	}
+	
+	/**
+	 * Determines the position of an activity counting from the oldest end of
+	 * its stream, by walking towards the end until a marked activity is found.
+	 * 
+	 * @param activity The vertex of the activity.
+	 * @return The position of the activity from the end of the stream.
+	 */
+	private int getTailPosition(Vertex activity)
+	{
+		int steps = 0;
+		Vertex current = activity;
+		
+		while (null != current)
+		{
+			Object markerPosition = current.getProperty(STRING_SKIP_POSITION);
+			if (null != markerPosition)
+				return (int)markerPosition + steps;
+			
+			current = getNextActivity(current);
+			steps++;
+		}
+		
+		return steps - 1;
+	}
+	
+	/**
+	 * Adds a marker at the given position pointing to the given activity.
+	 */
+	private void addMarker(Vertex entity, int markerPosition, Vertex activity)
+	{
+		Vertex marker = graph.addVertex(getMarkerId(entity, markerPosition));
+		marker.setProperty(STRING_TYPE, STRING_STREAM_SKIP);
+		marker.setProperty(STRING_TENANT_ID,
+				entity.getProperty(STRING_TENANT_ID));
+		marker.setProperty(STRING_ENTITY_ID,
+				entity.getProperty(STRING_ENTITY_ID));
+		marker.setProperty(STRING_POSITION, markerPosition);
+		moveMarker(marker, null, activity);
+	}
+	
+	/**
+	 * Points a marker at a different activity.
+	 */
+	private void moveMarker(Vertex marker, Vertex from, Vertex to)
+	{
+		if (null != from)
+			from.removeProperty(STRING_SKIP_POSITION);
+		
+		marker.setProperty(STRING_ACTIVITY_ID,
+				to.getProperty(STRING_ACTIVITY_ID));
+		to.setProperty(STRING_SKIP_POSITION,
+				marker.getProperty(STRING_POSITION));
+	}
+	
+	/**
+	 * Retrieves the marker at the given position, or null if none exists.
+	 */
+	private Vertex getMarker(Vertex entity, int markerPosition)
+	{
+		return graph.getVertex(getMarkerId(entity, markerPosition));
+	}
+	
+	/**
+	 * Retrieves the activity pointed to by the marker at the given position,
+	 * or null if there is no such marker.
+	 */
+	private Vertex getMarkedActivity(Vertex entity, int markerPosition)
+	{
+		Vertex marker = getMarker(entity, markerPosition);
+		return null == marker ? null : getActivity(entity, marker);
+	}
+	
+	/**
+	 * Retrieves the activity pointed to by the given marker.
+	 */
+	private Vertex getActivity(Vertex entity, Vertex marker)
+	{
+		return graph.getVertex(entity.getId() + STRING_ID_SEPARATOR
+				+ marker.getProperty(STRING_ACTIVITY_ID));
+	}
+	
+	/**
+	 * Gets the sort time of an activity, tolerating times stored as strings
+	 * before the sort key migration.
+	 */
+	private long getSortTime(Vertex activity)
+	{
+		Object value = activity.getProperty(STRING_SORTTIME);
+		if (value instanceof Number)
+			return ((Number)value).longValue();
+		
+		return DateTime.parse((String)value).getMillis();
+	}
+	
+	private String getMarkerId(Vertex entity, int markerPosition)
+	{
+		return STRING_MARKER_PREFIX + entity.getId() + STRING_ID_SEPARATOR
+				+ markerPosition;
+	}
+	
+	private int roundUp(int position)
+	{
+		return ((position + interval - 1) / interval) * interval;
+	}
+	
+	private int roundDown(int position)
+	{
+		return (position / interval) * interval;
+	}
+	
+	private Vertex getNextActivity(Vertex node)
+	{
+		Iterator<Edge> edges =
+				node.getEdges(Direction.OUT, STRING_STREAM).iterator();
+		return edges.hasNext() ? edges.next().getVertex(Direction.IN) : null;
+	}
+	
+	private Vertex getPreviousActivity(Vertex node)
+	{
+		Iterator<Edge> edges =
+				node.getEdges(Direction.IN, STRING_STREAM).iterator();
+		return edges.hasNext() ? edges.next().getVertex(Direction.OUT) : null;
+	}
+	
+	/**
+	 * The default number of activities between markers.
+	 */
+	static final int DEFAULT_INTERVAL = 64;
+	
+	private static final String STRING_MARKER_PREFIX = "collabinate.skip.";
+	private static final String STRING_ID_SEPARATOR = ".";
+	private static final String STRING_TENANT_ID = "TenantID";
+	private static final String STRING_ENTITY_ID = "EntityID";
+	private static final String STRING_ACTIVITY_ID = "ActivityID";
+	private static final String STRING_TYPE = "Type";
+	private static final String STRING_STREAM = "Stream";
+	private static final String STRING_STREAM_COUNT = "StreamCount";
+	private static final String STRING_STREAM_INDEXED = "StreamIndexed";
+	private static final String STRING_STREAM_SKIP = "StreamSkip";
+	private static final String STRING_SKIP_POSITION = "SkipPosition";
+	private static final String STRING_POSITION = "Position";
+	private static final String STRING_SORTTIME = "SortTime";
+}
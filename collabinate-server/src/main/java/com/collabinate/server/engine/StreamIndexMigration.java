@@ -0,0 +1,54 @@
+package com.collabinate.server.engine;
+
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Builds the stream skip index for entities created before the index was
+ * maintained. Until an entity is indexed its stream is read by walking from
+ * the newest activity, so the migration can run alongside live requests.
+ * 
+ * @author mafuba
+ * 
+ */
+public class StreamIndexMigration extends GraphMigration
+{
+	/**
+	 * The index to build for each entity.
+	 */
+	private StreamIndex streamIndex;
+	
+	/**
+	 * Initializes the migration.
+	 * 
+	 * @param graph The graph containing the streams to index.
+	 */
+	public StreamIndexMigration(CollabinateGraph graph)
+	{
+		if (null == graph)
+		{
+			throw new IllegalArgumentException("graph must not be null");
+		}
+		
+		this.streamIndex = new StreamIndex(graph);
+	}
+	
+	@Override
+	public String getName()
+	{
+		return "StreamIndex";
+	}
+	
+	@Override
+	public boolean migrateVertex(Vertex vertex)
+	{
+		if (!STRING_ENTITY.equals(vertex.getProperty(STRING_TYPE)) ||
+				streamIndex.isIndexed(vertex))
+			return false;
+		
+		streamIndex.build(vertex);
+		return true;
+	}
+	
+	private static final String STRING_TYPE = "Type";
+	private static final String STRING_ENTITY = "Entity";
+}
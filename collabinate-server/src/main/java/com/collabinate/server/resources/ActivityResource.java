@@ -1,5 +1,7 @@
 package com.collabinate.server.resources;
 
+import java.util.Collections;
+
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
 import org.restlet.data.Tag;
@@ -25,7 +27,7 @@ import com.google.common.hash.Hashing;
  */
 public class ActivityResource extends ServerResource
 {
-	@Get("json")
+	@Get("json|smile")
 	public Representation getActivity()
 	{
 		// extract necessary information from the context
@@ -36,32 +38,51 @@ public class ActivityResource extends ServerResource
 		String activityId = getAttribute("activityId");
 		String commentsString = getQueryValue("comments");
 		String likesString = getQueryValue("likes");
+		MediaType mediaType = SmileRepresentation.getMediaType(this);
 
+		// the activity version covers its comments and likes, so a current
+		// copy held by the client is answered without reading the activity
+		long version =
+				reader.getActivityVersion(tenantId, entityId, activityId);
+		VersionStamp stamp = version > 0 ? new VersionStamp(version,
+				mediaType, tenantId, entityId, activityId, commentsString,
+				likesString) : null;
+		
+		Representation notModified =
+				null == stamp ? null : stamp.getNotModified(this);
+		if (null != notModified)
+			return notModified;
+		
 		Activity matchingActivity =
 				reader.getActivity(tenantId, entityId, activityId);
 		
 		if (null != matchingActivity)
 		{
-			if (null != commentsString)
-			{
-				matchingActivity.setReplies(
-						reader.getComments(tenantId, entityId, activityId, 0,
-								Integer.parseInt(commentsString)));
-			}
-			
-			if (null != likesString)
+			if (null != commentsString || null != likesString)
 			{
-				matchingActivity.setLikes(
-						reader.getLikes(tenantId, entityId, activityId, 0,
-								Integer.parseInt(likesString)));
+				reader.enrichActivities(tenantId, entityId,
+						Collections.<ActivityStreamsObject>singletonList(
+								matchingActivity),
+						null != commentsString ? Math.max(0,
+								Integer.parseInt(commentsString)) : -1,
+						null != likesString ? Math.max(0,
+								Integer.parseInt(likesString)) : -1,
+						null);
 			}
 			
-			Representation representation = new StringRepresentation(
-					matchingActivity.toString(), MediaType.APPLICATION_JSON);
-			representation.setTag(
-				new Tag(Hashing.murmur3_128().hashUnencodedChars(
-				matchingActivity.toString()+tenantId+entityId+activityId)
-				.toString(), false));
+			Representation representation =
+					MediaType.APPLICATION_JSON.equals(mediaType) ?
+					new StringRepresentation(matchingActivity.toString(),
+							MediaType.APPLICATION_JSON) :
+					new SmileRepresentation(matchingActivity);
+			if (null != stamp)
+				stamp.apply(representation);
+			else
+				representation.setTag(
+					new Tag(Hashing.murmur3_128().hashUnencodedChars(
+					matchingActivity.toString()+tenantId+entityId+activityId+
+					VersionStamp.getVariant(mediaType))
+					.toString(), false));
 			
 			return representation;
 		}
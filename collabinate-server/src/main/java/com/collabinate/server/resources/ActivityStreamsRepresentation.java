@@ -0,0 +1,41 @@
+package com.collabinate.server.resources;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.MediaType;
+import org.restlet.representation.WriterRepresentation;
+
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+
+/**
+ * JSON representation that writes an Activity Streams object straight to
+ * the response. A collection read from the data store is written from the
+ * stored content of its items, without first being built into a string.
+ * 
+ * @author mafuba
+ * 
+ */
+class ActivityStreamsRepresentation extends WriterRepresentation
+{
+	private final ActivityStreamsObject object;
+	
+	/**
+	 * Creates a representation of the given object.
+	 * 
+	 * @param object The object to write.
+	 */
+	ActivityStreamsRepresentation(ActivityStreamsObject object)
+	{
+		super(MediaType.APPLICATION_JSON);
+		setCharacterSet(CharacterSet.UTF_8);
+		this.object = object;
+	}
+	
+	@Override
+	public void write(Writer writer) throws IOException
+	{
+		object.writeTo(writer);
+	}
+}
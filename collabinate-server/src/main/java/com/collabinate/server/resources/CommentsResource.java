@@ -14,8 +14,10 @@ import org.restlet.resource.ServerResource;
 
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.collabinate.server.engine.AsynchronousWriter;
 import com.collabinate.server.engine.CollabinateReader;
 import com.collabinate.server.engine.CollabinateWriter;
+import com.collabinate.server.engine.PageCursor;
 import com.google.common.hash.Hashing;
 
 /**
@@ -26,7 +28,7 @@ import com.google.common.hash.Hashing;
  */
 public class CommentsResource extends ServerResource
 {
-	@Get("json")
+	@Get("json|smile")
 	public Representation getComments()
 	{
 		// extract necessary information from the context
@@ -37,21 +39,63 @@ public class CommentsResource extends ServerResource
 		String activityId = getAttribute("activityId");
 		String skipString = getQueryValue("skip");
 		String takeString = getQueryValue("take");
+		String beforeString = getQueryValue("before");
+		String afterString = getQueryValue("after");
+		MediaType mediaType = SmileRepresentation.getMediaType(this);
 		int skip = null == skipString ? 0 : Integer.parseInt(skipString);
 		int take = null == takeString ? DEFAULT_COUNT : 
 			Integer.parseInt(takeString);
 		
-		ActivityStreamsCollection commentsCollection =
-			reader.getComments(tenantId, entityId, activityId, skip, take);
+		PageCursor cursor;
+		try
+		{
+			cursor = PageCursor.fromTokens(beforeString, afterString);
+		}
+		catch (IllegalArgumentException e)
+		{
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return null;
+		}
+		
+		// the activity version covers its comments, so a current copy held
+		// by the client is answered without reading the comments
+		long version =
+				reader.getActivityVersion(tenantId, entityId, activityId);
+		VersionStamp stamp = version > 0 ? new VersionStamp(version,
+				mediaType, tenantId, entityId, activityId, skipString,
+				takeString, beforeString, afterString) : null;
+		
+		Representation notModified =
+				null == stamp ? null : stamp.getNotModified(this);
+		if (null != notModified)
+			return notModified;
+		
+		ActivityStreamsCollection commentsCollection = null == cursor ?
+			reader.getComments(tenantId, entityId, activityId, skip, take) :
+			reader.getComments(tenantId, entityId, activityId, cursor, take);
 		
 		if (null != commentsCollection)
 		{
+			// a stamped page is written straight to the response, while the
+			// tag of any other is hashed from its content
+			if (null != stamp)
+			{
+				Representation representation = SmileRepresentation.create(
+						commentsCollection, mediaType);
+				stamp.apply(representation);
+				return representation;
+			}
+			
 			String comments = commentsCollection.toString();
-			Representation representation = new StringRepresentation(
-					comments, MediaType.APPLICATION_JSON);
+			Representation representation =
+					MediaType.APPLICATION_JSON.equals(mediaType) ?
+					new StringRepresentation(
+							comments, MediaType.APPLICATION_JSON) :
+					new SmileRepresentation(commentsCollection);
 			representation.setTag(
 				new Tag(Hashing.murmur3_128().hashUnencodedChars(
-				comments+tenantId+entityId+activityId+skipString+takeString)
+				comments+tenantId+entityId+activityId+skipString+takeString+
+				beforeString+afterString+VersionStamp.getVariant(mediaType))
 				.toString(), false));
 			
 			return representation;
@@ -132,7 +176,10 @@ public class CommentsResource extends ServerResource
 		//TODO: return relative reference location
 		setLocationRef(new Reference(getReference())
 			.addSegment(comment.getId()));
-		setStatus(Status.SUCCESS_CREATED);
+		
+		// queued writes have been accepted but not yet created
+		setStatus(writer instanceof AsynchronousWriter ?
+				Status.SUCCESS_ACCEPTED : Status.SUCCESS_CREATED);
 	}
 	
 	private static final int DEFAULT_COUNT = 20;
@@ -28,14 +28,28 @@ public class EntityResource extends ServerResource
 				.getAttributes().get("collabinateReader");
 		String tenantId = getAttribute("tenantId");
 		String entityId = getAttribute("entityId");
+		
+		// the entity version covers its counts, so a current copy held by
+		// the client is answered without counting
+		long version = reader.getEntityVersion(tenantId, entityId);
+		VersionStamp stamp = version > 0 ?
+				new VersionStamp(version, tenantId, entityId) : null;
+		
+		Representation notModified =
+				null == stamp ? null : stamp.getNotModified(this);
+		if (null != notModified)
+			return notModified;
 
 		String result = reader.getEntity(tenantId, entityId).toString();
 		
 		Representation representation = new StringRepresentation(
 				result, MediaType.APPLICATION_JSON);
-		representation.setTag(new Tag(Hashing.murmur3_128().hashUnencodedChars(
-				result+tenantId+entityId)
-				.toString(), false));
+		if (null != stamp)
+			stamp.apply(representation);
+		else
+			representation.setTag(new Tag(Hashing.murmur3_128()
+					.hashUnencodedChars(result+tenantId+entityId)
+					.toString(), false));
 		
 		return representation;
 	}
@@ -1,10 +1,9 @@
 package com.collabinate.server.resources;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import org.joda.time.DateTime;
 import org.restlet.data.MediaType;
+import org.restlet.data.Status;
 import org.restlet.data.Tag;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
@@ -14,6 +13,7 @@ import org.restlet.resource.ServerResource;
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
 import com.collabinate.server.engine.CollabinateReader;
+import com.collabinate.server.engine.PageCursor;
 import com.google.common.hash.Hashing;
 
 /**
@@ -25,7 +25,7 @@ import com.google.common.hash.Hashing;
  */
 public class FeedResource extends ServerResource
 {
-	@Get("json")
+	@Get("json|smile")
 	public Representation getFeed()
 	{
 		// extract necessary information from the context
@@ -35,26 +35,85 @@ public class FeedResource extends ServerResource
 		String userId = getAttribute("userId");
 		String skipString = getQueryValue("skip");
 		String takeString = getQueryValue("take");
+		String beforeString = getQueryValue("before");
+		String afterString = getQueryValue("after");
+		MediaType mediaType = SmileRepresentation.getMediaType(this);
 		int skip = null == skipString ? 0 : Integer.parseInt(skipString);
 		int take = null == takeString ? DEFAULT_TAKE : 
 			Integer.parseInt(takeString);
 		
-		ActivityStreamsCollection activitiesCollection =
-				reader.getFeed(tenantId, userId, skip, take);
+		PageCursor cursor;
+		try
+		{
+			cursor = PageCursor.fromTokens(beforeString, afterString);
+		}
+		catch (IllegalArgumentException e)
+		{
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return null;
+		}
+		
+		// unless comments or likes are added, the feed version covers the
+		// page, so a current copy held by the client is answered without
+		// reading the feed
+		VersionStamp stamp = null;
+		if (!isEnriched())
+		{
+			long version = reader.getFeedVersion(tenantId, userId);
+			if (version > 0)
+				stamp = new VersionStamp(version, mediaType, tenantId, userId,
+						skipString, takeString, beforeString, afterString);
+		}
+		
+		Representation notModified =
+				null == stamp ? null : stamp.getNotModified(this);
+		if (null != notModified)
+			return notModified;
+		
+		ActivityStreamsCollection activitiesCollection = null == cursor ?
+				reader.getFeed(tenantId, userId, skip, take) :
+				reader.getFeed(tenantId, userId, cursor, take);
 		
 		appendCollections(activitiesCollection, reader, tenantId, userId);
 		
+		// a stamped page is written straight to the response, while the tag
+		// of any other is hashed from its content
+		if (null != stamp)
+		{
+			Representation representation = SmileRepresentation.create(
+					activitiesCollection, mediaType);
+			stamp.apply(representation);
+			return representation;
+		}
+		
 		String result = activitiesCollection.toString();
 		
-		Representation representation = new StringRepresentation(
-				result, MediaType.APPLICATION_JSON);
-		representation.setTag(new Tag(Hashing.murmur3_128().hashUnencodedChars(
-				result+tenantId+userId+skipString+takeString)
-				.toString(), false));
+		Representation representation =
+				MediaType.APPLICATION_JSON.equals(mediaType) ?
+				new StringRepresentation(result, MediaType.APPLICATION_JSON) :
+				new SmileRepresentation(activitiesCollection);
+		representation.setTag(new Tag(Hashing.murmur3_128()
+				.hashUnencodedChars(result+tenantId+userId+skipString+
+				takeString+beforeString+afterString+
+				VersionStamp.getVariant(mediaType)).toString(), false));
 		
 		return representation;
 	}
 	
+	/**
+	 * Determines whether comments, likes or the like status of a user are
+	 * added to the activities, which the feed version does not cover.
+	 * 
+	 * @return true if any of the comments, likes or userLiked query values
+	 * are present.
+	 */
+	private boolean isEnriched()
+	{
+		return null != getQueryValue("comments") ||
+				null != getQueryValue("likes") ||
+				null != getQueryValue("userLiked");
+	}
+	
 	/**
 	 * Appends the comments and likes collection values to each of the items
 	 * in the given collection of activities, according to the value of the
@@ -78,48 +137,17 @@ public class FeedResource extends ServerResource
 			null != likesString || 
 			null != userLikedString)
 		{
-			boolean processComments = null != commentsString;
-			boolean processLikes = null != likesString;
-			boolean processUserLiked = null != userLikedString;
-			int comments = processComments ? 
-					Integer.parseInt(commentsString) : 0;
-			int likes = processLikes ?
-					Integer.parseInt(likesString) : 0;
+			int comments = null != commentsString ?
+					Math.max(0, Integer.parseInt(commentsString)) : -1;
+			int likes = null != likesString ?
+					Math.max(0, Integer.parseInt(likesString)) : -1;
 			List<ActivityStreamsObject> activities =
 					activitiesCollection.getItems();
-			List<ActivityStreamsObject> updatedActivities =
-					new ArrayList<ActivityStreamsObject>();
 			
-			for (ActivityStreamsObject activity : activities)
-			{
-				String entityId = activity.getCollabinateValue("entityId");
-				
-				if (processComments)
-				{
-					activity.setReplies(reader.getComments(tenantId, entityId,
-						activity.getId(), 0, comments));
-				}
-				if (processLikes)
-				{
-					activity.setLikes(reader.getLikes(tenantId, entityId,
-						activity.getId(), 0, likes));
-				}
-				if (processUserLiked)
-				{
-					DateTime likedDate = reader.userLikesActivity(
-							tenantId, userId, entityId, activity.getId());
-					
-					if (null != likedDate)
-					{
-						activity.setCollabinateValue("likedByUser",
-								likedDate.toString());
-					}
-				}
-				
-				updatedActivities.add(activity);
-			}
+			reader.enrichActivities(tenantId, null, activities, comments,
+					likes, null != userLikedString ? userId : null);
 			
-			activitiesCollection.setItems(updatedActivities);
+			activitiesCollection.setItems(activities);
 		}
 	}
 		
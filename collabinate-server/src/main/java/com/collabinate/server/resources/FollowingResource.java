@@ -1,18 +1,25 @@
 package com.collabinate.server.resources;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.restlet.resource.Get;
 import org.restlet.resource.Post;
 import org.restlet.resource.ServerResource;
 
+import com.collabinate.server.activitystreams.Activity;
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
 import com.collabinate.server.engine.CollabinateReader;
 import com.collabinate.server.engine.CollabinateWriter;;
 
 /**
- * Restful resource representing the entities followed by a user.
+ * Restful resource representing the entities followed by a user. A posted
+ * collection of entities is followed, while a posted collection may also hold
+ * follow and stop-following activities whose objects are the entities, such
+ * as when synchronizing with another system.
  * 
  * @author mafuba
  *
@@ -48,15 +55,33 @@ public class FollowingResource extends ServerResource
 		ActivityStreamsCollection followingCollection =
 				new ActivityStreamsCollection(collectionString);
 		
+		List<String> entityIds = new ArrayList<String>();
+		List<String> stopFollowingIds = new ArrayList<String>();
 		for (ActivityStreamsObject following : followingCollection.getItems())
 		{
-			String id = following.getId();
+			// an activity changes the relationship with its object
+			Activity change = new Activity(following.toString());
+			String verb = change.getVerb();
+			boolean stopFollowing =
+					FollowingEntityResource.STOP_FOLLOWING.equals(verb);
+			if (stopFollowing || FollowingEntityResource.FOLLOW.equals(verb))
+				following = change.getObject();
+			
+			String id = null == following ? null : following.getId();
 			if (null != id && !id.equals(""))
 			{
-				writer.followEntity(tenantId, userId, id,
-						DateTime.now(DateTimeZone.UTC));
+				if (stopFollowing)
+					stopFollowingIds.add(id);
+				else
+					entityIds.add(id);
 			}
 		}
+		
+		// change the relationships together so the feed is built in one pass
+		if (!stopFollowingIds.isEmpty())
+			writer.unfollowEntities(tenantId, userId, stopFollowingIds);
+		writer.followEntities(tenantId, userId, entityIds,
+				DateTime.now(DateTimeZone.UTC));
 	}
 	
 	private static final int DEFAULT_TAKE = 20;
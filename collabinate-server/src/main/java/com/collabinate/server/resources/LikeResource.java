@@ -9,6 +9,7 @@ import org.restlet.resource.ServerResource;
 
 import com.collabinate.server.activitystreams.Activity;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.collabinate.server.engine.AsynchronousWriter;
 import com.collabinate.server.engine.CollabinateReader;
 import com.collabinate.server.engine.CollabinateWriter;
 
@@ -69,7 +70,8 @@ public class LikeResource extends ServerResource
 		}
 		
 		writer.likeActivity(tenantId, userId, entityId, activityId);
-		setStatus(Status.SUCCESS_OK);
+		setStatus(writer instanceof AsynchronousWriter ?
+				Status.SUCCESS_ACCEPTED : Status.SUCCESS_OK);
 	}
 	
 	@Delete
@@ -93,7 +95,8 @@ public class LikeResource extends ServerResource
 		}
 		
 		writer.unlikeActivity(tenantId, userId, entityId, activityId);
-		setStatus(Status.SUCCESS_OK);
+		setStatus(writer instanceof AsynchronousWriter ?
+				Status.SUCCESS_ACCEPTED : Status.SUCCESS_OK);
 	}
 	
 	/**
@@ -6,6 +6,7 @@ import org.restlet.resource.ServerResource;
 
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.engine.CollabinateReader;
+import com.collabinate.server.engine.PageCursor;
 
 /**
  * Restful resource representing a collection of likes for an activity.
@@ -26,12 +27,26 @@ public class LikesResource extends ServerResource
 		String activityId = getAttribute("activityId");
 		String skipString = getQueryValue("skip");
 		String takeString = getQueryValue("take");
+		String beforeString = getQueryValue("before");
+		String afterString = getQueryValue("after");
 		int skip = null == skipString ? 0 : Integer.parseInt(skipString);
 		int take = null == takeString ? DEFAULT_TAKE : 
 			Integer.parseInt(takeString);
 
-		ActivityStreamsCollection likes = reader.getLikes(
-				tenantId, entityId, activityId, skip, take);
+		PageCursor cursor;
+		try
+		{
+			cursor = PageCursor.fromTokens(beforeString, afterString);
+		}
+		catch (IllegalArgumentException e)
+		{
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return null;
+		}
+		
+		ActivityStreamsCollection likes = null == cursor ?
+				reader.getLikes(tenantId, entityId, activityId, skip, take) :
+				reader.getLikes(tenantId, entityId, activityId, cursor, take);
 		
 		if (null != likes)
 		{
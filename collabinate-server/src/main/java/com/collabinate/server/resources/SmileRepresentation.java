@@ -0,0 +1,104 @@
+package com.collabinate.server.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ServerResource;
+
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.collabinate.server.activitystreams.SmileCodec;
+
+/**
+ * Smile representation of an Activity Streams object, for clients that ask
+ * for the binary form of JSON in place of JSON text. The object is written
+ * straight to the response, as with an ActivityStreamsRepresentation.
+ * 
+ * @author mafuba
+ * 
+ */
+public class SmileRepresentation extends OutputRepresentation
+{
+	private final ActivityStreamsObject object;
+	
+	/**
+	 * Creates a representation of the given object.
+	 * 
+	 * @param object The object to write.
+	 */
+	SmileRepresentation(ActivityStreamsObject object)
+	{
+		super(APPLICATION_SMILE);
+		this.object = object;
+	}
+	
+	@Override
+	public void write(OutputStream outputStream) throws IOException
+	{
+		CODEC.write(object, outputStream);
+	}
+	
+	/**
+	 * Determines the media type in which to answer a request, which is Smile
+	 * if the client prefers it to JSON, and otherwise JSON.
+	 * 
+	 * @param resource The resource handling the request.
+	 * @return The media type of the representation to return.
+	 */
+	static MediaType getMediaType(ServerResource resource)
+	{
+		MediaType preferred =
+				resource.getClientInfo().getPreferredMediaType(MEDIA_TYPES);
+		return APPLICATION_SMILE.equals(preferred) ?
+				APPLICATION_SMILE : MediaType.APPLICATION_JSON;
+	}
+	
+	/**
+	 * Gets the JSON text of a posted entity, which may be JSON or Smile.
+	 * 
+	 * @param entity The posted entity, which may be null.
+	 * @return The JSON text of the entity, or null if there is none.
+	 * @throws IOException if the entity cannot be read.
+	 */
+	static String getJson(Representation entity) throws IOException
+	{
+		if (null == entity)
+			return null;
+		
+		if (APPLICATION_SMILE.equals(entity.getMediaType(), true))
+			return CODEC.toJson(entity.getStream());
+		
+		return entity.getText();
+	}
+	
+	/**
+	 * Creates a representation of an object in the given media type.
+	 * 
+	 * @param object The object to represent.
+	 * @param mediaType Smile or JSON.
+	 * @return A Smile representation if the media type is Smile, and
+	 * otherwise a JSON representation.
+	 */
+	static Representation create(ActivityStreamsObject object,
+			MediaType mediaType)
+	{
+		if (APPLICATION_SMILE.equals(mediaType))
+			return new SmileRepresentation(object);
+		
+		return new ActivityStreamsRepresentation(object);
+	}
+	
+	/**
+	 * The media type of Smile documents.
+	 */
+	public static final MediaType APPLICATION_SMILE = MediaType.register(
+			"application/x-jackson-smile", "Smile binary JSON document");
+	
+	private static final List<MediaType> MEDIA_TYPES =
+			Arrays.asList(MediaType.APPLICATION_JSON, APPLICATION_SMILE);
+	private static final SmileCodec CODEC = new SmileCodec();
+}
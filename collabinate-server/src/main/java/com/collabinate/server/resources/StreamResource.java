@@ -1,9 +1,9 @@
 package com.collabinate.server.resources;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.joda.time.DateTime;
 import org.restlet.data.MediaType;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
@@ -17,19 +17,24 @@ import org.restlet.resource.ServerResource;
 import com.collabinate.server.activitystreams.Activity;
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.collabinate.server.engine.AsynchronousWriter;
 import com.collabinate.server.engine.CollabinateReader;
 import com.collabinate.server.engine.CollabinateWriter;
+import com.collabinate.server.engine.PageCursor;
 import com.google.common.hash.Hashing;
+import com.google.gson.JsonParseException;
 
 /**
- * Restful resource representing a series of activities for an entity.
+ * Restful resource representing a series of activities for an entity. A
+ * collection posted to the stream adds its items as a batch, such as when
+ * backfilling a tenant.
  * 
  * @author mafuba
  *
  */
 public class StreamResource extends ServerResource
 {
-	@Get("json")
+	@Get("json|smile")
 	public Representation getStream()
 	{
 		// extract necessary information from the context
@@ -39,26 +44,86 @@ public class StreamResource extends ServerResource
 		String entityId = getAttribute("entityId");
 		String skipString = getQueryValue("skip");
 		String takeString = getQueryValue("take");
+		String beforeString = getQueryValue("before");
+		String afterString = getQueryValue("after");
+		MediaType mediaType = SmileRepresentation.getMediaType(this);
 		int skip = null == skipString ? 0 : Integer.parseInt(skipString);
 		int take = null == takeString ? DEFAULT_COUNT : 
 			Integer.parseInt(takeString);
 		
-		ActivityStreamsCollection activitiesCollection =
-				reader.getStream(tenantId, entityId, skip, take);
+		PageCursor cursor;
+		try
+		{
+			cursor = PageCursor.fromTokens(beforeString, afterString);
+		}
+		catch (IllegalArgumentException e)
+		{
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return null;
+		}
+		
+		// unless comments or likes are added, the stream version covers the
+		// page, so a current copy held by the client is answered without
+		// reading the stream
+		VersionStamp stamp = null;
+		if (!isEnriched())
+		{
+			long version = reader.getStreamVersion(tenantId, entityId);
+			if (version > 0)
+				stamp = new VersionStamp(version, mediaType, tenantId,
+						entityId, skipString, takeString, beforeString,
+						afterString);
+		}
+		
+		Representation notModified =
+				null == stamp ? null : stamp.getNotModified(this);
+		if (null != notModified)
+			return notModified;
+		
+		ActivityStreamsCollection activitiesCollection = null == cursor ?
+				reader.getStream(tenantId, entityId, skip, take) :
+				reader.getStream(tenantId, entityId, cursor, take);
 		
 		appendCollections(activitiesCollection, reader, tenantId, entityId);
 		
+		// a stamped page is written straight to the response, while the tag
+		// of any other is hashed from its content
+		if (null != stamp)
+		{
+			Representation representation = SmileRepresentation.create(
+					activitiesCollection, mediaType);
+			stamp.apply(representation);
+			return representation;
+		}
+		
 		String result = activitiesCollection.toString();
 		
-		Representation representation = new StringRepresentation(
-				result, MediaType.APPLICATION_JSON);
-		representation.setTag(new Tag(Hashing.murmur3_128().hashUnencodedChars(
-				result+tenantId+entityId+skipString+takeString)
-				.toString(), false));
+		Representation representation =
+				MediaType.APPLICATION_JSON.equals(mediaType) ?
+				new StringRepresentation(result, MediaType.APPLICATION_JSON) :
+				new SmileRepresentation(activitiesCollection);
+		representation.setTag(new Tag(Hashing.murmur3_128()
+				.hashUnencodedChars(result+tenantId+entityId+skipString+
+				takeString+beforeString+afterString+
+				VersionStamp.getVariant(mediaType)).toString(), false));
 		
 		return representation;
 	}
 
+	/**
+	 * Determines whether comments, likes or the like status of a user are
+	 * added to the activities, which the stream version does not cover.
+	 * 
+	 * @return true if any of the comments, likes or userLiked query values
+	 * are present.
+	 */
+	private boolean isEnriched()
+	{
+		return null != getQueryValue("comments") ||
+				null != getQueryValue("likes") ||
+				null != getQueryValue("userLiked");
+	}
+	
 	/**
 	 * Appends the comments and likes collection values to each of the items
 	 * in the given collection of activities, according to the value of the
@@ -83,53 +148,22 @@ public class StreamResource extends ServerResource
 			null != likesString ||
 			null != userLikedString)
 		{
-			boolean processComments = null != commentsString;
-			boolean processLikes = null != likesString;
-			boolean processUserLiked = null != userLikedString;
-			int comments = processComments ? 
-					Integer.parseInt(commentsString) : 0;
-			int likes = processLikes ?
-					Integer.parseInt(likesString) : 0;
-			String likingUser = processUserLiked ?
-					userLikedString : null;
+			int comments = null != commentsString ?
+					Math.max(0, Integer.parseInt(commentsString)) : -1;
+			int likes = null != likesString ?
+					Math.max(0, Integer.parseInt(likesString)) : -1;
 			List<ActivityStreamsObject> activities =
 					activitiesCollection.getItems();
-			List<ActivityStreamsObject> updatedActivities =
-					new ArrayList<ActivityStreamsObject>();
 			
-			for (ActivityStreamsObject activity : activities)
-			{
-				if (processComments)
-				{
-					activity.setReplies(reader.getComments(tenantId, entityId,
-						activity.getId(), 0, comments));
-				}
-				if (processLikes)
-				{
-					activity.setLikes(reader.getLikes(tenantId, entityId,
-						activity.getId(), 0, likes));
-				}
-				if (processUserLiked)
-				{
-					DateTime likedDate = reader.userLikesActivity(
-							tenantId, likingUser, entityId, activity.getId());
-					
-					if (null != likedDate)
-					{
-						activity.setCollabinateValue("likedByUser",
-								likedDate.toString());
-					}
-				}
-				
-				updatedActivities.add(activity);
-			}
+			reader.enrichActivities(tenantId, entityId, activities, comments,
+					likes, null != userLikedString ? userLikedString : null);
 			
-			activitiesCollection.setItems(updatedActivities);
+			activitiesCollection.setItems(activities);
 		}
 	}
 	
 	@Post
-	public void addActivity(String content)
+	public void addActivity(Representation entity) throws IOException
 	{
 		// extract necessary information from the context
 		CollabinateWriter writer = (CollabinateWriter)getContext()
@@ -143,7 +177,110 @@ public class StreamResource extends ServerResource
 			throw new IllegalStateException(
 					"Context does not contain a CollabinateWriter");
 		
+		// the content may be posted as JSON or Smile
+		String content;
+		try
+		{
+			content = SmileRepresentation.getJson(entity);
+		}
+		catch (JsonParseException e)
+		{
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return;
+		}
+		
+		// a collection adds each of its items
+		if (COLLECTION.equals(new ActivityStreamsObject(content)
+				.getObjectType()))
+		{
+			addActivities(writer, tenantId, entityId, content,
+					isIgnored(ignoreCommentsString),
+					isIgnored(ignoreLikesString));
+			return;
+		}
+		
 		// create an activity from the given content
+		Activity activity = createActivity(content, entityId);
+		
+		writer.addActivity(tenantId, entityId, activity);
+		
+		addCommentsAndLikes(writer, tenantId, entityId, activity,
+				isIgnored(ignoreCommentsString), isIgnored(ignoreLikesString));
+		
+		// return the activity in the response body, in Smile if preferred
+		if (SmileRepresentation.APPLICATION_SMILE.equals(
+				SmileRepresentation.getMediaType(this)))
+			getResponse().setEntity(new SmileRepresentation(activity));
+		else
+			getResponse().setEntity(activity.toString(),
+					MediaType.APPLICATION_JSON);
+		
+		//TODO: return relative reference location
+		setLocationRef(new Reference(getReference())
+			.addSegment(activity.getId()));
+		
+		// queued writes have been accepted but not yet created
+		setStatus(writer instanceof AsynchronousWriter ?
+				Status.SUCCESS_ACCEPTED : Status.SUCCESS_CREATED);
+	}
+	
+	/**
+	 * Adds the items of a posted collection to the stream as one batch, and
+	 * returns the added activities in the response body.
+	 * 
+	 * @param writer The CollabinateWriter to use for adding.
+	 * @param tenantId The tenant ID.
+	 * @param entityId The entity ID.
+	 * @param content The posted JSON content of the collection.
+	 * @param ignoreComments Whether the comments of the activities are
+	 * ignored.
+	 * @param ignoreLikes Whether the likes of the activities are ignored.
+	 */
+	private void addActivities(CollabinateWriter writer, String tenantId,
+			String entityId, String content, boolean ignoreComments,
+			boolean ignoreLikes)
+	{
+		// create the activities from the items of the given collection
+		List<Activity> activities = new ArrayList<Activity>();
+		for (ActivityStreamsObject item :
+				new ActivityStreamsCollection(content).getItems())
+		{
+			activities.add(createActivity(item.toString(), entityId));
+		}
+		
+		writer.addActivities(tenantId, entityId, activities);
+		
+		for (Activity activity : activities)
+		{
+			addCommentsAndLikes(writer, tenantId, entityId, activity,
+					ignoreComments, ignoreLikes);
+		}
+		
+		// return the added activities in the response body
+		ActivityStreamsCollection added = new ActivityStreamsCollection(
+				new ArrayList<ActivityStreamsObject>(activities));
+		if (SmileRepresentation.APPLICATION_SMILE.equals(
+				SmileRepresentation.getMediaType(this)))
+			getResponse().setEntity(new SmileRepresentation(added));
+		else
+			getResponse().setEntity(added.toString(),
+					MediaType.APPLICATION_JSON);
+		
+		// queued writes have been accepted but not yet created
+		setStatus(writer instanceof AsynchronousWriter ?
+				Status.SUCCESS_ACCEPTED : Status.SUCCESS_CREATED);
+	}
+	
+	/**
+	 * Creates an activity from posted content, giving it a generated ID and
+	 * keeping any original ID and the entity ID as collabinate values.
+	 * 
+	 * @param content The posted JSON content of the activity.
+	 * @param entityId The ID of the entity to which the activity is posted.
+	 * @return The activity to add.
+	 */
+	private static Activity createActivity(String content, String entityId)
+	{
 		Activity activity = new Activity(content);
 		
 		// generate an id and relocate the original if necessary
@@ -159,13 +296,28 @@ public class StreamResource extends ServerResource
 		// keep track of the entityID in the activity
 		activity.setCollabinateValue("entityId", entityId);
 		
-		writer.addActivity(tenantId, entityId, activity);
+		return activity;
+	}
+	
+	/**
+	 * Adds the comments and likes contained in a posted activity to the
+	 * database, once the activity itself has been added.
+	 * 
+	 * @param writer The CollabinateWriter to use for adding.
+	 * @param tenantId The tenant ID.
+	 * @param entityId The entity ID.
+	 * @param activity The added activity.
+	 * @param ignoreComments Whether the comments of the activity are ignored.
+	 * @param ignoreLikes Whether the likes of the activity are ignored.
+	 */
+	private static void addCommentsAndLikes(CollabinateWriter writer,
+			String tenantId, String entityId, Activity activity,
+			boolean ignoreComments, boolean ignoreLikes)
+	{
+		String activityId = activity.getId();
 		
 		// if the activity has comments and we're not ignoring them,
 		// add them to the database properly
-		boolean ignoreComments = null != ignoreCommentsString &&
-				!ignoreCommentsString.equalsIgnoreCase("false");
-		
 		ActivityStreamsCollection replies = activity.getReplies();
 		
 		if (!ignoreComments && null != replies && replies.size() > 0)
@@ -190,9 +342,6 @@ public class StreamResource extends ServerResource
 		
 		// if the activity has likes and we're not ignoring them,
 		// add them to the database properly
-		boolean ignoreLikes = null != ignoreLikesString &&
-				!ignoreLikesString.equalsIgnoreCase("false");
-		
 		ActivityStreamsCollection likes = activity.getLikes();
 		
 		if (!ignoreLikes && null != likes && likes.size() > 0)
@@ -212,18 +361,22 @@ public class StreamResource extends ServerResource
 				}
 			}
 		}
-		
-		// return the activity in the response body
-		getResponse().setEntity(activity.toString(),
-				MediaType.APPLICATION_JSON);
-		
-		//TODO: return relative reference location
-		setLocationRef(new Reference(getReference())
-			.addSegment(activity.getId()));
-		setStatus(Status.SUCCESS_CREATED);
+	}
+	
+	/**
+	 * Determines whether an ignore query value is set.
+	 * 
+	 * @param ignoreString The query value, which may be null.
+	 * @return true unless the value is absent or false.
+	 */
+	private static boolean isIgnored(String ignoreString)
+	{
+		return null != ignoreString &&
+				!ignoreString.equalsIgnoreCase("false");
 	}
 	
 	private static final int DEFAULT_COUNT = 20;
+	private static final String COLLECTION = "collection";
 	private static final String ORIGINAL_ID = "originalId";
 }
 
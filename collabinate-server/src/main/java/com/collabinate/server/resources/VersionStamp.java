@@ -0,0 +1,118 @@
+package com.collabinate.server.resources;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ServerResource;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * The ETag and modification date of a representation, derived from a version
+ * stamp kept by the reader rather than from the rendered representation. A
+ * conditional GET can then be answered before the representation is built.
+ * 
+ * @author mafuba
+ * 
+ */
+class VersionStamp
+{
+	private final Tag tag;
+	private final Date modificationDate;
+	
+	/**
+	 * Creates the stamp of a representation.
+	 * 
+	 * @param version The version stamp, in microseconds since the epoch, of
+	 * the data behind the representation.
+	 * @param values The request values that distinguish the representation
+	 * from others of the same data, such as IDs and paging parameters.
+	 */
+	VersionStamp(long version, String... values)
+	{
+		StringBuilder builder = new StringBuilder().append(version);
+		for (String value : values)
+			builder.append(value);
+		
+		tag = new Tag(Hashing.murmur3_128().hashUnencodedChars(builder)
+				.toString(), false);
+		modificationDate = new Date(version / 1000);
+	}
+	
+	/**
+	 * Creates the stamp of a representation in the given media type. A
+	 * representation in a media type other than JSON is distinguished by its
+	 * media type, so that each variant has its own tag.
+	 * 
+	 * @param version The version stamp, in microseconds since the epoch, of
+	 * the data behind the representation.
+	 * @param mediaType The media type of the representation.
+	 * @param values The request values that distinguish the representation
+	 * from others of the same data, such as IDs and paging parameters.
+	 */
+	VersionStamp(long version, MediaType mediaType, String... values)
+	{
+		this(version, withVariant(values, mediaType));
+	}
+	
+	/**
+	 * Answers a conditional GET for which the copy held by the client is
+	 * current.
+	 * 
+	 * @param resource The resource handling the request.
+	 * @return An empty representation carrying the tag and modification date,
+	 * with the status of the resource set to 304 (Not Modified), or null if
+	 * the representation must be built.
+	 */
+	Representation getNotModified(ServerResource resource)
+	{
+		Status status = resource.getConditions().getStatus(
+				resource.getMethod(), true, tag, modificationDate);
+		if (!Status.REDIRECTION_NOT_MODIFIED.equals(status))
+			return null;
+		
+		resource.setStatus(status);
+		Representation representation = new EmptyRepresentation();
+		apply(representation);
+		return representation;
+	}
+	
+	/**
+	 * Gets the value that distinguishes the tag of a representation in the
+	 * given media type from that of the JSON representation.
+	 * 
+	 * @param mediaType The media type of the representation.
+	 * @return An empty string for JSON, and otherwise the media type name.
+	 */
+	static String getVariant(MediaType mediaType)
+	{
+		return MediaType.APPLICATION_JSON.equals(mediaType) ?
+				"" : mediaType.getName();
+	}
+	
+	/**
+	 * Sets the tag and modification date of a built representation.
+	 * 
+	 * @param representation The representation.
+	 */
+	void apply(Representation representation)
+	{
+		representation.setTag(tag);
+		representation.setModificationDate(modificationDate);
+	}
+	
+	/**
+	 * Appends the variant of the given media type to the given values.
+	 */
+	private static String[] withVariant(String[] values, MediaType mediaType)
+	{
+		String[] variantValues = Arrays.copyOf(values, values.length + 1);
+		variantValues[values.length] = getVariant(mediaType);
+		return variantValues;
+	}
+}
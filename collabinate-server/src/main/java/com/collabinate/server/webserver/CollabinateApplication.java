@@ -71,6 +71,10 @@ public class CollabinateApplication extends Application
 		this.writer = writer;
 		this.admin = admin;
 		this.authenticator = authenticator;
+		
+		// the Smile variant of a resource is negotiated as "smile"
+		getMetadataService().addExtension("smile",
+				SmileRepresentation.APPLICATION_SMILE);
 	}
 	
 	@Override
@@ -96,6 +100,7 @@ public class CollabinateApplication extends Application
 		
 		Router adminRouter = new Router(getContext());
 		adminRouter.attach("/database", DatabaseResource.class);
+		adminRouter.attach("/database/migration", MigrationResource.class);
 		adminRouter.attach("/tenants/{tenantId}", TenantResource.class);
 		adminRouter.attach("/tenants/{tenantId}/data",
 				TenantDataResource.class);
@@ -105,6 +110,8 @@ public class CollabinateApplication extends Application
 				TenantKeysResource.class);
 		adminRouter.attach("/tenants", TenantsResource.class);
 		adminRouter.attach("/service/resetrequest", ResetRequestResource.class);
+		adminRouter.attach("/service/ingestion", IngestionResource.class);
+		adminRouter.attach("/service/cache", CacheResource.class);
 		adminAuthenticator.setNext(adminRouter);
 		
 		// resource router handles the routing for post-authentication resources
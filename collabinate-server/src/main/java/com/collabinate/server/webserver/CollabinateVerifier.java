@@ -6,7 +6,6 @@ import org.restlet.data.ClientInfo;
 import org.restlet.security.User;
 import org.restlet.security.Verifier;
 
-import com.collabinate.server.Tenant;
 import com.collabinate.server.engine.CollabinateAdmin;
 
 /**
@@ -115,8 +114,7 @@ public class CollabinateVerifier implements Verifier
 	 */
 	private int verify(String tenantId, String key)
 	{
-		Tenant tenant = admin.getTenant(tenantId);
-		if (null != tenant && tenant.verifyKey(key))
+		if (admin.verifyKey(tenantId, key))
 			return RESULT_VALID;
 		else
 			return RESULT_INVALID;
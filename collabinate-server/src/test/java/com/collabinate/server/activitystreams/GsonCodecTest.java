@@ -0,0 +1,16 @@
+package com.collabinate.server.activitystreams;
+
+/**
+ * Test class for the Gson implementation of JsonCodec.
+ * 
+ * @author mafuba
+ * 
+ */
+public class GsonCodecTest extends JsonCodecTest
+{
+	@Override
+	JsonCodec getCodec()
+	{
+		return new GsonCodec();
+	}
+}
@@ -0,0 +1,16 @@
+package com.collabinate.server.activitystreams;
+
+/**
+ * Test class for the Jackson implementation of JsonCodec.
+ * 
+ * @author mafuba
+ * 
+ */
+public class JacksonCodecTest extends JsonCodecTest
+{
+	@Override
+	JsonCodec getCodec()
+	{
+		return new JacksonCodec();
+	}
+}
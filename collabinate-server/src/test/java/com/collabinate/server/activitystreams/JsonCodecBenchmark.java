@@ -0,0 +1,223 @@
+package com.collabinate.server.activitystreams;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Compares the parse and serialize throughput and allocation of the JSON
+ * codecs on activity payloads shaped like those stored by the engine. This
+ * is not run with the tests; run its main method with the test classpath,
+ * optionally passing the number of measured iterations.
+ * 
+ * @author mafuba
+ * 
+ */
+public class JsonCodecBenchmark
+{
+	/**
+	 * Keeps results reachable so that the measured work is not eliminated.
+	 */
+	private static long sink;
+	
+	public static void main(String[] args) throws IOException
+	{
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		
+		final String activity = createActivity(0, 3, 5);
+		List<String> items = new ArrayList<String>();
+		for (int i = 0; i < FEED_PAGE_SIZE; i++)
+		{
+			items.add(createActivity(i, 0, 0));
+		}
+		final ActivityStreamsCollection page =
+				new ActivityStreamsCollection(FEED_PAGE_SIZE, items);
+		
+		System.out.println(String.format("activity: %d chars, page of %d: "
+				+ "%d chars", activity.length(), FEED_PAGE_SIZE,
+				page.toString().length()));
+		System.out.println(String.format("%-8s %-22s %12s %12s",
+				"codec", "operation", "ns/op", "bytes/op"));
+		
+		JsonCodec[] codecs = new JsonCodec[]
+		{
+			new GsonCodec(),
+			new JacksonCodec()
+		};
+		for (final JsonCodec codec : codecs)
+		{
+			final JsonElement tree = codec.parse(activity);
+			final Writer discard = new DiscardingWriter();
+			
+			measure(codec, "parse activity", iterations, new Operation()
+			{
+				@Override
+				public void run()
+				{
+					sink += codec.parse(activity).hashCode();
+				}
+			});
+			
+			measure(codec, "serialize activity", iterations, new Operation()
+			{
+				@Override
+				public void run()
+				{
+					sink += codec.serialize(tree).length();
+				}
+			});
+			
+			measure(codec, "write activity", iterations, new Operation()
+			{
+				@Override
+				public void run() throws IOException
+				{
+					codec.write(tree, discard);
+				}
+			});
+			
+			// reading the items parses them, and writing the modified page
+			// serializes the trees
+			ActivityStreamsObject.setCodec(codec);
+			measure(codec, "read and write page", iterations / 50,
+					new Operation()
+			{
+				@Override
+				public void run() throws IOException
+				{
+					List<ActivityStreamsObject> pageItems = page.getItems();
+					for (ActivityStreamsObject item : pageItems)
+						sink += item.getId().length();
+					ActivityStreamsCollection copy =
+							new ActivityStreamsCollection();
+					copy.setItems(pageItems);
+					copy.writeTo(discard);
+				}
+			});
+			
+			measure(codec, "write unread page", iterations / 50,
+					new Operation()
+			{
+				@Override
+				public void run() throws IOException
+				{
+					page.writeTo(discard);
+				}
+			});
+		}
+		
+		ActivityStreamsObject.setCodec(new GsonCodec());
+		System.out.println("(" + sink + ")");
+	}
+	
+	/**
+	 * Runs an operation to warm it up, then reports the mean time and the
+	 * bytes allocated by the current thread for each run.
+	 */
+	private static void measure(JsonCodec codec, String name, int iterations,
+			Operation operation) throws IOException
+	{
+		for (int i = 0; i < iterations; i++)
+			operation.run();
+		
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean)
+				ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < iterations; i++)
+			operation.run();
+		
+		long elapsed = System.nanoTime() - start;
+		long allocated =
+				threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		
+		System.out.println(String.format("%-8s %-22s %12d %12d",
+				codec.getClass().getSimpleName().replace("Codec", ""), name,
+				elapsed / iterations, allocated / iterations));
+	}
+	
+	/**
+	 * Creates an activity as the engine stores it, with the given number of
+	 * embedded comments and likes.
+	 */
+	private static String createActivity(int index, int comments, int likes)
+	{
+		Activity activity = new Activity();
+		activity.setId(ActivityStreamsObject.generateUuidUrn());
+		activity.setPublished(new DateTime(1462104000000L + index * 1000L));
+		activity.setVerb("post");
+		activity.setContent("Activity " + index + " with <b>markup</b>, "
+				+ "a line\nbreak and an \"escaped\" quote.");
+		
+		ActivityStreamsObject actor = new ActivityStreamsObject();
+		actor.setId("user" + index);
+		actor.setDisplayName("User " + index);
+		actor.setObjectType("person");
+		activity.setActor(actor);
+		
+		ActivityStreamsObject object = new ActivityStreamsObject();
+		object.setId("entity" + index);
+		object.setObjectType("note");
+		activity.setObject(object);
+		
+		ActivityStreamsCollection replies = new ActivityStreamsCollection();
+		replies.setTotalItems(comments);
+		for (int i = 0; i < comments; i++)
+		{
+			ActivityStreamsObject comment = new ActivityStreamsObject();
+			comment.setId(ActivityStreamsObject.generateUuidUrn());
+			comment.setContent("Comment " + i);
+			comment.setPublished(new DateTime(1462104000000L + i));
+			replies.add(comment);
+		}
+		activity.setReplies(replies);
+		
+		ActivityStreamsCollection likesCollection =
+				new ActivityStreamsCollection();
+		likesCollection.setTotalItems(likes);
+		activity.setLikes(likesCollection);
+		
+		activity.setCollabinateValue("likes", Integer.toString(likes));
+		activity.setCollabinateValue("comments", Integer.toString(comments));
+		return activity.toString();
+	}
+	
+	/**
+	 * An operation to measure.
+	 */
+	private interface Operation
+	{
+		void run() throws IOException;
+	}
+	
+	/**
+	 * A writer that discards its output, so that only the writing is
+	 * measured.
+	 */
+	private static class DiscardingWriter extends Writer
+	{
+		@Override
+		public void write(char[] buffer, int offset, int length) { }
+		
+		@Override
+		public void write(String string, int offset, int length) { }
+		
+		@Override
+		public void flush() { }
+		
+		@Override
+		public void close() { }
+	}
+	
+	private static final int FEED_PAGE_SIZE = 50;
+}
@@ -0,0 +1,139 @@
+package com.collabinate.server.activitystreams;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+/**
+ * Abstract test class to test any implementation of a JsonCodec.
+ * 
+ * @author mafuba
+ * 
+ */
+public abstract class JsonCodecTest
+{
+	private JsonCodec codec;
+	
+	abstract JsonCodec getCodec();
+	
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+	
+	@Before
+	public void setup()
+	{
+		codec = getCodec();
+	}
+	
+	@After
+	public void teardown()
+	{
+		ActivityStreamsObject.setCodec(new GsonCodec());
+	}
+	
+	@Test
+	public void compact_json_should_serialize_as_parsed()
+	{
+		assertEquals(PAYLOAD, codec.serialize(codec.parse(PAYLOAD)));
+	}
+	
+	@Test
+	public void write_should_match_serialize() throws IOException
+	{
+		JsonElement element = codec.parse(PAYLOAD);
+		StringWriter writer = new StringWriter();
+		
+		codec.write(element, writer);
+		
+		assertEquals(codec.serialize(element), writer.toString());
+	}
+	
+	@Test
+	public void serialization_should_match_gson()
+	{
+		JsonElement element = new GsonCodec().parse(PAYLOAD);
+		
+		assertEquals(element.toString(), codec.serialize(element));
+	}
+	
+	@Test
+	public void lenient_json_should_parse()
+	{
+		JsonElement element =
+				codec.parse("{id:'1', /* comment */ \"verb\":\"post\"}");
+		
+		assertEquals("1", element.getAsJsonObject().get("id").getAsString());
+		assertEquals("post",
+				element.getAsJsonObject().get("verb").getAsString());
+	}
+	
+	@Test
+	public void incomplete_json_should_throw_exception()
+	{
+		exception.expect(JsonParseException.class);
+		codec.parse("{\"id\":");
+	}
+	
+	@Test
+	public void trailing_content_should_throw_exception()
+	{
+		exception.expect(JsonParseException.class);
+		codec.parse("{\"id\":\"1\"} {}");
+	}
+	
+	@Test
+	public void empty_string_should_parse_as_null()
+	{
+		assertTrue(codec.parse("").isJsonNull());
+	}
+	
+	@Test
+	public void objects_should_use_set_codec()
+	{
+		ActivityStreamsObject.setCodec(codec);
+		Activity activity = new Activity(PAYLOAD);
+		
+		assertEquals("urn:uuid:1", activity.getId());
+		assertEquals("user", activity.getActor().getId());
+		assertEquals(PAYLOAD, activity.toString());
+	}
+	
+	@Test
+	public void non_json_content_should_be_wrapped()
+	{
+		ActivityStreamsObject.setCodec(codec);
+		ActivityStreamsObject object = new ActivityStreamsObject("not json");
+		
+		assertEquals("not json", object.getContent());
+	}
+	
+	@Test
+	public void setting_null_codec_should_throw_exception()
+	{
+		exception.expect(IllegalArgumentException.class);
+		ActivityStreamsObject.setCodec(null);
+	}
+	
+	/**
+	 * A compact activity with nested objects, escapes, and numbers that lose
+	 * their text if converted to doubles.
+	 */
+	private static final String PAYLOAD = "{\"id\":\"urn:uuid:1\","
+			+ "\"published\":\"2016-05-01T12:00:00.000Z\","
+			+ "\"actor\":{\"id\":\"user\",\"displayName\":\"J\u00e9r\u00f4me"
+			+ " \\\"JJ\\\"\"},\"verb\":\"post\",\"content\":\"<b>a</b>\\n"
+			+ "\\t\\\\ \\u2028 \\u0001 \u00e9\",\"object\":null,"
+			+ "\"location\":{\"lat\":1.50,\"long\":-3E10,\"count\":12},"
+			+ "\"tags\":[true,false,null,[],{}],"
+			+ "\"collabinate\":{\"likes\":\"2\"}}";
+}
@@ -0,0 +1,98 @@
+package com.collabinate.server.activitystreams;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * Tests for the Smile codec.
+ * 
+ * @author mafuba
+ *
+ */
+public class SmileCodecTest
+{
+	private SmileCodec codec = new SmileCodec();
+	
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+	
+	@Test
+	public void object_should_read_as_written() throws IOException
+	{
+		Activity activity = new Activity(ACTIVITY);
+		activity.setVerb("share");
+		
+		assertEquals(activity.toString(), roundTrip(activity));
+	}
+	
+	@Test
+	public void unparsed_collection_should_read_as_written()
+			throws IOException
+	{
+		List<String> items = new ArrayList<String>();
+		items.add(ACTIVITY);
+		items.add(ACTIVITY.replace("urn:uuid:1", "urn:uuid:2"));
+		ActivityStreamsCollection collection =
+				new ActivityStreamsCollection(5, items);
+		collection.setNextCursor("next");
+		
+		assertEquals(collection.toString(), roundTrip(collection));
+	}
+	
+	@Test
+	public void smile_should_be_smaller_than_json() throws IOException
+	{
+		ActivityStreamsCollection collection =
+				new ActivityStreamsCollection();
+		for (int i = 0; i < 20; i++)
+			collection.add(new Activity(ACTIVITY));
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		
+		codec.write(collection, stream);
+		
+		assertTrue(stream.size() < collection.toString().length());
+	}
+	
+	@Test
+	public void invalid_smile_should_throw_exception() throws IOException
+	{
+		exception.expect(JsonParseException.class);
+		codec.toJson(new ByteArrayInputStream("{\"id\":\"1\"}".getBytes()));
+	}
+	
+	@Test
+	public void writing_null_object_should_throw_exception()
+			throws IOException
+	{
+		exception.expect(IllegalArgumentException.class);
+		codec.write(null, new ByteArrayOutputStream());
+	}
+	
+	/**
+	 * Writes an object in Smile and reads it back as JSON text.
+	 */
+	private String roundTrip(ActivityStreamsObject object) throws IOException
+	{
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		codec.write(object, stream);
+		return codec.toJson(new ByteArrayInputStream(stream.toByteArray()));
+	}
+	
+	private static final String ACTIVITY = "{\"id\":\"urn:uuid:1\","
+			+ "\"published\":\"2016-05-01T12:00:00.000Z\","
+			+ "\"actor\":{\"id\":\"user\",\"displayName\":\"Jérôme\"},"
+			+ "\"verb\":\"post\",\"content\":\"<b>a</b>\\n\","
+			+ "\"location\":{\"count\":12,\"flag\":true,\"none\":null},"
+			+ "\"collabinate\":{\"likes\":\"2\"}}";
+}
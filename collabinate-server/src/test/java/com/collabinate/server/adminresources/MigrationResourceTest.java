@@ -0,0 +1,49 @@
+package com.collabinate.server.adminresources;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+
+import com.collabinate.server.resources.GraphResourceTest;
+
+/**
+ * Tests for the database migration resource.
+ * 
+ * @author mafuba
+ *
+ */
+public class MigrationResourceTest extends GraphResourceTest
+{
+	@Test
+	public void get_status_should_return_200()
+	{
+		assertEquals(Status.SUCCESS_OK, get().getStatus());
+	}
+	
+	@Test
+	public void get_status_should_have_json_content_type()
+	{
+		assertEquals(MediaType.APPLICATION_JSON,
+				get().getEntity().getMediaType());
+	}
+	
+	@Test
+	public void get_status_should_contain_state()
+	{
+		assertTrue(get().getEntityAsText().contains("\"state\""));
+	}
+	
+	@Test
+	public void post_should_return_202()
+	{
+		assertEquals(Status.SUCCESS_ACCEPTED, post().getStatus());
+	}
+	
+	@Override
+	protected String getResourcePath()
+	{
+		return "/1/admin/database/migration";
+	}
+}
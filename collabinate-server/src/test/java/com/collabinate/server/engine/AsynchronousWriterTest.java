@@ -0,0 +1,152 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.tinkerpop.blueprints.GraphFactory;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.impls.neo4j2.Neo4j2Graph;
+
+/**
+ * Test class for the queuing implementation of CollabinateWriter.
+ * 
+ * @author mafuba
+ *
+ */
+public class AsynchronousWriterTest extends CollabinateWriterTest
+{
+	private CollabinateGraph graph;
+	private AsynchronousWriter asynchronousWriter;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Override
+	CollabinateWriter getWriter()
+	{
+		graph = new CollabinateGraph(
+				(KeyIndexableGraph)GraphFactory.open(
+				"src/test/resources/graph.properties"));
+		graph.setAllowCommits(false);
+		// the test graph is not thread safe, so writes are group committed
+		graph.enableGroupCommit(2, 256);
+		asynchronousWriter =
+				new AsynchronousWriter(new GraphEngine(graph), graph, 64, 4);
+		return asynchronousWriter;
+	}
+	
+	@After
+	public void teardown()
+	{
+		if (null != asynchronousWriter)
+			asynchronousWriter.shutdown();
+		if (null != graph)
+			graph.shutdown();
+	}
+	
+	@Test
+	public void buffer_size_must_be_power_of_two()
+	{
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("bufferSize");
+		new AsynchronousWriter(new GraphEngine(graph), graph, 100, 4);
+	}
+	
+	@Override
+	@Test
+	public void adding_duplicate_activities_should_fail()
+	{
+		// queued writes fail when they are applied, not when they are queued
+		Activity activity = new Activity();
+		activity.setId("1");
+		asynchronousWriter.addActivity("c", "entity", activity);
+		asynchronousWriter.addActivity("c", "entity", activity);
+		asynchronousWriter.shutdown();
+		
+		assertTrue(asynchronousWriter.getStatus().contains("\"failed\":1"));
+	}
+	
+	@Test
+	public void queued_writes_should_be_applied_in_order()
+	{
+		GraphEngine engine = new GraphEngine(graph);
+		
+		for (int i = 0; i < 100; i++)
+		{
+			Activity activity = new Activity();
+			activity.setId("activity" + i);
+			asynchronousWriter.addActivity("c", "entity" + (i % 5), activity);
+		}
+		asynchronousWriter.addComment("c", "entity0", "activity0", null,
+				new ActivityStreamsObject());
+		asynchronousWriter.likeActivity("c", "user", "entity0", "activity0");
+		asynchronousWriter.shutdown();
+		
+		assertEquals(0, asynchronousWriter.getQueueDepth());
+		for (int i = 0; i < 5; i++)
+			assertEquals(20, engine.getStream("c", "entity" + i, 0, 50)
+					.getTotalItems());
+		assertEquals(1, engine.getComments("c", "entity0", "activity0", 0, 5)
+				.getTotalItems());
+		assertNotNull(engine.userLikesActivity("c", "user", "entity0",
+				"activity0"));
+		assertTrue(asynchronousWriter.getStatus().contains("\"failed\":0"));
+	}
+	
+	@Test
+	public void writes_after_a_failed_write_should_be_applied()
+	{
+		GraphEngine engine = new GraphEngine(graph);
+		Activity activity = new Activity();
+		activity.setId("1");
+		Activity other = new Activity();
+		other.setId("2");
+		asynchronousWriter.addActivity("c", "entity", activity);
+		asynchronousWriter.addActivity("c", "entity", activity);
+		asynchronousWriter.addActivity("c", "entity", other);
+		asynchronousWriter.shutdown();
+		
+		assertEquals(2, engine.getStream("c", "entity", 0, 5)
+				.getTotalItems());
+		assertTrue(asynchronousWriter.getStatus().contains("\"applied\":2"));
+		assertTrue(asynchronousWriter.getStatus().contains("\"failed\":1"));
+	}
+	
+	@Test
+	public void writes_before_a_failed_write_should_not_be_repeated()
+	{
+		// without group commit each write commits itself, so the writes
+		// before a failed one are not rolled back with it
+		CollabinateGraph transactionalGraph = new CollabinateGraph(
+				new Neo4j2Graph(folder.getRoot().getPath()));
+		GraphEngine engine = new GraphEngine(transactionalGraph);
+		AsynchronousWriter writer = new AsynchronousWriter(engine,
+				transactionalGraph, 64, 4);
+		try
+		{
+			for (String id : new String[] { "x", "y", "x", "z" })
+			{
+				Activity activity = new Activity();
+				activity.setId(id);
+				writer.addActivity("c", "entity", activity);
+			}
+			writer.shutdown();
+			
+			assertEquals(3, engine.getStream("c", "entity", 0, 5)
+					.getTotalItems());
+			assertTrue(writer.getStatus().contains("\"applied\":3"));
+			assertTrue(writer.getStatus().contains("\"failed\":1"));
+		}
+		finally
+		{
+			writer.shutdown();
+			transactionalGraph.shutdown();
+		}
+	}
+}
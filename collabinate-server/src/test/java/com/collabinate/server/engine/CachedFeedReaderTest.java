@@ -0,0 +1,193 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsCollection;
+import com.tinkerpop.blueprints.GraphFactory;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+
+/**
+ * Test class for the graph implementation of CollabinateReader with feed
+ * pages cached, and with any entity followed by more than one user pulled so
+ * that both kinds of invalidation are exercised.
+ * 
+ * @author mafuba
+ *
+ */
+public class CachedFeedReaderTest extends CollabinateReaderTest
+{
+	private CollabinateGraph graph;
+	private GraphEngine server;
+	
+	@Override
+	CollabinateReader getReader()
+	{
+		return getServer();
+	}
+	
+	@Override
+	CollabinateWriter getWriter()
+	{
+		return getServer();
+	}
+	
+	/**
+	 * Ensures the same server is used as both the reader and writer.
+	 * 
+	 * @return The server to use.
+	 */
+	private GraphEngine getServer()
+	{
+		if (null == server)
+		{
+			graph = new CollabinateGraph(
+					(KeyIndexableGraph)GraphFactory.open(
+					"src/test/resources/graph.properties"));
+			graph.setAllowCommits(false);
+			server = new GraphEngine(graph);
+			server.setFeedPullThreshold(1);
+			server.enableFeedCache(1024 * 1024);
+		}
+		return server;
+	}
+	
+	@After
+	public void teardown()
+	{
+		if (null != graph)
+			graph.shutdown();
+	}
+	
+	@Test
+	public void should_not_allow_non_positive_capacity()
+	{
+		exception.expect(IllegalArgumentException.class);
+		getServer().enableFeedCache(0);
+	}
+	
+	@Test
+	public void repeated_feed_reads_should_hit_cache()
+	{
+		GraphEngine engine = getServer();
+		engine.followEntity("c", "user", "entity", null);
+		engine.addActivity("c", "entity", getActivity("1", DateTime.now()));
+		
+		engine.getFeed("c", "user", 0, 10);
+		ActivityStreamsCollection feed = engine.getFeed("c", "user", 0, 10);
+		
+		assertEquals("1", feed.get(0).getId());
+		assertTrue(engine.getFeedCacheStatus().contains("\"hits\":1,"));
+	}
+	
+	@Test
+	public void cached_pages_should_not_share_collections()
+	{
+		GraphEngine engine = getServer();
+		engine.followEntity("c", "user", "entity", null);
+		engine.addActivity("c", "entity", getActivity("1", DateTime.now()));
+		engine.getFeed("c", "user", 0, 10);
+		
+		engine.getFeed("c", "user", 0, 10).get(0).setId("changed");
+		
+		assertEquals("1", engine.getFeed("c", "user", 0, 10).get(0).getId());
+	}
+	
+	@Test
+	public void adding_to_pushed_entity_should_invalidate_follower_pages()
+	{
+		GraphEngine engine = getServer();
+		DateTime time = DateTime.now();
+		engine.followEntity("c", "user", "entity", null);
+		engine.addActivity("c", "entity", getActivity("1", time));
+		engine.getFeed("c", "user", 0, 10);
+		
+		engine.addActivity("c", "entity", getActivity("2", time.plus(1)));
+		ActivityStreamsCollection feed = engine.getFeed("c", "user", 0, 10);
+		
+		assertEquals(2, feed.getTotalItems());
+		assertEquals("2", feed.get(0).getId());
+	}
+	
+	@Test
+	public void changes_to_other_feeds_should_keep_pages_cached()
+	{
+		GraphEngine engine = getServer();
+		DateTime time = DateTime.now();
+		engine.followEntity("c", "user", "entity", null);
+		engine.followEntity("c", "other", "otherEntity", null);
+		engine.addActivity("c", "entity", getActivity("1", time));
+		engine.getFeed("c", "user", 0, 10);
+		
+		engine.addActivity("c", "otherEntity", getActivity("2", time));
+		engine.followEntity("c", "other", "thirdEntity", null);
+		ActivityStreamsCollection feed = engine.getFeed("c", "user", 0, 10);
+		
+		assertEquals("1", feed.get(0).getId());
+		assertTrue(engine.getFeedCacheStatus().contains("\"hits\":1,"));
+	}
+	
+	@Test
+	public void adding_to_pulled_entity_should_invalidate_follower_pages()
+	{
+		GraphEngine engine = getServer();
+		DateTime time = DateTime.now();
+		engine.followEntity("c", "user", "entity", null);
+		engine.followEntity("c", "other", "entity", null);
+		engine.addActivity("c", "entity", getActivity("1", time));
+		engine.getFeed("c", "user", 0, 10);
+		engine.getFeed("c", "other", 0, 10);
+		
+		engine.addActivity("c", "entity", getActivity("2", time.plus(1)));
+		
+		assertEquals("2", engine.getFeed("c", "user", 0, 10).get(0).getId());
+		assertEquals("2", engine.getFeed("c", "other", 0, 10).get(0).getId());
+	}
+	
+	@Test
+	public void adding_to_pulled_entity_should_change_follower_versions()
+	{
+		GraphEngine engine = getServer();
+		DateTime time = DateTime.now();
+		engine.followEntity("c", "user", "entity", null);
+		engine.followEntity("c", "other", "entity", null);
+		engine.addActivity("c", "entity", getActivity("1", time));
+		long version = engine.getFeedVersion("c", "user");
+		long entityVersion = engine.getEntityVersion("c", "user");
+		
+		engine.addActivity("c", "entity", getActivity("2", time.plus(1)));
+		
+		assertTrue(engine.getFeedVersion("c", "user") > version);
+		assertTrue(engine.getEntityVersion("c", "user") > entityVersion);
+		assertEquals("2", engine.getEntity("c", "user")
+				.getCollabinateValue("FeedCount"));
+	}
+	
+	@Test
+	public void entity_becoming_pulled_should_invalidate_follower_pages()
+	{
+		GraphEngine engine = getServer();
+		DateTime time = DateTime.now();
+		engine.followEntity("c", "user", "entity", null);
+		engine.addActivity("c", "entity", getActivity("1", time));
+		engine.getFeed("c", "user", 0, 10);
+		
+		engine.followEntity("c", "other", "entity", null);
+		engine.getFeed("c", "user", 0, 10);
+		engine.addActivity("c", "entity", getActivity("2", time.plus(1)));
+		
+		assertEquals("2", engine.getFeed("c", "user", 0, 10).get(0).getId());
+	}
+	
+	private Activity getActivity(String id, DateTime published)
+	{
+		Activity activity = new Activity();
+		activity.setId(id);
+		activity.setPublished(published);
+		return activity;
+	}
+}
@@ -0,0 +1,136 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.collabinate.server.Tenant;
+import com.tinkerpop.blueprints.GraphFactory;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraphFactory;
+
+/**
+ * Test class for the caching decorator of CollabinateAdmin, wrapping the
+ * graph implementation.
+ * 
+ * @author mafuba
+ * 
+ */
+public class CachingCollabinateAdminTest extends CollabinateAdminTest
+{
+	private CollabinateGraph graph;
+	private GraphAdmin graphAdmin;
+	
+	@Override
+	CollabinateAdmin getAdmin()
+	{
+		graph = new CollabinateGraph(
+				(KeyIndexableGraph)GraphFactory.open(
+				"src/test/resources/graph.properties"));
+		graph.setAllowCommits(false);
+		graphAdmin = new GraphAdmin(graph);
+		return new CachingCollabinateAdmin(graphAdmin, 0);
+	}
+	
+	@Override
+	CollabinateAdmin getNewAdmin()
+	{
+		return new CachingCollabinateAdmin(new GraphAdmin(
+				new CollabinateGraph(TinkerGraphFactory.createTinkerGraph())),
+				0);
+	}
+	
+	@After
+	public void teardown()
+	{
+		if (null != graph)
+			graph.shutdown();
+	}
+	
+	@Test
+	public void should_not_allow_null_admin()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new CachingCollabinateAdmin(null, 0);
+	}
+	
+	@Test
+	public void should_not_allow_negative_time_to_live()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new CachingCollabinateAdmin(graphAdmin, -1);
+	}
+	
+	@Test
+	public void verify_key_should_use_cached_tenant()
+	{
+		CachingCollabinateAdmin admin =
+				new CachingCollabinateAdmin(graphAdmin, 0);
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		admin.verifyKey("tenant", "key");
+		
+		// a change made without the cache is not seen
+		graphAdmin.deleteTenant("tenant");
+		
+		assertTrue(admin.verifyKey("tenant", "key"));
+	}
+	
+	@Test
+	public void cached_tenant_should_expire_after_time_to_live()
+			throws InterruptedException
+	{
+		CachingCollabinateAdmin admin =
+				new CachingCollabinateAdmin(graphAdmin, 1);
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		admin.verifyKey("tenant", "key");
+		
+		graphAdmin.deleteTenant("tenant");
+		Thread.sleep(10);
+		
+		assertFalse(admin.verifyKey("tenant", "key"));
+	}
+	
+	@Test
+	public void putting_tenant_should_replace_cached_nonexistent_tenant()
+	{
+		CachingCollabinateAdmin admin =
+				new CachingCollabinateAdmin(graphAdmin, 0);
+		assertNull(admin.getTenant("tenant"));
+		
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		
+		assertTrue(admin.verifyKey("tenant", "key"));
+	}
+	
+	@Test
+	public void cached_tenants_should_not_be_shared()
+	{
+		CachingCollabinateAdmin admin =
+				new CachingCollabinateAdmin(graphAdmin, 0);
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		
+		admin.getTenant("tenant").removeKey("key");
+		
+		assertTrue(admin.verifyKey("tenant", "key"));
+		assertEquals(1, admin.getTenant("tenant").getKeys().size());
+	}
+	
+	@Test
+	public void verify_key_should_reject_null_arguments()
+	{
+		CachingCollabinateAdmin admin =
+				new CachingCollabinateAdmin(graphAdmin, 0);
+		
+		assertFalse(admin.verifyKey(null, "key"));
+		assertFalse(admin.verifyKey("tenant", null));
+	}
+}
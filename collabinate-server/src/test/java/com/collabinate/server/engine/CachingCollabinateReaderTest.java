@@ -0,0 +1,215 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.tinkerpop.blueprints.GraphFactory;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+
+/**
+ * Test class for the caching decorator of CollabinateReader, wrapping the
+ * graph implementation.
+ * 
+ * @author mafuba
+ * 
+ */
+public class CachingCollabinateReaderTest extends CollabinateReaderTest
+{
+	private CollabinateGraph graph;
+	private CachingCollabinateReader server;
+	
+	@Override
+	CollabinateReader getReader()
+	{
+		return getServer();
+	}
+	
+	@Override
+	CollabinateWriter getWriter()
+	{
+		return getServer();
+	}
+	
+	/**
+	 * Ensures the same server is used as both the reader and writer.
+	 * 
+	 * @return The server to use.
+	 */
+	private CachingCollabinateReader getServer()
+	{
+		if (null == server)
+		{
+			graph = new CollabinateGraph(
+					(KeyIndexableGraph)GraphFactory.open(
+					"src/test/resources/graph.properties"));
+			graph.setAllowCommits(false);
+			GraphEngine engine = new GraphEngine(graph);
+			server = new CachingCollabinateReader(engine, engine, graph,
+					1024 * 1024);
+		}
+		return server;
+	}
+	
+	@After
+	public void teardown()
+	{
+		if (null != graph)
+			graph.shutdown();
+	}
+	
+	@Test
+	public void should_not_allow_null_reader()
+	{
+		GraphEngine engine = new GraphEngine(getGraph());
+		exception.expect(IllegalArgumentException.class);
+		new CachingCollabinateReader(null, engine, graph, 1024);
+	}
+	
+	@Test
+	public void should_not_allow_null_writer()
+	{
+		GraphEngine engine = new GraphEngine(getGraph());
+		exception.expect(IllegalArgumentException.class);
+		new CachingCollabinateReader(engine, null, graph, 1024);
+	}
+	
+	@Test
+	public void should_not_allow_null_graph()
+	{
+		GraphEngine engine = new GraphEngine(getGraph());
+		exception.expect(IllegalArgumentException.class);
+		new CachingCollabinateReader(engine, engine, null, 1024);
+	}
+	
+	@Test
+	public void should_not_allow_non_positive_capacity()
+	{
+		GraphEngine engine = new GraphEngine(getGraph());
+		exception.expect(IllegalArgumentException.class);
+		new CachingCollabinateReader(engine, engine, graph, 0);
+	}
+	
+	@Test
+	public void repeated_activity_reads_should_hit_cache()
+	{
+		CachingCollabinateReader cache = getServer();
+		cache.addActivity("c", "entity", getActivity("1", DateTime.now()));
+		
+		cache.getActivity("c", "entity", "1");
+		Activity activity = cache.getActivity("c", "entity", "1");
+		
+		assertEquals("1", activity.getId());
+		assertTrue(cache.getStatus().contains("\"hits\":1,"));
+	}
+	
+	@Test
+	public void cached_objects_should_not_be_shared()
+	{
+		CachingCollabinateReader cache = getServer();
+		cache.addActivity("c", "entity", getActivity("1", DateTime.now()));
+		cache.getActivity("c", "entity", "1");
+		
+		cache.getActivity("c", "entity", "1").setContent("changed");
+		
+		assertNull(cache.getActivity("c", "entity", "1").getContent());
+	}
+	
+	@Test
+	public void following_should_refresh_cached_entities()
+	{
+		CachingCollabinateReader cache = getServer();
+		cache.addActivity("c", "entity", getActivity("1", DateTime.now()));
+		cache.getEntity("c", "entity");
+		cache.getEntity("c", "user");
+		
+		cache.followEntity("c", "user", "entity", null);
+		
+		assertEquals("1", cache.getEntity("c", "entity")
+				.getCollabinateValue("FollowerCount"));
+		assertEquals("1", cache.getEntity("c", "user")
+				.getCollabinateValue("FollowingCount"));
+	}
+	
+	@Test
+	public void adding_activity_should_refresh_cached_entities()
+	{
+		CachingCollabinateReader cache = getServer();
+		DateTime time = DateTime.now();
+		cache.followEntity("c", "user", "entity", null);
+		cache.addActivity("c", "entity", getActivity("1", time));
+		cache.getEntity("c", "entity");
+		cache.getEntity("c", "user");
+		
+		cache.addActivity("c", "entity", getActivity("2", time.plus(1)));
+		
+		assertEquals("2", cache.getEntity("c", "entity")
+				.getCollabinateValue("StreamCount"));
+		assertEquals("2", cache.getEntity("c", "user")
+				.getCollabinateValue("FeedCount"));
+	}
+	
+	@Test
+	public void adding_activity_should_keep_unrelated_entities_cached()
+	{
+		CachingCollabinateReader cache = getServer();
+		DateTime time = DateTime.now();
+		cache.addActivity("c", "other", getActivity("1", time));
+		cache.getEntity("c", "other");
+		
+		cache.addActivity("c", "entity", getActivity("2", time));
+		cache.getEntity("c", "other");
+		
+		assertTrue(cache.getStatus().contains("\"hits\":1,"));
+	}
+	
+	@Test
+	public void deleting_comment_should_invalidate_cached_comment()
+	{
+		CachingCollabinateReader cache = getServer();
+		cache.addActivity("c", "entity", getActivity("1", DateTime.now()));
+		ActivityStreamsObject comment = new ActivityStreamsObject();
+		comment.setId("comment");
+		cache.addComment("c", "entity", "1", null, comment);
+		assertNotNull(cache.getComment("c", "entity", "1", "comment"));
+		
+		cache.deleteComment("c", "entity", "1", "comment");
+		
+		assertNull(cache.getComment("c", "entity", "1", "comment"));
+	}
+	
+	@Test
+	public void deleting_activity_should_invalidate_cached_activity()
+	{
+		CachingCollabinateReader cache = getServer();
+		cache.addActivity("c", "entity", getActivity("1", DateTime.now()));
+		ActivityStreamsObject comment = new ActivityStreamsObject();
+		comment.setId("comment");
+		cache.addComment("c", "entity", "1", null, comment);
+		assertNotNull(cache.getActivity("c", "entity", "1"));
+		assertNotNull(cache.getComment("c", "entity", "1", "comment"));
+		
+		cache.deleteActivity("c", "entity", "1");
+		
+		assertNull(cache.getActivity("c", "entity", "1"));
+		assertNull(cache.getComment("c", "entity", "1", "comment"));
+	}
+	
+	private CollabinateGraph getGraph()
+	{
+		getServer();
+		return graph;
+	}
+	
+	private Activity getActivity(String id, DateTime published)
+	{
+		Activity activity = new Activity();
+		activity.setId(id);
+		activity.setPublished(published);
+		return activity;
+	}
+}
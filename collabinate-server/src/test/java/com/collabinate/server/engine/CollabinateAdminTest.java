@@ -59,6 +59,60 @@ public abstract class CollabinateAdminTest
 		assertEquals(tenant2.getName(), retrieved.getName());
 	}
 	
+	@Test
+	public void verify_key_should_accept_tenant_key()
+	{
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		
+		assertTrue(admin.verifyKey("tenant", "key"));
+	}
+	
+	@Test
+	public void verify_key_should_reject_other_key()
+	{
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		
+		assertFalse(admin.verifyKey("tenant", "other"));
+	}
+	
+	@Test
+	public void verify_key_should_reject_nonexistent_tenant()
+	{
+		assertFalse(admin.verifyKey("tenant", "key"));
+	}
+	
+	@Test
+	public void verify_key_should_reject_removed_key()
+	{
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		admin.verifyKey("tenant", "key");
+		
+		tenant = admin.getTenant("tenant");
+		tenant.removeKey("key");
+		admin.putTenant(tenant);
+		
+		assertFalse(admin.verifyKey("tenant", "key"));
+	}
+	
+	@Test
+	public void verify_key_should_reject_deleted_tenant()
+	{
+		Tenant tenant = new Tenant("tenant", "tenant");
+		tenant.addKey("key");
+		admin.putTenant(tenant);
+		admin.verifyKey("tenant", "key");
+		
+		admin.deleteTenant("tenant");
+		
+		assertFalse(admin.verifyKey("tenant", "key"));
+	}
+	
 	@Test
 	public void get_deleted_tenant_should_return_null()
 	{
@@ -77,7 +131,7 @@ public abstract class CollabinateAdminTest
 		
 		assertNotNull(admin.getTenant("tenant2"));
 	}
-
+	
 	@Test
 	public void database_export_should_contain_added_tenant_name()
 	{
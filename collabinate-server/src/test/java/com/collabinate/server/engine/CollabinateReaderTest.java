@@ -3,8 +3,12 @@ package com.collabinate.server.engine;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
@@ -1028,4 +1032,592 @@ public abstract class CollabinateReaderTest
 				"test-047-other", "test-047-entity", "activity1"));
 	}
 	
+	@Test
+	public void after_cursor_should_continue_stream_after_last_item()
+	{
+		final DateTime time = DateTime.now();
+		for (int i = 1; i <= 4; i++)
+			writer.addActivity("test-048", "entity",
+					getActivity(Integer.toString(i), time.plus(i * 1000), null));
+		
+		ActivityStreamsCollection first =
+				reader.getStream("test-048", "entity", 0, 2);
+		
+		// a new activity at the head must not shift the next page
+		writer.addActivity("test-048", "entity",
+				getActivity("5", time.plus(5000), null));
+		
+		ActivityStreamsCollection next = reader.getStream("test-048",
+				"entity", PageCursor.after(first.getNextCursor()), 2);
+		
+		assertEquals("2", next.get(0).getId());
+		assertEquals("1", next.get(1).getId());
+	}
+	
+	@Test
+	public void before_cursor_should_return_stream_items_newer_than_first()
+	{
+		final DateTime time = DateTime.now();
+		for (int i = 1; i <= 4; i++)
+			writer.addActivity("test-049", "entity",
+					getActivity(Integer.toString(i), time.plus(i * 1000), null));
+		
+		ActivityStreamsCollection last =
+				reader.getStream("test-049", "entity", 2, 2);
+		ActivityStreamsCollection previous = reader.getStream("test-049",
+				"entity", PageCursor.before(last.getPrevCursor()), 5);
+		
+		assertEquals(2, previous.size());
+		assertEquals("4", previous.get(0).getId());
+		assertEquals("3", previous.get(1).getId());
+	}
+	
+	@Test
+	public void cursor_should_use_sort_time_when_item_is_deleted()
+	{
+		final DateTime time = DateTime.now();
+		for (int i = 1; i <= 4; i++)
+			writer.addActivity("test-050", "entity",
+					getActivity(Integer.toString(i), time.plus(i * 1000), null));
+		
+		ActivityStreamsCollection first =
+				reader.getStream("test-050", "entity", 0, 2);
+		writer.deleteActivity("test-050", "entity", "3");
+		
+		ActivityStreamsCollection next = reader.getStream("test-050",
+				"entity", PageCursor.after(first.getNextCursor()), 2);
+		ActivityStreamsCollection previous = reader.getStream("test-050",
+				"entity", PageCursor.before(first.getNextCursor()), 2);
+		
+		assertEquals("2", next.get(0).getId());
+		assertEquals("1", next.get(1).getId());
+		assertEquals(1, previous.size());
+		assertEquals("4", previous.get(0).getId());
+	}
+	
+	@Test
+	public void cursors_should_page_through_feed_in_both_directions()
+	{
+		final DateTime time = DateTime.now();
+		writer.addActivity("test-051", "entityA",
+				getActivity("1", time.plus(1000), null));
+		writer.addActivity("test-051", "entityB",
+				getActivity("2", time.plus(2000), null));
+		writer.addActivity("test-051", "entityA",
+				getActivity("3", time.plus(3000), null));
+		writer.addActivity("test-051", "entityB",
+				getActivity("4", time.plus(4000), null));
+		writer.followEntity("test-051", "user", "entityA", null);
+		writer.followEntity("test-051", "user", "entityB", null);
+		
+		ActivityStreamsCollection first =
+				reader.getFeed("test-051", "user", 0, 2);
+		ActivityStreamsCollection next = reader.getFeed("test-051", "user",
+				PageCursor.after(first.getNextCursor()), 2);
+		ActivityStreamsCollection previous = reader.getFeed("test-051",
+				"user", PageCursor.before(next.getPrevCursor()), 2);
+		
+		assertEquals("2", next.get(0).getId());
+		assertEquals("1", next.get(1).getId());
+		assertEquals("4", previous.get(0).getId());
+		assertEquals("3", previous.get(1).getId());
+	}
+	
+	@Test
+	public void after_cursor_should_continue_comments_after_last_item()
+	{
+		final DateTime time = DateTime.now();
+		writer.addActivity("test-052", "entity",
+				getActivity("activity", null, null));
+		for (int i = 1; i <= 3; i++)
+		{
+			ActivityStreamsObject comment = new ActivityStreamsObject();
+			comment.setId(Integer.toString(i));
+			comment.setPublished(time.plus(i * 1000));
+			writer.addComment("test-052", "entity", "activity", null, comment);
+		}
+		
+		ActivityStreamsCollection first = reader.getComments(
+				"test-052", "entity", "activity", 0, 2);
+		ActivityStreamsCollection next = reader.getComments("test-052",
+				"entity", "activity", PageCursor.after(first.getNextCursor()), 2);
+		
+		assertEquals(1, next.size());
+		assertEquals("1", next.get(0).getId());
+	}
+	
+	@Test
+	public void after_cursor_should_continue_likes_after_last_item()
+	{
+		writer.addActivity("test-053", "entity",
+				getActivity("activity", null, null));
+		writer.likeActivity("test-053", "user1", "entity", "activity");
+		writer.likeActivity("test-053", "user2", "entity", "activity");
+		writer.likeActivity("test-053", "user3", "entity", "activity");
+		
+		ActivityStreamsCollection first =
+				reader.getLikes("test-053", "entity", "activity", 0, 2);
+		ActivityStreamsCollection next = reader.getLikes("test-053",
+				"entity", "activity", PageCursor.after(first.getNextCursor()), 2);
+		
+		assertEquals(1, next.size());
+		String all = first.toString() + next.toString();
+		assertThat(all, containsString("user1"));
+		assertThat(all, containsString("user2"));
+		assertThat(all, containsString("user3"));
+	}
+	
+	@Test
+	public void feed_cursors_should_page_through_equal_sort_times()
+	{
+		final DateTime time = DateTime.now();
+		for (String entityId : new String[] { "entityB", "entityC", "entityA" })
+		{
+			writer.addActivity("test-070", entityId,
+					getActivity(entityId, time, null));
+			writer.followEntity("test-070", "user", entityId, null);
+		}
+		
+		List<String> after = new ArrayList<String>();
+		ActivityStreamsCollection page =
+				reader.getFeed("test-070", "user", 0, 1);
+		while (page.size() > 0)
+		{
+			after.add(page.get(0).getId());
+			page = reader.getFeed("test-070", "user",
+					PageCursor.after(page.getNextCursor()), 1);
+		}
+		
+		List<String> before = new ArrayList<String>();
+		page = reader.getFeed("test-070", "user", 2, 1);
+		while (page.size() > 0)
+		{
+			before.add(0, page.get(0).getId());
+			page = reader.getFeed("test-070", "user",
+					PageCursor.before(page.getPrevCursor()), 1);
+		}
+		
+		assertEquals(Arrays.asList("entityA", "entityB", "entityC"), after);
+		assertEquals(after, before);
+	}
+	
+	@Test
+	public void like_cursors_should_page_through_likes_in_order()
+	{
+		writer.addActivity("test-071", "entity",
+				getActivity("activity", null, null));
+		for (int i = 1; i <= 5; i++)
+		{
+			writer.likeActivity("test-071", "user" + i, "entity",
+					"activity");
+		}
+		
+		ActivityStreamsCollection all =
+				reader.getLikes("test-071", "entity", "activity", 0, 5);
+		ActivityStreamsCollection first =
+				reader.getLikes("test-071", "entity", "activity", 0, 2);
+		
+		// the like at the cursor is found by time once it is removed
+		writer.unlikeActivity("test-071",
+				new Activity(first.get(1).toString()).getActor().getId(),
+				"entity", "activity");
+		
+		ActivityStreamsCollection next = reader.getLikes("test-071",
+				"entity", "activity", PageCursor.after(first.getNextCursor()), 5);
+		ActivityStreamsCollection previous = reader.getLikes("test-071",
+				"entity", "activity", PageCursor.before(next.getPrevCursor()), 5);
+		
+		assertEquals(5, all.size());
+		assertEquals(3, next.size());
+		for (int i = 0; i < 3; i++)
+			assertEquals(all.get(i + 2).toString(), next.get(i).toString());
+		assertEquals(1, previous.size());
+		assertEquals(all.get(0).toString(), previous.get(0).toString());
+	}
+	
+	@Test
+	public void reordering_feed_should_keep_follow_relationships()
+	{
+		final DateTime time = new DateTime(10000);
+		writer.addActivity("test-054", "entityA",
+				getActivity("1", time.plus(3000), null));
+		writer.addActivity("test-054", "entityB",
+				getActivity("2", time.plus(2000), null));
+		writer.addActivity("test-054", "entityC",
+				getActivity("3", time.plus(1000), null));
+		final DateTime followed = new DateTime(5000);
+		writer.followEntity("test-054", "user", "entityA", followed);
+		writer.followEntity("test-054", "user", "entityB", followed);
+		writer.followEntity("test-054", "user", "entityC", followed);
+		
+		// move C from last to first, then A from first to last
+		writer.addActivity("test-054", "entityC",
+				getActivity("4", time.plus(4000), null));
+		writer.deleteActivity("test-054", "entityA", "1");
+		writer.addActivity("test-054", "entityA",
+				getActivity("5", time, null));
+		
+		List<ActivityStreamsObject> activities =
+				reader.getFeed("test-054", "user", 0, 5).getItems();
+		assertEquals(4, activities.size());
+		assertEquals("4", activities.get(0).getId());
+		assertEquals("2", activities.get(1).getId());
+		assertEquals("3", activities.get(2).getId());
+		assertEquals("5", activities.get(3).getId());
+		assertEquals(followed.getMillis(), reader.getDateTimeUserFollowedEntity(
+				"test-054", "user", "entityC").getMillis());
+		assertEquals(3, reader.getFollowing(
+				"test-054", "user", 0, 5).size());
+	}
+	
+	@Test
+	public void unfollowing_should_leave_other_follow_relationships()
+	{
+		final DateTime followed = new DateTime(5000);
+		writer.followEntity("test-055", "userA", "entity", followed);
+		writer.followEntity("test-055", "userB", "entity", followed);
+		writer.followEntity("test-055", "userA", "other", followed);
+		
+		assertEquals(followed.getMillis(), writer.unfollowEntity(
+				"test-055", "userA", "entity").getMillis());
+		
+		assertNull(reader.getDateTimeUserFollowedEntity(
+				"test-055", "userA", "entity"));
+		assertEquals(followed.getMillis(), reader.getDateTimeUserFollowedEntity(
+				"test-055", "userB", "entity").getMillis());
+		assertEquals(followed.getMillis(), reader.getDateTimeUserFollowedEntity(
+				"test-055", "userA", "other").getMillis());
+		assertEquals(1, reader.getFollowers(
+				"test-055", "entity", 0, 5).size());
+	}
+	
+	@Test
+	public void readded_activity_should_not_keep_likes()
+	{
+		writer.addActivity("test-056", "entity",
+				getActivity("activity", DateTime.now(), null));
+		writer.likeActivity("test-056", "user", "entity", "activity");
+		writer.deleteActivity("test-056", "entity", "activity");
+		writer.addActivity("test-056", "entity",
+				getActivity("activity", DateTime.now(), null));
+		
+		assertNull(reader.userLikesActivity(
+				"test-056", "user", "entity", "activity"));
+		assertEquals(0, reader.getLikes(
+				"test-056", "entity", "activity", 0, 5).size());
+	}
+	
+	@Test
+	public void enrich_activities_should_add_comments_likes_and_user_like()
+	{
+		DateTime time = DateTime.now();
+		writer.addActivity("test-057", "entity",
+				getActivity("1", time, null));
+		writer.addActivity("test-057", "entity",
+				getActivity("2", time.plus(1000), null));
+		ActivityStreamsObject comment = new ActivityStreamsObject("comment");
+		comment.setId("1");
+		comment.setPublished(time);
+		writer.addComment("test-057", "entity", "1", null, comment);
+		writer.likeActivity("test-057", "user", "entity", "2");
+		
+		List<ActivityStreamsObject> activities =
+				reader.getStream("test-057", "entity", 0, 2).getItems();
+		reader.enrichActivities("test-057", "entity", activities, 5, 0,
+				"user");
+		
+		assertEquals("2", activities.get(0).getId());
+		assertEquals(0, activities.get(0).getReplies().size());
+		assertEquals(1, activities.get(0).getLikes().getTotalItems());
+		assertEquals(0, activities.get(0).getLikes().size());
+		assertNotNull(activities.get(0).getCollabinateValue("likedByUser"));
+		assertEquals(1, activities.get(1).getReplies().size());
+		assertNull(activities.get(1).getCollabinateValue("likedByUser"));
+	}
+	
+	@Test
+	public void added_batch_should_merge_into_stream_and_feed()
+	{
+		DateTime time = DateTime.now();
+		writer.addActivity("test-058", "entity1", getActivity("1", time, null));
+		writer.addActivity("test-058", "entity2",
+				getActivity("2", time.plus(1000), null));
+		writer.followEntity("test-058", "user", "entity1", null);
+		writer.followEntity("test-058", "user", "entity2", null);
+		
+		List<Activity> batch = new ArrayList<Activity>();
+		batch.add(getActivity("3", time.minus(1000), null));
+		batch.add(getActivity("4", time.plus(2000), null));
+		writer.addActivities("test-058", "entity1", batch);
+		
+		List<ActivityStreamsObject> stream =
+				reader.getStream("test-058", "entity1", 0, 5).getItems();
+		assertEquals(3, stream.size());
+		assertEquals("4", stream.get(0).getId());
+		assertEquals("1", stream.get(1).getId());
+		assertEquals("3", stream.get(2).getId());
+		
+		// the batch moved entity1 ahead of entity2 in the feed
+		List<ActivityStreamsObject> feed =
+				reader.getFeed("test-058", "user", 0, 5).getItems();
+		assertEquals(4, feed.size());
+		assertEquals("4", feed.get(0).getId());
+		assertEquals("2", feed.get(1).getId());
+		assertEquals("4", reader.getEntity("test-058", "user")
+				.getCollabinateValue("FeedCount"));
+	}
+	
+	@Test
+	public void batch_with_existing_activity_should_add_nothing()
+	{
+		writer.addActivity("test-059", "entity",
+				getActivity("1", DateTime.now(), null));
+		
+		List<Activity> batch = new ArrayList<Activity>();
+		batch.add(getActivity("2", DateTime.now(), null));
+		batch.add(getActivity("1", DateTime.now(), null));
+		try
+		{
+			writer.addActivities("test-059", "entity", batch);
+			fail("Batch with existing activity was added");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertTrue(e.getMessage().contains("exists"));
+		}
+		
+		assertEquals(1, reader.getStream("test-059", "entity", 0, 5).size());
+	}
+	
+	@Test
+	public void followed_batch_should_merge_into_feed_order()
+	{
+		DateTime time = DateTime.now();
+		for (int i = 0; i < 6; i++)
+			writer.addActivity("test-060", "entity" + i,
+					getActivity(Integer.toString(i), time.plus(i * 1000), null));
+		writer.followEntity("test-060", "user", "entity2", null);
+		writer.followEntity("test-060", "user", "entity4", null);
+		
+		List<String> entityIds = new ArrayList<String>();
+		entityIds.add("entity3");
+		entityIds.add("entity0");
+		entityIds.add("entity5");
+		entityIds.add("entity2");
+		entityIds.add("entity1");
+		Map<String, DateTime> followed = writer.followEntities("test-060",
+				"user", entityIds, null);
+		
+		assertEquals(5, followed.size());
+		assertEquals(reader.getDateTimeUserFollowedEntity("test-060", "user",
+				"entity2"), followed.get("entity2"));
+		
+		List<ActivityStreamsObject> feed =
+				reader.getFeed("test-060", "user", 0, 10).getItems();
+		assertEquals(6, feed.size());
+		for (int i = 0; i < 6; i++)
+			assertEquals(Integer.toString(5 - i), feed.get(i).getId());
+		assertEquals(6, reader.getFollowing("test-060", "user", 0, 10)
+				.getTotalItems());
+	}
+	
+	@Test
+	public void unfollowed_batch_should_leave_remaining_feed()
+	{
+		DateTime time = DateTime.now();
+		List<String> entityIds = new ArrayList<String>();
+		for (int i = 0; i < 4; i++)
+		{
+			writer.addActivity("test-061", "entity" + i,
+					getActivity(Integer.toString(i), time.plus(i * 1000), null));
+			entityIds.add("entity" + i);
+		}
+		writer.followEntities("test-061", "user", entityIds, null);
+		
+		entityIds.remove("entity2");
+		entityIds.add("entity9");
+		Map<String, DateTime> unfollowed =
+				writer.unfollowEntities("test-061", "user", entityIds);
+		
+		assertEquals(3, unfollowed.size());
+		assertFalse(unfollowed.containsKey("entity9"));
+		List<ActivityStreamsObject> feed =
+				reader.getFeed("test-061", "user", 0, 10).getItems();
+		assertEquals(1, feed.size());
+		assertEquals("2", feed.get(0).getId());
+		assertEquals(0, reader.getFollowers("test-061", "entity0", 0, 10)
+				.size());
+	}
+	
+	@Test
+	public void feed_count_should_follow_stream_and_following_changes()
+	{
+		DateTime time = DateTime.now();
+		writer.addActivity("test-062", "entity1",
+				getActivity("1", time, null));
+		writer.followEntity("test-062", "user", "entity1", null);
+		assertEquals(1, reader.getFeed("test-062", "user", 0, 10)
+				.getTotalItems());
+		
+		writer.addActivity("test-062", "entity1",
+				getActivity("2", time.minus(1000), null));
+		assertEquals(2, reader.getFeed("test-062", "user", 0, 10)
+				.getTotalItems());
+		
+		writer.addActivity("test-062", "entity2",
+				getActivity("3", time, null));
+		writer.followEntity("test-062", "user", "entity2", null);
+		assertEquals("3", reader.getEntity("test-062", "user")
+				.getCollabinateValue("FeedCount"));
+		
+		writer.deleteActivity("test-062", "entity1", "1");
+		writer.unfollowEntity("test-062", "user", "entity2");
+		assertEquals(1, reader.getFeed("test-062", "user", 0, 10)
+				.getTotalItems());
+	}
+	
+	@Test
+	public void versions_of_nonexistent_data_should_be_zero()
+	{
+		assertEquals(0, reader.getStreamVersion("test-063", "entity"));
+		assertEquals(0, reader.getFeedVersion("test-063", "user"));
+		assertEquals(0, reader.getActivityVersion("test-063", "entity", "1"));
+		assertEquals(0, reader.getEntityVersion("test-063", "entity"));
+	}
+	
+	@Test
+	public void stream_version_should_increase_with_stream_changes()
+	{
+		writer.addActivity("test-064", "entity",
+				getActivity("1", null, null));
+		long added = reader.getStreamVersion("test-064", "entity");
+		writer.addActivity("test-064", "entity",
+				getActivity("2", null, null));
+		long addedAgain = reader.getStreamVersion("test-064", "entity");
+		writer.deleteActivity("test-064", "entity", "1");
+		long deleted = reader.getStreamVersion("test-064", "entity");
+		
+		assertTrue(added > 0);
+		assertTrue(addedAgain > added);
+		assertTrue(deleted > addedAgain);
+	}
+	
+	@Test
+	public void activity_version_should_increase_with_comments_and_likes()
+	{
+		writer.addActivity("test-065", "entity",
+				getActivity("1", null, null));
+		long added = reader.getActivityVersion("test-065", "entity", "1");
+		long stream = reader.getStreamVersion("test-065", "entity");
+		ActivityStreamsObject comment = new ActivityStreamsObject();
+		comment.setId("comment");
+		writer.addComment("test-065", "entity", "1", null, comment);
+		long commented = reader.getActivityVersion("test-065", "entity", "1");
+		writer.likeActivity("test-065", "user", "entity", "1");
+		long liked = reader.getActivityVersion("test-065", "entity", "1");
+		writer.deleteComment("test-065", "entity", "1", "comment");
+		long uncommented =
+				reader.getActivityVersion("test-065", "entity", "1");
+		
+		assertTrue(added > 0);
+		assertTrue(commented > added);
+		assertTrue(liked > commented);
+		assertTrue(uncommented > liked);
+		assertEquals(stream, reader.getStreamVersion("test-065", "entity"));
+	}
+	
+	@Test
+	public void feed_version_should_increase_with_feed_changes()
+	{
+		writer.addActivity("test-066", "entity1",
+				getActivity("1", null, null));
+		writer.followEntity("test-066", "user", "entity1", null);
+		long followed = reader.getFeedVersion("test-066", "user");
+		writer.addActivity("test-066", "entity1",
+				getActivity("2", null, null));
+		long added = reader.getFeedVersion("test-066", "user");
+		writer.addActivity("test-066", "entity2",
+				getActivity("3", null, null));
+		writer.followEntity("test-066", "user", "entity2", null);
+		writer.unfollowEntity("test-066", "user", "entity2");
+		long unfollowed = reader.getFeedVersion("test-066", "user");
+		writer.deleteEntity("test-066", "entity1");
+		long deleted = reader.getFeedVersion("test-066", "user");
+		
+		assertTrue(followed > 0);
+		assertTrue(added > followed);
+		assertTrue(unfollowed > added);
+		assertTrue(deleted > unfollowed);
+	}
+	
+	@Test
+	public void entity_version_should_increase_with_count_changes()
+	{
+		writer.addActivity("test-067", "entity",
+				getActivity("1", null, null));
+		long added = reader.getEntityVersion("test-067", "entity");
+		writer.followEntity("test-067", "user", "entity", null);
+		long followed = reader.getEntityVersion("test-067", "entity");
+		long userFollowed = reader.getEntityVersion("test-067", "user");
+		writer.addActivity("test-067", "entity",
+				getActivity("2", null, null));
+		long userFeedChanged = reader.getEntityVersion("test-067", "user");
+		
+		assertTrue(added > 0);
+		assertTrue(followed > added);
+		assertTrue(userFollowed > 0);
+		assertTrue(userFeedChanged > userFollowed);
+	}
+	
+	@Test
+	public void stream_should_serialize_as_parsed_collection()
+	{
+		writer.addActivity("test-068", "entity",
+				getActivity("1", null, "<b>first</b>"));
+		writer.addActivity("test-068", "entity",
+				getActivity("2", null, null));
+		ActivityStreamsCollection stream =
+				reader.getStream("test-068", "entity", 0, 10);
+		String json = stream.toString();
+		
+		assertEquals(new ActivityStreamsCollection(json).toString(), json);
+		assertEquals(2, stream.size());
+		assertEquals("2", stream.get(0).getId());
+		
+		stream.add(getActivity("3", null, null));
+		assertEquals(3, new ActivityStreamsCollection(stream.toString())
+				.size());
+	}
+	
+	@Test
+	public void modified_stream_should_write_as_serialized()
+			throws IOException
+	{
+		writer.addActivity("test-069", "entity",
+				getActivity("1", null, "<b>first</b>"));
+		ActivityStreamsCollection stream =
+				reader.getStream("test-069", "entity", 0, 10);
+		Activity activity = new Activity(stream.get(0).toString());
+		activity.getActor().setId("changed");
+		activity.setVerb(null);
+		List<ActivityStreamsObject> items =
+				new ArrayList<ActivityStreamsObject>();
+		items.add(activity);
+		stream.setItems(items);
+		
+		StringWriter json = new StringWriter();
+		stream.writeTo(json);
+		
+		assertEquals(stream.toString(), json.toString());
+		assertThat(json.toString(), containsString("<b>first</b>"));
+		assertThat(json.toString(), not(containsString("changed")));
+	}
+	
+	@Test
+	public void invalid_cursor_token_should_throw_exception()
+	{
+		exception.expect(IllegalArgumentException.class);
+		PageCursor.after("not a cursor");
+	}
+
 }
\ No newline at end of file
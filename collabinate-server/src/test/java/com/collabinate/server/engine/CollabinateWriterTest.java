@@ -2,6 +2,8 @@ package com.collabinate.server.engine;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Rule;
@@ -78,6 +80,46 @@ public abstract class CollabinateWriterTest
 		writer.deleteActivity("c", "entity", "1");
 	}
 	
+	@Test
+	public void add_activities_should_not_allow_null_tenant_ID()
+	{
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("tenantId");
+		writer.addActivities(null, "entity", new ArrayList<Activity>());
+	}
+	
+	@Test
+	public void add_activities_should_not_allow_null_entity_ID()
+	{
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("entityId");
+		writer.addActivities("c", null, new ArrayList<Activity>());
+	}
+	
+	@Test
+	public void add_activities_should_not_allow_null_activities()
+	{
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("activities");
+		writer.addActivities("c", "entity", null);
+	}
+	
+	@Test
+	public void follow_entities_should_not_allow_null_entity_IDs()
+	{
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("entityIds");
+		writer.followEntities("c", "user", null, null);
+	}
+	
+	@Test
+	public void unfollow_entities_should_not_allow_null_entity_IDs()
+	{
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("entityIds");
+		writer.unfollowEntities("c", "user", null);
+	}
+	
 	@Test
 	public void delete_activity_should_not_allow_null_tenant_ID()
 	{
@@ -0,0 +1,149 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+/**
+ * Tests for deferred counters, using a flush interval long enough that
+ * flushes only happen when the tests make them.
+ * 
+ * @author mafuba
+ * 
+ */
+public class GraphCountersTest
+{
+	private CollabinateGraph graph;
+	private GraphCounters counters;
+	
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+	
+	@Before
+	public void setup()
+	{
+		graph = new CollabinateGraph(new TinkerGraph());
+		graph.enableDeferredCounters(FLUSH_INTERVAL);
+		counters = graph.getCounters();
+	}
+	
+	@After
+	public void teardown()
+	{
+		graph.shutdown();
+	}
+	
+	@Test
+	public void should_not_allow_non_positive_flush_interval()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new GraphCounters(graph).start(0);
+	}
+	
+	@Test
+	public void reading_should_include_pending_adjustments()
+	{
+		Vertex vertex = graph.addVertex("vertex");
+		vertex.setProperty(COUNT, 2);
+		
+		counters.adjust(vertex, COUNT, 3);
+		
+		assertEquals((Integer)2, vertex.getProperty(COUNT));
+		assertEquals(5, counters.get(vertex, COUNT));
+	}
+	
+	@Test
+	public void adjustments_should_be_pending_once_committed()
+	{
+		final Vertex vertex = graph.addVertex("vertex");
+		graph.enableGroupCommit(2, 256);
+		
+		int duringWrite = graph.execute(new Callable<Integer>()
+		{
+			@Override
+			public Integer call()
+			{
+				counters.adjust(vertex, COUNT, 3);
+				return counters.get(vertex, COUNT);
+			}
+		});
+		
+		assertEquals(0, duringWrite);
+		assertEquals(3, counters.get(vertex, COUNT));
+	}
+	
+	@Test
+	public void flushing_should_store_pending_adjustments()
+	{
+		Vertex vertex = graph.addVertex("vertex");
+		
+		counters.adjust(vertex, COUNT, 3);
+		counters.adjust(vertex, COUNT, -1);
+		counters.flush();
+		
+		assertEquals((Integer)2, vertex.getProperty(COUNT));
+		assertEquals(2, counters.get(vertex, COUNT));
+	}
+	
+	@Test
+	public void discarding_should_drop_pending_adjustments()
+	{
+		Vertex vertex = graph.addVertex("vertex");
+		
+		counters.adjust(vertex, COUNT, 3);
+		counters.discard(vertex);
+		counters.flush();
+		
+		assertNull(vertex.getProperty(COUNT));
+		assertEquals(0, counters.get(vertex, COUNT));
+	}
+	
+	@Test
+	public void stopping_should_flush_pending_adjustments()
+	{
+		Vertex vertex = graph.addVertex("vertex");
+		
+		counters.adjust(vertex, COUNT, 4);
+		counters.stop();
+		
+		assertFalse(counters.isDeferred());
+		assertEquals((Integer)4, vertex.getProperty(COUNT));
+	}
+	
+	@Test
+	public void engine_counts_should_include_pending_adjustments()
+	{
+		GraphEngine engine = new GraphEngine(graph);
+		Activity activity = new Activity();
+		activity.setId("activity");
+		engine.addActivity("c", "entity", activity);
+		engine.followEntity("c", "user1", "entity", null);
+		engine.followEntity("c", "user2", "entity", null);
+		engine.likeActivity("c", "user1", "entity", "activity");
+		
+		assertEquals("2", engine.getEntity("c", "entity")
+				.getCollabinateValue("FollowerCount"));
+		assertEquals(1, engine.getLikes("c", "entity", "activity", 0, 10)
+				.getTotalItems());
+		
+		counters.flush();
+		
+		assertEquals("2", engine.getEntity("c", "entity")
+				.getCollabinateValue("FollowerCount"));
+		assertEquals("1", engine.getEntity("c", "user1")
+				.getCollabinateValue("FollowingCount"));
+	}
+	
+	private static final long FLUSH_INTERVAL = 60000;
+	private static final String COUNT = "Count";
+}
@@ -0,0 +1,340 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+/**
+ * Tests for the graph migrator and the migrations it runs.
+ * 
+ * @author mafuba
+ * 
+ */
+public class GraphMigratorTest
+{
+	private CollabinateGraph graph;
+	private GraphEngine engine;
+	private GraphMigrator migrator;
+	
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+	
+	@Before
+	public void setup()
+	{
+		graph = new CollabinateGraph(new TinkerGraph());
+		engine = new GraphEngine(graph);
+		migrator = new GraphMigrator(graph, Arrays.<GraphMigration>asList(
+				new SortKeyMigration()), 2);
+	}
+	
+	@After
+	public void teardown()
+	{
+		graph.shutdown();
+	}
+	
+	@Test
+	public void sort_key_migration_should_convert_string_times_to_longs()
+	{
+		addActivities("tenant", "entity", 3);
+		engine.followEntity("tenant", "user", "entity", null);
+		convertTimesToStrings();
+		
+		migrator.run();
+		
+		for (Vertex vertex : graph.getVertices())
+			assertTimesAreLongs(vertex.getProperty("SortTime"),
+					vertex.getProperty("Created"));
+		for (Edge edge : graph.getEdges())
+			assertTimesAreLongs(edge.getProperty("SortTime"),
+					edge.getProperty("Created"));
+	}
+	
+	@Test
+	public void string_times_should_be_readable_before_migration()
+	{
+		addActivities("tenant", "entity", 3);
+		engine.followEntity("tenant", "user", "entity", null);
+		convertTimesToStrings();
+		
+		List<ActivityStreamsObject> feed =
+				engine.getFeed("tenant", "user", 0, 3).getItems();
+		
+		assertEquals("2", feed.get(0).getId());
+		assertEquals("0", feed.get(2).getId());
+		assertNotNull(engine.getDateTimeUserFollowedEntity(
+				"tenant", "user", "entity"));
+	}
+	
+	@Test
+	public void migrated_stream_should_keep_order()
+	{
+		addActivities("tenant", "entity", 3);
+		convertTimesToStrings();
+		
+		migrator.run();
+		Activity activity = new Activity();
+		activity.setId("new");
+		activity.setPublished(new DateTime(1, DateTimeZone.UTC));
+		engine.addActivity("tenant", "entity", activity);
+		
+		List<ActivityStreamsObject> stream =
+				engine.getStream("tenant", "entity", 0, 4).getItems();
+		
+		assertEquals("2", stream.get(0).getId());
+		assertEquals("new", stream.get(3).getId());
+	}
+	
+	@Test
+	public void overlay_key_migration_should_key_legacy_overlays()
+	{
+		addActivities("tenant", "entity1", 1);
+		addActivities("tenant", "entity2", 1);
+		engine.followEntity("tenant", "user", "entity1", null);
+		engine.followEntity("tenant", "user", "entity2", null);
+		convertOverlaysToLegacy("tenant", "user", "entity1", "entity2");
+		
+		new GraphMigrator(graph, Arrays.<GraphMigration>asList(
+				new OverlayKeyMigration(graph)), 1).run();
+		
+		assertNotNull(graph.getVertex(GraphEngine.getOverlayVertexId(
+				"tenant", "user", "entity1")));
+		assertNotNull(graph.getVertex(GraphEngine.getOverlayVertexId(
+				"tenant", "user", "entity2")));
+		assertEquals(2, engine.getFeed("tenant", "user", 0, 3)
+				.getItems().size());
+	}
+	
+	@Test
+	public void legacy_overlays_should_be_removed_before_migration()
+	{
+		addActivities("tenant", "entity", 1);
+		engine.followEntity("tenant", "user", "entity", null);
+		convertOverlaysToLegacy("tenant", "user", "entity");
+		
+		engine.unfollowEntity("tenant", "user", "entity");
+		
+		assertEquals(0, engine.getFeed("tenant", "user", 0, 3)
+				.getItems().size());
+		for (Vertex vertex : graph.getVertices())
+			assertNotEquals("Overlay", vertex.getProperty("Type"));
+	}
+	
+	@Test
+	public void followed_time_migration_should_copy_follow_time_to_overlay()
+	{
+		DateTime followed = new DateTime(5000, DateTimeZone.UTC);
+		engine.followEntity("tenant", "user", "entity", followed);
+		Vertex overlay = graph.getVertex(GraphEngine.getOverlayVertexId(
+				"tenant", "user", "entity"));
+		overlay.removeProperty("Followed");
+		graph.commit();
+		
+		assertEquals(followed, engine.getDateTimeUserFollowedEntity(
+				"tenant", "user", "entity"));
+		
+		new GraphMigrator(graph, Arrays.<GraphMigration>asList(
+				new FollowedTimeMigration(graph)), 1).run();
+		
+		assertEquals(5000L, (long)overlay.getProperty("Followed"));
+	}
+	
+	@Test
+	public void like_key_migration_should_key_legacy_likes()
+	{
+		addActivities("tenant", "entity", 1);
+		engine.likeActivity("tenant", "user1", "entity", "0");
+		engine.likeActivity("tenant", "user2", "entity", "0");
+		convertLikesToLegacy("tenant", "entity", "0", "user1", "user2");
+		
+		assertNotNull(engine.userLikesActivity(
+				"tenant", "user1", "entity", "0"));
+		
+		new GraphMigrator(graph, Arrays.<GraphMigration>asList(
+				new LikeKeyMigration(graph)), 1).run();
+		
+		assertNotNull(graph.getVertex(GraphEngine.getLikeVertexId(
+				"tenant", "user1", "entity", "0")));
+		assertNotNull(graph.getVertex(GraphEngine.getLikeVertexId(
+				"tenant", "user2", "entity", "0")));
+		assertEquals(2, engine.getLikes("tenant", "entity", "0", 0, 5).size());
+		
+		engine.unlikeActivity("tenant", "user1", "entity", "0");
+		assertNull(engine.userLikesActivity("tenant", "user1", "entity", "0"));
+		assertEquals(1, engine.getLikes("tenant", "entity", "0", 0, 5).size());
+	}
+	
+	@Test
+	public void like_path_migration_should_link_legacy_likes()
+	{
+		addActivities("tenant", "entity", 1);
+		for (int i = 1; i <= 3; i++)
+			engine.likeActivity("tenant", "user" + i, "entity", "0");
+		String likes = engine.getLikes("tenant", "entity", "0", 0, 5)
+				.toString();
+		convertLikesToLegacy("tenant", "entity", "0",
+				"user1", "user2", "user3");
+		
+		new GraphMigrator(graph, Arrays.<GraphMigration>asList(
+				new LikeKeyMigration(graph), new LikePathMigration()), 1).run();
+		
+		Vertex activity = graph.getVertex("tenant.entity.0");
+		assertEquals(true, activity.getProperty("LikesLinked"));
+		assertEquals(likes,
+				engine.getLikes("tenant", "entity", "0", 0, 5).toString());
+		
+		engine.unlikeActivity("tenant", "user2", "entity", "0");
+		engine.likeActivity("tenant", "user4", "entity", "0");
+		assertEquals(3, engine.getLikes("tenant", "entity", "0", 0, 5).size());
+	}
+	
+		@Test
+	public void status_should_report_completed_migration()
+	{
+		addActivities("tenant", "entity", 1);
+		convertTimesToStrings();
+		
+		migrator.run();
+		
+		assertTrue(migrator.getStatus().contains("\"state\":\"complete\""));
+		assertFalse(migrator.getStatus().contains("\"migrated\":0"));
+	}
+	
+	@Test
+	public void should_not_allow_null_graph()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new GraphMigrator(null, Arrays.<GraphMigration>asList(), 1);
+	}
+	
+	@Test
+	public void should_not_allow_non_positive_batch_size()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new GraphMigrator(graph, Arrays.<GraphMigration>asList(), 0);
+	}
+	
+	/**
+	 * Adds activities one second apart to the given entity, with IDs
+	 * counting up from zero, so the last one added is the newest.
+	 */
+	private void addActivities(String tenantId, String entityId, int count)
+	{
+		DateTime time = DateTime.now(DateTimeZone.UTC);
+		for (int i = 0; i < count; i++)
+		{
+			Activity activity = new Activity();
+			activity.setId(Integer.toString(i));
+			activity.setPublished(time.plusSeconds(i));
+			engine.addActivity(tenantId, entityId, activity);
+		}
+	}
+	
+	/**
+	 * Rewrites all time properties in the graph to the ISO string format used
+	 * before numeric sort keys were introduced.
+	 */
+	private void convertTimesToStrings()
+	{
+		for (Vertex vertex : graph.getVertices())
+		{
+			convertTimeToString(vertex, "SortTime");
+			convertTimeToString(vertex, "Created");
+		}
+		for (Edge edge : graph.getEdges())
+		{
+			convertTimeToString(edge, "Created");
+		}
+	}
+	
+	/**
+	 * Replaces the keyed overlays of the given user with overlays at
+	 * arbitrary IDs, as created before overlays were keyed.
+	 */
+	private void convertOverlaysToLegacy(String tenantId, String userId,
+			String... entityIds)
+	{
+		for (String entityId : entityIds)
+		{
+			Vertex overlay = graph.getVertex(GraphEngine.getOverlayVertexId(
+					tenantId, userId, entityId));
+			Vertex legacy = graph.addVertex(null);
+			for (String key : overlay.getPropertyKeys())
+				legacy.setProperty(key, overlay.getProperty(key));
+			for (Edge edge : overlay.getEdges(Direction.IN))
+				edge.getVertex(Direction.OUT).addEdge(edge.getLabel(), legacy)
+						.setProperty("Created", edge.getProperty("Created"));
+			for (Edge edge : overlay.getEdges(Direction.OUT))
+				legacy.addEdge(edge.getLabel(), edge.getVertex(Direction.IN))
+						.setProperty("Created", edge.getProperty("Created"));
+			overlay.remove();
+		}
+		graph.getVertex(tenantId + "." + userId)
+				.removeProperty("OverlaysKeyed");
+		graph.commit();
+	}
+	
+	/**
+	 * Replaces the keyed likes of the given activity with like edges from the
+	 * users, as created before likes were keyed.
+	 */
+	private void convertLikesToLegacy(String tenantId, String entityId,
+			String activityId, String... userIds)
+	{
+		Vertex activity = graph.getVertex(
+				tenantId + "." + entityId + "." + activityId);
+		for (String userId : userIds)
+		{
+			Vertex like = graph.getVertex(GraphEngine.getLikeVertexId(
+					tenantId, userId, entityId, activityId));
+			// legacy likes are edges from the user vertex, which liking no
+			// longer creates
+			Vertex user = graph.getVertex(tenantId + "." + userId);
+			if (null == user)
+				user = graph.addVertex(tenantId + "." + userId);
+			Edge edge = user.addEdge("Likes", activity);
+			edge.setProperty("TenantID", tenantId);
+			edge.setProperty("EntityID", userId);
+			edge.setProperty("Created", like.getProperty("Created"));
+			like.remove();
+		}
+		activity.removeProperty("LikesKeyed");
+		activity.removeProperty("LikesLinked");
+		graph.commit();
+	}
+	
+	private void convertTimeToString(Element element, String key)
+	{
+		Object value = element.getProperty(key);
+		if (value instanceof Long)
+			element.setProperty(key,
+					new DateTime((long)value, DateTimeZone.UTC).toString());
+	}
+	
+	private void assertTimesAreLongs(Object... values)
+	{
+		for (Object value : values)
+		{
+			if (null != value)
+				assertTrue("Expected long: " + value, value instanceof Long);
+		}
+	}
+}
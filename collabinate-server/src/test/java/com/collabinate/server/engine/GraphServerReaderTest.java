@@ -1,5 +1,7 @@
 package com.collabinate.server.engine;
 
+import static org.junit.Assert.*;
+
 import org.junit.After;
 import org.junit.Test;
 
@@ -57,6 +59,24 @@ public class GraphServerReaderTest extends CollabinateReaderTest
 			graph.shutdown();
 	}
 	
+	@Test
+	public void reading_unknown_entities_should_not_create_vertices()
+	{
+		GraphEngine engine = getServer();
+		
+		assertEquals(0, engine.getStream("tenant", "entity", 0, 5).size());
+		assertEquals(0, engine.getFeed("tenant", "user", 0, 5).size());
+		assertEquals(0, engine.getFollowing("tenant", "user", 0, 5).size());
+		assertEquals(0, engine.getFollowers("tenant", "entity", 0, 5).size());
+		assertEquals("0", engine.getEntity("tenant", "entity")
+				.getCollabinateValue("StreamCount"));
+		assertNull(engine.getDateTimeUserFollowedEntity(
+				"tenant", "user", "entity"));
+		assertNull(engine.unfollowEntity("tenant", "user", "entity"));
+		
+		assertFalse(graph.getVertices().iterator().hasNext());
+	}
+	
 	@Test
 	public void should_not_allow_null_graph()
 	{
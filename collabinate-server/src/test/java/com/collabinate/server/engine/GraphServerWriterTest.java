@@ -1,8 +1,11 @@
 package com.collabinate.server.engine;
 
+import static org.junit.Assert.*;
+
 import org.junit.After;
 import org.junit.Test;
 
+import com.collabinate.server.activitystreams.Activity;
 import com.collabinate.server.engine.CollabinateWriter;
 import com.collabinate.server.engine.GraphEngine;
 import com.tinkerpop.blueprints.GraphFactory;
@@ -41,4 +44,19 @@ public class GraphServerWriterTest extends CollabinateWriterTest
 		exception.expect(IllegalArgumentException.class);
 		new GraphEngine(null);
 	}
+	
+	@Test
+	public void liking_should_not_create_user_entity()
+	{
+		GraphEngine engine = new GraphEngine(graph);
+		Activity activity = new Activity();
+		activity.setId("activity");
+		engine.addActivity("c", "entity", activity);
+		
+		engine.likeActivity("c", "user", "entity", "activity");
+		
+		assertNull(graph.getVertex("c.user"));
+		assertNotNull(engine.userLikesActivity(
+				"c", "user", "entity", "activity"));
+	}
 }
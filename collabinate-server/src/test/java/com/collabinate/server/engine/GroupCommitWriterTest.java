@@ -0,0 +1,134 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.tinkerpop.blueprints.GraphFactory;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+
+/**
+ * Test class for the group committing implementation of CollabinateWriter.
+ * 
+ * @author mafuba
+ *
+ */
+public class GroupCommitWriterTest extends CollabinateWriterTest
+{
+	private CollabinateGraph graph;
+	
+	@Override
+	CollabinateWriter getWriter()
+	{
+		graph = new CollabinateGraph(
+				(KeyIndexableGraph)GraphFactory.open(
+				"src/test/resources/graph.properties"));
+		graph.setAllowCommits(false);
+		graph.enableGroupCommit(2, 256);
+		return new GroupCommitWriter(new GraphEngine(graph), graph);
+	}
+	
+	@After
+	public void teardown()
+	{
+		if (null != graph)
+			graph.shutdown();
+	}
+	
+	@Test
+	public void should_not_allow_null_writer()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new GroupCommitWriter(null, graph);
+	}
+	
+	@Test
+	public void should_not_allow_null_graph()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new GroupCommitWriter(new GraphEngine(graph), null);
+	}
+	
+	@Test
+	public void group_commit_should_perform_work_from_concurrent_threads()
+			throws Exception
+	{
+		final GraphEngine engine = new GraphEngine(graph);
+		final CollabinateWriter groupWriter =
+				new GroupCommitWriter(engine, graph);
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		
+		for (int i = 0; i < 40; i++)
+		{
+			futures.add(executor.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					Activity activity = new Activity();
+					activity.setId(Integer.toString(count.incrementAndGet()));
+					groupWriter.addActivity("c", "entity", activity);
+					return null;
+				}
+			}));
+		}
+		for (Future<?> future : futures)
+			future.get();
+		executor.shutdown();
+		
+		assertEquals(40, engine.getStream("c", "entity", 0, 50)
+				.getTotalItems());
+	}
+	
+	@Test
+	public void group_commit_should_return_failures_to_their_callers()
+	{
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("failed work");
+		graph.execute(new Callable<Void>()
+		{
+			@Override
+			public Void call()
+			{
+				throw new IllegalArgumentException("failed work");
+			}
+		});
+	}
+	
+	@Test
+	public void after_commit_actions_should_run_once_after_their_work()
+	{
+		final AtomicInteger runs = new AtomicInteger();
+		int runsDuringWork = graph.execute(new Callable<Integer>()
+		{
+			@Override
+			public Integer call()
+			{
+				graph.afterCommit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						runs.incrementAndGet();
+					}
+				});
+				return runs.get();
+			}
+		});
+		
+		assertEquals(0, runsDuringWork);
+		assertEquals(1, runs.get());
+	}
+}
@@ -0,0 +1,149 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Test;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsCollection;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.tinkerpop.blueprints.GraphFactory;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+
+/**
+ * Test class for the graph implementation of CollabinateReader with hybrid
+ * feeds, where any entity followed by more than one user is pulled.
+ * 
+ * @author mafuba
+ *
+ */
+public class HybridFeedReaderTest extends CollabinateReaderTest
+{
+	private CollabinateGraph graph;
+	private GraphEngine server;
+	
+	@Override
+	CollabinateReader getReader()
+	{
+		return getServer();
+	}
+	
+	@Override
+	CollabinateWriter getWriter()
+	{
+		return getServer();
+	}
+	
+	/**
+	 * Ensures the same server is used as both the reader and writer.
+	 * 
+	 * @return The server to use.
+	 */
+	private GraphEngine getServer()
+	{
+		if (null == server)
+		{
+			graph = new CollabinateGraph(
+					(KeyIndexableGraph)GraphFactory.open(
+					"src/test/resources/graph.properties"));
+			graph.setAllowCommits(false);
+			server = new GraphEngine(graph);
+			server.setFeedPullThreshold(1);
+		}
+		return server;
+	}
+	
+	@After
+	public void teardown()
+	{
+		if (null != graph)
+			graph.shutdown();
+	}
+	
+	@Test
+	public void should_not_allow_negative_threshold()
+	{
+		exception.expect(IllegalArgumentException.class);
+		getServer().setFeedPullThreshold(-1);
+	}
+	
+	@Test
+	public void feed_should_merge_pushed_and_pulled_entities()
+	{
+		GraphEngine engine = getServer();
+		DateTime time = DateTime.now();
+		
+		// entity1 and entity3 have two followers, so they are pulled
+		engine.followEntity("c", "user", "entity1", null);
+		engine.followEntity("c", "other", "entity1", null);
+		engine.followEntity("c", "user", "entity2", null);
+		engine.followEntity("c", "user", "entity3", null);
+		engine.followEntity("c", "other", "entity3", null);
+		
+		engine.addActivity("c", "entity1", getActivity("1", time));
+		engine.addActivity("c", "entity2", getActivity("2", time.plus(1)));
+		engine.addActivity("c", "entity3", getActivity("3", time.plus(2)));
+		engine.addActivity("c", "entity2", getActivity("4", time.plus(3)));
+		engine.addActivity("c", "entity1", getActivity("5", time.plus(4)));
+		engine.addActivity("c", "entity3", getActivity("6", time.minus(1)));
+		
+		List<ActivityStreamsObject> feed =
+				engine.getFeed("c", "user", 0, 10).getItems();
+		assertEquals(6, feed.size());
+		String[] expected = { "5", "4", "3", "2", "1", "6" };
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], feed.get(i).getId());
+		
+		List<ActivityStreamsObject> page =
+				engine.getFeed("c", "user", 2, 2).getItems();
+		assertEquals("3", page.get(0).getId());
+		assertEquals("2", page.get(1).getId());
+		
+		
+		feed = engine.getFeed("c", "other", 0, 10).getItems();
+		expected = new String[] { "5", "3", "1", "6" };
+		assertEquals(expected.length, feed.size());
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], feed.get(i).getId());
+	}
+	
+	@Test
+	public void cursors_should_page_through_pushed_and_pulled_entities()
+	{
+		GraphEngine engine = getServer();
+		DateTime time = DateTime.now();
+		
+		// entityA has two followers, so it is pulled
+		engine.followEntity("c", "user", "entityA", null);
+		engine.followEntity("c", "other", "entityA", null);
+		engine.followEntity("c", "user", "entityB", null);
+		for (int i = 1; i <= 6; i++)
+		{
+			engine.addActivity("c", 0 == i % 2 ? "entityB" : "entityA",
+					getActivity(Integer.toString(i), time.plus(i * 1000)));
+		}
+		
+		ActivityStreamsCollection first = engine.getFeed("c", "user", 0, 2);
+		ActivityStreamsCollection next = engine.getFeed("c", "user",
+				PageCursor.after(first.getNextCursor()), 2);
+		ActivityStreamsCollection previous = engine.getFeed("c", "user",
+				PageCursor.before(next.getPrevCursor()), 2);
+		
+		assertEquals("4", next.get(0).getId());
+		assertEquals("3", next.get(1).getId());
+		assertEquals("6", previous.get(0).getId());
+		assertEquals("5", previous.get(1).getId());
+	}
+	
+	private Activity getActivity(String id, DateTime published)
+	{
+		Activity activity = new Activity();
+		activity.setId(id);
+		activity.setPublished(published);
+		return activity;
+	}
+}
@@ -0,0 +1,243 @@
+package com.collabinate.server.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.collabinate.server.activitystreams.Activity;
+import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+/**
+ * Tests for the stream skip index, using a short interval so that the index
+ * is exercised by small streams.
+ * 
+ * @author mafuba
+ * 
+ */
+public class StreamIndexTest
+{
+	private CollabinateGraph graph;
+	private GraphEngine engine;
+	private DateTime base;
+	
+	/**
+	 * The expected stream, newest first, as activity IDs.
+	 */
+	private List<String> expected;
+	
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+	
+	@Before
+	public void setup()
+	{
+		graph = new CollabinateGraph(new TinkerGraph());
+		engine = new GraphEngine(graph, INTERVAL);
+		base = DateTime.now(DateTimeZone.UTC);
+		expected = new ArrayList<String>();
+	}
+	
+	@After
+	public void teardown()
+	{
+		graph.shutdown();
+	}
+	
+	@Test
+	public void skip_should_find_activities_added_in_order()
+	{
+		for (int i = 0; i < 20; i++)
+			addActivity(i);
+		
+		assertStreamMatches();
+	}
+	
+	@Test
+	public void skip_should_find_activities_added_out_of_order()
+	{
+		List<Integer> times = new ArrayList<Integer>();
+		for (int i = 0; i < 25; i++)
+			times.add(i);
+		Collections.shuffle(times, new Random(42));
+		
+		for (int time : times)
+		{
+			addActivity(time);
+			assertStreamMatches();
+		}
+	}
+	
+	@Test
+	public void skip_should_find_activities_added_in_batches()
+	{
+		for (int i = 0; i < 20; i += 2)
+			addActivity(i);
+		
+		// a batch spread through the stream, including the newest and oldest
+		List<Activity> batch = new ArrayList<Activity>();
+		for (int seconds : new int[] { 21, 7, -3, 13, 1, 22, 15, -1 })
+			batch.add(createActivity(seconds));
+		engine.addActivities("tenant", "entity", batch);
+		for (Activity activity : batch)
+			expect(Integer.parseInt(activity.getId()));
+		
+		assertStreamMatches();
+		assertEquals("18", engine.getEntity("tenant", "entity")
+				.getCollabinateValue("StreamCount"));
+	}
+	
+	@Test
+	public void skip_should_find_activities_after_deletes()
+	{
+		for (int i = 0; i < 20; i++)
+			addActivity(i);
+		
+		// newest, oldest, and a few from the middle
+		deleteActivity(19);
+		deleteActivity(0);
+		deleteActivity(9);
+		deleteActivity(10);
+		deleteActivity(3);
+		assertStreamMatches();
+		
+		Random random = new Random(7);
+		while (!expected.isEmpty())
+		{
+			deleteActivity(Integer.parseInt(
+					expected.get(random.nextInt(expected.size()))));
+			assertStreamMatches();
+		}
+	}
+	
+	@Test
+	public void unindexed_stream_should_be_readable_and_indexable()
+	{
+		for (int i = 0; i < 10; i++)
+			addActivity(i);
+		
+		// strip the index as though the entity predates it
+		Vertex entity = graph.getVertex("tenant.entity");
+		entity.removeProperty("StreamIndexed");
+		for (Vertex vertex : graph.getVertices("Type", "StreamSkip"))
+			vertex.remove();
+		for (Vertex vertex : graph.getVertices())
+			vertex.removeProperty("SkipPosition");
+		
+		addActivity(10);
+		deleteActivity(4);
+		assertStreamMatches();
+		
+		new StreamIndex(graph, INTERVAL).build(entity);
+		
+		assertStreamMatches();
+		addActivity(11);
+		addActivity(-1);
+		deleteActivity(7);
+		assertStreamMatches();
+	}
+	
+	@Test
+	public void older_than_should_find_position_by_sort_time()
+	{
+		for (int i = 0; i < 20; i++)
+			addActivity(i * 2);
+		
+		StreamIndex index = new StreamIndex(graph, INTERVAL);
+		Vertex entity = graph.getVertex("tenant.entity");
+		
+		for (int seconds = -1; seconds <= 40; seconds++)
+		{
+			Vertex found = index.seekOlderThan(entity,
+					base.plusSeconds(seconds).getMillis());
+			
+			// activities are at even seconds, so the next older is the even
+			// number below
+			int expectedSeconds = seconds % 2 == 0 ? seconds - 2 :
+				seconds - 1;
+			if (expectedSeconds < 0)
+				assertNull(found);
+			else
+				assertEquals(Integer.toString(expectedSeconds),
+						found.getProperty("ActivityID"));
+		}
+	}
+	
+	@Test
+	public void should_not_allow_non_positive_interval()
+	{
+		exception.expect(IllegalArgumentException.class);
+		new StreamIndex(graph, 0);
+	}
+	
+	/**
+	 * Adds an activity published the given number of seconds after the base
+	 * time, with the number as its ID.
+	 */
+	private void addActivity(int seconds)
+	{
+		engine.addActivity("tenant", "entity", createActivity(seconds));
+		expect(seconds);
+	}
+	
+	private Activity createActivity(int seconds)
+	{
+		Activity activity = new Activity();
+		activity.setId(Integer.toString(seconds));
+		activity.setPublished(base.plusSeconds(seconds));
+		return activity;
+	}
+	
+	/**
+	 * Adds an activity ID to the expected stream at its position.
+	 */
+	private void expect(int seconds)
+	{
+		int position = 0;
+		while (position < expected.size() &&
+				Integer.parseInt(expected.get(position)) > seconds)
+			position++;
+		expected.add(position, Integer.toString(seconds));
+	}
+	
+	private void deleteActivity(int seconds)
+	{
+		engine.deleteActivity("tenant", "entity", Integer.toString(seconds));
+		expected.remove(Integer.toString(seconds));
+	}
+	
+	/**
+	 * Verifies that reading from every start index returns the expected
+	 * activities.
+	 */
+	private void assertStreamMatches()
+	{
+		for (int skip = 0; skip <= expected.size(); skip++)
+		{
+			List<ActivityStreamsObject> items = engine.getStream(
+					"tenant", "entity", skip, 2).getItems();
+			List<String> expectedIds = expected.subList(
+					skip, Math.min(skip + 2, expected.size()));
+			
+			assertEquals("Wrong count at skip " + skip,
+					expectedIds.size(), items.size());
+			for (int i = 0; i < items.size(); i++)
+				assertEquals("Wrong activity at skip " + skip,
+						expectedIds.get(i), items.get(i).getId());
+		}
+	}
+	
+	private static final int INTERVAL = 3;
+}
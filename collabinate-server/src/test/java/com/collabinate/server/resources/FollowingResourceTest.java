@@ -11,6 +11,7 @@ import org.restlet.data.MediaType;
 import org.restlet.data.Method;
 import org.restlet.data.Status;
 
+import com.collabinate.server.activitystreams.Activity;
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
 
@@ -201,6 +202,36 @@ public class FollowingResourceTest extends GraphResourceTest
 		assertEquals(originalFollowing.size(), newFollowing.size());
 	}
 	
+	@Test
+	public void post_with_stop_following_should_remove_following()
+	{
+		server.followEntity("tenant", "user", "foo", null);
+		server.followEntity("tenant", "user", "bar", null);
+		
+		ActivityStreamsObject object = new ActivityStreamsObject();
+		object.setId("foo");
+		Activity stopFollowing = new Activity();
+		stopFollowing.setVerb("stop-following");
+		stopFollowing.setObject(object);
+		ActivityStreamsCollection changes = new ActivityStreamsCollection();
+		changes.add(stopFollowing);
+		
+		post(changes.toString(), MediaType.APPLICATION_JSON);
+		
+		ActivityStreamsCollection following =
+				new ActivityStreamsCollection(get().getEntityAsText());
+		assertEquals(1, following.getTotalItems());
+		assertEquals("bar", following.get(0).getId());
+	}
+	
+	@Test
+	public void entity_with_id_batch_should_be_followable()
+	{
+		assertEquals(Status.SUCCESS_CREATED, put("/batch").getStatus());
+		assertEquals(Status.SUCCESS_OK, get("/batch").getStatus());
+		assertEquals(Status.SUCCESS_OK, delete("/batch").getStatus());
+	}
+	
 	@Override
 	protected String getResourcePath()
 	{
@@ -3,6 +3,9 @@ package com.collabinate.server.resources;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Test;
@@ -11,12 +14,15 @@ import org.restlet.Response;
 import org.restlet.data.Conditions;
 import org.restlet.data.MediaType;
 import org.restlet.data.Method;
+import org.restlet.data.Preference;
 import org.restlet.data.Status;
 import org.restlet.data.Tag;
+import org.restlet.representation.ByteArrayRepresentation;
 
 import com.collabinate.server.activitystreams.Activity;
 import com.collabinate.server.activitystreams.ActivityStreamsCollection;
 import com.collabinate.server.activitystreams.ActivityStreamsObject;
+import com.collabinate.server.activitystreams.SmileCodec;
 import com.google.gson.JsonParser;
 
 /**
@@ -80,6 +86,51 @@ public class StreamResourceTest extends GraphResourceTest
 		assertEquals(Status.SUCCESS_OK, getResponse(request).getStatus());
 	}
 	
+	@Test
+	public void get_response_should_contain_modification_date()
+	{
+		post("TEST", MediaType.TEXT_PLAIN);
+		
+		assertNotNull(get().getEntity().getModificationDate());
+	}
+	
+	@Test
+	public void matching_etag_should_return_304_for_changed_stream()
+	{
+		post("TEST", MediaType.TEXT_PLAIN);
+		Tag etag = get().getEntity().getTag();
+		Request request = getRequest(Method.GET, null);
+		Conditions conditions = new Conditions();
+		conditions.getNoneMatch().add(etag);
+		request.setConditions(conditions);
+		
+		assertEquals(Status.REDIRECTION_NOT_MODIFIED,
+				getResponse(request).getStatus());
+	}
+	
+	@Test
+	public void etag_should_differ_between_pages()
+	{
+		post("TEST", MediaType.TEXT_PLAIN);
+		
+		assertNotEquals(get().getEntity().getTag(),
+				get("?take=1").getEntity().getTag());
+	}
+	
+	@Test
+	public void etag_should_change_when_included_comments_change()
+	{
+		String activityId = new Activity(
+				post("TEST", MediaType.TEXT_PLAIN).getEntityAsText()).getId();
+		Tag tag1 = get("?comments=2").getEntity().getTag();
+		ActivityStreamsObject comment = new ActivityStreamsObject();
+		comment.setId("comment");
+		server.addComment("tenant", "entity", activityId, null, comment);
+		Tag tag2 = get("?comments=2").getEntity().getTag();
+		
+		assertNotEquals(tag1, tag2);
+	}
+	
 	@Test
 	public void item_added_to_stream_should_return_201()
 	{
@@ -497,6 +548,115 @@ public class StreamResourceTest extends GraphResourceTest
 		assertEquals(0, likes.getTotalItems());
 	}
 
+	@Test
+	public void get_with_after_cursor_should_return_next_page()
+	{
+		post("FIRST", MediaType.TEXT_PLAIN);
+		post("SECOND", MediaType.TEXT_PLAIN);
+		
+		ActivityStreamsCollection first = new ActivityStreamsCollection(
+				get("?take=1").getEntityAsText());
+		ActivityStreamsCollection next = new ActivityStreamsCollection(
+				get("?take=1&after=" + first.getNextCursor())
+				.getEntityAsText());
+		
+		assertEquals(1, next.size());
+		assertNotEquals(first.get(0).getId(), next.get(0).getId());
+	}
+	
+	@Test
+	public void get_with_invalid_cursor_should_return_400()
+	{
+		assertEquals(Status.CLIENT_ERROR_BAD_REQUEST,
+				get("?after=invalid").getStatus());
+	}
+	
+	@Test
+	public void get_accepting_smile_should_return_smile()
+	{
+		post("TEST", MediaType.TEXT_PLAIN);
+		
+		assertEquals(SmileRepresentation.APPLICATION_SMILE,
+				getSmile().getEntity().getMediaType());
+	}
+	
+	@Test
+	public void smile_should_have_different_etag_than_json()
+	{
+		post("TEST", MediaType.TEXT_PLAIN);
+		
+		assertNotEquals(get().getEntity().getTag(),
+				getSmile().getEntity().getTag());
+	}
+	
+	@Test
+	public void posted_smile_activity_should_be_added() throws IOException
+	{
+		Activity activity = new Activity();
+		activity.setVerb("share");
+		ByteArrayOutputStream smile = new ByteArrayOutputStream();
+		new SmileCodec().write(activity, smile);
+		Request request = getRequest(Method.POST, null);
+		request.setEntity(new ByteArrayRepresentation(smile.toByteArray(),
+				SmileRepresentation.APPLICATION_SMILE));
+		
+		assertEquals(Status.SUCCESS_CREATED, getResponse(request).getStatus());
+		
+		ActivityStreamsCollection stream =
+				new ActivityStreamsCollection(get().getEntityAsText());
+		assertEquals("share", new Activity(stream.get(0).toString()).getVerb());
+	}
+	
+	@Test
+	public void posted_invalid_smile_should_return_400()
+	{
+		assertEquals(Status.CLIENT_ERROR_BAD_REQUEST,
+				post("{}", SmileRepresentation.APPLICATION_SMILE).getStatus());
+	}
+	
+	@Test
+	public void posted_collection_should_add_each_item()
+	{
+		ActivityStreamsCollection activities = new ActivityStreamsCollection();
+		activities.setObjectType("collection");
+		activities.add(new Activity());
+		activities.add(new Activity());
+		
+		Response response =
+				post(activities.toString(), MediaType.APPLICATION_JSON);
+		
+		assertEquals(Status.SUCCESS_CREATED, response.getStatus());
+		assertEquals(2, new ActivityStreamsCollection(
+				response.getEntityAsText()).size());
+		assertEquals(2, new ActivityStreamsCollection(
+				get().getEntityAsText()).getTotalItems());
+	}
+	
+	@Test
+	public void activity_with_id_batch_should_be_retrievable()
+	{
+		Request request = getRequest(Method.PUT, "/batch");
+		request.setEntity(new Activity().toString(),
+				MediaType.APPLICATION_JSON);
+		getResponse(request);
+		
+		assertEquals(Status.SUCCESS_OK, get("/batch").getStatus());
+	}
+	
+	/**
+	 * Sends a GET request that prefers Smile to JSON.
+	 * 
+	 * @return The response from the test resource to the GET request.
+	 */
+	private Response getSmile()
+	{
+		Request request = getRequest(Method.GET, null);
+		request.getClientInfo().getAcceptedMediaTypes().add(
+				new Preference<MediaType>(
+						SmileRepresentation.APPLICATION_SMILE));
+		return getResponse(request);
+	}
+	
 	@Override
 	protected String getResourcePath()
 	{